@@ -0,0 +1,86 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sleuthkit.autopsy.keywordsearch.KeywordSearchUtil;
+
+/**
+ * Throughput of KeywordSearchUtil.escapeLuceneQuery(), called for every hit
+ * term when the snippets and highlighting of the results are queried.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EscapeLuceneQueryBenchmark {
+
+    private static final int NUM_QUERIES = 1000;
+    private static final String SPECIAL_CHARS = "/+-&|!(){}[]^\"~*?:\\";
+    private String[] queries;
+
+    /**
+     * Generates terms like the ones the keyword lists and regular expression
+     * searches produce: words, e-mail addresses, URLs, paths and phone numbers
+     */
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0x5eed);
+        final String text = Fixtures.text(NUM_QUERIES * 16);
+        queries = new String[NUM_QUERIES];
+        for (int i = 0; i < NUM_QUERIES; ++i) {
+            final String word = text.substring(i * 16, i * 16 + 4 + random.nextInt(12)).trim();
+            switch (i % 6) {
+                case 0:
+                    queries[i] = word + "@" + word + ".com";
+                    break;
+                case 1:
+                    queries[i] = "http://www." + word + ".com/" + word + "?id=" + i;
+                    break;
+                case 2:
+                    queries[i] = "C:\\Users\\" + word + "\\Documents\\" + word + ".doc";
+                    break;
+                case 3:
+                    queries[i] = "(555) 01" + (i % 10) + "-" + (1000 + i);
+                    break;
+                case 4:
+                    queries[i] = "\"" + word + " " + SPECIAL_CHARS.charAt(random.nextInt(SPECIAL_CHARS.length())) + word + "\"";
+                    break;
+                default:
+                    queries[i] = word;
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public void escape(Blackhole bh) {
+        for (int i = 0; i < queries.length; ++i) {
+            bh.consume(KeywordSearchUtil.escapeLuceneQuery(queries[i]));
+        }
+    }
+}
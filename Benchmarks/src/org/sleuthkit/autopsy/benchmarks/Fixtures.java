@@ -0,0 +1,117 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.benchmarks;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+/**
+ * Generates the benchmark input data locally, with a fixed seed so that runs
+ * are comparable, instead of shipping sample files.
+ */
+public class Fixtures {
+
+    private static final long SEED = 0x5eed;
+    private static final String[] WORDS = {
+        "the", "evidence", "image", "volume", "partition", "file", "system", "deleted",
+        "keyword", "search", "index", "report", "case", "examiner", "registry", "browser",
+        "history", "password", "account", "message", "attachment", "timestamp", "hash",
+        "Praha", "Kraków", "Győr", "Žilina", "České", "Łódź", "Москва", "данные"
+    };
+
+    private Fixtures() {
+    }
+
+    /**
+     * Generates input data of a kind
+     *
+     * @param kind "random" for random bytes, "text" for text in UTF-8 and
+     * UTF-16LE, "mixed" for random bytes with strings embedded at random
+     * offsets, like executables and documents
+     * @param size number of bytes to generate
+     * @return the data
+     */
+    public static byte[] generate(String kind, int size) {
+        final Random random = new Random(SEED);
+        final byte[] data = new byte[size];
+        if (kind.equals("random")) {
+            random.nextBytes(data);
+        } else if (kind.equals("text")) {
+            int off = 0;
+            while (off < size) {
+                off = put(data, off, encode(words(random, 50 + random.nextInt(200)), random.nextBoolean()));
+            }
+        } else if (kind.equals("mixed")) {
+            random.nextBytes(data);
+            int off = 0;
+            while (off < size) {
+                off += random.nextInt(512);
+                off = put(data, off, encode(words(random, 1 + random.nextInt(8)), random.nextBoolean()));
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown input kind: " + kind);
+        }
+        return data;
+    }
+
+    /**
+     * Generates text of the size
+     *
+     * @param size number of chars to generate
+     * @return the text
+     */
+    public static String text(int size) {
+        final Random random = new Random(SEED);
+        final StringBuilder sb = new StringBuilder(size + 16);
+        while (sb.length() < size) {
+            sb.append(words(random, 10 + random.nextInt(20))).append('\n');
+        }
+        sb.setLength(size);
+        return sb.toString();
+    }
+
+    private static String words(Random random, int numWords) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numWords; ++i) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static byte[] encode(String s, boolean utf16) {
+        try {
+            return s.getBytes(utf16 ? "UTF-16LE" : "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    //copies as much of src as fits at off, returns the offset past it
+    private static int put(byte[] data, int off, byte[] src) {
+        if (off >= data.length) {
+            return off;
+        }
+        final int len = Math.min(src.length, data.length - off);
+        System.arraycopy(src, 0, data, off, len);
+        return off + len;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.sleuthkit.autopsy.coreutils.StringExtract;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractResult;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
+
+/**
+ * Throughput of StringExtract.extract() over a buffer the size of the string
+ * stream read buffer, for the kinds of content the keyword search string
+ * extraction sees: random bytes (unallocated space, compressed and encrypted
+ * files), text, and binary files with embedded strings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StringExtractBenchmark {
+
+    @Param({"random", "text", "mixed"})
+    public String input;
+    /**
+     * LATIN_2 is the keyword search default, ALL enables all supported scripts
+     */
+    @Param({"LATIN_2", "ALL"})
+    public String scripts;
+    @Param({"1048576"})
+    public int size;
+    private StringExtract stringExtract;
+    private byte[] buff;
+
+    @Setup
+    public void setUp() {
+        buff = Fixtures.generate(input, size);
+        stringExtract = new StringExtract();
+        if (!scripts.equals("ALL")) {
+            stringExtract.setEnabledScript(SCRIPT.valueOf(scripts));
+        }
+    }
+
+    @Benchmark
+    public StringExtractResult extract() {
+        return stringExtract.extract(buff, buff.length, 0);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
+import org.sleuthkit.autopsy.keywordsearch.AbstractFileStringIntStream;
+import org.sleuthkit.autopsy.keywordsearch.MemoryFile;
+import org.sleuthkit.datamodel.AbstractFile;
+
+/**
+ * Throughput of string extraction from a whole file through
+ * AbstractFileStringIntStream.read(), as done for unallocated space and files
+ * of unsupported formats, including the file read windows and the conversion
+ * of the strings to the output encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StringStreamBenchmark {
+
+    private static final Charset OUTPUT_CHARSET = Charset.forName("UTF-8");
+    //keyword search default
+    private static final List<SCRIPT> SCRIPTS = Arrays.asList(SCRIPT.LATIN_2);
+    @Param({"random", "text", "mixed"})
+    public String input;
+    @Param({"8388608"})
+    public int size;
+    private AbstractFile file;
+    private byte[] readBuf;
+
+    @Setup
+    public void setUp() {
+        file = new MemoryFile(1, "unalloc", Fixtures.generate(input, size));
+        readBuf = new byte[64 * 1024];
+    }
+
+    /**
+     * @return number of bytes of strings read
+     */
+    @Benchmark
+    public long read() throws IOException {
+        final AbstractFileStringIntStream stream = new AbstractFileStringIntStream(file,
+                SCRIPTS, true, true, OUTPUT_CHARSET);
+        long total = 0;
+        int read;
+        try {
+            while ((read = stream.read(readBuf, 0, readBuf.length)) != -1) {
+                total += read;
+            }
+        } finally {
+            stream.close();
+        }
+        return total;
+    }
+}
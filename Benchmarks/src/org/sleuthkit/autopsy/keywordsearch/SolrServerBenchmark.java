@@ -0,0 +1,236 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.ContentStreamUpdateRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.openide.modules.InstalledFileLocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.sleuthkit.autopsy.benchmarks.Fixtures;
+
+/**
+ * Startup time and indexing throughput of Solr run in a separate process
+ * (forked, the default) and hosted in the benchmark JVM (embedded), and the
+ * indexing throughput of the ways the ingester sends extracted text: batches
+ * of documents, one document per request, or through the extract handler.
+ *
+ * Uses the Solr installation of the keyword search module in the suite
+ * cluster. Forked Solr listens on its default port, so Autopsy must not be
+ * running at the same time.
+ *
+ * In the keyword search package to reach the package-private Server.
+ */
+public class SolrServerBenchmark {
+
+    private static final String SOLR_URL = "http://localhost:8983/solr/";
+    //wait for forked Solr to answer
+    private static final long START_TIMEOUT_MS = 60 * 1000;
+    //same size as the chunks of extracted text the ingester indexes
+    private static final int CHUNK_CHARS = 32 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Starts the server, and returns when it is ready to open cores
+     */
+    private static Server startServer(String mode) throws InterruptedException {
+        final File solrFolder = InstalledFileLocator.getDefault().locate("solr", Server.class.getPackage().getName(), false);
+        if (solrFolder == null) {
+            throw new IllegalStateException("Solr installation not found, run the benchmark target of the suite cluster");
+        }
+        final Server server = new Server(SOLR_URL, solrFolder, mode.equals("embedded"));
+        server.start();
+        final long startTime = System.currentTimeMillis();
+        while (!server.isRunning()) {
+            if (System.currentTimeMillis() - startTime > START_TIMEOUT_MS) {
+                server.stop();
+                throw new IllegalStateException("Solr not started in " + START_TIMEOUT_MS + " ms");
+            }
+            Thread.sleep(100);
+        }
+        return server;
+    }
+
+    private static File createDataDir() throws IOException {
+        final File dataDir = File.createTempFile("autopsy-solr-benchmark", "");
+        dataDir.delete();
+        dataDir.mkdirs();
+        return dataDir;
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @State(Scope.Thread)
+    public static class Startup {
+
+        @Param({"forked", "embedded"})
+        public String mode;
+        private File dataDir;
+
+        @Setup(Level.Invocation)
+        public void setUp() throws IOException {
+            dataDir = createDataDir();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            delete(dataDir);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Indexing {
+
+        @Param({"forked", "embedded"})
+        public String mode;
+        /**
+         * Number of chunk documents posted in an update request, as the
+         * ingester batches them
+         */
+        @Param({"10"})
+        public int batchDocs;
+        /**
+         * How the chunks are sent: "batch" posts batchDocs documents in an
+         * update request (batch indexing), "direct" posts a document per
+         * request (direct text indexing), "extract" posts the UTF-8 bytes of
+         * each chunk to the extract handler, which parses them with Tika
+         */
+        @Param({"batch", "direct", "extract"})
+        public String request;
+        private Server server;
+        private Server.Core core;
+        private File dataDir;
+        private String text;
+        private byte[] textBytes;
+        private MemoryFile source;
+        private long nextFileId = 1;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException, InterruptedException {
+            text = Fixtures.text(CHUNK_CHARS);
+            textBytes = text.getBytes(UTF_8);
+            source = new MemoryFile(1, "chunk", textBytes);
+            dataDir = createDataDir();
+            server = startServer(mode);
+            core = server.openCore("benchmark", dataDir);
+        }
+
+        @TearDown(Level.Iteration)
+        public void commit() throws SolrServerException {
+            core.commit();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            core.close();
+            server.stop();
+            delete(dataDir);
+        }
+
+        /**
+         * Sends batchDocs chunks of a new file in the requested way
+         */
+        private void indexChunks() throws SolrServerException {
+            final long fileId = nextFileId++;
+            if (request.equals("batch")) {
+                final UpdateRequest up = new UpdateRequest();
+                for (int i = 1; i <= batchDocs; ++i) {
+                    up.add(createDocument(fileId, i));
+                }
+                core.request(up);
+            } else if (request.equals("direct")) {
+                for (int i = 1; i <= batchDocs; ++i) {
+                    final UpdateRequest up = new UpdateRequest();
+                    up.add(createDocument(fileId, i));
+                    core.request(up);
+                }
+            } else if (request.equals("extract")) {
+                for (int i = 1; i <= batchDocs; ++i) {
+                    //as Ingester.ingest(ContentStream, ...) posts a chunk
+                    final ContentStreamUpdateRequest up = new ContentStreamUpdateRequest("/update/extract");
+                    up.addContentStream(new ByteContentStream(textBytes, textBytes.length, source, UTF_8));
+                    up.setParam("literal." + Server.Schema.ID.toString(), Server.getChunkIdString(fileId, i));
+                    up.setParam("stream.contentType", "text/plain;charset=" + UTF_8.name());
+                    up.setParam("commit", "false");
+                    core.request(up);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown request: " + request);
+            }
+        }
+
+        private SolrInputDocument createDocument(long fileId, int chunkId) {
+            final SolrInputDocument doc = new SolrInputDocument();
+            doc.addField(Server.Schema.ID.toString(), Server.getChunkIdString(fileId, chunkId));
+            doc.addField(Server.Schema.CONTENT.toString(), text);
+            return doc;
+        }
+    }
+
+    /**
+     * Time from starting Solr until a core is open, and to shut it down again
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void startup(Startup state) throws InterruptedException {
+        final Server server = startServer(state.mode);
+        try {
+            server.openCore("benchmark", state.dataDir).close();
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Sets of batchDocs chunks indexed per second, commits not included.
+     * Multiply by batchDocs for chunks per second, comparable across the
+     * request kinds.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void index(Indexing state) throws SolrServerException {
+        state.indexChunks();
+    }
+}
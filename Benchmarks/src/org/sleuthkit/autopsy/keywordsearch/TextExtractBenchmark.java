@@ -0,0 +1,93 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.apache.tika.Tika;
+import org.apache.tika.metadata.Metadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sleuthkit.autopsy.benchmarks.Fixtures;
+
+/**
+ * Time to extract and chunk the text of a plain text file, decoded directly by
+ * AbstractFileTextExtract or parsed by Tika as AbstractFileTikaTextExtract
+ * does. Posting the chunks to Solr is not included.
+ *
+ * In the keyword search package to reach the package-private reader and
+ * chunking of the extractors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TextExtractBenchmark {
+
+    /**
+     * Number of chars of the text file
+     */
+    @Param({"65536", "4194304"})
+    public int size;
+    /**
+     * direct: decoded by AbstractFileTextExtract, tika: Tika parse
+     */
+    @Param({"direct", "tika"})
+    public String extractor;
+    private byte[] content;
+    private char[] textChunkBuf;
+
+    @Setup
+    public void setUp() {
+        content = Fixtures.text(size).getBytes(Charset.forName("UTF-8"));
+        textChunkBuf = new char[AbstractFileTikaTextExtract.MAX_EXTR_TEXT_CHARS];
+    }
+
+    @Benchmark
+    public void extract(Blackhole bh) throws IOException {
+        final Reader reader;
+        final Metadata meta;
+        if (extractor.equals("tika")) {
+            meta = new Metadata();
+            reader = new Tika().parse(new ByteArrayInputStream(content), meta);
+        } else {
+            meta = null;
+            reader = AbstractFileTextExtract.openReader(new ByteArrayInputStream(content));
+        }
+        try {
+            final AbstractFileTikaTextExtract.TextChunker chunker =
+                    new AbstractFileTikaTextExtract.TextChunker(reader, textChunkBuf);
+            while (chunker.next()) {
+                bh.consume(AbstractFileTikaTextExtract.encodeChunk(textChunkBuf, chunker.getLength(),
+                        chunker.isLast() ? meta : null));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
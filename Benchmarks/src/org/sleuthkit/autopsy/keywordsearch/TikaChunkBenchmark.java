@@ -0,0 +1,78 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.apache.tika.metadata.Metadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sleuthkit.autopsy.benchmarks.Fixtures;
+
+/**
+ * Throughput of splitting the text Tika extracted from a file into chunks and
+ * encoding the chunks to index, in AbstractFileTikaTextExtract. Tika parsing
+ * and posting the chunks to Solr are not included.
+ *
+ * In the keyword search package to reach the package-private chunking of the
+ * extractor; the benchmarks run on a flat class path, outside of the module
+ * system.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TikaChunkBenchmark {
+
+    /**
+     * Number of chars of text extracted from the file
+     */
+    @Param({"65536", "4194304"})
+    public int size;
+    private String text;
+    private Metadata meta;
+    private char[] textChunkBuf;
+
+    @Setup
+    public void setUp() {
+        text = Fixtures.text(size);
+        meta = new Metadata();
+        meta.set("Content-Type", "application/msword");
+        meta.set("Author", "examiner");
+        meta.set("title", "benchmark");
+        textChunkBuf = new char[AbstractFileTikaTextExtract.MAX_EXTR_TEXT_CHARS];
+    }
+
+    @Benchmark
+    public void chunk(Blackhole bh) throws IOException {
+        final AbstractFileTikaTextExtract.TextChunker chunker =
+                new AbstractFileTikaTextExtract.TextChunker(new StringReader(text), textChunkBuf);
+        while (chunker.next()) {
+            bh.consume(AbstractFileTikaTextExtract.encodeChunk(textChunkBuf, chunker.getLength(),
+                    chunker.isLast() ? meta : null));
+        }
+    }
+}
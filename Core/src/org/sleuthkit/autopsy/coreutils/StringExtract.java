@@ -61,8 +61,18 @@ public class StringExtract {
             SCRIPT.HIRAGANA, SCRIPT.KATAKANA, SCRIPT.HANGUL,
             SCRIPT.ARMENIAN, SCRIPT.BENGALI, SCRIPT.KHMER, SCRIPT.ETHIOPIC,
             SCRIPT.GEORGIAN, SCRIPT.HEBREW, SCRIPT.LAO, SCRIPT.MONGOLIAN, SCRIPT.THAI, SCRIPT.TIBETAN);
-    //current total string buffer, reuse for performance
-    private final StringBuilder curString = new StringBuilder();
+    private static final int SCRIPT_NONE = SCRIPT.NONE.ordinal();
+    private static final int SCRIPT_COMMON = SCRIPT.COMMON.ordinal();
+    /**
+     * enabled scripts by ordinal, for fast lookup
+     */
+    private final boolean[] scriptEnabled = new boolean[SCRIPT.values().length];
+    //output text buffer and string candidates, reused for performance
+    private char[] out = new char[4096];
+    private int outLen;
+    private final Candidate utf8 = new Candidate();
+    private final Candidate utf16 = new Candidate();
+    private final Candidate utf16Swapped = new Candidate();
 
     /**
      * Initializes the StringExtract utility Sets enabled scripts to all
@@ -105,6 +115,7 @@ public class StringExtract {
      */
     public final void setEnabledScripts(List<SCRIPT> scripts) {
         this.enabledScripts = scripts;
+        updateScriptEnabled();
     }
 
 
@@ -117,6 +128,13 @@ public class StringExtract {
 
         this.enabledScripts = new ArrayList<SCRIPT>();
         this.enabledScripts.add(script);
+        updateScriptEnabled();
+    }
+
+    private void updateScriptEnabled() {
+        for (SCRIPT script : SCRIPT.values()) {
+            scriptEnabled[script.ordinal()] = isExtractionEnabled(script);
+        }
     }
 
     /**
@@ -169,8 +187,8 @@ public class StringExtract {
      * Runs the byte buffer through the string extractor
      *
      * @param buff
-     * @param len
-     * @param offset
+     * @param len end offset of the data in the buffer (exclusive)
+     * @param offset offset in the buffer to start extraction from
      * @return string extraction result, with the string extracted and
      * additional info
      */
@@ -178,68 +196,63 @@ public class StringExtract {
         if (this.enableUTF16 == false && this.enableUTF8 == false) {
              return new StringExtractResult();
         }
-        
-        final int buffLen = buff.length;
 
         int processedBytes = 0;
         int curOffset = offset;
         int startOffset = offset;
-        int curStringLen = 0;
-
-        //reset curString buffer
-        curString.delete(0, curString.length());
+        outLen = 0;
 
         //keep track of first byte offset that hasn't been processed
         //(one byte past the last byte processed in by last extraction)
         int firstUnprocessedOff = offset;
+        //where the last string extracted starts in the buffer and in the text
+        int lastStringOff = offset;
+        int lastStringTextOff = 0;
+
+        if (enableUTF8 == false && curOffset % 2 != 0) {
+            //UTF16 only, strings start at even offsets
+            ++curOffset;
+        }
 
-        while (curOffset < buffLen) {
+        while (curOffset < len) {
             //shortcut, skip processing empty bytes
-            if (buff[curOffset] == 0 && curOffset + 1 < buffLen && buff[curOffset + 1] == 0) {
+            if (buff[curOffset] == 0 && curOffset + 1 < len && buff[curOffset + 1] == 0) {
                 curOffset += 2;
                 continue;
             }
 
             //extract using all methods and see which one wins
-            StringExtractResult resUTF16 = null;
+            Candidate win = null;
             if (enableUTF16 && curOffset % 2 == 0) {
-                StringExtractResult resUTF16En1 = extractUTF16(buff, len, curOffset, true);
-                StringExtractResult resUTF16En2 = extractUTF16(buff, len, curOffset, false);
-                resUTF16 = resUTF16En1.numChars > resUTF16En2.numChars ? resUTF16En1 : resUTF16En2;
-            } 
-            
-            //results.add(extractUTF8(buff, len, curOffset));
-            StringExtractResult resUTF8 = null;
-
-            if (enableUTF8) {
-                resUTF8 = extractUTF8(buff, len, curOffset);
+                scanUTF16(buff, len, curOffset, true, utf16Swapped);
+                scanUTF16(buff, len, curOffset, false, utf16);
+                win = utf16Swapped.numChars > utf16.numChars ? utf16Swapped : utf16;
             }
 
-            StringExtractResult resWin = null;
-            if (enableUTF8 && enableUTF16) {
-                resWin = resUTF16 != null && resUTF16.numChars > resUTF8.numChars ? resUTF16 : resUTF8;
-            } else if (enableUTF16){
-                resWin = resUTF16;
-            }
-            else if (enableUTF8) {
-                resWin = resUTF8;
+            if (enableUTF8) {
+                scanUTF8(buff, len, curOffset, utf8);
+                if (win == null || win.numChars <= utf8.numChars) {
+                    win = utf8;
+                }
             }
 
-            if (resWin.numChars >= MIN_CHARS_STRING) {
-                //record string 
+            if (win != null && win.numChars >= MIN_CHARS_STRING) {
+                //record string
                 if (startOffset == offset) {
                     //advance start offset where first string starts it hasn't been advanced
-                    startOffset = resWin.offset;
+                    startOffset = curOffset;
                 }
-                curStringLen += resWin.numChars;
-                curString.append(resWin.textString);
-                curString.append("\n");
-                curStringLen += resWin.numChars + 1;
+                lastStringOff = curOffset;
+                lastStringTextOff = outLen;
+                ensureOutCapacity(outLen + win.numChars + 1);
+                System.arraycopy(win.chars, 0, out, outLen, win.numChars);
+                outLen += win.numChars;
+                out[outLen++] = '\n';
 
                 //advance
-                curOffset += resWin.numBytes;
-                processedBytes += resWin.numBytes;
-                firstUnprocessedOff = resWin.offset + resWin.numBytes;
+                curOffset += win.numBytes;
+                processedBytes += win.numBytes;
+                firstUnprocessedOff = curOffset;
             } else {
                 //if no encodings worked, advance byte
                 if (enableUTF8 == false) {
@@ -253,118 +266,94 @@ public class StringExtract {
         //build up the result
         StringExtractResult res = new StringExtractResult();
         res.numBytes = processedBytes;
-        res.numChars = curStringLen;
+        res.numChars = outLen;
         res.offset = startOffset;
-        res.textString = curString.toString();
+        res.textString = new String(out, 0, outLen);
         res.firstUnprocessedOff = firstUnprocessedOff; //save that of the last winning result
+        res.lastStringOff = lastStringOff;
+        res.lastStringTextOff = lastStringTextOff;
 
         return res;
     }
 
-    private StringExtractResult extractUTF16(byte[] buff, int len, int offset, boolean endianSwap) {
-        StringExtractResult res = new StringExtractResult();
-
-        int curOffset = offset;
-
-        final StringBuilder tempString = new StringBuilder();
+    private void ensureOutCapacity(int capacity) {
+        if (out.length < capacity) {
+            out = Arrays.copyOf(out, Math.max(capacity, out.length * 2));
+        }
+    }
 
-        SCRIPT currentScript = SCRIPT.NONE;
+    /**
+     * Checks if the char of the script can be added to a string locked into
+     * the current script (SCRIPT.NONE ordinal if not locked yet)
+     *
+     * @param script script value of the char
+     * @param candidate string candidate to add the char to, its script is
+     * updated if this is the first char of a specific script
+     * @return true if the char is part of the string
+     */
+    private boolean acceptScript(int script, Candidate candidate) {
+        if (script == SCRIPT_NONE) {
+            return false;
+        }
+        if (script == SCRIPT_COMMON) {
+            //generic chars are allowed in any string
+            return true;
+        }
+        if (!scriptEnabled[script]) {
+            return false;
+        }
+        if (candidate.script == SCRIPT_NONE) {
+            //first char of a specific script, lock into the script
+            candidate.script = script;
+            return true;
+        }
+        return candidate.script == script;
+    }
 
-        boolean inControl = false;
+    /**
+     * Scans a UTF16 string starting at the offset, stops at the first byte
+     * pair that is not a char of an enabled script (or the one locked into)
+     */
+    private void scanUTF16(byte[] buff, int len, int offset, boolean endianSwap, Candidate candidate) {
+        candidate.reset();
+        final char[] table = StringExtractUnicodeTable.unicodeTable;
 
+        int curOffset = offset;
         //while we have 2 byte chunks
-        byte[] b = new byte[2];
         while (curOffset < len - 1) {
-            b[0] = buff[curOffset++];
-            b[1] = buff[curOffset++];
-
+            final int lo;
+            final int hi;
             if (endianSwap) {
-                byte temp = b[0];
-                b[0] = b[1];
-                b[1] = temp;
-            }
-
-            //convert the byte sequence to 2 byte char
-            //ByteBuffer bb = ByteBuffer.wrap(b);
-            //int byteVal = bb.getInt();
-            char byteVal = (char) b[1];
-            byteVal = (char) (byteVal << 8);
-            byteVal += b[0];
-
-            //skip if beyond range
-            if (byteVal > StringExtractUnicodeTable.UNICODE_TABLE_SIZE - 1) {
-                break;
-            }
-
-            //lookup byteVal in the unicode table
-            SCRIPT scriptFound = unicodeTable.getScript(byteVal);
-
-            if (scriptFound == SCRIPT.NONE) {
-                break;
+                lo = buff[curOffset + 1] & 0xFF;
+                hi = buff[curOffset] & 0xFF;
+            } else {
+                lo = buff[curOffset] & 0xFF;
+                hi = buff[curOffset + 1] & 0xFF;
             }
+            final char ch = (char) ((hi << 8) | lo);
 
-            /*
-             else if (scriptFound == SCRIPT.CONTROL) {
-             //update bytes processed
-             res.numBytes += 2;
-             continue;
-             } else if (inControl) {
-             break;
-             }*/
-
-
-            final boolean isGeneric = StringExtractUnicodeTable.isGeneric(scriptFound);
-            //allow generic and one of enabled scripts we locked in to
-            if (isGeneric
-                    || isExtractionEnabled(scriptFound)) {
-
-                if (currentScript == SCRIPT.NONE
-                        && !isGeneric) {
-                    //handle case when this is the first char in the string
-                    //lock into the script
-                    currentScript = scriptFound;
-                }
-                //check if we are within the same script we are locked on to, or COMMON
-                if (currentScript == scriptFound
-                        || isGeneric) {
-                    if (res.numChars == 0) {
-                        //set the start offset of the string
-                        res.offset = curOffset;
-                    }
-                    //update bytes processed
-                    res.numBytes += 2;
-                    //append the char
-                    ++res.numChars;
-                    tempString.append(byteVal);
-                } else {
-                    //bail out
-                    break;
-                }
-            } else {
-                //bail out 
+            if (!acceptScript(table[ch], candidate)) {
                 break;
             }
-
-        } //no more data
-
-        res.textString = tempString.toString();
-
-        return res;
+            candidate.add(ch);
+            candidate.numBytes += 2;
+            curOffset += 2;
+        }
     }
 
-    private StringExtractResult extractUTF8(byte[] buff, int len, int offset) {
-        StringExtractResult res = new StringExtractResult();
+    /**
+     * Scans a UTF8 string starting at the offset, stops at the first invalid
+     * byte sequence or char that is not of an enabled script (or the one locked
+     * into)
+     */
+    private void scanUTF8(byte[] buff, int len, int offset, Candidate candidate) {
+        candidate.reset();
+        final char[] table = StringExtractUnicodeTable.unicodeTable;
 
         int curOffset = offset;
-        int ch = 0; //character being extracted
+        int ch; //character being extracted
         int chBytes; //num bytes consumed by current char (1 - 4)
 
-        final StringBuilder tempString = new StringBuilder();
-
-        SCRIPT currentScript = SCRIPT.NONE;
-
-        boolean inControl = false;
-
         //decode and extract a character
         while (curOffset < len) {
             // based on "valid UTF-8 byte sequences" in the Unicode 5.0 book
@@ -385,155 +374,64 @@ public class StringExtract {
                 } else {
                     break;
                 }
-            } else if (curByte == 0xE0) {
-                if (len - curOffset < 3) {
-                    break;
-                }
-                final int curByte_1 = buff[curOffset + 1] & 0xFF;
-                final int curByte_2 = buff[curOffset + 2] & 0xFF;
-
-                if (curByte_1 >= 0xA0 && curByte_1 <= 0xBF
-                        && curByte_2 >= 0x80 && curByte_2 <= 0xBF) {
-                    chBytes = 3;
-                    ch = (((curByte & 0x0f) << 12) + ((curByte_1 & 0x3f) << 6) + (curByte_2 & 0x3f));
-                } else {
-                    break;
-                }
-            } else if (curByte <= 0xEC) {
-                if (len - curOffset < 3) {
-                    break;
-                }
-                final int curByte_1 = buff[curOffset + 1] & 0xFF;
-                final int curByte_2 = buff[curOffset + 2] & 0xFF;
-                if (curByte_1 >= 0x80 && curByte_1 <= 0xBF
-                        && curByte_2 >= 0x80 && curByte_2 <= 0xBF) {
-                    chBytes = 3;
-                    ch = (((curByte & 0x0f) << 12) + ((curByte_1 & 0x3f) << 6) + (curByte_2 & 0x3f));
-                } else {
-                    break;
-                }
-            } else if (curByte == 0xED) {
-                if (len - curOffset < 3) {
-                    break;
-                }
-                final int curByte_1 = buff[curOffset + 1] & 0xFF;
-                final int curByte_2 = buff[curOffset + 2] & 0xFF;
-                if (curByte_1 >= 0x80 && curByte_1 <= 0x9F
-                        && curByte_2 >= 0x80 && curByte_2 <= 0xBF) {
-                    chBytes = 3;
-                    ch = (((curByte & 0x0f) << 12) + ((curByte_1 & 0x3f) << 6) + (curByte_2 & 0x3f));
-                } else {
-                    break;
-                }
             } else if (curByte <= 0xEF) {
                 if (len - curOffset < 3) {
                     break;
                 }
                 final int curByte_1 = buff[curOffset + 1] & 0xFF;
                 final int curByte_2 = buff[curOffset + 2] & 0xFF;
-                if (curByte_1 >= 0x80 && curByte_1 <= 0xBF
+                //valid range of the second byte depends on the first one
+                final int min_1 = curByte == 0xE0 ? 0xA0 : 0x80;
+                final int max_1 = curByte == 0xED ? 0x9F : 0xBF;
+                if (curByte_1 >= min_1 && curByte_1 <= max_1
                         && curByte_2 >= 0x80 && curByte_2 <= 0xBF) {
                     chBytes = 3;
                     ch = (((curByte & 0x0f) << 12) + ((curByte_1 & 0x3f) << 6) + (curByte_2 & 0x3f));
                 } else {
                     break;
                 }
-            } else if (curByte == 0xF0) {
-                if (len - curOffset < 4) {
-                    break;
-                }
-                final int curByte_1 = buff[curOffset + 1] & 0xFF;
-                final int curByte_2 = buff[curOffset + 2] & 0xFF;
-                final int curByte_3 = buff[curOffset + 3] & 0xFF;
-                if (curByte_1 >= 0x90 && curByte_1 <= 0xBF
-                        && curByte_2 >= 0x80 && curByte_2 <= 0xBF
-                        && curByte_3 >= 0x80 && curByte_3 <= 0xBF) {
-                    chBytes = 4;
-                    ch = (((curByte & 0x07) << 18) + ((curByte_1 & 0x3f) << 12) + ((curByte_2 & 0x3f) << 6) + (curByte_3 & 0x3f));
-                } else {
-                    break;
-                }
-            } else if (curByte <= 0xF3) {
-                if (len - curOffset < 4) {
-                    break;
-                }
-                final int curByte_1 = buff[curOffset + 1] & 0xFF;
-                final int curByte_2 = buff[curOffset + 2] & 0xFF;
-                final int curByte_3 = buff[curOffset + 3] & 0xFF;
-                if (curByte_1 >= 0x80 && curByte_1 <= 0xBF
-                        && curByte_2 >= 0x80 && curByte_2 <= 0xBF
-                        && curByte_3 >= 0x80 && curByte_3 <= 0xBF) {
-                    chBytes = 4;
-                    ch = (((curByte & 0x07) << 18) + ((curByte_1 & 0x3f) << 12) + ((curByte_2 & 0x3f) << 6) + (curByte_3 & 0x3f));
-                } else {
-                    break;
-                }
             } else {
+                //4 byte sequences decode to chars beyond the unicode table
                 break;
             }
 
-
-            curOffset += chBytes;
-
-            //skip if beyond range
-            if (ch > StringExtractUnicodeTable.UNICODE_TABLE_SIZE - 1) {
-                break;
-            }
-
-            //lookup byteVal in the unicode table
-            SCRIPT scriptFound = unicodeTable.getScript(ch);
-
-            if (scriptFound == SCRIPT.NONE) {
+            if (!acceptScript(table[ch], candidate)) {
                 break;
             }
+            candidate.add((char) ch);
+            candidate.numBytes += chBytes;
+            curOffset += chBytes;
+        }
+    }
 
-            /*else if (scriptFound == SCRIPT.CONTROL) {
-             //update bytes processed
-             res.numBytes += chBytes;
-             continue;
-             } else if (inControl) {
-             break;
-             }*/
-
-            final boolean isGeneric = StringExtractUnicodeTable.isGeneric(scriptFound);
-            //allow generic and one of enabled scripts we locked in to
-            if (isGeneric
-                    || isExtractionEnabled(scriptFound)) {
-
-                if (currentScript == SCRIPT.NONE
-                        && !isGeneric) {
-                    //handle case when this is the first char in the string
-                    //lock into the script
-                    currentScript = scriptFound;
-                }
-                //check if we are within the same script we are locked on to, or COMMON
-                if (currentScript == scriptFound
-                        || isGeneric) {
-                    if (res.numChars == 0) {
-                        //set the start byte offset of the string
-                        res.offset = curOffset;
-                    }
-                    //update bytes processed
-                    res.numBytes += chBytes;
-                    //append the char
-                    ++res.numChars;
-                    tempString.append((char) ch);
-                } else {
-                    //bail out
-                    break;
-                }
-            } else {
-                //bail out 
-                break;
-            }
+    /**
+     * String being scanned in one of the encodings. Reused for every offset
+     * scanned, so that scanning does not allocate.
+     */
+    private static class Candidate {
 
-        } //no more data
+        char[] chars = new char[256]; ///< chars of the string
+        int numChars;
+        int numBytes; ///< bytes of the string in the input buffer
+        int script; ///< ordinal of the script the string is locked into
 
-        res.textString = tempString.toString();
+        /**
+         * Resets to scan a new string
+         */
+        void reset() {
+            numChars = 0;
+            numBytes = 0;
+            script = SCRIPT_NONE;
+        }
 
-        return res;
+        void add(char ch) {
+            if (numChars == chars.length) {
+                chars = Arrays.copyOf(chars, chars.length * 2);
+            }
+            chars[numChars++] = ch;
+        }
     }
-    
+
     /*
      * Extract UTF8/16 ASCII characters from byte buffer - only works for Latin, but fast
      *
@@ -606,12 +504,31 @@ public class StringExtract {
         int numBytes; ///< num bytes in input buffer consumed
         int numChars; ///< number of encoded characters extracted in the textString
         int firstUnprocessedOff; ///< first byte past the last byte used in extraction, offset+numBytes for a single result, but we keep track of it for multiple extractions
+        int lastStringOff; ///< offset in input buffer where the last string extracted starts
+        int lastStringTextOff; ///< offset in textString where the last string extracted starts
         String textString; ///< the actual text string extracted, of numChars long
 
         public int getFirstUnprocessedOff() {
             return firstUnprocessedOff;
         }
 
+        /**
+         * @return offset in the input buffer of the last string extracted,
+         * e.g. to extract it again with more input if it may continue past the
+         * end of the buffer
+         */
+        public int getLastStringOffset() {
+            return lastStringOff;
+        }
+
+        /**
+         * @return offset in the text of the last string extracted, the text
+         * before it are the strings ending before getLastStringOffset()
+         */
+        public int getLastStringTextOffset() {
+            return lastStringTextOff;
+        }
+
         public int getStartOffset() {
             return offset;
         }
@@ -27,7 +27,9 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import javax.swing.Action;
@@ -91,6 +93,8 @@ public final class DirectoryTreeTopComponent extends TopComponent implements Dat
     private String className = this.getClass().toString();
     private static final Logger logger = Logger.getLogger(DirectoryTreeTopComponent.class.getName());
     private RootContentChildren contentChildren;
+    //artifact types with new data, refreshed together by a single refresh of the tree
+    private final Set<BlackboardArtifact.ARTIFACT_TYPE> typesToRefresh = EnumSet.noneOf(BlackboardArtifact.ARTIFACT_TYPE.class);
 
     /** the constructor */
     private DirectoryTreeTopComponent() {
@@ -686,12 +690,25 @@ public final class DirectoryTreeTopComponent extends TopComponent implements Dat
 
         if (changed.equals(IngestModuleEvent.DATA.toString())) {
             final ModuleDataEvent event = (ModuleDataEvent) oldValue;
-            SwingUtilities.invokeLater(new Runnable() {
-                @Override
-                public void run() {
-                    refreshTree(event.getArtifactType());
-                }
-            });
+            final boolean refreshScheduled;
+            synchronized (typesToRefresh) {
+                refreshScheduled = !typesToRefresh.isEmpty();
+                typesToRefresh.add(event.getArtifactType());
+            }
+            if (!refreshScheduled) {
+                //a refresh not yet run will pick up the type, otherwise schedule a new one
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        final BlackboardArtifact.ARTIFACT_TYPE[] types;
+                        synchronized (typesToRefresh) {
+                            types = typesToRefresh.toArray(new BlackboardArtifact.ARTIFACT_TYPE[typesToRefresh.size()]);
+                            typesToRefresh.clear();
+                        }
+                        refreshTree(types);
+                    }
+                });
+            }
         }
         
         if (changed.equals(IngestModuleEvent.COMPLETED.toString())) {
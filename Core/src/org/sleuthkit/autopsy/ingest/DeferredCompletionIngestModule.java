@@ -0,0 +1,33 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+/**
+ * Optional interface of file ingest modules that finish processing files
+ * after process() returns, e.g. by indexing them in the background.
+ *
+ * The ingest journal does not record such a module as done with a file when
+ * process() returns. The module reports the files it is done with (e.g. once
+ * they are committed) with IngestServices.fileModuleCompleted(), and calls
+ * IngestServices.fileModuleDeferredWorkDone() once it finished the files of
+ * the ingest, after complete() or stop(). Until then, the ingest is not
+ * considered completed and the journal is kept.
+ */
+public interface DeferredCompletionIngestModule extends IngestModuleAbstractFile {
+}
@@ -0,0 +1,422 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskException;
+
+/**
+ * Detects the type of file content by signature (magic bytes) in the first few
+ * KB of the file, instead of by file name extension.
+ *
+ * The type of a file is detected only once and shared by all modules. Results
+ * are cached by object id and persisted to a store in the case directory, so
+ * they are reused when the image is ingested again. Get the type of a file
+ * using IngestServices.getFileType().
+ */
+public class FileTypeDetector {
+
+    /**
+     * File content types recognized by the detector
+     */
+    public enum FileType {
+
+        UNKNOWN, ///< empty, unreadable or binary content of unrecognized type
+        TEXT, ///< plain text (ASCII, UTF-8 or UTF-16)
+        HTML,
+        XML,
+        RTF,
+        PDF,
+        OLE2, ///< MS Office 97-2003 documents, Outlook msg, other compound files
+        ZIP, ///< zip archives, including Office Open XML, OpenDocument and jar files
+        GZIP,
+        BZIP2,
+        PST,
+        MBOX,
+        SQLITE,
+        EXECUTABLE,
+        JPEG,
+        PNG,
+        GIF,
+        BMP,
+        TIFF,
+        MP3,
+        WAV
+    }
+    static final String STORE_FILE_NAME = "file_types.store";
+    private static final int STORE_VERSION = 1;
+    //detected types are written to the store file in batches
+    private static final int STORE_FLUSH_RECORDS = 1000;
+    static final int DETECT_BYTES = 4 * 1024;
+    //min. share of printable characters in text
+    private static final double MIN_TEXT_RATIO = 0.95;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Logger logger = Logger.getLogger(FileTypeDetector.class.getName());
+    private static FileTypeDetector instance;
+    private final String caseDirectory;
+    private final Map<Long, FileType> types = new ConcurrentHashMap<Long, FileType>();
+    private DataOutputStream store;
+    private int unflushedRecords = 0;
+
+    static {
+        //write out and close the store of the case being closed
+        Case.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (evt.getPropertyName().equals(Case.CASE_CURRENT_CASE)) {
+                    closeDefault();
+                }
+            }
+        });
+    }
+
+    private FileTypeDetector(String caseDirectory) {
+        this.caseDirectory = caseDirectory;
+    }
+
+    /**
+     * Gets the detector of the current case, the cached types of the
+     * previous case are dropped when the case changes
+     *
+     * @return the detector
+     */
+    static synchronized FileTypeDetector getDefault() {
+        final String currentDirectory = Case.existsCurrentCase() ? Case.getCurrentCase().getCaseDirectory() : null;
+        if (instance == null
+                || (currentDirectory == null ? instance.caseDirectory != null : !currentDirectory.equals(instance.caseDirectory))) {
+            if (instance != null) {
+                instance.close();
+            }
+            instance = new FileTypeDetector(currentDirectory);
+            instance.openStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Closes the detector of the case, if any, the next getDefault() opens
+     * the one of the current case
+     */
+    private static synchronized void closeDefault() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    /**
+     * Gets the type of the file content, detecting it only if not detected
+     * before
+     *
+     * @param file file to get the type of
+     * @return the type of the file content
+     */
+    FileType getFileType(AbstractFile file) {
+        final long objId = file.getId();
+        FileType type = types.get(objId);
+        if (type == null) {
+            type = detect(file);
+            if (types.put(objId, type) == null) {
+                storeType(objId, type);
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Reads the first bytes of the file and matches them against the known
+     * signatures
+     *
+     * @param file file to detect the type of
+     * @return the detected type
+     */
+    static FileType detect(AbstractFile file) {
+        final long size = file.getSize();
+        if (size == 0) {
+            return FileType.UNKNOWN;
+        }
+        final byte[] buf = new byte[(int) Math.min(size, DETECT_BYTES)];
+        int len;
+        try {
+            len = file.read(buf, 0, buf.length);
+        } catch (TskException ex) {
+            logger.log(Level.WARNING, "Error reading header of file: " + file.getId(), ex);
+            return FileType.UNKNOWN;
+        }
+        return detect(buf, len);
+    }
+
+    /**
+     * Matches the first bytes of content against the known signatures
+     *
+     * @param buf first bytes of content
+     * @param len number of bytes in the buffer
+     * @return the detected type
+     */
+    static FileType detect(byte[] buf, int len) {
+        if (len <= 0) {
+            return FileType.UNKNOWN;
+        }
+        if (startsWith(buf, len, 0x25, 0x50, 0x44, 0x46)) { //%PDF
+            return FileType.PDF;
+        } else if (startsWith(buf, len, 0xD0, 0xCF, 0x11, 0xE0, 0xA1, 0xB1, 0x1A, 0xE1)) {
+            return FileType.OLE2;
+        } else if (startsWith(buf, len, 0x50, 0x4B, 0x03, 0x04)) { //PK
+            return FileType.ZIP;
+        } else if (startsWith(buf, len, 0x7B, 0x5C, 0x72, 0x74, 0x66)) { //{\rtf
+            return FileType.RTF;
+        } else if (startsWith(buf, len, 0xFF, 0xD8, 0xFF)) {
+            return FileType.JPEG;
+        } else if (startsWith(buf, len, 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return FileType.PNG;
+        } else if (startsWith(buf, len, 0x47, 0x49, 0x46, 0x38)) { //GIF8
+            return FileType.GIF;
+        } else if (startsWith(buf, len, 0x49, 0x49, 0x2A, 0x00) || startsWith(buf, len, 0x4D, 0x4D, 0x00, 0x2A)) {
+            return FileType.TIFF;
+        } else if (startsWith(buf, len, 0x1F, 0x8B)) {
+            return FileType.GZIP;
+        } else if (startsWith(buf, len, 0x42, 0x5A, 0x68)) { //BZh
+            return FileType.BZIP2;
+        } else if (startsWith(buf, len, 0x21, 0x42, 0x44, 0x4E)) { //!BDN
+            return FileType.PST;
+        } else if (startsWith(buf, len, "SQLite format 3")) {
+            return FileType.SQLITE;
+        } else if (startsWith(buf, len, 0x49, 0x44, 0x33) || startsWith(buf, len, 0xFF, 0xFB)) { //ID3
+            return FileType.MP3;
+        } else if (startsWith(buf, len, "RIFF") && len >= 12 && new String(buf, 8, 4, UTF8).equals("WAVE")) {
+            return FileType.WAV;
+        } else if (startsWith(buf, len, 0x4D, 0x5A)) { //MZ
+            return FileType.EXECUTABLE;
+        } else if (startsWith(buf, len, 0x42, 0x4D) && len >= 14
+                && buf[6] == 0 && buf[7] == 0 && buf[8] == 0 && buf[9] == 0) { //BM, reserved header bytes 0
+            return FileType.BMP;
+        } else if (startsWith(buf, len, "From ")) {
+            return FileType.MBOX;
+        }
+
+        if (startsWith(buf, len, 0xFF, 0xFE) || startsWith(buf, len, 0xFE, 0xFF)) {
+            //UTF-16 BOM
+            return FileType.TEXT;
+        }
+        if (!isText(buf, len)) {
+            return FileType.UNKNOWN;
+        }
+        //markup in text, ignoring UTF-8 BOM and leading whitespace
+        final String start = new String(buf, 0, Math.min(len, 512), UTF8).replace("\uFEFF", "").trim().toLowerCase();
+        if (start.startsWith("<?xml")) {
+            return start.contains("<html") ? FileType.HTML : FileType.XML;
+        } else if (start.startsWith("<!doctype html") || start.startsWith("<html")
+                || (start.startsWith("<") && start.contains("<html"))) {
+            return FileType.HTML;
+        }
+        return FileType.TEXT;
+    }
+
+    private static boolean startsWith(byte[] buf, int len, int... signature) {
+        if (len < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; ++i) {
+            if ((buf[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(byte[] buf, int len, String signature) {
+        if (len < signature.length()) {
+            return false;
+        }
+        for (int i = 0; i < signature.length(); ++i) {
+            if (buf[i] != signature.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the bytes look like ASCII or UTF-8 text: no NUL bytes and
+     * mostly printable characters or whitespace
+     */
+    private static boolean isText(byte[] buf, int len) {
+        int printable = 0;
+        for (int i = 0; i < len; ++i) {
+            final int b = buf[i] & 0xFF;
+            if (b == 0) {
+                return false;
+            }
+            //count bytes of UTF-8 multi-byte chars as printable
+            if (b >= 0x20 && b != 0x7F || b == '\n' || b == '\r' || b == '\t' || b == '\f') {
+                ++printable;
+            }
+        }
+        return printable >= len * MIN_TEXT_RATIO;
+    }
+
+    /**
+     * Loads the types stored for the case and opens the store for appending,
+     * after the last complete record
+     */
+    private void openStore() {
+        if (caseDirectory == null) {
+            return;
+        }
+        final File storeFile = new File(caseDirectory, STORE_FILE_NAME);
+        long validLength = -1;
+        if (storeFile.exists()) {
+            validLength = loadStore(storeFile);
+        }
+        final boolean valid = validLength >= 0;
+        try {
+            if (valid && validLength < storeFile.length()) {
+                //drop the incomplete last record, e.g. of an ingest that did not finish writing it
+                truncateStore(storeFile, validLength);
+            }
+            store = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(storeFile, valid)));
+            if (!valid) {
+                store.writeInt(STORE_VERSION);
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not open file type store, file types will not be persisted: " + storeFile, ex);
+            store = null;
+        }
+    }
+
+    /**
+     * Loads the records of the store up to the last complete one
+     *
+     * @return length of the store up to the end of the last complete record,
+     * or -1 if the store is not of current version or unreadable
+     */
+    private long loadStore(File storeFile) {
+        DataInputStream in = null;
+        long validLength = -1;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)));
+            if (in.readInt() != STORE_VERSION) {
+                logger.log(Level.INFO, "Discarding file type store of another version: " + storeFile);
+                return -1;
+            }
+            validLength = 4;
+            while (true) {
+                final long objId;
+                try {
+                    objId = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                //same as readUTF(), with the length of the record known
+                final byte[] typeName = new byte[in.readUnsignedShort()];
+                in.readFully(typeName);
+                validLength += 8 + 2 + typeName.length;
+                try {
+                    types.put(objId, FileType.valueOf(new String(typeName, UTF8)));
+                } catch (IllegalArgumentException e) {
+                    //type no longer recognized, detect again
+                }
+            }
+            logger.log(Level.INFO, "Loaded stored types of files: " + types.size());
+        } catch (IOException ex) {
+            //incomplete last record, or unreadable store, keep the complete records
+            logger.log(Level.WARNING, "Error loading file type store, loaded types of files: " + types.size(), ex);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    logger.log(Level.WARNING, "Error closing file type store", ex);
+                }
+            }
+        }
+        return validLength;
+    }
+
+    private static void truncateStore(File storeFile, long length) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(storeFile, "rw");
+        try {
+            file.setLength(length);
+        } finally {
+            file.close();
+        }
+    }
+
+    private synchronized void storeType(long objId, FileType type) {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.writeLong(objId);
+            store.writeUTF(type.name());
+            if (++unflushedRecords >= STORE_FLUSH_RECORDS) {
+                store.flush();
+                unflushedRecords = 0;
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Error writing file type store, file types will not be persisted anymore", ex);
+            close();
+        }
+    }
+
+    /**
+     * Writes out the types not stored yet
+     */
+    synchronized void flush() {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.flush();
+            unflushedRecords = 0;
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Error writing file type store", ex);
+        }
+    }
+
+    private synchronized void close() {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.close();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Error closing file type store", ex);
+        }
+        store = null;
+    }
+}
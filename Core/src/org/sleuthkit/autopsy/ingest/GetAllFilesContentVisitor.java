@@ -38,16 +38,57 @@ import org.sleuthkit.datamodel.TskData;
 
 /**
  * Visitor for getting all the files/unalloc files / dirs to ingest
+ *
+ * Files of a file system can be either returned all at once, or streamed in
+ * batches to a FileBatchListener, so that the caller does not need to hold all
+ * the files of a large image in memory.
  */
 class GetAllFilesContentVisitor extends GetFilesContentVisitor {
 
     private static final Logger logger = Logger.getLogger(GetAllFilesContentVisitor.class.getName());
     private boolean getUnallocatedFiles;
+    private int batchSize;
+    private FileBatchListener batchListener;
+    private boolean stopped = false;
+    //error reading a page of files in the streaming mode, the rest of the files was not read
+    private SQLException error = null;
+
+    /**
+     * Listener receiving batches of files read from the database, when the
+     * visitor runs in the streaming mode
+     */
+    interface FileBatchListener {
+
+        /**
+         * Called when next batch of files has been read
+         *
+         * @param files next batch of files
+         * @return true if the visitor should continue, false to stop reading
+         * more files
+         */
+        boolean filesFound(Collection<AbstractFile> files);
+    }
     
     GetAllFilesContentVisitor(boolean getUnallocatedFiles) {
         this.getUnallocatedFiles = getUnallocatedFiles;
     }
 
+    /**
+     * Creates visitor in the streaming mode. File system files are paged out
+     * of the database and passed to the listener in batches, instead of being
+     * returned by visit(). Other files (e.g. unallocated space outside of a
+     * file system) are still returned by visit().
+     *
+     * @param getUnallocatedFiles whether to include unallocated space files
+     * @param batchSize max number of files read from the database at once
+     * @param batchListener listener to pass the batches of files to
+     */
+    GetAllFilesContentVisitor(boolean getUnallocatedFiles, int batchSize, FileBatchListener batchListener) {
+        this(getUnallocatedFiles);
+        this.batchSize = batchSize;
+        this.batchListener = batchListener;
+    }
+
     @Override
     public Collection<AbstractFile> visit(File file) {
         return Collections.<AbstractFile>singleton(file);
@@ -73,8 +114,54 @@ class GetAllFilesContentVisitor extends GetFilesContentVisitor {
         // Files in the database have a filesystem field, so it's quick to
         // get all the matching files for an entire filesystem with a query
 
-        SleuthkitCase sc = Case.getCurrentCase().getSleuthkitCase();
+        if (stopped) {
+            return Collections.emptySet();
+        }
+
+        final String query = getFileSystemFilesQuery(fs);
+
+        if (batchListener == null) {
+            logger.log(Level.INFO, "Executing query: " + query);
+            return runFilesQuery(query);
+        }
+
+        //streaming mode, page files out of the database ordered by id
+        logger.log(Level.INFO, "Executing paged query: " + query);
+        long lastId = -1;
+        while (!stopped) {
+            StringBuilder pageQueryB = new StringBuilder(query);
+            pageQueryB.append(" AND (obj_id > ").append(lastId).append(")");
+            pageQueryB.append(" ORDER BY obj_id LIMIT ").append(batchSize);
+
+            final List<AbstractFile> batch;
+            try {
+                batch = queryFiles(pageQueryB.toString());
+            } catch (SQLException ex) {
+                //not the end of the files, the caller has to know the rest is missing
+                logger.log(Level.SEVERE, "Couldn't get files of file system: " + fs.getId() + " after file id: " + lastId, ex);
+                error = ex;
+                stopped = true;
+                break;
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+            final int batchCount = batch.size();
 
+            if (!batchListener.filesFound(batch)) {
+                logger.log(Level.INFO, "Stopped reading files of file system: " + fs.getId());
+                stopped = true;
+            }
+            if (batchCount < batchSize) {
+                break;
+            }
+        }
+
+        return Collections.emptySet();
+    }
+
+    private String getFileSystemFilesQuery(FileSystem fs) {
         StringBuilder queryB = new StringBuilder();
         queryB.append("SELECT * FROM tsk_files WHERE ( (fs_obj_id = ").append(fs.getId());
         queryB.append(") OR (fs_obj_id = NULL) )");
@@ -83,25 +170,41 @@ class GetAllFilesContentVisitor extends GetFilesContentVisitor {
         queryB.append( " AND (name != '.') AND (name != '..')");
         queryB.append(") )");
         if (getUnallocatedFiles == false) {
-            queryB.append( "AND (type = ");
+            queryB.append( " AND (type = ");
             queryB.append(TskData.TSK_DB_FILES_TYPE_ENUM.FS.getFileType());
             queryB.append(")");
         }
-        
+        return queryB.toString();
+    }
+
+    /**
+     * Gets the error that stopped reading the files in the streaming mode
+     *
+     * @return the error, null if all the files were read (or the listener
+     * stopped the reading)
+     */
+    SQLException getError() {
+        return error;
+    }
+
+    private List<AbstractFile> runFilesQuery(String query) {
         try {
-            final String query = queryB.toString();
-            logger.log(Level.INFO, "Executing query: " + query);
-            ResultSet rs = sc.runQuery(query);
-            List<AbstractFile> contents = sc.resultSetToAbstractFiles(rs);
-            Statement s = rs.getStatement();
-            rs.close();
-            if (s != null) {
-                s.close();
-            }
-            return contents;
+            return queryFiles(query);
         } catch (SQLException ex) {
             logger.log(Level.WARNING, "Couldn't get all files in FileSystem", ex);
-            return Collections.emptySet();
+            return Collections.emptyList();
+        }
+    }
+
+    private List<AbstractFile> queryFiles(String query) throws SQLException {
+        SleuthkitCase sc = Case.getCurrentCase().getSleuthkitCase();
+        ResultSet rs = sc.runQuery(query);
+        List<AbstractFile> contents = sc.resultSetToAbstractFiles(rs);
+        Statement s = rs.getStatement();
+        rs.close();
+        if (s != null) {
+            s.close();
         }
+        return contents;
     }
 }
@@ -33,6 +33,9 @@ import org.sleuthkit.datamodel.Image;
 /**
  * worker for every ingest image module there is a separate instance per image
  * / module pair
+ *
+ * Run by the ingest manager on its own executor rather than with execute(),
+ * as it blocks while waiting for a worker slot.
  */
 public class IngestImageThread extends SwingWorker<Object, Void> {
 
@@ -84,15 +87,31 @@ public class IngestImageThread extends SwingWorker<Object, Void> {
             return null;
         }
         final StopWatch timer = new StopWatch();
-        timer.start();
+        //image modules share the worker budget with other image modules and the file ingest
+        final IngestScheduler scheduler = manager.getScheduler();
+        boolean scheduled = false;
+        //true only if process() returned normally, only then the journal records the module done
+        boolean processed = false;
         try {
+            progress.progress("Waiting for a free ingest worker");
+            scheduler.acquireImageModuleSlot(image);
+            scheduled = true;
+            progress.progress(module.getName());
+            //time the processing only, not the wait
+            timer.start();
             module.process(image, controller);
+            processed = true;
+        } catch (InterruptedException e) {
+            logger.log(Level.INFO, "Image ingest module " + module.getName() + " interrupted while waiting for a worker slot.");
         } catch (Exception e) {
             logger.log(Level.WARNING, "Exception in module: " + module.getName() + " image: " + image.getName(), e);
         } finally {
-            timer.stop();
-            logger.log(Level.INFO, "Done processing of module: " + module.getName() 
-                    + " took " + timer.getElapsedTimeSecs() + " secs. to process()" );
+            if (scheduled) {
+                scheduler.releaseImageModuleSlot(image);
+                timer.stop();
+                logger.log(Level.INFO, "Done processing of module: " + module.getName() 
+                        + " took " + timer.getElapsedTimeSecs() + " secs. to process()" );
+            }
 
             EventQueue.invokeLater(new Runnable() {
                 @Override
@@ -113,6 +132,12 @@ public class IngestImageThread extends SwingWorker<Object, Void> {
                 catch (Exception e) {
                     logger.log(Level.INFO, "Error completing the module " + module.getName(), e);
                 }
+                if (processed) {
+                    manager.imageModuleCompleted(image, module);
+                } else {
+                    //run again if the ingest is resumed
+                    logger.log(Level.INFO, "Module " + module.getName() + " not recorded as completed, it did not finish processing of image " + image.getName());
+                }
                 IngestManager.fireModuleEvent(IngestModuleEvent.COMPLETED.toString(), module.getName());
             } else {
                 logger.log(Level.INFO, "Module " + module.getName() + " stopped");
@@ -0,0 +1,378 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Persistent checkpoint journal of ingest, stored in the case directory.
+ *
+ * Records which modules completed processing of which object (file or image),
+ * so that ingest interrupted by a crash or stopped (e.g. due to low disk
+ * space) can be resumed by skipping the work already done. The journal is
+ * cleared once ingest completes, so that a later ingest runs all the modules
+ * again.
+ *
+ * The journal is an append-only text file with the lines:
+ * <pre>
+ * M &lt;module index&gt; &lt;module name&gt;
+ * F &lt;object id&gt; &lt;module index&gt;[,&lt;module index&gt;...]
+ * </pre>
+ * separated by tabs. Module records apply to the file records that follow
+ * them. The file is flushed and synced to disk periodically, a
+ * crash may lose the last few records and the affected files are then
+ * processed again. An incomplete last record is truncated before appending.
+ */
+class IngestJournal {
+
+    static final String JOURNAL_FILE_NAME = "ingest.journal";
+    private static final int SYNC_INTERVAL_MS = 2000;
+    private static final int READ_BUF_SIZE = 64 * 1024;
+    private static final String MODULE_RECORD = "M";
+    private static final String FILE_RECORD = "F";
+    private static final char SEPARATOR = '\t';
+    private static final Logger logger = Logger.getLogger(IngestJournal.class.getName());
+    private final File journalFile;
+    //module name -> module index used in the journal
+    private final Map<String, Integer> moduleIndexes = new HashMap<String, Integer>();
+    //object ids completed, per module index
+    private final List<BitSet> completed = new ArrayList<BitSet>();
+    private int numRecords = 0;
+    private FileOutputStream out;
+    private Writer writer;
+    private long lastSync = 0;
+
+    private IngestJournal(File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Opens the journal in the case directory, loads the records of an
+     * unfinished ingest if any and opens the journal for appending
+     *
+     * @param caseDirectory case directory to store the journal in
+     * @return the opened journal
+     * @throws IOException if the journal could not be opened for writing
+     */
+    static IngestJournal open(String caseDirectory) throws IOException {
+        IngestJournal journal = new IngestJournal(new File(caseDirectory, JOURNAL_FILE_NAME));
+        final long validLength = journal.load();
+        if (journal.journalFile.exists() && validLength < journal.journalFile.length()) {
+            //drop the incomplete last record, so that the appended records start on a new line
+            truncateJournal(journal.journalFile, validLength);
+        }
+        journal.openWriter();
+        return journal;
+    }
+
+    /**
+     * @return directory of the case the journal belongs to
+     */
+    String getCaseDirectory() {
+        return journalFile.getParent();
+    }
+
+    /**
+     * @return true if there are no completed records, i.e. there is nothing to
+     * resume
+     */
+    synchronized boolean isEmpty() {
+        return numRecords == 0;
+    }
+
+    /**
+     * Checks if the module already completed processing of the object
+     *
+     * @param objId object id of the file or image
+     * @param module module to check
+     * @return true if the module completed the object in an earlier ingest
+     */
+    synchronized boolean isCompleted(long objId, IngestModuleAbstract module) {
+        final Integer moduleIndex = moduleIndexes.get(module.getName());
+        if (moduleIndex == null || objId < 0 || objId > Integer.MAX_VALUE) {
+            return false;
+        }
+        return completed.get(moduleIndex).get((int) objId);
+    }
+
+    /**
+     * Records modules that completed processing of the object
+     *
+     * @param objId object id of the file or image
+     * @param modules modules that completed the object
+     */
+    synchronized void completed(long objId, Collection<? extends IngestModuleAbstract> modules) {
+        if (modules.isEmpty() || objId < 0 || objId > Integer.MAX_VALUE) {
+            //object ids beyond int range are not tracked and always processed
+            return;
+        }
+        StringBuilder record = new StringBuilder();
+        record.append(FILE_RECORD).append(SEPARATOR).append(objId).append(SEPARATOR);
+        boolean first = true;
+        for (IngestModuleAbstract module : modules) {
+            final int moduleIndex = getModuleIndex(module.getName());
+            completed.get(moduleIndex).set((int) objId);
+            if (!first) {
+                record.append(',');
+            }
+            record.append(moduleIndex);
+            first = false;
+        }
+        ++numRecords;
+        write(record.toString());
+    }
+
+    /**
+     * Records a module that completed processing of the objects
+     *
+     * @param objIds object ids of the files or images
+     * @param module module that completed the objects
+     */
+    synchronized void completed(Collection<Long> objIds, IngestModuleAbstract module) {
+        final List<IngestModuleAbstract> modules = Collections.singletonList(module);
+        for (long objId : objIds) {
+            completed(objId, modules);
+        }
+    }
+
+    /**
+     * Clears all the records, called when ingest has completed
+     */
+    synchronized void clear() {
+        moduleIndexes.clear();
+        completed.clear();
+        numRecords = 0;
+        closeWriter();
+        if (journalFile.exists() && !journalFile.delete()) {
+            logger.log(Level.WARNING, "Could not delete ingest journal: " + journalFile.getAbsolutePath());
+        }
+        try {
+            openWriter();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not reopen ingest journal: " + journalFile.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Flushes and syncs the records written so far to disk
+     */
+    synchronized void sync() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error syncing ingest journal, disabling the journal", e);
+            closeWriter();
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Syncs and closes the journal, records added after are not persisted
+     */
+    synchronized void close() {
+        sync();
+        closeWriter();
+    }
+
+    private int getModuleIndex(String moduleName) {
+        Integer moduleIndex = moduleIndexes.get(moduleName);
+        if (moduleIndex == null) {
+            moduleIndex = addModule(moduleName);
+            write(MODULE_RECORD + SEPARATOR + moduleIndex + SEPARATOR + moduleName);
+        }
+        return moduleIndex;
+    }
+
+    private int addModule(String moduleName) {
+        final int moduleIndex = completed.size();
+        moduleIndexes.put(moduleName, moduleIndex);
+        completed.add(new BitSet());
+        return moduleIndex;
+    }
+
+    private void write(String record) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(record);
+            writer.write('\n');
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error writing ingest journal, disabling the journal", e);
+            closeWriter();
+            return;
+        }
+        if (System.currentTimeMillis() - lastSync > SYNC_INTERVAL_MS) {
+            sync();
+        }
+    }
+
+    private void openWriter() throws IOException {
+        out = new FileOutputStream(journalFile, true);
+        writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+        lastSync = System.currentTimeMillis();
+        //(re)define the module indexes used by the records appended from now on
+        for (Map.Entry<String, Integer> module : moduleIndexes.entrySet()) {
+            write(MODULE_RECORD + SEPARATOR + module.getValue() + SEPARATOR + module.getKey());
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing ingest journal", e);
+        }
+        writer = null;
+        out = null;
+    }
+
+    /**
+     * Loads records of the unfinished ingest, skipping incomplete records at
+     * the end of the journal left by a crash
+     *
+     * @return length of the journal up to the end of the last complete
+     * record, 0 if there is no journal or it is unreadable
+     */
+    private long load() {
+        if (!journalFile.exists()) {
+            return 0;
+        }
+        InputStream in = null;
+        long validLength = 0;
+        try {
+            in = new FileInputStream(journalFile);
+            //journal module index -> our module index
+            final Map<Integer, Integer> indexMap = new HashMap<Integer, Integer>();
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            final byte[] buf = new byte[READ_BUF_SIZE];
+            long offset = 0;
+            int read;
+            int badLines = 0;
+            while ((read = in.read(buf)) != -1) {
+                int lineStart = 0;
+                for (int i = 0; i < read; ++i) {
+                    if (buf[i] != '\n') {
+                        continue;
+                    }
+                    line.write(buf, lineStart, i - lineStart);
+                    if (!loadRecord(line.toString("UTF-8"), indexMap)) {
+                        ++badLines;
+                    }
+                    line.reset();
+                    lineStart = i + 1;
+                    validLength = offset + lineStart;
+                }
+                line.write(buf, lineStart, read - lineStart);
+                offset += read;
+            }
+            if (line.size() > 0) {
+                logger.log(Level.INFO, "Dropping incomplete last record of ingest journal: " + journalFile.getAbsolutePath());
+            }
+            if (badLines > 0) {
+                logger.log(Level.WARNING, "Skipped " + badLines + " invalid records in ingest journal: " + journalFile.getAbsolutePath());
+            }
+            logger.log(Level.INFO, "Loaded ingest journal with " + numRecords + " completed records: " + journalFile.getAbsolutePath());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error reading ingest journal, ingest will not be resumed", e);
+            moduleIndexes.clear();
+            completed.clear();
+            numRecords = 0;
+            validLength = 0;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Error closing ingest journal", e);
+                }
+            }
+        }
+        return validLength;
+    }
+
+    /**
+     * Loads a complete record of the journal
+     *
+     * @param line the record, without the line separator
+     * @param indexMap journal module index -> our module index, updated by
+     * module records
+     * @return false if the record is invalid
+     */
+    private boolean loadRecord(String line, Map<Integer, Integer> indexMap) {
+        final String[] fields = line.split(String.valueOf(SEPARATOR), 3);
+        try {
+            if (fields.length == 3 && fields[0].equals(MODULE_RECORD)) {
+                Integer moduleIndex = moduleIndexes.get(fields[2]);
+                if (moduleIndex == null) {
+                    moduleIndex = addModule(fields[2]);
+                }
+                indexMap.put(Integer.parseInt(fields[1]), moduleIndex);
+            } else if (fields.length == 3 && fields[0].equals(FILE_RECORD)) {
+                final int objId = Integer.parseInt(fields[1]);
+                for (String index : fields[2].split(",")) {
+                    final Integer moduleIndex = indexMap.get(Integer.parseInt(index));
+                    if (moduleIndex != null) {
+                        completed.get(moduleIndex).set(objId);
+                    }
+                }
+                ++numRecords;
+            } else {
+                return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private static void truncateJournal(File journalFile, long length) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+        try {
+            file.setLength(length);
+        } finally {
+            file.close();
+        }
+    }
+}
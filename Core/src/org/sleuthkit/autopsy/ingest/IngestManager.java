@@ -18,21 +18,35 @@
  */
 package org.sleuthkit.autopsy.ingest;
 
+import java.awt.EventQueue;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
@@ -42,7 +56,8 @@ import javax.swing.SwingWorker;
 import org.netbeans.api.progress.ProgressHandle;
 import org.netbeans.api.progress.ProgressHandleFactory;
 import org.openide.util.Cancellable;
-import org.sleuthkit.autopsy.coreutils.StopWatch;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.coreutils.ModuleSettings;
 import org.sleuthkit.autopsy.ingest.IngestMessage.MessageType;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.FsContent;
@@ -60,29 +75,73 @@ import org.sleuthkit.datamodel.TskData;
 public class IngestManager {
 
     private static final Logger logger = Logger.getLogger(IngestManager.class.getName());
-    private IngestManagerStats stats;
+    private volatile IngestManagerStats stats;
     private boolean processUnallocSpace = true;
+    private int numFileIngestThreads;
+    //schedules image and file module work on the worker budget
+    private volatile IngestScheduler scheduler;
     //queues
     private final ImageQueue imageQueue = new ImageQueue();   // list of modules and images to analyze
     private final AbstractFileQueue abstractFileQueue = new AbstractFileQueue();
     private final Object queuesLock = new Object();
+    //max files held in the file queue, enqueue blocks when full
+    private final static int MAX_QUEUED_FILES = 100000;
+    //max files held in the file queue while resources are low
+    private final static int MAX_QUEUED_FILES_LOW_RESOURCES = 10000;
+    //current max files held in the file queue, guarded by queuesLock
+    private int maxQueuedFiles = MAX_QUEUED_FILES;
+    //number of files paged at once out of the database when enqueueing
+    private final static int FILE_ENQUEUE_BATCH_SIZE = 10000;
+    //number of enqueue workers still streaming files into the queue, guarded by queuesLock
+    private int fileEnqueuersRunning = 0;
+    //set when the file ingest is cancelled, files are not enqueued anymore, guarded by queuesLock
+    private boolean fileEnqueueCancelled = false;
     //workers
     private IngestAbstractFileThread abstractFileIngester;
     private List<IngestImageThread> imageIngesters;
+    //runs the image workers, which block while waiting for a worker slot, outside of the shared SwingWorker pool
+    private final ExecutorService imageIngesterExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "IngestImageThread");
+            t.setDaemon(true);
+            return t;
+        }
+    });
     private SwingWorker<Object, Void> queueWorker;
     //modules
     private List<IngestModuleImage> imageModules;
     private List<IngestModuleAbstractFile> abstractFileModules;
-    // module return values
-    private final Map<String, IngestModuleAbstractFile.ProcessResult> abstractFileModulesRetValues = new HashMap<String, IngestModuleAbstractFile.ProcessResult>();
+    // module return values for the file currently processed by the file ingest worker thread
+    private final ThreadLocal<Map<String, IngestModuleAbstractFile.ProcessResult>> abstractFileModulesRetValues = new ThreadLocal<Map<String, IngestModuleAbstractFile.ProcessResult>>() {
+        @Override
+        protected Map<String, IngestModuleAbstractFile.ProcessResult> initialValue() {
+            return new HashMap<String, IngestModuleAbstractFile.ProcessResult>();
+        }
+    };
     //notifications
     private final static PropertyChangeSupport pcs = new PropertyChangeSupport(IngestManager.class);
+    //merges module data events and limits the rate they are dispatched at, created on first use
+    private static ModuleDataEventAggregator dataEventAggregator;
     //monitor
     private final IngestMonitor ingestMonitor = new IngestMonitor();
+    //checkpoint journal of the current case, to resume interrupted ingest
+    private volatile IngestJournal journal;
+    //file modules still finishing the files of the ingest after process() returned, guarded by this
+    private final Set<IngestModuleAbstractFile> deferredModulesRunning = new HashSet<IngestModuleAbstractFile>();
     //module loader
     private IngestModuleLoader moduleLoader = null;
     //property file name id for the module
     final static String MODULE_PROPERTIES = "ingest";
+    //setting name for number of file ingest worker threads
+    private final static String NUM_FILE_INGEST_THREADS = "numFileIngestThreads";
+    private final static int MAX_FILE_INGEST_THREADS = 16;
+    //setting names for the worker budget shared by image and file modules and the cap of readers per image
+    private final static String INGEST_WORKER_BUDGET = "ingestWorkerBudget";
+    private final static String MAX_READERS_PER_IMAGE = "maxReadersPerImage";
+    //setting name for max. number of times per second module data events are dispatched to listeners
+    private final static String MAX_DATA_EVENTS_PER_SEC = "maxDataEventsPerSec";
+    private final static int DEFAULT_MAX_DATA_EVENTS_PER_SEC = 2;
 
     /**
      * Possible events about ingest modules Event listeners can get the event
@@ -133,6 +192,49 @@ public class IngestManager {
         //setup current modules and listeners for modules changes
         initModules();
 
+        loadNumFileIngestThreads();
+        loadScheduler();
+    }
+
+    /**
+     * Loads number of file ingest worker threads from the settings, defaults
+     * to number of available processors
+     */
+    private void loadNumFileIngestThreads() {
+        numFileIngestThreads = Runtime.getRuntime().availableProcessors();
+        final String numThreadsStr = ModuleSettings.getConfigSetting(MODULE_PROPERTIES, NUM_FILE_INGEST_THREADS);
+        if (numThreadsStr != null) {
+            try {
+                numFileIngestThreads = Integer.parseInt(numThreadsStr);
+            } catch (NumberFormatException e) {
+                logger.log(Level.WARNING, "Invalid setting for number of file ingest threads: " + numThreadsStr);
+            }
+        }
+        numFileIngestThreads = Math.max(1, Math.min(numFileIngestThreads, MAX_FILE_INGEST_THREADS));
+    }
+
+    /**
+     * Creates the scheduler of module work from the worker budget settings.
+     * Budget defaults to number of available processors (+ 1 slot for an image
+     * module), readers per image are not capped by default.
+     */
+    private void loadScheduler() {
+        final int workerBudget = loadIntSetting(INGEST_WORKER_BUDGET, Runtime.getRuntime().availableProcessors() + 1);
+        final int maxReaders = loadIntSetting(MAX_READERS_PER_IMAGE, workerBudget);
+        scheduler = new IngestScheduler(workerBudget, maxReaders);
+        logger.log(Level.INFO, "Ingest scheduler: " + scheduler.toString());
+    }
+
+    private static int loadIntSetting(String name, int defaultValue) {
+        final String valueStr = ModuleSettings.getConfigSetting(MODULE_PROPERTIES, name);
+        if (valueStr != null) {
+            try {
+                return Integer.parseInt(valueStr);
+            } catch (NumberFormatException e) {
+                logger.log(Level.WARNING, "Invalid ingest setting " + name + ": " + valueStr);
+            }
+        }
+        return defaultValue;
     }
 
     private void initModules() {
@@ -189,14 +291,43 @@ public class IngestManager {
         pcs.addPropertyChangeListener(l);
     }
 
-    static synchronized void fireModuleEvent(String eventType, String moduleName) {
-        pcs.firePropertyChange(eventType, moduleName, null);
+    static void fireModuleEvent(String eventType, String moduleName) {
+        //deliver data of the module posted so far before the module event
+        getDataEventAggregator().flush();
+        synchronized (IngestManager.class) {
+            pcs.firePropertyChange(eventType, moduleName, null);
+        }
     }
 
-    static synchronized void fireModuleDataEvent(ModuleDataEvent moduleDataEvent) {
+    /**
+     * Posts module data event to listeners. Events are merged per artifact type
+     * and dispatched at a limited rate, see ModuleDataEventAggregator
+     *
+     * @param moduleDataEvent event to post
+     */
+    static void fireModuleDataEvent(ModuleDataEvent moduleDataEvent) {
+        getDataEventAggregator().post(moduleDataEvent);
+    }
+
+    /**
+     * Fires the (merged) module data event to listeners, called by the
+     * aggregator
+     *
+     * @param moduleDataEvent event to fire
+     */
+    static synchronized void dispatchModuleDataEvent(ModuleDataEvent moduleDataEvent) {
         pcs.firePropertyChange(IngestModuleEvent.DATA.toString(), moduleDataEvent, null);
     }
 
+    private static synchronized ModuleDataEventAggregator getDataEventAggregator() {
+        if (dataEventAggregator == null) {
+            final int maxEventsPerSec = loadIntSetting(MAX_DATA_EVENTS_PER_SEC, DEFAULT_MAX_DATA_EVENTS_PER_SEC);
+            dataEventAggregator = new ModuleDataEventAggregator(maxEventsPerSec);
+            logger.log(Level.INFO, "Module data events dispatched at most " + maxEventsPerSec + " times per second");
+        }
+        return dataEventAggregator;
+    }
+
     /**
      * Returns the return value from a previously run module on the file being
      * currently analyzed.
@@ -205,12 +336,12 @@ public class IngestManager {
      * @returns Return value from that module if it was previously run.
      */
     IngestModuleAbstractFile.ProcessResult getAbstractFileModuleResult(String moduleName) {
-        synchronized (abstractFileModulesRetValues) {
-            if (abstractFileModulesRetValues.containsKey(moduleName)) {
-                return abstractFileModulesRetValues.get(moduleName);
-            } else {
-                return IngestModuleAbstractFile.ProcessResult.UNKNOWN;
-            }
+        //results are tracked per file ingest worker thread, for the file it currently processes
+        final Map<String, IngestModuleAbstractFile.ProcessResult> retValues = abstractFileModulesRetValues.get();
+        if (retValues.containsKey(moduleName)) {
+            return retValues.get(moduleName);
+        } else {
+            return IngestModuleAbstractFile.ProcessResult.UNKNOWN;
         }
     }
 
@@ -228,6 +359,13 @@ public class IngestManager {
             ui.clearMessages();
         }
 
+        openJournal();
+
+        synchronized (queuesLock) {
+            //a new ingest enqueues files again, even if the last file ingest was cancelled
+            fileEnqueueCancelled = false;
+        }
+        ingestMonitor.resetWaits();
         queueWorker = new EnqueueWorker(modules, images);
         queueWorker.execute();
 
@@ -267,6 +405,7 @@ public class IngestManager {
     private synchronized void startAll() {
         logger.log(Level.INFO, "Image queue: " + this.imageQueue.toString());
         logger.log(Level.INFO, "File queue: " + this.abstractFileQueue.toString());
+        logger.log(Level.INFO, "Scheduler: " + scheduler.toString());
 
         if (!ingestMonitor.isRunning()) {
             ingestMonitor.start();
@@ -308,7 +447,9 @@ public class IngestManager {
                     IngestModuleInit moduleInit = new IngestModuleInit();
                     moduleInit.setModuleArgs(quModule.getArguments());
                     quModule.init(moduleInit);
-                    newImageWorker.execute();
+                    //not execute(), the wait for a worker slot would hold a thread of the shared SwingWorker pool
+                    //that the file ingest and the enqueuer also need
+                    imageIngesterExecutor.execute(newImageWorker);
                     IngestManager.fireModuleEvent(IngestModuleEvent.STARTED.toString(), quModule.getName());
                 }
             }
@@ -336,7 +477,11 @@ public class IngestManager {
             stats = new IngestManagerStats();
             abstractFileIngester = new IngestAbstractFileThread();
             //init all fs modules, everytime new worker starts
+            deferredModulesRunning.clear();
             for (IngestModuleAbstractFile s : abstractFileModules) {
+                if (s instanceof DeferredCompletionIngestModule) {
+                    deferredModulesRunning.add(s);
+                }
                 IngestModuleInit moduleInit = new IngestModuleInit();
                 moduleInit.setModuleArgs(s.getArguments());
                 s.init(moduleInit);
@@ -405,9 +550,115 @@ public class IngestManager {
 
         }
 
+        //persist what has been completed, to resume next time ingest is started
+        closeJournal();
+
+        stopMonitor();
+
         logger.log(Level.INFO, "stopped all");
     }
 
+    /**
+     * Opens the checkpoint journal of the current case, if not already open.
+     * Records left from an ingest that did not complete are used to skip the
+     * work already done.
+     */
+    private synchronized void openJournal() {
+        final String caseDirectory = Case.getCurrentCase().getCaseDirectory();
+        if (journal != null) {
+            if (journal.getCaseDirectory().equals(new File(caseDirectory).getPath())) {
+                return;
+            }
+            journal.close();
+            journal = null;
+        }
+        try {
+            journal = IngestJournal.open(caseDirectory);
+            if (!journal.isEmpty()) {
+                logger.log(Level.INFO, "Resuming unfinished ingest, work completed earlier will be skipped");
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not open ingest journal in case directory: " + caseDirectory
+                    + ", interrupted ingest will not be resumable", e);
+        }
+    }
+
+    private synchronized void closeJournal() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Records that image module completed processing of the image, called by
+     * the image ingest worker after the module completed
+     *
+     * @param image image processed
+     * @param module module that completed the image
+     */
+    void imageModuleCompleted(Image image, IngestModuleImage module) {
+        final IngestJournal curJournal = journal;
+        if (curJournal != null) {
+            curJournal.completed(image.getId(), Collections.singletonList(module));
+        }
+        checkIngestCompleted();
+    }
+
+    /**
+     * Records that a file module completed processing of the files, called by
+     * modules that finish files after process() returned
+     *
+     * @param module module that completed the files
+     * @param fileIds ids of the files completed
+     */
+    void fileModuleCompleted(IngestModuleAbstractFile module, Collection<Long> fileIds) {
+        final IngestJournal curJournal = journal;
+        if (curJournal != null) {
+            curJournal.completed(fileIds, module);
+        }
+    }
+
+    /**
+     * Called by a module that finishes files after process() returned, once
+     * it finished the files of the ingest
+     *
+     * @param module module done
+     */
+    synchronized void fileModuleDeferredWorkDone(IngestModuleAbstractFile module) {
+        if (deferredModulesRunning.remove(module)) {
+            checkIngestCompleted();
+        }
+    }
+
+    /**
+     * Stops the resource monitor and clears the checkpoint journal if all the
+     * enqueued ingest completed, so that the next ingest runs all the modules
+     * again
+     */
+    private synchronized void checkIngestCompleted() {
+        if (isIngestRunning() || hasNextAbstractFile() || hasNextImage() || !deferredModulesRunning.isEmpty()) {
+            return;
+        }
+        //nothing left to apply back-pressure to
+        stopMonitor();
+        if (journal == null) {
+            return;
+        }
+        logger.log(Level.INFO, "Ingest completed, clearing ingest journal");
+        journal.clear();
+    }
+
+    /**
+     * Stops sampling the resources until ingest is started again, lifts the
+     * low resources limits
+     */
+    private synchronized void stopMonitor() {
+        if (ingestMonitor.stop()) {
+            resourceStateChanged(IngestMonitor.ResourceState.OK);
+        }
+    }
+
     /**
      * Test if any ingester modules are running
      *
@@ -556,6 +807,51 @@ public class IngestManager {
         this.processUnallocSpace = processUnallocSpace;
     }
 
+    /**
+     * returns number of worker threads used to run file ingest modules
+     *
+     * @return number of file ingest worker threads
+     */
+    int getNumFileIngestThreads() {
+        return numFileIngestThreads;
+    }
+
+    /**
+     * Sets number of worker threads used to run file ingest modules and saves
+     * the setting. Takes effect next time file ingest is started.
+     *
+     * @param numFileIngestThreads number of file ingest worker threads
+     */
+    void setNumFileIngestThreads(int numFileIngestThreads) {
+        this.numFileIngestThreads = Math.max(1, Math.min(numFileIngestThreads, MAX_FILE_INGEST_THREADS));
+        ModuleSettings.setConfigSetting(MODULE_PROPERTIES, NUM_FILE_INGEST_THREADS, Integer.toString(this.numFileIngestThreads));
+    }
+
+    /**
+     * returns the scheduler the modules need to get slots from to run
+     *
+     * @return current ingest scheduler
+     */
+    IngestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Sets the budget of worker slots shared by image and file modules and
+     * the max. number of modules reading the same image at once, and saves
+     * the settings. Modules already running keep their slots of the previous
+     * scheduler.
+     *
+     * @param workerBudget max. number of modules running at once
+     * @param maxReadersPerImage max. number of modules reading the same image
+     * at once
+     */
+    void setWorkerBudget(int workerBudget, int maxReadersPerImage) {
+        scheduler = new IngestScheduler(workerBudget, maxReadersPerImage);
+        ModuleSettings.setConfigSetting(MODULE_PROPERTIES, INGEST_WORKER_BUDGET, Integer.toString(scheduler.getWorkerBudget()));
+        ModuleSettings.setConfigSetting(MODULE_PROPERTIES, MAX_READERS_PER_IMAGE, Integer.toString(scheduler.getMaxReadersPerImage()));
+    }
+
     /**
      * returns ingest summary report (how many files ingested, any errors, etc)
      */
@@ -563,6 +859,21 @@ public class IngestManager {
         return stats.toString();
     }
 
+    /**
+     * Get live timing and throughput statistics of the file ingest modules for
+     * the current (or last) file ingest
+     *
+     * @return statistics of every file module, empty if file ingest has not
+     * been started
+     */
+    List<IngestModuleStats> getFileModuleStats() {
+        final IngestManagerStats curStats = stats;
+        if (curStats == null) {
+            return Collections.<IngestModuleStats>emptyList();
+        }
+        return curStats.getFileModuleStatsList();
+    }
+
     /**
      * Module publishes message using InegestManager handle Does not block. The
      * message gets enqueued in the GUI thread and displayed in a widget
@@ -612,16 +923,75 @@ public class IngestManager {
     }
 
     /**
-     * Queue up an image to be processed by a given File module.
+     * Queue up files to be processed by given File modules. The queue is
+     * bounded, the call blocks until the file ingest workers make space for
+     * all the files.
      *
-     * @param module module for which to enqueue the files
+     * @param image image the files belong to
+     * @param modules modules for which to enqueue the files
      * @param abstractFiles files to enqueue
+     * @return false if the files were not all enqueued because the file
+     * ingest was cancelled
+     * @throws InterruptedException if interrupted while waiting for space in
+     * the queue
      */
-    private void addAbstractFile(IngestModuleAbstractFile module, Collection<AbstractFile> abstractFiles) {
+    private boolean addAbstractFiles(Image image, List<IngestModuleAbstractFile> modules, Collection<AbstractFile> abstractFiles) throws InterruptedException {
         synchronized (queuesLock) {
             for (AbstractFile abstractFile : abstractFiles) {
-                abstractFileQueue.enqueue(abstractFile, module);
+                while (abstractFileQueue.getCount() >= maxQueuedFiles && !fileEnqueueCancelled) {
+                    //wake up the workers and wait for them to consume
+                    queuesLock.notifyAll();
+                    queuesLock.wait();
+                }
+                if (fileEnqueueCancelled) {
+                    //no workers left to consume the files
+                    return false;
+                }
+                abstractFileQueue.enqueue(image, abstractFile, modules);
             }
+            queuesLock.notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Stops enqueueing files after the file ingest was cancelled, and wakes up
+     * the enqueuer waiting for space in the queue and the file workers and
+     * indexing paused by the monitor. Image modules are still enqueued.
+     */
+    private void cancelFileEnqueue() {
+        synchronized (queuesLock) {
+            fileEnqueueCancelled = true;
+            abstractFileQueue.empty();
+            queuesLock.notifyAll();
+        }
+        ingestMonitor.cancelWaits();
+    }
+
+    private boolean isFileEnqueueCancelled() {
+        synchronized (queuesLock) {
+            return fileEnqueueCancelled;
+        }
+    }
+
+    /**
+     * Marks start of files streaming into the queue, file ingest workers will
+     * wait for more files until fileEnqueueEnded() is called
+     */
+    private void fileEnqueueStarted() {
+        synchronized (queuesLock) {
+            ++fileEnqueuersRunning;
+        }
+    }
+
+    /**
+     * Marks end of files streaming into the queue and wakes up file ingest
+     * workers waiting for more files
+     */
+    private void fileEnqueueEnded() {
+        synchronized (queuesLock) {
+            --fileEnqueuersRunning;
+            queuesLock.notifyAll();
         }
     }
 
@@ -629,11 +999,28 @@ public class IngestManager {
      * get next file/dir and associated list of modules to process the queue of
      * AbstractFile to process is maintained internally and could be dynamically
      * sorted as data comes in
+     *
+     * Safe to call from multiple file ingest workers. If the queue is empty
+     * but files are still being enqueued, blocks until more files arrive.
+     *
+     * @return next file and its modules, or null if the queue has been
+     * consumed and no more files are being enqueued
+     * @throws InterruptedException if interrupted while waiting for files
      */
-    private Map.Entry<AbstractFile, List<IngestModuleAbstractFile>> getNextAbstractFile() {
-        Map.Entry<AbstractFile, List<IngestModuleAbstractFile>> ret = null;
+    private AbstractFileUnit getNextAbstractFile() throws InterruptedException {
+        AbstractFileUnit ret = null;
         synchronized (queuesLock) {
-            ret = abstractFileQueue.dequeue();
+            while (!abstractFileQueue.hasNext() && fileEnqueuersRunning > 0) {
+                queuesLock.wait();
+            }
+            if (abstractFileQueue.hasNext()) {
+                final boolean wasFull = abstractFileQueue.getCount() >= maxQueuedFiles;
+                ret = abstractFileQueue.dequeue();
+                if (wasFull) {
+                    //wake up the enqueuer waiting for space
+                    queuesLock.notifyAll();
+                }
+            }
         }
         return ret;
     }
@@ -646,6 +1033,46 @@ public class IngestManager {
         return ret;
     }
 
+    /**
+     * Called by the monitor when state of the resources changed, lowers the
+     * max. number of queued files while resources are low
+     *
+     * @param resourceState new state of the resources
+     */
+    void resourceStateChanged(IngestMonitor.ResourceState resourceState) {
+        synchronized (queuesLock) {
+            maxQueuedFiles = resourceState == IngestMonitor.ResourceState.OK ? MAX_QUEUED_FILES : MAX_QUEUED_FILES_LOW_RESOURCES;
+            //wake up the enqueuer, in case the limit was raised
+            queuesLock.notifyAll();
+        }
+    }
+
+    /**
+     * Blocks while ingest is paused by the monitor due to low resources
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void waitForResources() throws InterruptedException {
+        ingestMonitor.waitWhilePaused();
+    }
+
+    /**
+     * Adds or replaces a directory the monitor checks free disk space of
+     *
+     * @param name name to refer to the directory by
+     * @param dir directory to monitor, null to stop monitoring
+     */
+    void setMonitoredDirectory(String name, File dir) {
+        ingestMonitor.setMonitoredDirectory(name, dir);
+    }
+
+    /**
+     * @return number of files in the file queue
+     */
+    int getNumQueuedFiles() {
+        return getNumAbstractFiles();
+    }
+
     private int getNumAbstractFiles() {
         int ret = 0;
         synchronized (queuesLock) {
@@ -657,6 +1084,7 @@ public class IngestManager {
     private void emptyAbstractFiles() {
         synchronized (queuesLock) {
             abstractFileQueue.empty();
+            queuesLock.notifyAll();
         }
     }
 
@@ -766,58 +1194,94 @@ public class IngestManager {
         }
     }
 
+    /**
+     * AbstractFile enqueued with the image it belongs to and the modules to
+     * process it with
+     */
+    private static class AbstractFileUnit {
+
+        private final Image image;
+        private final AbstractFile abstractFile;
+        private final List<IngestModuleAbstractFile> modules = new ArrayList<IngestModuleAbstractFile>();
+
+        AbstractFileUnit(Image image, AbstractFile abstractFile) {
+            this.image = image;
+            this.abstractFile = abstractFile;
+        }
+
+        Image getImage() {
+            return image;
+        }
+
+        AbstractFile getAbstractFile() {
+            return abstractFile;
+        }
+
+        List<IngestModuleAbstractFile> getModules() {
+            return modules;
+        }
+    }
+
     /**
      * manages queue of pending AbstractFile and list of associated
-     * IngestModuleAbstractFile to use on that content sorted based on
+     * IngestModuleAbstractFile to use on that content, ordered based on
      * AbstractFilePriotity
+     *
+     * The priority of a file is determined once, when the file is enqueued, and
+     * the file is added to the deque of its priority bucket, so that enqueue
+     * and dequeue do not need to compare files. Files already in the queue are
+     * looked up by object id, and per module counters track how much work is
+     * enqueued for every module.
      */
     private class AbstractFileQueue {
 
-        final Comparator<AbstractFile> sorter = new Comparator<AbstractFile>() {
-            @Override
-            public int compare(AbstractFile q1, AbstractFile q2) {
-                AbstractFilePriotity.Priority p1 = AbstractFilePriotity.getPriority(q1);
-                AbstractFilePriotity.Priority p2 = AbstractFilePriotity.getPriority(q2);
-                if (p1 == p2) {
-                    return (int) (q2.getId() - q1.getId());
-                } else {
-                    return p2.ordinal() - p1.ordinal();
-                }
-
-            }
-        };
-        final TreeMap<AbstractFile, List<IngestModuleAbstractFile>> AbstractFileUnits = new TreeMap<AbstractFile, List<IngestModuleAbstractFile>>(sorter);
-
-        void enqueue(AbstractFile AbstractFile, IngestModuleAbstractFile module) {
-            //AbstractFileUnits.put(AbstractFile, Collections.singletonList(module));
-            List<IngestModuleAbstractFile> modules = AbstractFileUnits.get(AbstractFile);
-            if (modules == null) {
-                modules = new ArrayList<IngestModuleAbstractFile>();
-                AbstractFileUnits.put(AbstractFile, modules);
+        //priority buckets, in order of processing
+        private final Map<AbstractFilePriotity.Priority, Deque<AbstractFileUnit>> buckets =
+                new EnumMap<AbstractFilePriotity.Priority, Deque<AbstractFileUnit>>(AbstractFilePriotity.Priority.class);
+        private final AbstractFilePriotity.Priority[] dequeueOrder = {
+            AbstractFilePriotity.Priority.HIGH, AbstractFilePriotity.Priority.MEDIUM, AbstractFilePriotity.Priority.LOW};
+        //enqueued files by object id
+        private final Map<Long, AbstractFileUnit> abstractFileUnits = new HashMap<Long, AbstractFileUnit>();
+        //number of enqueued files per module
+        private final Map<IngestModuleAbstractFile, Integer> moduleCounts = new HashMap<IngestModuleAbstractFile, Integer>();
+
+        AbstractFileQueue() {
+            for (AbstractFilePriotity.Priority priority : dequeueOrder) {
+                buckets.put(priority, new ArrayDeque<AbstractFileUnit>());
             }
-            modules.add(module);
         }
 
-        void enqueue(AbstractFile AbstractFile, List<IngestModuleAbstractFile> modules) {
-
-            List<IngestModuleAbstractFile> oldModules = AbstractFileUnits.get(AbstractFile);
-            if (oldModules == null) {
-                oldModules = new ArrayList<IngestModuleAbstractFile>();
-                AbstractFileUnits.put(AbstractFile, oldModules);
+        void enqueue(Image image, AbstractFile abstractFile, List<IngestModuleAbstractFile> modules) {
+            AbstractFileUnit unit = abstractFileUnits.get(abstractFile.getId());
+            if (unit == null) {
+                unit = new AbstractFileUnit(image, abstractFile);
+                abstractFileUnits.put(abstractFile.getId(), unit);
+                //priority computed only once per enqueued file
+                buckets.get(AbstractFilePriotity.getPriority(abstractFile)).addLast(unit);
+            }
+            final List<IngestModuleAbstractFile> oldModules = unit.getModules();
+            for (IngestModuleAbstractFile module : modules) {
+                if (!oldModules.contains(module)) {
+                    oldModules.add(module);
+                    incrementModuleCount(module, 1);
+                }
             }
-            oldModules.addAll(modules);
         }
 
         boolean hasNext() {
-            return !AbstractFileUnits.isEmpty();
+            return !abstractFileUnits.isEmpty();
         }
 
         int getCount() {
-            return AbstractFileUnits.size();
+            return abstractFileUnits.size();
         }
 
         void empty() {
-            AbstractFileUnits.clear();
+            abstractFileUnits.clear();
+            moduleCounts.clear();
+            for (Deque<AbstractFileUnit> bucket : buckets.values()) {
+                bucket.clear();
+            }
         }
 
         /**
@@ -825,13 +1289,23 @@ public class IngestManager {
          *
          * @return
          */
-        Map.Entry<AbstractFile, List<IngestModuleAbstractFile>> dequeue() {
+        AbstractFileUnit dequeue() {
             if (!hasNext()) {
                 throw new UnsupportedOperationException("AbstractFile processing queue is empty");
             }
 
-            //logger.log(Level.INFO, "DEQUE: " + remove.content.getParentPath() + " SIZE: " + toString());
-            return (AbstractFileUnits.pollFirstEntry());
+            for (AbstractFilePriotity.Priority priority : dequeueOrder) {
+                final AbstractFileUnit unit = buckets.get(priority).pollFirst();
+                if (unit != null) {
+                    abstractFileUnits.remove(unit.getAbstractFile().getId());
+                    for (IngestModuleAbstractFile module : unit.getModules()) {
+                        incrementModuleCount(module, -1);
+                    }
+                    //logger.log(Level.INFO, "DEQUE: " + remove.content.getParentPath() + " SIZE: " + toString());
+                    return unit;
+                }
+            }
+            throw new IllegalStateException("AbstractFile processing queue buckets are out of sync");
         }
 
         /**
@@ -841,25 +1315,29 @@ public class IngestManager {
          * @return true if the module is enqueued to do work
          */
         boolean hasModuleEnqueued(IngestModuleAbstractFile module) {
-            for (List<IngestModuleAbstractFile> list : AbstractFileUnits.values()) {
-                if (list.contains(module)) {
-                    return true;
-                }
+            return moduleCounts.containsKey(module);
+        }
+
+        private void incrementModuleCount(IngestModuleAbstractFile module, int delta) {
+            final Integer count = moduleCounts.get(module);
+            final int newCount = (count == null ? 0 : count) + delta;
+            if (newCount > 0) {
+                moduleCounts.put(module, newCount);
+            } else {
+                moduleCounts.remove(module);
             }
-            return false;
         }
 
         @Override
         public synchronized String toString() {
-            return "AbstractFileQueue, size: " + Integer.toString(AbstractFileUnits.size());
+            return "AbstractFileQueue, size: " + Integer.toString(abstractFileUnits.size());
         }
 
         public String printQueue() {
             StringBuilder sb = new StringBuilder();
-            /*for (QueueUnit<AbstractFile, IngestModuleAbstractFile> u : AbstractFileUnits) {
-             sb.append(u.toString());
-             sb.append("\n");
-             }*/
+            for (AbstractFilePriotity.Priority priority : dequeueOrder) {
+                sb.append(priority.name()).append(": ").append(buckets.get(priority).size()).append("\n");
+            }
             return sb.toString();
         }
     }
@@ -940,54 +1418,51 @@ public class IngestManager {
         private int errorsTotal;
         private Map<IngestModuleAbstract, Integer> errors;
         private final DateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        private final StopWatch timer = new StopWatch();
-        private IngestModuleAbstract currentModuleForTimer;
         //file module timing stats, image module timers are logged in IngestImageThread class
-        private final Map<String, Long> fileModuleTimers = new HashMap<String, Long>();
+        //created upfront for all file modules and only read afterwards, the stats objects are thread-safe
+        private final Map<String, IngestModuleStats> fileModuleStats = new LinkedHashMap<String, IngestModuleStats>();
 
         IngestManagerStats() {
             errors = new HashMap<IngestModuleAbstract, Integer>();
 
+            for (IngestModuleAbstractFile module : abstractFileModules) {
+                fileModuleStats.put(module.getName(), new IngestModuleStats(module.getName()));
+            }
         }
 
         /**
-         * records start time of the file process for the module must be
-         * followed by logFileModuleEndProcess for the same module
+         * records a file processed by a module, called by the file ingest
+         * workers which time the process() calls themselves
          *
-         * @param module to record start time for processing a file
+         * @param module module that processed a file
+         * @param file the file processed
+         * @param elapsedNs time in ns the module spent in process()
          */
-        void logFileModuleStartProcess(IngestModuleAbstract module) {
-            timer.reset();
-            timer.start();
-            currentModuleForTimer = module;
+        void logFileModuleProcess(IngestModuleAbstract module, AbstractFile file, long elapsedNs) {
+            final IngestModuleStats moduleStats = fileModuleStats.get(module.getName());
+            if (moduleStats != null) {
+                moduleStats.fileProcessed(file, elapsedNs);
+            }
         }
 
         /**
-         * records stop time of the file process for the module must be preceded
-         * by logFileModuleStartProcess for the same module
+         * get live statistics of file modules
          *
-         * @param module to record stop time for processing a file
+         * @return stats of every file module, in the pipeline order
          */
-        void logFileModuleEndProcess(IngestModuleAbstract module) {
-            timer.stop();
-            if (module != currentModuleForTimer) {
-                logger.log(Level.WARNING, "Invalid module passed in to record stop processing: " + module.getName()
-                        + ", expected: " + currentModuleForTimer.getName());
-            } else {
-                final long elapsed = timer.getElapsedTime();
-                final long current = fileModuleTimers.get(module.getName());
-                fileModuleTimers.put(module.getName(), elapsed + current);
-            }
-
-            currentModuleForTimer = null;
+        List<IngestModuleStats> getFileModuleStatsList() {
+            return new ArrayList<IngestModuleStats>(fileModuleStats.values());
         }
 
         String getFileModuleStats() {
             StringBuilder sb = new StringBuilder();
-            for (final String moduleName : fileModuleTimers.keySet()) {
-                sb.append(moduleName).append(" took: ")
-                        .append(fileModuleTimers.get(moduleName) / 1000)
-                        .append(" secs. to process()").append('\n');
+            for (final IngestModuleStats moduleStats : fileModuleStats.values()) {
+                sb.append(moduleStats.toString()).append('\n');
+                for (IngestModuleStats.FileProcessTime slowFile : moduleStats.getSlowestFiles()) {
+                    sb.append("\tslow file: ").append(slowFile.getFileName())
+                            .append(" (id: ").append(slowFile.getFileId()).append(") took: ")
+                            .append(slowFile.getProcessTime()).append(" ms").append('\n');
+                }
             }
             return sb.toString();
         }
@@ -1036,10 +1511,6 @@ public class IngestManager {
 
         void start() {
             startTime = new Date();
-
-            for (IngestModuleAbstractFile module : abstractFileModules) {
-                fileModuleTimers.put(module.getName(), 0L);
-            }
         }
 
         void end() {
@@ -1081,16 +1552,27 @@ public class IngestManager {
             } else {
                 errors.put(source, curModuleErrorI + 1);
             }
+            if (source != null) {
+                final IngestModuleStats moduleStats = fileModuleStats.get(source.getName());
+                if (moduleStats != null) {
+                    moduleStats.addError();
+                }
+            }
         }
     }
 
 //ingester worker for AbstractFile queue
 //worker runs until AbstractFile queue is consumed
 //and if needed, new instance is created and started when data arrives
+//the queue is consumed in parallel by a pool of FileIngestWorker threads
     private class IngestAbstractFileThread extends SwingWorker<Object, Void> {
 
         private Logger logger = Logger.getLogger(IngestAbstractFileThread.class.getName());
         private ProgressHandle progress;
+        private int numAbstractFiles;
+        private int processedFiles;
+        //journal to record completed files in
+        private final IngestJournal fileJournal = journal;
 
         @Override
         protected Object doInBackground() throws Exception {
@@ -1117,58 +1599,65 @@ public class IngestManager {
 
             progress.start();
             progress.switchToIndeterminate();
-            int numAbstractFiles = getNumAbstractFiles();
+            numAbstractFiles = getNumAbstractFiles();
             progress.switchToDeterminate(numAbstractFiles);
-            int processedFiles = 0;
-            //process AbstractFiles queue
-            while (hasNextAbstractFile()) {
-                Map.Entry<AbstractFile, List<IngestModuleAbstractFile>> unit = getNextAbstractFile();
-                //clear return values from modules for last file
-                synchronized (abstractFileModulesRetValues) {
-                    abstractFileModulesRetValues.clear();
-                }
-
-                final AbstractFile fileToProcess = unit.getKey();
-
-                progress.progress(fileToProcess.getName(), processedFiles);
-
-                for (IngestModuleAbstractFile module : unit.getValue()) {
-                    //process the file with every file module
-                    if (isCancelled()) {
-                        logger.log(Level.INFO, "Terminating file ingest due to cancellation.");
-                        return null;
-                    }
-
-
-                    try {
-                        stats.logFileModuleStartProcess(module);
-                        IngestModuleAbstractFile.ProcessResult result = module.process(fileToProcess);
-                        stats.logFileModuleEndProcess(module);
+            processedFiles = 0;
 
-                        //store the result for subsequent modules for this file
-                        synchronized (abstractFileModulesRetValues) {
-                            abstractFileModulesRetValues.put(module.getName(), result);
-                        }
+            //modules not declared thread-safe get a lock to serialize their process() calls
+            final Map<IngestModuleAbstractFile, Object> moduleLocks = new HashMap<IngestModuleAbstractFile, Object>();
+            for (IngestModuleAbstractFile module : abstractFileModules) {
+                if (!(module instanceof ThreadSafeIngestModule)) {
+                    moduleLocks.put(module, new Object());
+                }
+            }
 
-                    } catch (Exception e) {
-                        logger.log(Level.WARNING, "Exception from module: " + module.getName(), e);
-                        stats.addError(module);
-                    }
+            //process AbstractFiles queue
+            final int numWorkers = getNumFileIngestThreads();
+            logger.log(Level.INFO, "Starting " + numWorkers + " file ingest workers");
+            final ExecutorService workersPool = Executors.newFixedThreadPool(numWorkers);
+            final List<Future<?>> workers = new ArrayList<Future<?>>();
+            try {
+                for (int i = 0; i < numWorkers; ++i) {
+                    workers.add(workersPool.submit(new FileIngestWorker(moduleLocks)));
                 }
-                int newAbstractFiles = getNumAbstractFiles();
-                if (newAbstractFiles > numAbstractFiles) {
-                    //update progress bar if new enqueued
-                    numAbstractFiles = newAbstractFiles + processedFiles + 1;
-                    progress.switchToIndeterminate();
-                    progress.switchToDeterminate(numAbstractFiles);
+                workersPool.shutdown();
+                //wait for all workers to consume the queue
+                for (Future<?> worker : workers) {
+                    worker.get();
                 }
-                ++processedFiles;
-                --numAbstractFiles;
-            } //end of this AbstractFile
+            } finally {
+                //interrupt the workers if cancelled or failed
+                workersPool.shutdownNow();
+            }
+
             logger.log(Level.INFO, "Done background processing");
             return null;
         }
 
+        /**
+         * Updates progress when a worker starts processing next file
+         *
+         * @param fileToProcess file the worker is about to process
+         */
+        private synchronized void fileStarted(AbstractFile fileToProcess) {
+            progress.progress(fileToProcess.getName(), processedFiles);
+        }
+
+        /**
+         * Updates progress when a worker is done processing a file
+         */
+        private synchronized void fileDone() {
+            int newAbstractFiles = getNumAbstractFiles();
+            if (newAbstractFiles > numAbstractFiles) {
+                //update progress bar if new enqueued
+                numAbstractFiles = newAbstractFiles + processedFiles + 1;
+                progress.switchToIndeterminate();
+                progress.switchToDeterminate(numAbstractFiles);
+            }
+            ++processedFiles;
+            --numAbstractFiles;
+        }
+
         @Override
         protected void done() {
             try {
@@ -1179,6 +1668,7 @@ public class IngestManager {
                         s.complete();
                         IngestManager.fireModuleEvent(IngestModuleEvent.COMPLETED.toString(), s.getName());
                     }
+                    checkIngestCompleted();
                 }
 
             } catch (CancellationException e) {
@@ -1197,6 +1687,8 @@ public class IngestManager {
             } finally {
                 stats.end();
                 progress.finish();
+                //persist the file types detected during this ingest
+                FileTypeDetector.getDefault().flush();
 
                 if (!this.isCancelled()) {
                     logger.log(Level.INFO, "Summary Report: " + stats.toString());
@@ -1222,8 +1714,138 @@ public class IngestManager {
                 }
                 IngestManager.fireModuleEvent(IngestModuleEvent.STOPPED.toString(), s.getName());
             }
-            //empty queues
-            emptyAbstractFiles();
+            //empty queues, and stop the enqueuer from filling them again with no workers left
+            cancelFileEnqueue();
+        }
+
+        /**
+         * Worker that takes next file from the AbstractFile queue and runs it
+         * through its modules, in the pipeline order, until the queue is
+         * consumed. Multiple workers run in parallel on different files.
+         */
+        private class FileIngestWorker implements Runnable {
+
+            private final Map<IngestModuleAbstractFile, Object> moduleLocks;
+
+            FileIngestWorker(Map<IngestModuleAbstractFile, Object> moduleLocks) {
+                this.moduleLocks = moduleLocks;
+            }
+
+            @Override
+            public void run() {
+                //return values from modules for the file processed by this worker
+                final Map<String, IngestModuleAbstractFile.ProcessResult> retValues = abstractFileModulesRetValues.get();
+                //modules that completed the file, for the journal
+                final List<IngestModuleAbstractFile> completedModules = new ArrayList<IngestModuleAbstractFile>();
+
+                AbstractFileUnit unit;
+                while ((unit = nextFile()) != null) {
+                    //clear return values from modules for last file
+                    retValues.clear();
+                    completedModules.clear();
+
+                    //wait for enough resources, a worker slot and a reader slot of the image
+                    final IngestScheduler fileScheduler = scheduler;
+                    try {
+                        ingestMonitor.beginFileWork();
+                    } catch (InterruptedException e) {
+                        logger.log(Level.INFO, "File ingest worker interrupted while waiting for resources.");
+                        return;
+                    }
+                    try {
+                        try {
+                            fileScheduler.acquireFileSlot(unit.getImage());
+                        } catch (InterruptedException e) {
+                            logger.log(Level.INFO, "File ingest worker interrupted while waiting for a worker slot.");
+                            return;
+                        }
+                        try {
+                            if (!processModules(unit, retValues, completedModules)) {
+                                logger.log(Level.INFO, "Terminating file ingest worker due to cancellation.");
+                                return;
+                            }
+                        } finally {
+                            fileScheduler.releaseFileSlot(unit.getImage());
+                        }
+                    } finally {
+                        ingestMonitor.endFileWork();
+                    }
+                } //end of this AbstractFile
+                retValues.clear();
+            }
+
+            /**
+             * Runs the file through its modules, in the pipeline order
+             *
+             * @return false if cancelled before all modules processed the file
+             */
+            private boolean processModules(AbstractFileUnit unit, Map<String, IngestModuleAbstractFile.ProcessResult> retValues,
+                    List<IngestModuleAbstractFile> completedModules) {
+                final AbstractFile fileToProcess = unit.getAbstractFile();
+
+                fileStarted(fileToProcess);
+
+                for (IngestModuleAbstractFile module : unit.getModules()) {
+                    //process the file with every file module
+                    if (isCancelled() || Thread.currentThread().isInterrupted()) {
+                        return false;
+                    }
+
+                    try {
+                        final IngestModuleAbstractFile.ProcessResult result;
+                        final Object moduleLock = moduleLocks.get(module);
+                        if (moduleLock != null) {
+                            synchronized (moduleLock) {
+                                result = processFile(module, fileToProcess);
+                            }
+                        } else {
+                            result = processFile(module, fileToProcess);
+                        }
+
+                        //store the result for subsequent modules for this file
+                        retValues.put(module.getName(), result);
+                        //modules finishing files later report them to the journal themselves,
+                        //files a module failed on are processed again when ingest is resumed
+                        if (result != IngestModuleAbstractFile.ProcessResult.ERROR
+                                && !(module instanceof DeferredCompletionIngestModule)) {
+                            completedModules.add(module);
+                        }
+
+                    } catch (Exception e) {
+                        logger.log(Level.WARNING, "Exception from module: " + module.getName(), e);
+                        stats.addError(module);
+                    }
+                }
+                if (fileJournal != null && !isCancelled()) {
+                    fileJournal.completed(fileToProcess.getId(), completedModules);
+                }
+                fileDone();
+                return true;
+            }
+
+            /**
+             * Gets next file for the worker to process, waits for more files if
+             * they are still being enqueued
+             *
+             * @return next file and its modules, or null if done or interrupted
+             */
+            private AbstractFileUnit nextFile() {
+                try {
+                    return getNextAbstractFile();
+                } catch (InterruptedException e) {
+                    logger.log(Level.INFO, "File ingest worker interrupted while waiting for files.");
+                    return null;
+                }
+            }
+
+            private IngestModuleAbstractFile.ProcessResult processFile(IngestModuleAbstractFile module, AbstractFile fileToProcess) {
+                final long start = System.nanoTime();
+                try {
+                    return module.process(fileToProcess);
+                } finally {
+                    stats.logFileModuleProcess(module, fileToProcess, System.nanoTime() - start);
+                }
+            }
         }
     }
 
@@ -1233,10 +1855,13 @@ public class IngestManager {
         List<IngestModuleAbstract> modules;
         final List<Image> images;
         int total;
+        //journal of unfinished ingest to skip completed work, if any
+        private final IngestJournal enqueueJournal;
 
         EnqueueWorker(final List<IngestModuleAbstract> modules, final List<Image> images) {
             this.modules = modules;
             this.images = images;
+            this.enqueueJournal = (journal != null && !journal.isEmpty()) ? journal : null;
         }
         private ProgressHandle progress;
 
@@ -1258,7 +1883,13 @@ public class IngestManager {
             total = modules.size() * images.size();
             progress.start(total);
             //progress.switchToIndeterminate();
-            queueAll(modules, images);
+            //file ingest workers wait for more files while we are streaming them
+            fileEnqueueStarted();
+            try {
+                queueAll(modules, images);
+            } finally {
+                fileEnqueueEnded();
+            }
             return null;
         }
 
@@ -1287,16 +1918,31 @@ public class IngestManager {
                 } else {
                     //start ingest workers
                     startAll();
+                    //in case everything was completed earlier and nothing got started
+                    checkIngestCompleted();
                 }
                 progress.finish();
             }
         }
 
-        private void queueAll(List<IngestModuleAbstract> modules, final List<Image> images) {
+        /**
+         * Enqueues image modules and streams files of every image to the file
+         * queue. Files are paged out of the database in batches and the file
+         * ingest is started as soon as the first batch is enqueued, while the
+         * rest of the files are still being read.
+         */
+        private void queueAll(List<IngestModuleAbstract> modules, final List<Image> images) throws InterruptedException {
+            //all file modules are enqueued together, per file
+            final List<IngestModuleAbstractFile> fileModules = new ArrayList<IngestModuleAbstractFile>();
+            for (IngestModuleAbstract module : modules) {
+                if (module.getType() == IngestModuleAbstract.ModuleType.AbstractFile) {
+                    fileModules.add((IngestModuleAbstractFile) module);
+                }
+            }
+
             int processed = 0;
             for (Image image : images) {
                 final String imageName = image.getName();
-                Collection<AbstractFile> files = null;
                 for (IngestModuleAbstract module : modules) {
                     if (isCancelled()) {
                         logger.log(Level.INFO, "Terminating ingest queueing due to cancellation.");
@@ -1306,6 +1952,10 @@ public class IngestManager {
                     progress.progress(moduleName + " " + imageName, processed);
                     switch (module.getType()) {
                         case Image:
+                            if (enqueueJournal != null && enqueueJournal.isCompleted(image.getId(), module)) {
+                                logger.log(Level.INFO, "Skipping image " + imageName + " with module " + moduleName + ", completed in unfinished ingest");
+                                break;
+                            }
                             final IngestModuleImage newModuleInstance =
                                     (IngestModuleImage) moduleLoader.getNewIngestModuleInstance(module);
                             if (newModuleInstance != null) {
@@ -1319,28 +1969,60 @@ public class IngestManager {
                             }
                             break;
                         case AbstractFile:
-                            if (files == null) {
-                                long start = System.currentTimeMillis();
-                                files = new GetAllFilesContentVisitor(processUnallocSpace).visit(image);
-                                logger.info("Get all files took " + (System.currentTimeMillis() - start) + "ms");
-                            }
-                            //enqueue the same singleton AbstractFile module
-                            logger.log(Level.INFO, "Adding image " + image.getName() + " with " + files.size() + " number of AbstractFile to module " + module.getName());
-                            addAbstractFile((IngestModuleAbstractFile) module, files);
+                            //enqueued below, for all file modules at once
                             break;
                         default:
                             logger.log(Level.SEVERE, "Unexpected module type: " + module.getType().name());
                     }
                     progress.progress(moduleName + " " + imageName, ++processed);
                 }
-                if (files != null) {
-                    files.clear();
+
+                if (!fileModules.isEmpty() && !isFileEnqueueCancelled()) {
+                    long start = System.currentTimeMillis();
+                    final FilesEnqueuer enqueuer = new FilesEnqueuer(fileModules, image);
+                    final GetAllFilesContentVisitor filesVisitor = new GetAllFilesContentVisitor(processUnallocSpace, FILE_ENQUEUE_BATCH_SIZE, enqueuer);
+                    Collection<AbstractFile> otherFiles = image.accept(filesVisitor);
+                    if (filesVisitor.getError() != null) {
+                        //the files read so far are still ingested
+                        logger.log(Level.SEVERE, "Could not read all files of image " + imageName + ", enqueued " + enqueuer.getNumFiles() + " files", filesVisitor.getError());
+                        postMessage(IngestMessage.createManagerErrorMessage("Not all files of image " + imageName + " queued for ingest",
+                                "Reading the files from the case database failed after " + enqueuer.getNumFiles() + " files, the rest of the file system is not ingested: "
+                                + filesVisitor.getError().getMessage()));
+                    }
+                    //files outside of file systems are not paged
+                    enqueuer.filesFound(otherFiles);
+                    if (enqueuer.isInterrupted()) {
+                        throw new InterruptedException("Interrupted while enqueueing files of image " + imageName);
+                    }
+                    if (isFileEnqueueCancelled()) {
+                        logger.log(Level.INFO, "File ingest cancelled, stopped enqueueing files of image " + imageName);
+                        //start the image modules enqueued
+                        startAllLater();
+                    }
+                    logger.log(Level.INFO, "Added image " + imageName + " with " + enqueuer.getNumFiles() + " number of AbstractFile to modules: " + fileModules.size()
+                            + ", skipped " + enqueuer.getNumSkippedFiles() + " files completed in unfinished ingest"
+                            + ", took " + (System.currentTimeMillis() - start) + "ms");
+                } else {
+                    startAllLater();
                 }
             }
 
             //logger.log(Level.INFO, AbstractFileQueue.printQueue());
+        }
 
-            progress.progress("Sorting files", processed);
+        /**
+         * Starts the workers for what has been enqueued so far, in the AWT
+         * thread
+         */
+        private void startAllLater() {
+            EventQueue.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isCancelled()) {
+                        startAll();
+                    }
+                }
+            });
         }
 
         private void handleInterruption(Exception ex) {
@@ -1349,5 +2031,111 @@ public class IngestManager {
             emptyAbstractFiles();
             emptyImages();
         }
+
+        /**
+         * Receives batches of files of an image read from the database, adds
+         * them to the bounded file queue and starts the ingest after the first
+         * batch.
+         */
+        private class FilesEnqueuer implements GetAllFilesContentVisitor.FileBatchListener {
+
+            private final List<IngestModuleAbstractFile> fileModules;
+            private final Image image;
+            private final String imageName;
+            private int numFiles = 0;
+            private int numSkippedFiles = 0;
+            private boolean interrupted = false;
+
+            FilesEnqueuer(List<IngestModuleAbstractFile> fileModules, Image image) {
+                this.fileModules = fileModules;
+                this.image = image;
+                this.imageName = image.getName();
+            }
+
+            @Override
+            public boolean filesFound(Collection<AbstractFile> files) {
+                if (isCancelled() || interrupted) {
+                    return false;
+                }
+                if (files.isEmpty()) {
+                    return true;
+                }
+                final boolean firstBatch = numFiles == 0;
+                try {
+                    if (enqueueJournal == null) {
+                        if (!addAbstractFiles(image, fileModules, files)) {
+                            return false;
+                        }
+                        numFiles += files.size();
+                    } else if (!addRemainingFiles(files)) {
+                        return false;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    return false;
+                }
+                if (numFiles == 0) {
+                    //all completed earlier
+                    return true;
+                }
+                progress.progress("Queued " + numFiles + " files of " + imageName);
+                if (firstBatch) {
+                    //let the ingest run while the rest is being read
+                    startAllLater();
+                }
+                return true;
+            }
+
+            /**
+             * Enqueues the files with the modules that have not completed them
+             * in the unfinished ingest, files completed by all the modules are
+             * skipped
+             *
+             * @return false if the file ingest was cancelled
+             */
+            private boolean addRemainingFiles(Collection<AbstractFile> files) throws InterruptedException {
+                final List<AbstractFile> allModulesFiles = new ArrayList<AbstractFile>();
+                for (AbstractFile file : files) {
+                    List<IngestModuleAbstractFile> remainingModules = null;
+                    for (int i = 0; i < fileModules.size(); ++i) {
+                        final IngestModuleAbstractFile module = fileModules.get(i);
+                        if (enqueueJournal.isCompleted(file.getId(), module)) {
+                            if (remainingModules == null) {
+                                remainingModules = new ArrayList<IngestModuleAbstractFile>(fileModules.subList(0, i));
+                            }
+                        } else if (remainingModules != null) {
+                            remainingModules.add(module);
+                        }
+                    }
+                    if (remainingModules == null) {
+                        allModulesFiles.add(file);
+                    } else if (remainingModules.isEmpty()) {
+                        ++numSkippedFiles;
+                    } else {
+                        if (!addAbstractFiles(image, remainingModules, Collections.singletonList(file))) {
+                            return false;
+                        }
+                        ++numFiles;
+                    }
+                }
+                if (!addAbstractFiles(image, fileModules, allModulesFiles)) {
+                    return false;
+                }
+                numFiles += allModulesFiles.size();
+                return true;
+            }
+
+            int getNumFiles() {
+                return numFiles;
+            }
+
+            int getNumSkippedFiles() {
+                return numSkippedFiles;
+            }
+
+            boolean isInterrupted() {
+                return interrupted;
+            }
+        }
     }
 }
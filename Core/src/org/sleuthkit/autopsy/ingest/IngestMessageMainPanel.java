@@ -28,13 +28,14 @@ import javax.swing.BoxLayout;
 import javax.swing.JLayeredPane;
 
 /**
- * the main layered pane container for messages table (IngestMessagePanel)
- * and details view (IngestMessageDetailsPanel)
+ * the main layered pane container for messages table (IngestMessagePanel),
+ * details view (IngestMessageDetailsPanel) and module stats (IngestModuleStatsPanel)
  */
 public class IngestMessageMainPanel extends JLayeredPane {
 
     private IngestMessagePanel messagePanel;
     private IngestMessageDetailsPanel detailsPanel;
+    private IngestModuleStatsPanel moduleStatsPanel;
     private Logger logger = Logger.getLogger(IngestMessageMainPanel.class.getName());
     //private JLayeredPane layeredPane;
 
@@ -47,6 +48,7 @@ public class IngestMessageMainPanel extends JLayeredPane {
     private void customizeComponents() {
         messagePanel = new IngestMessagePanel(this);
         detailsPanel = new IngestMessageDetailsPanel(this);
+        moduleStatsPanel = new IngestModuleStatsPanel(this);
 
         //we need to handle resizing ourselves due to absence of layout manager
         //in layered layout
@@ -76,8 +78,10 @@ public class IngestMessageMainPanel extends JLayeredPane {
 
         messagePanel.setOpaque(true);
         detailsPanel.setOpaque(true);
+        moduleStatsPanel.setOpaque(true);
         add(messagePanel, JLayeredPane.PALETTE_LAYER);
         add(detailsPanel, JLayeredPane.DEFAULT_LAYER);
+        add(moduleStatsPanel, JLayeredPane.DEFAULT_LAYER);
         this.setOpaque(true);
     }
 
@@ -85,8 +89,10 @@ public class IngestMessageMainPanel extends JLayeredPane {
         Dimension dim = getSize();
         messagePanel.setPreferredSize(dim);
         detailsPanel.setPreferredSize(dim);
+        moduleStatsPanel.setPreferredSize(dim);
         messagePanel.setBounds(0, 0, dim.width, dim.height);
         detailsPanel.setBounds(0, 0, dim.width, dim.height);
+        moduleStatsPanel.setBounds(0, 0, dim.width, dim.height);
         revalidate();
     }
 
@@ -99,18 +105,32 @@ public class IngestMessageMainPanel extends JLayeredPane {
     }
 
     void showMessages() {
+        moduleStatsPanel.stopRefresh();
         setLayer(detailsPanel, JLayeredPane.DEFAULT_LAYER);
+        setLayer(moduleStatsPanel, JLayeredPane.DEFAULT_LAYER);
         setLayer(messagePanel, JLayeredPane.PALETTE_LAYER);
     }
 
     void showDetails(int rowNumber) {
         detailsPanel.showDetails(rowNumber);
 
+        moduleStatsPanel.stopRefresh();
         setLayer(detailsPanel, JLayeredPane.PALETTE_LAYER);
+        setLayer(moduleStatsPanel, JLayeredPane.DEFAULT_LAYER);
         setLayer(messagePanel, JLayeredPane.DEFAULT_LAYER);
 
     }
 
+    /**
+     * Shows live statistics of the file ingest modules in place of the messages
+     */
+    void showModuleStats() {
+        setLayer(moduleStatsPanel, JLayeredPane.PALETTE_LAYER);
+        setLayer(detailsPanel, JLayeredPane.DEFAULT_LAYER);
+        setLayer(messagePanel, JLayeredPane.DEFAULT_LAYER);
+        moduleStatsPanel.startRefresh();
+    }
+
     public void addMessage(IngestMessage ingestMessage) {
         messagePanel.addMessage(ingestMessage);
     }
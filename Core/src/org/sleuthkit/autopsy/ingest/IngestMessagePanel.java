@@ -24,12 +24,22 @@ import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -41,8 +51,10 @@ import javax.swing.event.ListSelectionListener;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.TableColumn;
+import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.ingest.IngestMessage.*;
 import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.TskException;
 
 /**
  * Notification window showing messages from modules to user
@@ -58,6 +70,8 @@ class IngestMessagePanel extends javax.swing.JPanel {
     private static Color ERROR_COLOR = new Color(255, 90, 90);
     private boolean resized = false;
     private volatile int lastRowSelected = -1;
+    //selected message group, rows move as groups are regrouped or moved to the message store
+    private IngestMessageGroup selectedGroup;
     private volatile long totalMessages = 0;
 
     private enum COLUMN {
@@ -80,11 +94,7 @@ class IngestMessagePanel extends javax.swing.JPanel {
     }
 
     synchronized IngestMessageGroup getSelectedMessage() {
-        if (lastRowSelected < 0) {
-            return null;
-        }
-
-        return tableModel.getMessageGroup(lastRowSelected);
+        return selectedGroup;
     }
 
     synchronized IngestMessageGroup getMessageGroup(int rowNumber) {
@@ -113,6 +123,8 @@ class IngestMessagePanel extends javax.swing.JPanel {
         totalMessagesNameVal = new javax.swing.JLabel();
         totalUniqueMessagesNameLabel = new javax.swing.JLabel();
         totalUniqueMessagesNameVal = new javax.swing.JLabel();
+        moduleStatsButton = new javax.swing.JButton();
+        olderMessagesButton = new javax.swing.JButton();
 
         setOpaque(false);
 
@@ -152,6 +164,23 @@ class IngestMessagePanel extends javax.swing.JPanel {
 
         totalUniqueMessagesNameVal.setText(org.openide.util.NbBundle.getMessage(IngestMessagePanel.class, "IngestMessagePanel.totalUniqueMessagesNameVal.text")); // NOI18N
 
+        moduleStatsButton.setText(org.openide.util.NbBundle.getMessage(IngestMessagePanel.class, "IngestMessagePanel.moduleStatsButton.text")); // NOI18N
+        moduleStatsButton.setToolTipText(org.openide.util.NbBundle.getMessage(IngestMessagePanel.class, "IngestMessagePanel.moduleStatsButton.toolTipText")); // NOI18N
+        moduleStatsButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                moduleStatsButtonActionPerformed(evt);
+            }
+        });
+
+        olderMessagesButton.setText(org.openide.util.NbBundle.getMessage(IngestMessagePanel.class, "IngestMessagePanel.olderMessagesButton.text")); // NOI18N
+        olderMessagesButton.setToolTipText(org.openide.util.NbBundle.getMessage(IngestMessagePanel.class, "IngestMessagePanel.olderMessagesButton.toolTipText")); // NOI18N
+        olderMessagesButton.setEnabled(false);
+        olderMessagesButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                olderMessagesButtonActionPerformed(evt);
+            }
+        });
+
         javax.swing.GroupLayout controlPanelLayout = new javax.swing.GroupLayout(controlPanel);
         controlPanel.setLayout(controlPanelLayout);
         controlPanelLayout.setHorizontalGroup(
@@ -161,7 +190,11 @@ class IngestMessagePanel extends javax.swing.JPanel {
                 .addComponent(sortByLabel)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                 .addComponent(sortByComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
-                .addGap(101, 101, 101)
+                .addGap(18, 18, 18)
+                .addComponent(moduleStatsButton)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(olderMessagesButton)
+                .addGap(40, 40, 40)
                 .addComponent(totalMessagesNameLabel)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(totalMessagesNameVal, javax.swing.GroupLayout.DEFAULT_SIZE, 9, Short.MAX_VALUE)
@@ -179,7 +212,9 @@ class IngestMessagePanel extends javax.swing.JPanel {
                 .addComponent(totalUniqueMessagesNameLabel)
                 .addComponent(totalUniqueMessagesNameVal)
                 .addComponent(totalMessagesNameLabel)
-                .addComponent(totalMessagesNameVal))
+                .addComponent(totalMessagesNameVal)
+                .addComponent(moduleStatsButton)
+                .addComponent(olderMessagesButton))
         );
 
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
@@ -207,10 +242,23 @@ class IngestMessagePanel extends javax.swing.JPanel {
             }
         }
     }//GEN-LAST:event_sortByComboBoxActionPerformed
+
+    private void moduleStatsButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_moduleStatsButtonActionPerformed
+        mainPanel.showModuleStats();
+    }//GEN-LAST:event_moduleStatsButtonActionPerformed
+
+    private void olderMessagesButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_olderMessagesButtonActionPerformed
+        synchronized (this) {
+            tableModel.loadArchivedGroups(MessageTableModel.ARCHIVED_GROUPS_PAGE_SIZE);
+            olderMessagesButton.setEnabled(tableModel.getNumberArchivedGroups() > 0);
+        }
+    }//GEN-LAST:event_olderMessagesButtonActionPerformed
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JPanel controlPanel;
     private javax.swing.JScrollPane jScrollPane1;
     private javax.swing.JTable messageTable;
+    private javax.swing.JButton moduleStatsButton;
+    private javax.swing.JButton olderMessagesButton;
     private javax.swing.JComboBox sortByComboBox;
     private javax.swing.JLabel sortByLabel;
     private javax.swing.JLabel totalMessagesNameLabel;
@@ -244,6 +292,21 @@ class IngestMessagePanel extends javax.swing.JPanel {
         messageTable.setRowSelectionAllowed(true);
         messageTable.getSelectionModel().addListSelectionListener(new MessageVisitedSelection());
 
+        //the archived groups loaded back are kept while the user browses them, until scrolled back to the bottom
+        jScrollPane1.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+            @Override
+            public void adjustmentValueChanged(AdjustmentEvent e) {
+                if (e.getValueIsAdjusting()) {
+                    return;
+                }
+                final javax.swing.JScrollBar scrollBar = jScrollPane1.getVerticalScrollBar();
+                if (scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum()) {
+                    synchronized (IngestMessagePanel.this) {
+                        tableModel.releaseLoadedGroups();
+                    }
+                }
+            }
+        });
     }
 
     @Override
@@ -289,6 +352,7 @@ class IngestMessagePanel extends javax.swing.JPanel {
         this.totalMessagesNameVal.setText(Long.toString(totalMessages));
         final int totalMessagesUnique = tableModel.getNumberGroups();
         this.totalUniqueMessagesNameVal.setText(Integer.toString(totalMessagesUnique));
+        olderMessagesButton.setEnabled(tableModel.getNumberArchivedGroups() > 0);
         //this.unreadLabelVal.setText(Integer.toString(newMsgUnreadUnique));
 
         //autoscroll
@@ -299,6 +363,10 @@ class IngestMessagePanel extends javax.swing.JPanel {
         final int origMsgGroups = tableModel.getNumberUnreadGroups();
         totalMessages = 0;
         tableModel.clearMessages();
+        lastRowSelected = -1;
+        selectedGroup = null;
+        renderer.setSelected(null);
+        olderMessagesButton.setEnabled(false);
         totalMessagesNameVal.setText("-");
         totalUniqueMessagesNameVal.setText("-");
         messagePcs.firePropertyChange(TOOL_TIP_TEXT_KEY, origMsgGroups, 0);
@@ -311,7 +379,8 @@ class IngestMessagePanel extends javax.swing.JPanel {
     private synchronized void setVisited(int rowNumber) {
         final int origMsgGroups = tableModel.getNumberUnreadGroups();
         tableModel.setVisited(rowNumber);
-        renderer.setSelected(rowNumber);
+        selectedGroup = tableModel.getMessageGroup(rowNumber);
+        renderer.setSelected(selectedGroup);
         lastRowSelected = rowNumber;
         messagePcs.firePropertyChange(TOOL_TIP_TEXT_KEY, origMsgGroups, tableModel.getNumberUnreadGroups());
     }
@@ -320,10 +389,31 @@ class IngestMessagePanel extends javax.swing.JPanel {
         //data
 
         private List<TableEntry> messageData = new ArrayList<TableEntry>();
-        //for keeping track of messages to group, per module, by uniqness
+        //hash index of message groups, per module, by uniqness
         private Map<IngestModuleAbstract, Map<String, List<IngestMessageGroup>>> groupings = new HashMap<IngestModuleAbstract, Map<String, List<IngestMessageGroup>>>();
         private boolean chronoSort = true; //chronological sort default
         private static final int MESSAGE_GROUP_THRESH = 3; //group messages after 3 messages per module with same uniqness
+        //max. number of message details kept in memory, older details are spilled to the message store
+        private static final int MAX_DETAILS_IN_MEMORY = 2000;
+        //message details in memory, oldest first
+        private final LinkedList<MessageDetails> detailsInMemory = new LinkedList<MessageDetails>();
+        //max. number of message groups (table rows) kept in memory, the oldest groups are moved to the message store
+        private static final int MAX_GROUPS_IN_MEMORY = 1000;
+        //number of archived groups loaded back into the table at a time
+        static final int ARCHIVED_GROUPS_PAGE_SIZE = 100;
+        private static final long NO_ARCHIVED_GROUP = -1;
+        //archived groups are chained in the message store, newest first,
+        //each record starts with the offset of the previously archived group
+        private long lastArchivedGroup = NO_ARCHIVED_GROUP;
+        private int numArchivedGroups = 0;
+        //number of archived groups loaded back into the table, kept in addition to MAX_GROUPS_IN_MEMORY until released
+        private int numLoadedGroups = 0;
+        private boolean archiveGroups = true;
+        //incremented by setVisitedAll(), archived groups from before it are visited
+        private int visitedAllCount = 0;
+        private IngestMessageStore store;
+        private int numMessages = 0;
+        private int numUnreadGroups = 0;
         private Logger logger = Logger.getLogger(MessageTableModel.class.getName());
 
         MessageTableModel() {
@@ -348,19 +438,23 @@ class IngestMessagePanel extends javax.swing.JPanel {
 
         @Override
         synchronized public int getRowCount() {
-            return getNumberGroups();
+            return messageData.size();
         }
 
+        /**
+         * @return number of groups, including the groups archived in the
+         * message store
+         */
         synchronized int getNumberGroups() {
-            return messageData.size();
+            return messageData.size() + numArchivedGroups;
+        }
+
+        synchronized int getNumberArchivedGroups() {
+            return numArchivedGroups;
         }
 
         synchronized int getNumberMessages() {
-            int total = 0;
-            for (TableEntry e : messageData) {
-                total += e.messageGroup.count;
-            }
-            return total;
+            return numMessages;
         }
 
         synchronized int getNumberUnreadMessages() {
@@ -374,13 +468,7 @@ class IngestMessagePanel extends javax.swing.JPanel {
         }
 
         synchronized int getNumberUnreadGroups() {
-            int total = 0;
-            for (TableEntry e : messageData) {
-                if (e.visited == false) {
-                    ++total;
-                }
-            }
-            return total;
+            return numUnreadGroups;
         }
 
         @Override
@@ -449,34 +537,28 @@ class IngestMessagePanel extends javax.swing.JPanel {
             return getValueAt(0, c).getClass();
         }
 
-        private synchronized int getTableEntryIndex(String uniqueKey) {
-            int ret = -1;
-            int i = 0;
-            for (TableEntry e : messageData) {
-                if (e.messageGroup.getUniqueKey().equals(uniqueKey)) {
-                    ret = i;
-                    break;
-                }
-                ++i;
-            }
-            return ret;
-        }
-
         synchronized public void addMessage(IngestMessage m) {
+            final MessageDetails details = storeDetails(m.getDetails());
+            ++numMessages;
+
             //check how many messages per module with the same uniqness
             //and add to existing group or create a new group
             IngestModuleAbstract module = m.getSource();
             IngestMessageGroup messageGroup = null;
             if (module != null && m.getMessageType() == IngestMessage.MessageType.DATA) {
                 //not a manager message, a data message, then group
-                final Map<String, List<IngestMessageGroup>> groups = groupings.get(module);
+                Map<String, List<IngestMessageGroup>> groups = groupings.get(module);
+                if (groups == null) {
+                    groups = new HashMap<String, List<IngestMessageGroup>>();
+                    groupings.put(module, groups);
+                }
                 //groups for this uniqueness
                 final String uniqueness = m.getUniqueKey();
                 List<IngestMessageGroup> uniqGroups = groups.get(uniqueness);
                 if (uniqGroups == null) {
                     //first one with this uniqueness
                     uniqGroups = new ArrayList<IngestMessageGroup>();
-                    messageGroup = new IngestMessageGroup(m);
+                    messageGroup = new IngestMessageGroup(m, details);
                     uniqGroups.add(messageGroup);
                     groups.put(uniqueness, uniqGroups);
                 } else {
@@ -488,48 +570,48 @@ class IngestMessagePanel extends javax.swing.JPanel {
                             messageGroup.addAll(uniqGroups.get(i));
                         }
                         //add the new msg
-                        messageGroup.add(m);
+                        messageGroup.add(m, details);
+
+                        //remove all rows with this uniquness, new merged row will be added to the bottom
+                        for (IngestMessageGroup group : uniqGroups) {
+                            removeRow(group);
+                        }
+
                         //remove merged groups
                         uniqGroups.clear();
 
                         //add the group with all messages merged
                         uniqGroups.add(messageGroup);
 
-                        //remove all rows with this uniquness, new merged row will be added to the bottom
-                        int toRemove = 0;
-                        while ((toRemove = getTableEntryIndex(uniqueness)) != -1) {
-                            messageData.remove(toRemove);
-                            //remove the row, will be added to the bottom
-                            this.fireTableRowsDeleted(toRemove, toRemove);
-                        }
-
                     } else if (uniqueGroupsCount == 1) {
                         IngestMessageGroup first = uniqGroups.get(0);
                         //one group with multiple messages
                         if (first.getCount() > 1) {
                             //had already been merged
-                            first.add(m);
+                            first.add(m, details);
                             messageGroup = first;
                             //move to bottom of table
-                            //remove from existing position
-                            int toRemove = 0;
-                            while ((toRemove = getTableEntryIndex(uniqueness)) != -1) {
-                                messageData.remove(toRemove);
-                                //remove the row, will be added to the bottom
-                                this.fireTableRowsDeleted(toRemove, toRemove);
+                            if (chronoSort && isLastRow(first.entry)) {
+                                //already at the bottom, update the row in place
+                                markUnvisited(first.entry);
+                                final int row = messageData.size() - 1;
+                                fireTableRowsUpdated(row, row);
+                                return;
                             }
+                            //remove from existing position
+                            removeRow(first);
 
                         } else {
                             //one group with one message
                             //create another group
-                            messageGroup = new IngestMessageGroup(m);
+                            messageGroup = new IngestMessageGroup(m, details);
                             uniqGroups.add(messageGroup);
 
                         }
                     } else {
                         //multiple groups with 1 msg each
                         //create another group, until need to merge
-                        messageGroup = new IngestMessageGroup(m);
+                        messageGroup = new IngestMessageGroup(m, details);
                         uniqGroups.add(messageGroup);
                         //add to bottom
                     }
@@ -537,14 +619,18 @@ class IngestMessagePanel extends javax.swing.JPanel {
 
             } else {
                 //manager or non-data message
-                messageGroup = new IngestMessageGroup(m);
+                messageGroup = new IngestMessageGroup(m, details);
             }
 
             //add new or updated row to the bottom
-            messageData.add(new TableEntry(messageGroup));
+            messageGroup.entry = new TableEntry(messageGroup);
+            messageData.add(messageGroup.entry);
+            ++numUnreadGroups;
             int newRowIndex = messageData.size() -1;
             fireTableRowsInserted(newRowIndex, newRowIndex);
 
+            archiveOldestGroups();
+
             //if priority sort, need to re-sort everything
             if (chronoSort == false) {
                 Collections.sort(messageData);
@@ -552,15 +638,246 @@ class IngestMessagePanel extends javax.swing.JPanel {
             }
         }
 
+        private boolean isLastRow(TableEntry entry) {
+            return entry != null && !messageData.isEmpty() && messageData.get(messageData.size() - 1) == entry;
+        }
+
+        private void markUnvisited(TableEntry entry) {
+            if (entry.visited) {
+                entry.visited = false;
+                ++numUnreadGroups;
+            }
+        }
+
+        /**
+         * Removes the table row of the message group, if it has one
+         */
+        private void removeRow(IngestMessageGroup group) {
+            final TableEntry entry = group.entry;
+            if (entry == null) {
+                return;
+            }
+            group.entry = null;
+            //most recently updated rows are at the bottom, search from there
+            final int toRemove = isLastRow(entry) ? messageData.size() - 1 : messageData.lastIndexOf(entry);
+            if (toRemove == -1) {
+                return;
+            }
+            messageData.remove(toRemove);
+            if (entry.visited == false) {
+                --numUnreadGroups;
+            }
+            if (entry.loaded) {
+                --numLoadedGroups;
+            }
+            //remove the row, will be added to the bottom
+            this.fireTableRowsDeleted(toRemove, toRemove);
+        }
+
+        /**
+         * Moves the oldest groups to the message store while there are more
+         * than MAX_GROUPS_IN_MEMORY rows, not counting the groups loaded back
+         * by loadArchivedGroups(), which are not archived again until
+         * released. Archived groups are no longer regrouped with new messages.
+         */
+        private void archiveOldestGroups() {
+            while (archiveGroups && messageData.size() - numLoadedGroups > MAX_GROUPS_IN_MEMORY) {
+                final IngestMessageStore messageStore = getStore();
+                if (messageStore == null) {
+                    return;
+                }
+                final int oldestRow = getOldestRow();
+                if (oldestRow == -1) {
+                    return;
+                }
+                final TableEntry oldest = messageData.get(oldestRow);
+                try {
+                    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    final DataOutputStream out = new DataOutputStream(bytes);
+                    out.writeLong(lastArchivedGroup);
+                    out.writeBoolean(oldest.visited);
+                    out.writeInt(visitedAllCount);
+                    oldest.messageGroup.write(out, messageStore);
+                    out.flush();
+                    lastArchivedGroup = messageStore.write(bytes.toByteArray());
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Error archiving inbox messages, keeping all messages in memory", e);
+                    archiveGroups = false;
+                    return;
+                }
+                ++numArchivedGroups;
+                messageData.remove(oldestRow);
+                oldest.messageGroup.entry = null;
+                removeGrouping(oldest.messageGroup);
+                fireTableRowsDeleted(oldestRow, oldestRow);
+            }
+        }
+
+        /**
+         * @return row of the group with the oldest last message, not counting
+         * the groups loaded back from the message store, or -1 if none
+         */
+        private int getOldestRow() {
+            int oldestRow = -1;
+            for (int row = 0; row < messageData.size(); ++row) {
+                final TableEntry entry = messageData.get(row);
+                if (entry.loaded) {
+                    continue;
+                }
+                if (chronoSort) {
+                    return row;
+                }
+                if (oldestRow == -1 || entry.messageGroup.getDatePosted().before(messageData.get(oldestRow).messageGroup.getDatePosted())) {
+                    oldestRow = row;
+                }
+            }
+            return oldestRow;
+        }
+
+        /**
+         * Removes the group from the index of groups new messages are added
+         * to, if it is there
+         */
+        private void removeGrouping(IngestMessageGroup group) {
+            final Map<String, List<IngestMessageGroup>> groups = groupings.get(group.getSource());
+            if (groups == null) {
+                return;
+            }
+            final List<IngestMessageGroup> uniqGroups = groups.get(group.getUniqueKey());
+            if (uniqGroups != null && uniqGroups.remove(group) && uniqGroups.isEmpty()) {
+                groups.remove(group.getUniqueKey());
+            }
+        }
+
+        /**
+         * Loads the most recently archived groups back from the message store
+         * to the top of the table. They are archived again first as new
+         * messages come in.
+         *
+         * @param maxGroups max. number of groups to load
+         * @return number of groups loaded
+         */
+        synchronized int loadArchivedGroups(int maxGroups) {
+            final List<TableEntry> loaded = new ArrayList<TableEntry>();
+            //sources of archived groups of any type, not only of the data groups still indexed
+            final Map<String, IngestModuleAbstract> modules = new HashMap<String, IngestModuleAbstract>();
+            final IngestManager manager = IngestManager.getDefault();
+            for (IngestModuleAbstract module : manager.enumerateImageModules()) {
+                modules.put(module.getName(), module);
+            }
+            for (IngestModuleAbstract module : manager.enumerateAbstractFileModules()) {
+                modules.put(module.getName(), module);
+            }
+            while (lastArchivedGroup != NO_ARCHIVED_GROUP && loaded.size() < maxGroups) {
+                try {
+                    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(store.readRecord(lastArchivedGroup)));
+                    final long previous = in.readLong();
+                    final boolean visited = in.readBoolean();
+                    final int archivedVisitedAllCount = in.readInt();
+                    final IngestMessageGroup group = IngestMessageGroup.read(in, store, modules);
+                    group.entry = new TableEntry(group);
+                    group.entry.loaded = true;
+                    //still counted as unread if not visited
+                    group.entry.visited = visited || archivedVisitedAllCount < visitedAllCount;
+                    loaded.add(group.entry);
+                    lastArchivedGroup = previous;
+                    --numArchivedGroups;
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Error loading archived inbox messages", e);
+                    break;
+                }
+            }
+            if (loaded.isEmpty()) {
+                return 0;
+            }
+            //oldest first
+            Collections.reverse(loaded);
+            messageData.addAll(0, loaded);
+            numLoadedGroups += loaded.size();
+            if (chronoSort == false) {
+                Collections.sort(messageData);
+            }
+            fireTableDataChanged();
+            return loaded.size();
+        }
+
+        /**
+         * Lets the groups loaded back from the message store be archived again,
+         * once the user is done browsing them
+         */
+        synchronized void releaseLoadedGroups() {
+            if (numLoadedGroups == 0) {
+                return;
+            }
+            for (TableEntry entry : messageData) {
+                entry.loaded = false;
+            }
+            numLoadedGroups = 0;
+            archiveOldestGroups();
+        }
+
+        /**
+         * Keeps the details of a new message in memory, spilling the oldest
+         * details in memory to the message store if over the limit
+         */
+        private MessageDetails storeDetails(String detailsStr) {
+            if (detailsStr == null || detailsStr.equals("")) {
+                return null;
+            }
+            final MessageDetails details = new MessageDetails(detailsStr);
+            detailsInMemory.add(details);
+            if (detailsInMemory.size() > MAX_DETAILS_IN_MEMORY) {
+                final IngestMessageStore messageStore = getStore();
+                if (messageStore != null) {
+                    detailsInMemory.removeFirst().spill(messageStore);
+                }
+            }
+            return details;
+        }
+
+        /**
+         * Gets the message store in the current case directory, opens it if
+         * needed
+         *
+         * @return the store, or null if it could not be opened, details are
+         * kept in memory then
+         */
+        private IngestMessageStore getStore() {
+            if (store != null) {
+                return store;
+            }
+            try {
+                store = IngestMessageStore.open(Case.getCurrentCase().getCaseDirectory());
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Could not open ingest message store, keeping all messages in memory", e);
+            }
+            return store;
+        }
+
         public synchronized void clearMessages() {
             messageData.clear();
             groupings.clear();
+            detailsInMemory.clear();
+            lastArchivedGroup = NO_ARCHIVED_GROUP;
+            numArchivedGroups = 0;
+            numLoadedGroups = 0;
+            archiveGroups = true;
+            numMessages = 0;
+            numUnreadGroups = 0;
+            if (store != null) {
+                store.delete();
+                store = null;
+            }
             init();
             fireTableDataChanged();
         }
 
         public synchronized void setVisited(int rowNumber) {
-            messageData.get(rowNumber).visited = true;
+            final TableEntry entry = messageData.get(rowNumber);
+            if (entry.visited == false) {
+                entry.visited = true;
+                --numUnreadGroups;
+            }
             //repaint the cell 
             fireTableCellUpdated(rowNumber, 2);
         }
@@ -574,6 +891,8 @@ class IngestMessagePanel extends javax.swing.JPanel {
                 }
                 ++row;
             }
+            ++visitedAllCount;
+            numUnreadGroups = 0;
         }
 
         public synchronized boolean isVisited(int rowNumber) {
@@ -602,6 +921,8 @@ class IngestMessagePanel extends javax.swing.JPanel {
 
             IngestMessageGroup messageGroup;
             boolean visited;
+            //loaded back from the message store, not archived again until released
+            boolean loaded;
 
             TableEntry(IngestMessageGroup messageGroup) {
                 this.messageGroup = messageGroup;
@@ -627,22 +948,63 @@ class IngestMessagePanel extends javax.swing.JPanel {
         static final Color HIGH_PRI_COLOR = new Color(180, 180, 211);
         static final Color MED_PRI_COLOR = new Color(199, 199, 222);
         static final Color LOW_PRI_COLOR = new Color(221, 221, 235);
-        private List<IngestMessage> messages;
+        //max. number of message details shown for a group, details are read lazily from the message store,
+        //details of later messages are only counted
+        static final int MAX_DETAILS_SHOWN = 200;
+        //no artifact in the first message
+        private static final long NO_ARTIFACT = -1;
+        //only the fields of the first message the row needs are kept,
+        //details of all messages are tracked by their (possibly spilled) details
+        private final String subject;
+        private final IngestModuleAbstract source;
+        private final IngestMessage.MessageType messageType;
+        private final String uniqueKey;
+        private final long artifactId;
+        private List<MessageDetails> details;
+        //number of messages with details, including the ones not kept
+        private int numDetails;
+        private Date lastDatePosted;
         private int count;
-
-        IngestMessageGroup(IngestMessage message) {
-            messages = new ArrayList<IngestMessage>();
-            messages.add(message);
+        //table row of the group, if shown
+        private MessageTableModel.TableEntry entry;
+
+        IngestMessageGroup(IngestMessage message, MessageDetails messageDetails) {
+            subject = message.getSubject();
+            source = message.getSource();
+            messageType = message.getMessageType();
+            uniqueKey = message.getUniqueKey();
+            final BlackboardArtifact artifact = message.getData();
+            artifactId = artifact != null ? artifact.getArtifactID() : NO_ARTIFACT;
+            details = new ArrayList<MessageDetails>();
+            addDetails(messageDetails);
+            lastDatePosted = message.getDatePosted();
             count = 1;
         }
 
-        List<IngestMessage> getMessages() {
-            return messages;
+        private IngestMessageGroup(String subject, IngestModuleAbstract source, IngestMessage.MessageType messageType,
+                String uniqueKey, long artifactId, List<MessageDetails> details, int numDetails, Date lastDatePosted, int count) {
+            this.subject = subject;
+            this.source = source;
+            this.messageType = messageType;
+            this.uniqueKey = uniqueKey;
+            this.artifactId = artifactId;
+            this.details = details;
+            this.numDetails = numDetails;
+            this.lastDatePosted = lastDatePosted;
+            this.count = count;
         }
 
-        void add(IngestMessage message) {
+        private void addDetails(MessageDetails messageDetails) {
+            if (messageDetails == null) {
+                return;
+            }
+            if (details.size() < MAX_DETAILS_SHOWN) {
+                details.add(messageDetails);
+            }
+            ++numDetails;
+        }
 
-            IngestMessage first = messages.get(0);
+        void add(IngestMessage message, MessageDetails messageDetails) {
             //make sure uniqness agrees
             /*
             if (!message.getSource().equals(first.getSource())
@@ -650,15 +1012,15 @@ class IngestMessagePanel extends javax.swing.JPanel {
             throw new IllegalArgumentException("Tried to add a message to a wrong message group.");
             } */
 
-            messages.add(message);
+            addDetails(messageDetails);
+            lastDatePosted = message.getDatePosted();
             ++count;
         }
 
         //add all messages from another group
         void addAll(IngestMessageGroup group) {
 
-            //IngestMessage first = messages.get(0);
-            //IngestMessage firstG = group.messages.get(0);
+            //IngestMessage firstG = group.first;
             //make sure uniqness agrees
             /*
             if (!firstG.getSource().equals(first.getSource())
@@ -666,27 +1028,47 @@ class IngestMessagePanel extends javax.swing.JPanel {
             throw new IllegalArgumentException("Tried to add a message to a wrong message group.");
             } */
 
-            for (IngestMessage m : group.getMessages()) {
-                messages.add(m);
-                ++count;
+            final int numAdded = Math.min(group.details.size(), MAX_DETAILS_SHOWN - details.size());
+            if (numAdded > 0) {
+                details.addAll(group.details.subList(0, numAdded));
+            }
+            numDetails += group.numDetails;
+            if (group.lastDatePosted.after(lastDatePosted)) {
+                lastDatePosted = group.lastDatePosted;
             }
+            count += group.count;
         }
 
         int getCount() {
             return count;
         }
 
+        /**
+         * @return true if any message of the group has details
+         */
+        boolean hasDetails() {
+            return numDetails > 0;
+        }
+
+        /**
+         * get details of the messages, up to MAX_DETAILS_SHOWN messages
+         * @return 
+         */
         String getDetails() {
             StringBuilder b = new StringBuilder("");
-            for (IngestMessage m : messages) {
-                String details = m.getDetails();
-                if (details == null || details.equals("")) {
+            final int numShown = Math.min(details.size(), MAX_DETAILS_SHOWN);
+            for (int i = 0; i < numShown; ++i) {
+                String messageDetails = details.get(i).get();
+                if (messageDetails == null || messageDetails.equals("")) {
                     continue;
                 }
-                b.append(details);
+                b.append(messageDetails);
                 b.append("<br />");
                 b.append("<hr />");
             }
+            if (numDetails > numShown) {
+                b.append("<p>").append(numDetails - numShown).append(" more messages not shown</p>");
+            }
 
             return b.toString();
         }
@@ -714,7 +1096,7 @@ class IngestMessagePanel extends javax.swing.JPanel {
          * @return 
          */
         Date getDatePosted() {
-            return messages.get(count - 1).getDatePosted();
+            return lastDatePosted;
         }
 
         /**
@@ -722,35 +1104,174 @@ class IngestMessagePanel extends javax.swing.JPanel {
          * @return 
          */
         String getSubject() {
-            return messages.get(0).getSubject();
+            return subject;
         }
 
         /*
          * return unique key, should be the same for all msgs
          */
         String getUniqueKey() {
-            return messages.get(0).getUniqueKey();
+            return uniqueKey;
         }
 
         /*
          * return source module, should be the same for all msgs
          */
         IngestModuleAbstract getSource() {
-            return messages.get(0).getSource();
+            return source;
         }
 
         /*
-         * return data of the first message
+         * return data of the first message, looked up by its artifact id
          */
         BlackboardArtifact getData() {
-            return messages.get(0).getData();
+            if (artifactId == NO_ARTIFACT) {
+                return null;
+            }
+            try {
+                return Case.getCurrentCase().getSleuthkitCase().getBlackboardArtifact(artifactId);
+            } catch (TskException ex) {
+                Logger.getLogger(IngestMessageGroup.class.getName()).log(Level.WARNING, "Error getting artifact of message: " + artifactId, ex);
+                return null;
+            }
         }
 
         /*
          * return message type, should be the same for all msgs
          */
         IngestMessage.MessageType getMessageType() {
-            return messages.get(0).getMessageType();
+            return messageType;
+        }
+
+        /**
+         * Writes the group, moving its details to the message store
+         *
+         * @param out output to write the group to
+         * @param store store to move the details to
+         * @throws IOException if the group or its details could not be written
+         */
+        void write(DataOutput out, IngestMessageStore store) throws IOException {
+            writeString(out, source != null ? source.getName() : null);
+            writeString(out, subject);
+            out.writeUTF(messageType.name());
+            writeString(out, uniqueKey);
+            out.writeLong(artifactId);
+            out.writeLong(lastDatePosted.getTime());
+            out.writeInt(count);
+            out.writeInt(numDetails);
+            out.writeInt(details.size());
+            for (MessageDetails messageDetails : details) {
+                out.writeLong(messageDetails.store(store));
+            }
+        }
+
+        /**
+         * Reads a group written by write()
+         *
+         * @param in input to read the group from
+         * @param store store the details of the group are in
+         * @param modules source modules, by name
+         * @return the group, with no table row
+         * @throws IOException if the group could not be read
+         */
+        static IngestMessageGroup read(DataInput in, IngestMessageStore store, Map<String, IngestModuleAbstract> modules) throws IOException {
+            final String sourceName = readString(in);
+            final String subject = readString(in);
+            final IngestMessage.MessageType messageType = IngestMessage.MessageType.valueOf(in.readUTF());
+            final String uniqueKey = readString(in);
+            final long artifactId = in.readLong();
+            final Date lastDatePosted = new Date(in.readLong());
+            final int count = in.readInt();
+            final int numDetails = in.readInt();
+            final int numStored = in.readInt();
+            final List<MessageDetails> details = new ArrayList<MessageDetails>(numStored);
+            for (int i = 0; i < numStored; ++i) {
+                details.add(new MessageDetails(store, in.readLong()));
+            }
+            return new IngestMessageGroup(subject, sourceName != null ? modules.get(sourceName) : null, messageType,
+                    uniqueKey, artifactId, details, numDetails, lastDatePosted, count);
+        }
+
+        //nullable strings of any length, writeUTF() is limited to 64KB
+        private static void writeString(DataOutput out, String str) throws IOException {
+            if (str == null) {
+                out.writeInt(-1);
+                return;
+            }
+            final byte[] bytes = str.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInput in) throws IOException {
+            final int length = in.readInt();
+            if (length == -1) {
+                return null;
+            }
+            final byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, "UTF-8");
+        }
+    }
+
+    /**
+     * Details of a message, kept in memory or spilled to the message store
+     */
+    static class MessageDetails {
+
+        private String details;
+        private IngestMessageStore store;
+        private long offset;
+
+        MessageDetails(String details) {
+            this.details = details;
+        }
+
+        /**
+         * Details already in the store
+         */
+        MessageDetails(IngestMessageStore store, long offset) {
+            this.store = store;
+            this.offset = offset;
+        }
+
+        /**
+         * Moves the details to the store, keeps them in memory if could not be
+         * stored
+         */
+        synchronized void spill(IngestMessageStore store) {
+            try {
+                store(store);
+            } catch (IOException e) {
+                Logger.getLogger(MessageDetails.class.getName()).log(Level.WARNING, "Error spilling message details to the message store", e);
+            }
+        }
+
+        /**
+         * Moves the details to the store, if still in memory
+         *
+         * @return offset of the details in the store
+         * @throws IOException if the details could not be stored
+         */
+        synchronized long store(IngestMessageStore store) throws IOException {
+            if (details != null) {
+                offset = store.write(details);
+                this.store = store;
+                details = null;
+            }
+            return offset;
+        }
+
+        synchronized String get() {
+            if (details != null) {
+                return details;
+            }
+            try {
+                return store.read(offset);
+            } catch (IOException e) {
+                Logger.getLogger(MessageDetails.class.getName()).log(Level.WARNING, "Error reading message details from the message store", e);
+                return null;
+            }
         }
     }
 
@@ -761,10 +1282,10 @@ class IngestMessagePanel extends javax.swing.JPanel {
     private class MessageTableRenderer extends DefaultTableCellRenderer {
 
         //custom selection tracking
-        private int selected = -1;
+        private IngestMessageGroup selected;
 
-        void setSelected(int row) {
-            this.selected = row;
+        void setSelected(IngestMessageGroup group) {
+            this.selected = group;
         }
 
         @Override
@@ -789,8 +1310,8 @@ class IngestMessagePanel extends javax.swing.JPanel {
 
 
             //if (!isSelected) {
-            if (selected != row) {
-                final IngestMessageGroup messageGroup = tableModel.getMessageGroup(row);
+            final IngestMessageGroup messageGroup = tableModel.getMessageGroup(row);
+            if (selected != messageGroup) {
                 MessageType mt = messageGroup.getMessageType();
                 if (mt == MessageType.ERROR) {
                     cell.setBackground(ERROR_COLOR);
@@ -853,8 +1374,7 @@ class IngestMessagePanel extends javax.swing.JPanel {
                 messageTable.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
                 //check if has details
                 IngestMessageGroup m = getMessageGroup(selected);
-                String details = m.getDetails();
-                if (details != null && !details.equals("")) {
+                if (m.hasDetails()) {
                     mainPanel.showDetails(selected);
                 }
                 messageTable.setCursor(null);
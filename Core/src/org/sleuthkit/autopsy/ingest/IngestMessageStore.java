@@ -0,0 +1,131 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * On-disk store of inbox message details and older inbox message groups
+ * spilled out of memory, kept in the case directory.
+ *
+ * Records are appended to a single file, length-prefixed, and read back by the
+ * offset returned when stored. The store only lives as long as the inbox
+ * messages referring to it, and is emptied when the inbox is cleared.
+ */
+class IngestMessageStore {
+
+    static final String STORE_FILE_NAME = "ingest_messages.store";
+    private static final Logger logger = Logger.getLogger(IngestMessageStore.class.getName());
+    private final File storeFile;
+    private RandomAccessFile file;
+
+    private IngestMessageStore(File storeFile) {
+        this.storeFile = storeFile;
+    }
+
+    /**
+     * Creates an empty store in the directory
+     *
+     * @param directory directory to keep the store file in, e.g. case directory
+     * @return the opened store
+     * @throws IOException if the store could not be created
+     */
+    static IngestMessageStore open(String directory) throws IOException {
+        IngestMessageStore store = new IngestMessageStore(new File(directory, STORE_FILE_NAME));
+        store.file = new RandomAccessFile(store.storeFile, "rw");
+        store.file.setLength(0);
+        return store;
+    }
+
+    /**
+     * @return directory the store file is in
+     */
+    String getDirectory() {
+        return storeFile.getParent();
+    }
+
+    /**
+     * Appends the message details to the store
+     *
+     * @param details details to store
+     * @return offset to read the details back from
+     * @throws IOException if the details could not be written
+     */
+    long write(String details) throws IOException {
+        return write(details.getBytes("UTF-8"));
+    }
+
+    /**
+     * Appends a record to the store
+     *
+     * @param record bytes of the record
+     * @return offset to read the record back from
+     * @throws IOException if the record could not be written
+     */
+    synchronized long write(byte[] record) throws IOException {
+        final long offset = file.length();
+        file.seek(offset);
+        file.writeInt(record.length);
+        file.write(record);
+        return offset;
+    }
+
+    /**
+     * Reads message details stored at the offset
+     *
+     * @param offset offset returned by write()
+     * @return the details
+     * @throws IOException if the details could not be read
+     */
+    String read(long offset) throws IOException {
+        return new String(readRecord(offset), "UTF-8");
+    }
+
+    /**
+     * Reads a record stored at the offset
+     *
+     * @param offset offset returned by write()
+     * @return bytes of the record
+     * @throws IOException if the record could not be read
+     */
+    synchronized byte[] readRecord(long offset) throws IOException {
+        file.seek(offset);
+        final byte[] bytes = new byte[file.readInt()];
+        file.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Closes and deletes the store
+     */
+    synchronized void delete() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing ingest message store", e);
+        }
+        if (storeFile.exists() && !storeFile.delete()) {
+            logger.log(Level.WARNING, "Could not delete ingest message store: " + storeFile.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import org.sleuthkit.datamodel.AbstractFile;
+
+/**
+ * Timing and throughput statistics of a file ingest module, collected by the
+ * ingest manager while the module processes files.
+ *
+ * The statistics are updated live by the file ingest workers and can be read
+ * at any time during ingest, e.g. to find out which module is the bottleneck.
+ * Latency percentiles are approximated using a histogram with logarithmic
+ * buckets, reported as the upper bound of the bucket (less than 12.5% above
+ * the actual value).
+ */
+public class IngestModuleStats {
+
+    /**
+     * Number of slowest files tracked per module
+     */
+    public static final int NUM_SLOWEST_FILES = 10;
+    //histogram: 8 sub-buckets per power of 2 of microseconds, a bucket spans at most 1/8 of its lower bound
+    private static final int SUB_BUCKETS_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKETS_BITS;
+    private static final int NUM_BUCKETS = 64 * SUB_BUCKETS;
+    private final String moduleName;
+    private long filesProcessed = 0;
+    private long bytesProcessed = 0;
+    private long processTimeNs = 0;
+    private long errors = 0;
+    private final long[] latencyHistogram = new long[NUM_BUCKETS];
+    //min-heap, the fastest of the slowest files on top
+    private final PriorityQueue<FileProcessTime> slowestFiles = new PriorityQueue<FileProcessTime>(NUM_SLOWEST_FILES + 1,
+            new Comparator<FileProcessTime>() {
+                @Override
+                public int compare(FileProcessTime o1, FileProcessTime o2) {
+                    return Long.signum(o1.processTimeNs - o2.processTimeNs);
+                }
+            });
+
+    /**
+     * Time a module spent processing a single file
+     */
+    public static class FileProcessTime {
+
+        private final long fileId;
+        private final String fileName;
+        private final long processTimeNs;
+
+        FileProcessTime(long fileId, String fileName, long processTimeNs) {
+            this.fileId = fileId;
+            this.fileName = fileName;
+            this.processTimeNs = processTimeNs;
+        }
+
+        /**
+         * @return object id of the file
+         */
+        public long getFileId() {
+            return fileId;
+        }
+
+        /**
+         * @return name of the file
+         */
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * @return time in ms the module spent in process() for the file
+         */
+        public long getProcessTime() {
+            return TimeUnit.NANOSECONDS.toMillis(processTimeNs);
+        }
+    }
+
+    IngestModuleStats(String moduleName) {
+        this.moduleName = moduleName;
+    }
+
+    /**
+     * Records a file processed by the module
+     *
+     * @param file file the module processed
+     * @param elapsedNs time in ns the module spent in process() for the file
+     */
+    synchronized void fileProcessed(AbstractFile file, long elapsedNs) {
+        ++filesProcessed;
+        bytesProcessed += file.getSize();
+        processTimeNs += elapsedNs;
+        ++latencyHistogram[getBucket(TimeUnit.NANOSECONDS.toMicros(elapsedNs))];
+
+        if (slowestFiles.size() < NUM_SLOWEST_FILES
+                || slowestFiles.peek().processTimeNs < elapsedNs) {
+            slowestFiles.add(new FileProcessTime(file.getId(), file.getName(), elapsedNs));
+            if (slowestFiles.size() > NUM_SLOWEST_FILES) {
+                slowestFiles.poll();
+            }
+        }
+    }
+
+    /**
+     * Records an error of the module
+     */
+    synchronized void addError() {
+        ++errors;
+    }
+
+    /**
+     * @return name of the module the statistics are for
+     */
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    /**
+     * @return number of files processed by the module so far
+     */
+    public synchronized long getFilesProcessed() {
+        return filesProcessed;
+    }
+
+    /**
+     * @return number of bytes of the files processed by the module so far
+     */
+    public synchronized long getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    /**
+     * @return total time in ms the module spent in process()
+     */
+    public synchronized long getProcessTime() {
+        return TimeUnit.NANOSECONDS.toMillis(processTimeNs);
+    }
+
+    /**
+     * @return number of errors of the module (exceptions and error messages)
+     */
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return files processed per second of time spent in process()
+     */
+    public synchronized double getFilesPerSecond() {
+        if (processTimeNs == 0) {
+            return 0;
+        }
+        return filesProcessed * 1000000000.0 / processTimeNs;
+    }
+
+    /**
+     * @return bytes processed per second of time spent in process()
+     */
+    public synchronized double getBytesPerSecond() {
+        if (processTimeNs == 0) {
+            return 0;
+        }
+        return bytesProcessed * 1000000000.0 / processTimeNs;
+    }
+
+    /**
+     * Gets approximate latency of process() calls at the percentile
+     *
+     * @param percentile percentile between 0 and 100, e.g. 95
+     * @return process() latency in microseconds at the percentile, 0 if no
+     * files have been processed yet
+     */
+    public synchronized long getLatencyPercentile(double percentile) {
+        if (filesProcessed == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * filesProcessed));
+        long count = 0;
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            count += latencyHistogram[i];
+            if (count >= rank) {
+                return getBucketUpperBound(i);
+            }
+        }
+        return getBucketUpperBound(NUM_BUCKETS - 1);
+    }
+
+    /**
+     * @return files the module spent the most time on, slowest first
+     */
+    public synchronized List<FileProcessTime> getSlowestFiles() {
+        List<FileProcessTime> ret = new ArrayList<FileProcessTime>(slowestFiles);
+        Collections.sort(ret, Collections.reverseOrder(slowestFiles.comparator()));
+        return ret;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(moduleName).append(" took: ").append(getProcessTime() / 1000).append(" secs. to process()");
+        sb.append(", files: ").append(filesProcessed);
+        sb.append(", files/sec: ").append(String.format("%.1f", getFilesPerSecond()));
+        sb.append(", KB/sec: ").append(String.format("%.1f", getBytesPerSecond() / 1024));
+        sb.append(", p50/p95/p99 ms: ").append(formatLatency(getLatencyPercentile(50)))
+                .append('/').append(formatLatency(getLatencyPercentile(95)))
+                .append('/').append(formatLatency(getLatencyPercentile(99)));
+        sb.append(", errors: ").append(errors);
+        return sb.toString();
+    }
+
+    /**
+     * Formats latency in microseconds as ms
+     *
+     * @param latencyUs latency in microseconds
+     * @return formatted ms string
+     */
+    static String formatLatency(long latencyUs) {
+        return String.format("%.2f", latencyUs / 1000.0);
+    }
+
+    private static int getBucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        final int exp = 63 - Long.numberOfLeadingZeros(micros);
+        final int sub = (int) ((micros >>> (exp - SUB_BUCKETS_BITS)) & (SUB_BUCKETS - 1));
+        return (exp - SUB_BUCKETS_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long getBucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int exp = bucket / SUB_BUCKETS + SUB_BUCKETS_BITS - 1;
+        final int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BUCKETS_BITS)) - 1;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JButton;
+import javax.swing.JEditorPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.AbstractTableModel;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.openide.util.NbBundle;
+
+/**
+ * Panel showing live timing and throughput statistics of the file ingest
+ * modules, shown in the ingest inbox in place of the messages table
+ */
+class IngestModuleStatsPanel extends JPanel {
+
+    private static final int REFRESH_INTERVAL_MS = 1000;
+    private final IngestMessageMainPanel mainPanel;
+    private final ModuleStatsTableModel tableModel = new ModuleStatsTableModel();
+    private final JTable statsTable = new JTable(tableModel);
+    private final JEditorPane slowestFilesPane = new JEditorPane();
+    private final Timer refreshTimer;
+
+    IngestModuleStatsPanel(IngestMessageMainPanel mainPanel) {
+        this.mainPanel = mainPanel;
+        refreshTimer = new Timer(REFRESH_INTERVAL_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                refresh();
+            }
+        });
+        customizeComponents();
+    }
+
+    private void customizeComponents() {
+        setLayout(new BorderLayout());
+
+        statsTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        statsTable.getTableHeader().setReorderingAllowed(false);
+        statsTable.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+            @Override
+            public void valueChanged(ListSelectionEvent e) {
+                if (!e.getValueIsAdjusting()) {
+                    showSlowestFiles();
+                }
+            }
+        });
+
+        slowestFilesPane.setContentType("text/html");
+        slowestFilesPane.setEditable(false);
+
+        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                new JScrollPane(statsTable), new JScrollPane(slowestFilesPane));
+        splitPane.setResizeWeight(0.6);
+        add(splitPane, BorderLayout.CENTER);
+
+        JButton backButton = new JButton(NbBundle.getMessage(IngestModuleStatsPanel.class, "IngestModuleStatsPanel.backButton.text"));
+        backButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                mainPanel.showMessages();
+            }
+        });
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controlPanel.add(backButton);
+        add(controlPanel, BorderLayout.SOUTH);
+    }
+
+    /**
+     * Starts live refresh of the statistics, when the panel is shown
+     */
+    void startRefresh() {
+        refresh();
+        refreshTimer.start();
+    }
+
+    /**
+     * Stops live refresh of the statistics, when the panel is hidden
+     */
+    void stopRefresh() {
+        refreshTimer.stop();
+    }
+
+    private void refresh() {
+        final int selected = statsTable.getSelectedRow();
+        tableModel.setStats(IngestManager.getDefault().getFileModuleStats());
+        if (selected >= 0 && selected < tableModel.getRowCount()) {
+            statsTable.getSelectionModel().setSelectionInterval(selected, selected);
+        }
+        showSlowestFiles();
+    }
+
+    private void showSlowestFiles() {
+        final int selected = statsTable.getSelectedRow();
+        if (selected < 0 || selected >= tableModel.getRowCount()) {
+            slowestFilesPane.setText("");
+            return;
+        }
+        final IngestModuleStats moduleStats = tableModel.getStats(selected);
+        StringBuilder sb = new StringBuilder();
+        sb.append("<html><b>Slowest files: ").append(StringEscapeUtils.escapeHtml(moduleStats.getModuleName())).append("</b>");
+        sb.append("<table border='0' cellpadding='2'>");
+        sb.append("<tr><th>File</th><th>Id</th><th>ms</th></tr>");
+        for (IngestModuleStats.FileProcessTime slowFile : moduleStats.getSlowestFiles()) {
+            sb.append("<tr><td>").append(StringEscapeUtils.escapeHtml(slowFile.getFileName())).append("</td>");
+            sb.append("<td>").append(slowFile.getFileId()).append("</td>");
+            sb.append("<td>").append(slowFile.getProcessTime()).append("</td></tr>");
+        }
+        sb.append("</table></html>");
+        slowestFilesPane.setText(sb.toString());
+    }
+
+    private static class ModuleStatsTableModel extends AbstractTableModel {
+
+        private static final String[] COLUMNS = {"Module", "Files", "Files/sec", "KB/sec",
+            "p50 ms", "p95 ms", "p99 ms", "Time (s)", "Errors"};
+        private List<IngestModuleStats> stats = new ArrayList<IngestModuleStats>();
+
+        void setStats(List<IngestModuleStats> stats) {
+            this.stats = stats;
+            fireTableDataChanged();
+        }
+
+        IngestModuleStats getStats(int row) {
+            return stats.get(row);
+        }
+
+        @Override
+        public int getRowCount() {
+            return stats.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            final IngestModuleStats moduleStats = stats.get(rowIndex);
+            switch (columnIndex) {
+                case 0:
+                    return moduleStats.getModuleName();
+                case 1:
+                    return moduleStats.getFilesProcessed();
+                case 2:
+                    return String.format("%.1f", moduleStats.getFilesPerSecond());
+                case 3:
+                    return String.format("%.1f", moduleStats.getBytesPerSecond() / 1024);
+                case 4:
+                    return IngestModuleStats.formatLatency(moduleStats.getLatencyPercentile(50));
+                case 5:
+                    return IngestModuleStats.formatLatency(moduleStats.getLatencyPercentile(95));
+                case 6:
+                    return IngestModuleStats.formatLatency(moduleStats.getLatencyPercentile(99));
+                case 7:
+                    return moduleStats.getProcessTime() / 1000;
+                case 8:
+                    return moduleStats.getErrors();
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -1,15 +1,15 @@
 /*
  * Autopsy Forensic Browser
- * 
+ *
  * Copyright 2012 Basis Technology Corp.
  * Contact: carrier <at> sleuthkit <dot> org
- * 
+ *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
  * You may obtain a copy of the License at
- * 
+ *
  *     http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
@@ -18,40 +18,149 @@
  */
 package org.sleuthkit.autopsy.ingest;
 
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
-import javax.swing.Timer;
 import org.sleuthkit.autopsy.casemodule.Case;
 
 /**
- * Monitor health of the system and stop ingest if necessary
+ * Monitor health of the system and apply back-pressure to ingest when
+ * resources run low.
+ *
+ * Samples heap usage, GC pressure, free disk space of the case drive (and
+ * other registered directories, such as the keyword search index) and the
+ * file queue depth several times a second while ingest runs. Depending on
+ * the samples, the monitor throttles the file ingest workers (lets only one
+ * of them run), pauses them and the Solr posting, and resumes them
+ * automatically when the resources recover. Throttling due to heap or GC
+ * pressure is lifted once the file queue drains, the queued files holding the
+ * memory are then processed. A pause due to heap or GC pressure
+ * lasts at most MAX_PAUSE_MS, ingest then goes on throttled until the
+ * resources recover, and the user is told to cancel ingest if they cannot be
+ * freed. A pause due to critically low disk space lasts until the space is
+ * freed, ingest must not write to a full disk. Cancelling file ingest wakes up
+ * the paused workers.
  */
 public class IngestMonitor {
 
-    private static final int INITIAL_INTERVAL_MS = 60000; //1 min.
+    /**
+     * State of the resources, determines how much ingest work can run
+     */
+    public enum ResourceState {
+
+        /**
+         * Resources are fine, ingest runs at full speed
+         */
+        OK,
+        /**
+         * Resources are getting low, ingest runs with a single file ingest
+         * worker and enqueues less files
+         */
+        THROTTLED,
+        /**
+         * Resources are critically low, file ingest and indexing wait until
+         * they recover
+         */
+        PAUSED
+    };
+    private static final int SAMPLE_INTERVAL_MS = 500;
+    //consecutive samples in a better state needed to relax the state, to avoid flapping
+    private static final int RECOVERY_SAMPLES = 6;
+    private static final int THROTTLED_FILE_WORKERS = 1;
+    //max. time ingest stays paused due to heap or GC, then it resumes throttled even if they did not recover
+    private static final long MAX_PAUSE_MS = 10 * 60 * 1000;
+    private final static long MIN_FREE_DISK_SPACE = 100L * 1024 * 1024; //100MB
+    private final static long LOW_FREE_DISK_SPACE = 1024L * 1024 * 1024; //1GB
+    private final static double HEAP_THROTTLE_RATIO = 0.80;
+    private final static double HEAP_PAUSE_RATIO = 0.92;
+    private final static double GC_THROTTLE_RATIO = 0.25;
+    private final static double GC_PAUSE_RATIO = 0.50;
+    //weight of the last sample in the smoothed GC time ratio
+    private final static double GC_SMOOTHING = 0.3;
+    static final String CASE_DIRECTORY = "case";
     private static final Logger logger = Logger.getLogger(IngestMonitor.class.getName());
-    private Timer timer;
+    private ScheduledExecutorService sampler;
+    private ResourceState state = ResourceState.OK;
+    private int recoverySamples = 0;
+    private int activeFileWorkers = 0;
+    //start of the pause due to heap or GC, not counting the time disk space was critical
+    private long pausedSince = 0;
+    //set once paused for MAX_PAUSE_MS, ingest is throttled instead of paused until heap and GC recover
+    private boolean pauseExpired = false;
+    //set when file ingest is cancelled, fails the waits until the next ingest
+    private boolean waitsCancelled = false;
+    //directories to check free disk space of, by name
+    private final Map<String, File> monitoredDirs = new HashMap<String, File>();
+    //gc time tracking
+    private long lastGcTime = -1;
+    private long lastSampleTime = 0;
+    private double gcRatio = 0;
+    private int queueDepth = 0;
+
+    IngestMonitor() {
+        //update monitor dir if case changed
+        Case.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                String changed = evt.getPropertyName();
+                Object newValue = evt.getNewValue();
+
+                if (changed.equals(Case.CASE_CURRENT_CASE)) {
+                    if (newValue != null) {
+                        setCaseDir();
+                    }
+                }
+            }
+        });
+    }
 
     /**
      * Start the monitor
      */
-    void start() {
-        timer = new Timer(INITIAL_INTERVAL_MS, new MonitorAction());
-        timer.start();
+    synchronized void start() {
+        if (sampler != null) {
+            return;
+        }
+        setCaseDir();
+        sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "IngestMonitor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        sampler.scheduleWithFixedDelay(new MonitorAction(), 0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Stop the monitor
+     * Stop the monitor, resources count as OK while it is stopped
+     *
+     * @return true if the monitor was running and resources were not OK
      */
-    void stop() {
-        if (timer != null) {
-            timer.stop();
+    synchronized boolean stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
         }
+        //reset the sampling state for the next ingest
+        lastGcTime = -1;
+        gcRatio = 0;
+        pauseExpired = false;
+        return setState(ResourceState.OK) != ResourceState.OK;
     }
 
     /**
@@ -59,84 +168,339 @@ public class IngestMonitor {
      *
      * @return true if the monitor is running, false otherwise
      */
-    boolean isRunning() {
-        return timer != null && timer.isRunning();
+    synchronized boolean isRunning() {
+        return sampler != null;
     }
 
-    //TODO add support to monitor multiple drives, e.g. user dir drive in addition to Case drive
-    private class MonitorAction implements ActionListener {
+    /**
+     * @return current state of the resources
+     */
+    synchronized ResourceState getState() {
+        return state;
+    }
 
-        private final static long MIN_FREE_DISK_SPACE = 100L * 1024 * 1024; //100MB
-        private File root = new File(File.separator); //default, roto dir where autopsy runs
+    /**
+     * Adds or replaces a directory to monitor free disk space of, e.g. the
+     * keyword search index directory
+     *
+     * @param name name to refer to the directory by
+     * @param dir directory to monitor, null to stop monitoring
+     */
+    synchronized void setMonitoredDirectory(String name, File dir) {
+        if (dir == null) {
+            monitoredDirs.remove(name);
+        } else {
+            monitoredDirs.put(name, dir);
+            logger.log(Level.INFO, "Monitoring disk space of " + name + ": " + dir.getAbsolutePath());
+        }
+    }
 
-        MonitorAction() {
-            //find drive where case is located
-            setMonitorDir();
+    /**
+     * Wakes up and fails the waits of the file ingest workers and indexing,
+     * called when file ingest is cancelled
+     */
+    synchronized void cancelWaits() {
+        waitsCancelled = true;
+        notifyAll();
+    }
 
-            //update monitor dir if case changed
-            Case.addPropertyChangeListener(new PropertyChangeListener() {
-                @Override
-                public void propertyChange(PropertyChangeEvent evt) {
-                    String changed = evt.getPropertyName();
-                    Object newValue = evt.getNewValue();
+    /**
+     * Lets the waits block again, called when a new ingest is started
+     */
+    synchronized void resetWaits() {
+        waitsCancelled = false;
+    }
 
-                    if (changed.equals(Case.CASE_CURRENT_CASE)) {
-                        if (newValue != null) {
-                            setMonitorDir();
-                        }
+    /**
+     * Called by a file ingest worker before processing next file. Blocks while
+     * ingest is paused, or while throttled and enough workers are running.
+     *
+     * @throws InterruptedException if interrupted or file ingest cancelled
+     * while waiting
+     */
+    synchronized void beginFileWork() throws InterruptedException {
+        while (state == ResourceState.PAUSED
+                || (state == ResourceState.THROTTLED && activeFileWorkers >= THROTTLED_FILE_WORKERS)) {
+            checkWaitsCancelled();
+            wait();
+        }
+        checkWaitsCancelled();
+        ++activeFileWorkers;
+    }
 
-                    }
+    /**
+     * Called by a file ingest worker done processing a file
+     */
+    synchronized void endFileWork() {
+        --activeFileWorkers;
+        notifyAll();
+    }
 
+    /**
+     * Blocks while ingest is paused due to low resources
+     *
+     * @throws InterruptedException if interrupted or file ingest cancelled
+     * while waiting
+     */
+    synchronized void waitWhilePaused() throws InterruptedException {
+        while (state == ResourceState.PAUSED) {
+            checkWaitsCancelled();
+            wait();
+        }
+    }
 
-                }
-            });
+    private void checkWaitsCancelled() throws InterruptedException {
+        if (waitsCancelled) {
+            throw new InterruptedException("File ingest cancelled");
+        }
+    }
 
+    private synchronized void setCaseDir() {
+        if (Case.existsCurrentCase()) {
+            setMonitoredDirectory(CASE_DIRECTORY, new File(Case.getCurrentCase().getCaseDirectory()));
         }
+    }
 
-        private void setMonitorDir() {
-            String caseDir = Case.getCurrentCase().getCaseDirectory();
-            File curDir = new File(caseDir);
-            File tempF = null;
-            while ((tempF = curDir.getParentFile()) != null) {
-                curDir = tempF;
-            }
-            root = curDir;
-            logger.log(Level.INFO, "Monitoring disk space of case root: " + curDir.getAbsolutePath());
+    /**
+     * Sets the new state and wakes up waiting workers
+     *
+     * @return previous state
+     */
+    private synchronized ResourceState setState(ResourceState newState) {
+        final ResourceState oldState = state;
+        state = newState;
+        recoverySamples = 0;
+        if (newState == ResourceState.PAUSED && oldState != ResourceState.PAUSED) {
+            pausedSince = System.currentTimeMillis();
         }
+        notifyAll();
+        return oldState;
+    }
+
+    private class MonitorAction implements Runnable {
 
         @Override
-        public void actionPerformed(ActionEvent e) {
+        public void run() {
+            try {
+                sample();
+            } catch (Exception e) {
+                //keep sampling
+                logger.log(Level.WARNING, "Error sampling ingest resources", e);
+            }
+        }
+
+        private void sample() {
             final IngestManager manager = IngestManager.getDefault();
 
-            //runs checks only if ingest is running
-            if (manager.isIngestRunning() == false) {
+            final StringBuilder reason = new StringBuilder();
+            ResourceState memoryTarget = ResourceState.OK;
+            memoryTarget = max(memoryTarget, checkHeap(reason));
+            memoryTarget = max(memoryTarget, checkGc(reason));
+            final ResourceState diskTarget = checkDiskSpace(reason);
+            final boolean diskCritical = diskTarget == ResourceState.PAUSED;
+            queueDepth = manager.getNumQueuedFiles();
+
+            ResourceState oldState = null;
+            ResourceState newState = null;
+            boolean pauseTimedOut = false;
+            synchronized (IngestMonitor.this) {
+                if (sampler == null) {
+                    //stopped while sampling
+                    return;
+                }
+                if (memoryTarget != ResourceState.PAUSED) {
+                    //heap and GC recovered from the expired pause, can pause again
+                    pauseExpired = false;
+                } else if (diskCritical) {
+                    //never resume onto a full disk, time the heap or GC pause from when disk space recovers
+                    pausedSince = System.currentTimeMillis();
+                } else if (state == ResourceState.PAUSED
+                        && System.currentTimeMillis() - pausedSince >= MAX_PAUSE_MS) {
+                    pauseExpired = true;
+                    pauseTimedOut = true;
+                }
+                if (pauseExpired) {
+                    memoryTarget = ResourceState.THROTTLED;
+                } else if (memoryTarget == ResourceState.THROTTLED && queueDepth == 0) {
+                    //the workers drained the queue, throttling now only starves them and the enqueuer
+                    memoryTarget = ResourceState.OK;
+                    appendReason(reason, "file queue drained");
+                }
+                final ResourceState target = max(memoryTarget, diskTarget);
+                if (pauseTimedOut) {
+                    //resume right away
+                    oldState = setState(target);
+                    newState = target;
+                } else if (target.compareTo(state) > 0) {
+                    //escalate right away
+                    oldState = setState(target);
+                    newState = target;
+                } else if (target.compareTo(state) < 0) {
+                    //relax after resources stay recovered for a while
+                    if (++recoverySamples >= RECOVERY_SAMPLES) {
+                        oldState = setState(target);
+                        newState = target;
+                    }
+                } else {
+                    recoverySamples = 0;
+                }
+            }
+
+            if (newState != null) {
+                stateChanged(manager, oldState, newState, reason.toString(), pauseTimedOut, diskCritical);
+            }
+        }
+
+        private void stateChanged(IngestManager manager, ResourceState oldState, ResourceState newState, String reason,
+                boolean pauseTimedOut, boolean diskCritical) {
+            logger.log(Level.INFO, "Ingest resources changed from " + oldState + " to " + newState
+                    + " (" + reason + "), queued files: " + queueDepth);
+            //let the enqueuer adjust to the new queue limit
+            manager.resourceStateChanged(newState);
+
+            if (!manager.isIngestRunning()) {
                 return;
             }
+            if (newState == ResourceState.PAUSED && diskCritical) {
+                manager.postMessage(IngestMessage.createManagerWarningMessage("Pausing ingest due to low disk space",
+                        "Pausing ingest due to low resources: " + reason + ". Ingest will resume automatically once disk space is freed. "
+                        + "Please ensure the drive where Case is located has at least 1GB free space (more for large images), "
+                        + "or cancel the ingest from its progress bar."));
+            } else if (newState == ResourceState.PAUSED) {
+                manager.postMessage(IngestMessage.createManagerMessage("Pausing ingest due to low memory",
+                        "Pausing ingest due to low resources: " + reason + ". Ingest will resume automatically once memory recovers, "
+                        + "or throttled after " + MAX_PAUSE_MS / 60000 + " minutes. "
+                        + "Close other applications, or cancel the ingest from its progress bar."));
+            } else if (pauseTimedOut) {
+                manager.postMessage(IngestMessage.createManagerWarningMessage("Resuming ingest with low memory",
+                        "Ingest was paused for " + MAX_PAUSE_MS / 60000 + " minutes and resumes with a single file ingest worker, "
+                        + "although heap usage or GC time did not recover: " + reason + ". "
+                        + "Close other applications, or cancel the ingest from its progress bar if memory cannot be freed."));
+            } else if (oldState == ResourceState.PAUSED) {
+                manager.postMessage(IngestMessage.createManagerMessage("Resuming ingest", "Resuming ingest, resources recovered."));
+            }
+        }
 
-            if (checkDiskSpace() == false) {
-                //stop ingest if running
-                final String diskPath = root.getAbsolutePath();
-                logger.log(Level.SEVERE, "Stopping ingest due to low disk space on disk " + diskPath);
-                manager.stopAll();
-                manager.postMessage(IngestMessage.createManagerMessage("Stopping ingest due to low disk space on disk " + diskPath, "Stopping ingest due to low disk space on disk " + diskPath + ". Please ensure the drive where Case is located has at least 1GB free space (more for large images) and restart ingest."));
+        private ResourceState max(ResourceState s1, ResourceState s2) {
+            return s1.compareTo(s2) >= 0 ? s1 : s2;
+        }
+
+        /**
+         * Checks heap used by live data, using usage of the tenured (old gen)
+         * pool after its last collection if available. Eden and survivor
+         * spaces are full of garbage between collections, only the heap pool
+         * supporting a usage threshold is the tenured one.
+         */
+        private ResourceState checkHeap(StringBuilder reason) {
+            double usedRatio = -1;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() != MemoryType.HEAP || !pool.isUsageThresholdSupported()
+                        || !pool.isCollectionUsageThresholdSupported()) {
+                    continue;
+                }
+                final MemoryUsage usage = pool.getCollectionUsage();
+                if (usage == null || usage.getMax() <= 0) {
+                    continue;
+                }
+                usedRatio = Math.max(usedRatio, (double) usage.getUsed() / usage.getMax());
             }
+            if (usedRatio < 0) {
+                final Runtime runtime = Runtime.getRuntime();
+                usedRatio = (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+            }
+
+            if (usedRatio >= HEAP_PAUSE_RATIO) {
+                appendReason(reason, "heap " + Math.round(usedRatio * 100) + "% used");
+                return ResourceState.PAUSED;
+            } else if (usedRatio >= HEAP_THROTTLE_RATIO) {
+                appendReason(reason, "heap " + Math.round(usedRatio * 100) + "% used");
+                return ResourceState.THROTTLED;
+            }
+            return ResourceState.OK;
+        }
+
+        /**
+         * Checks ratio of time spent in GC since the last sample, smoothed
+         */
+        private ResourceState checkGc(StringBuilder reason) {
+            long gcTime = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                final long time = gc.getCollectionTime();
+                if (time > 0) {
+                    gcTime += time;
+                }
+            }
+            final long now = System.currentTimeMillis();
+            if (lastGcTime >= 0 && now > lastSampleTime) {
+                final double sampleRatio = Math.min(1.0, (double) (gcTime - lastGcTime) / (now - lastSampleTime));
+                gcRatio = GC_SMOOTHING * sampleRatio + (1 - GC_SMOOTHING) * gcRatio;
+            }
+            lastGcTime = gcTime;
+            lastSampleTime = now;
+
+            if (gcRatio >= GC_PAUSE_RATIO) {
+                appendReason(reason, "GC " + Math.round(gcRatio * 100) + "% of time");
+                return ResourceState.PAUSED;
+            } else if (gcRatio >= GC_THROTTLE_RATIO) {
+                appendReason(reason, "GC " + Math.round(gcRatio * 100) + "% of time");
+                return ResourceState.THROTTLED;
+            }
+            return ResourceState.OK;
+        }
+
+        /**
+         * Checks free disk space of all the monitored directories
+         */
+        private ResourceState checkDiskSpace(StringBuilder reason) {
+            final Map<String, File> dirs;
+            synchronized (IngestMonitor.this) {
+                dirs = new HashMap<String, File>(monitoredDirs);
+            }
+            ResourceState ret = ResourceState.OK;
+            for (Map.Entry<String, File> dir : dirs.entrySet()) {
+                long freeSpace;
+                try {
+                    freeSpace = getFreeSpace(dir.getValue());
+                } catch (SecurityException e) {
+                    logger.log(Level.WARNING, "Unable to check for free disk space (permission issue)", e);
+                    continue;
+                }
+                if (freeSpace < 0) {
+                    continue;
+                }
+                if (freeSpace < MIN_FREE_DISK_SPACE) {
+                    appendReason(reason, "low disk space on " + dir.getKey() + " drive " + dir.getValue().getAbsolutePath());
+                    ret = ResourceState.PAUSED;
+                } else if (freeSpace < LOW_FREE_DISK_SPACE && ret == ResourceState.OK) {
+                    appendReason(reason, "disk space getting low on " + dir.getKey() + " drive " + dir.getValue().getAbsolutePath());
+                    ret = ResourceState.THROTTLED;
+                }
+            }
+            return ret;
         }
 
         /**
-         * check disk space
+         * Gets free space of the drive of the directory, the directory may not
+         * exist yet
          *
-         * @return true if OK, false otherwise
+         * @return free space, or -1 if unknown
          */
-        private boolean checkDiskSpace() {
-            long freeSpace;
-            try {
-                freeSpace = root.getFreeSpace();
-            } catch (SecurityException e) {
-                logger.log(Level.WARNING, "Unable to check for free disk space (permission issue)", e);
-                return true; //OK
+        private long getFreeSpace(File dir) {
+            File existing = dir;
+            while (existing != null && !existing.exists()) {
+                existing = existing.getParentFile();
+            }
+            if (existing == null) {
+                return -1;
+            }
+            return existing.getFreeSpace();
+        }
+
+        private void appendReason(StringBuilder reason, String newReason) {
+            if (reason.length() > 0) {
+                reason.append(", ");
             }
-            //logger.log(Level.INFO, "Checking free disk apce: " + freeSpace + " need: " + Long.toString(MIN_FREE_DISK_SPACE));
-            return freeSpace > MIN_FREE_DISK_SPACE;
+            reason.append(newReason);
         }
     }
 }
@@ -0,0 +1,185 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import org.sleuthkit.datamodel.Image;
+
+/**
+ * Schedules ingest work of image and file modules on a shared budget of
+ * worker slots.
+ *
+ * Every running image module and every file ingest worker processing a file
+ * holds a worker slot, so the total number of modules running at once is
+ * bounded by the worker budget. Image modules can use at most all but one
+ * slots, so that file ingest always makes progress.
+ *
+ * In addition, the number of concurrent readers of every image (the physical
+ * evidence file) is capped, to prevent modules from thrashing the same disk.
+ * Image modules can use at most all but one reader slots of an image, so that
+ * file ingest of the image always makes progress too.
+ *
+ * Slots are acquired in a fixed order (image module slot, image module slot
+ * of the image, reader slot, worker slot) and released in the reverse order,
+ * so the waits cannot deadlock.
+ */
+class IngestScheduler {
+
+    private final int workerBudget;
+    private final int maxReadersPerImage;
+    private final Semaphore workerSlots;
+    private final Semaphore imageModuleSlots;
+    //reader slots of every image, by image id
+    private final Map<Long, Semaphore> readerSlots = new HashMap<Long, Semaphore>();
+    //image module slots of every image, by image id
+    private final Map<Long, Semaphore> imageModuleSlotsPerImage = new HashMap<Long, Semaphore>();
+
+    /**
+     * @param workerBudget max. number of modules running at once, at least 2
+     * so that a slot is left for file ingest
+     * @param maxReadersPerImage max. number of modules reading the same image
+     * at once, at least 2 so that a reader slot is left for file ingest
+     */
+    IngestScheduler(int workerBudget, int maxReadersPerImage) {
+        this.workerBudget = Math.max(2, workerBudget);
+        this.maxReadersPerImage = Math.max(2, maxReadersPerImage);
+        workerSlots = new Semaphore(this.workerBudget, true);
+        imageModuleSlots = new Semaphore(this.workerBudget - 1, true);
+    }
+
+    int getWorkerBudget() {
+        return workerBudget;
+    }
+
+    int getMaxReadersPerImage() {
+        return maxReadersPerImage;
+    }
+
+    /**
+     * Blocks until an image module can run on the image
+     *
+     * @param image image the module is going to process
+     * @throws InterruptedException if interrupted while waiting, no slots are
+     * held then
+     */
+    void acquireImageModuleSlot(Image image) throws InterruptedException {
+        imageModuleSlots.acquire();
+        final Semaphore imageModules = getImageModuleSlots(image);
+        try {
+            if (imageModules != null) {
+                imageModules.acquire();
+            }
+            try {
+                acquireFileSlot(image);
+            } catch (InterruptedException e) {
+                if (imageModules != null) {
+                    imageModules.release();
+                }
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            imageModuleSlots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the slots held by an image module that is done with the image
+     *
+     * @param image image the module processed
+     */
+    void releaseImageModuleSlot(Image image) {
+        releaseFileSlot(image);
+        final Semaphore imageModules = getImageModuleSlots(image);
+        if (imageModules != null) {
+            imageModules.release();
+        }
+        imageModuleSlots.release();
+    }
+
+    /**
+     * Blocks until a file ingest worker can run the file modules on a file of
+     * the image
+     *
+     * @param image image the file belongs to, or null if not known
+     * @throws InterruptedException if interrupted while waiting, no slots are
+     * held then
+     */
+    void acquireFileSlot(Image image) throws InterruptedException {
+        final Semaphore imageReaders = getReaderSlots(image);
+        if (imageReaders != null) {
+            imageReaders.acquire();
+        }
+        try {
+            workerSlots.acquire();
+        } catch (InterruptedException e) {
+            if (imageReaders != null) {
+                imageReaders.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the slots held by a file ingest worker done with a file
+     *
+     * @param image image the file belongs to, or null if not known
+     */
+    void releaseFileSlot(Image image) {
+        workerSlots.release();
+        final Semaphore imageReaders = getReaderSlots(image);
+        if (imageReaders != null) {
+            imageReaders.release();
+        }
+    }
+
+    private synchronized Semaphore getReaderSlots(Image image) {
+        if (image == null) {
+            return null;
+        }
+        Semaphore imageReaders = readerSlots.get(image.getId());
+        if (imageReaders == null) {
+            imageReaders = new Semaphore(maxReadersPerImage, true);
+            readerSlots.put(image.getId(), imageReaders);
+        }
+        return imageReaders;
+    }
+
+    private synchronized Semaphore getImageModuleSlots(Image image) {
+        if (image == null) {
+            return null;
+        }
+        Semaphore imageModules = imageModuleSlotsPerImage.get(image.getId());
+        if (imageModules == null) {
+            //one reader slot of the image is left for file ingest
+            imageModules = new Semaphore(maxReadersPerImage - 1, true);
+            imageModuleSlotsPerImage.put(image.getId(), imageModules);
+        }
+        return imageModules;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestScheduler, worker slots free: " + workerSlots.availablePermits() + " of " + workerBudget
+                + ", image module slots free: " + imageModuleSlots.availablePermits()
+                + ", max readers per image: " + maxReadersPerImage;
+    }
+}
@@ -20,9 +20,13 @@
 
 package org.sleuthkit.autopsy.ingest;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.ModuleSettings;
+import org.sleuthkit.datamodel.AbstractFile;
 
 
 /**
@@ -83,7 +87,9 @@ public class IngestServices {
 
     
     /**
-     * Fire module data event to notify registered module data event listeners
+     * Fire module data event to notify registered module data event listeners.
+     * Events of the same module and artifact type are merged and dispatched at
+     * a limited rate, so an event can be fired for every new artifact.
      * @param moduleDataEvent module data event, encapsulating blackboard artifact data
      */
     public void fireModuleDataEvent(ModuleDataEvent moduleDataEvent) {
@@ -104,6 +110,78 @@ public class IngestServices {
         return manager.getAbstractFileModuleResult(moduleName);
     }
     
+    /**
+     * Get live timing and throughput statistics of the file ingest modules,
+     * such as files/sec, process() latency percentiles and slowest files.
+     * The statistics are updated while the file ingest is running.
+     * 
+     * @return statistics of every file ingest module in the current (or last) file ingest
+     */
+    public List<IngestModuleStats> getFileModuleStats() {
+        return manager.getFileModuleStats();
+    }
+    
+    /**
+     * Get the type of the file content, detected by signature in the first few
+     * KB of the file rather than by file name extension. The type is detected
+     * once per file and cached for all modules (and persisted in the case), so
+     * modules should use this instead of reading file headers themselves.
+     * 
+     * @param file file to get the type of
+     * @return type of the file content, FileType.UNKNOWN if not recognized
+     */
+    public FileTypeDetector.FileType getFileType(AbstractFile file) {
+        return FileTypeDetector.getDefault().getFileType(file);
+    }
+    
+    /**
+     * Blocks while ingest is paused by the ingest monitor due to low resources
+     * (heap, GC pressure, disk space). Modules doing heavy work outside of the
+     * file ingest pipeline, such as posting to an index, should call it
+     * before every unit of such work.
+     * 
+     * @throws InterruptedException if interrupted while waiting, e.g. when ingest is stopped
+     */
+    public void waitForResources() throws InterruptedException {
+        manager.waitForResources();
+    }
+    
+    /**
+     * Records in the ingest journal that a module finished processing of the
+     * files, for modules that finish files after process() returns (see
+     * DeferredCompletionIngestModule). Files not recorded are processed again
+     * by the module if the ingest is resumed after a crash.
+     * 
+     * @param module module that finished the files
+     * @param fileIds ids of the files, e.g. the files committed to an index
+     */
+    public void fileModuleCompleted(IngestModuleAbstractFile module, Collection<Long> fileIds) {
+        manager.fileModuleCompleted(module, fileIds);
+    }
+    
+    /**
+     * Notifies that a module finishing files after process() returns (see
+     * DeferredCompletionIngestModule) finished the files of the ingest, and
+     * reported them with fileModuleCompleted()
+     * 
+     * @param module module done with the ingest
+     */
+    public void fileModuleDeferredWorkDone(IngestModuleAbstractFile module) {
+        manager.fileModuleDeferredWorkDone(module);
+    }
+    
+    /**
+     * Adds or replaces a directory the ingest monitor checks free disk space of,
+     * in addition to the case directory. Ingest is throttled or paused when
+     * the drive of the directory is running out of space.
+     * 
+     * @param name name to refer to the directory by, e.g. module name
+     * @param dir directory written to by the module, null to stop monitoring
+     */
+    public void setMonitoredDirectory(String name, File dir) {
+        manager.setMonitoredDirectory(name, dir);
+    }
+    
     /**
      * Gets a configuration setting for a module
      * @param moduleName moduleName identifier unique to that module
@@ -0,0 +1,157 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.BlackboardArtifact.ARTIFACT_TYPE;
+
+/**
+ * Merges module data events and dispatches them to listeners at a limited
+ * rate.
+ *
+ * Events of the same artifact type (and module) posted within the dispatch
+ * interval are merged into a single event with the artifacts of all of them,
+ * and the merged events are dispatched at most a given number of times per
+ * second, so that listeners such as the directory tree are not flooded with an
+ * event per artifact.
+ *
+ * An event posted after a quiet period is dispatched right away. If any of the
+ * merged events has no artifacts (the listener is expected to query the
+ * blackboard), the merged event has no artifacts either.
+ */
+class ModuleDataEventAggregator {
+
+    private static final Logger logger = Logger.getLogger(ModuleDataEventAggregator.class.getName());
+    private final long dispatchInterval;
+    //events waiting for dispatch, by module and artifact type, in order posted
+    private Map<String, PendingEvent> pending = new LinkedHashMap<String, PendingEvent>();
+    private boolean dispatchScheduled = false;
+    private long lastDispatch = 0;
+    private final ScheduledExecutorService dispatcher;
+
+    /**
+     * @param maxDispatchesPerSec max. number of times per second merged events
+     * are dispatched to listeners
+     */
+    ModuleDataEventAggregator(int maxDispatchesPerSec) {
+        dispatchInterval = 1000 / Math.max(1, Math.min(1000, maxDispatchesPerSec));
+        dispatcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ModuleDataEventDispatcher");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Adds the event to the events to dispatch, merging it with a pending
+     * event of the same module and artifact type
+     *
+     * @param event event posted by a module
+     */
+    synchronized void post(ModuleDataEvent event) {
+        final String key = event.getModuleName() + "/" + event.getArtifactType().name();
+        PendingEvent merged = pending.get(key);
+        if (merged == null) {
+            merged = new PendingEvent(event.getModuleName(), event.getArtifactType());
+            pending.put(key, merged);
+        }
+        merged.add(event.getArtifacts());
+
+        if (!dispatchScheduled) {
+            dispatchScheduled = true;
+            final long delay = Math.max(0, lastDispatch + dispatchInterval - System.currentTimeMillis());
+            dispatcher.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Dispatches the pending events right away, in the calling thread
+     */
+    void flush() {
+        final Collection<PendingEvent> toDispatch;
+        synchronized (this) {
+            dispatchScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            toDispatch = pending.values();
+            pending = new LinkedHashMap<String, PendingEvent>();
+            lastDispatch = System.currentTimeMillis();
+        }
+        for (PendingEvent event : toDispatch) {
+            try {
+                IngestManager.dispatchModuleDataEvent(event.toModuleDataEvent());
+            } catch (Exception e) {
+                //keep dispatching the other events
+                logger.log(Level.WARNING, "Error dispatching module data event, module: " + event.moduleName
+                        + ", artifact type: " + event.artifactType, e);
+            }
+        }
+    }
+
+    /**
+     * Merged events of a module and artifact type
+     */
+    private static class PendingEvent {
+
+        private final String moduleName;
+        private final ARTIFACT_TYPE artifactType;
+        //null if any of the events did not report the artifacts
+        private List<BlackboardArtifact> artifacts = new ArrayList<BlackboardArtifact>();
+
+        PendingEvent(String moduleName, ARTIFACT_TYPE artifactType) {
+            this.moduleName = moduleName;
+            this.artifactType = artifactType;
+        }
+
+        void add(Collection<BlackboardArtifact> newArtifacts) {
+            if (newArtifacts == null) {
+                artifacts = null;
+            } else if (artifacts != null) {
+                artifacts.addAll(newArtifacts);
+            }
+        }
+
+        ModuleDataEvent toModuleDataEvent() {
+            if (artifacts == null) {
+                return new ModuleDataEvent(moduleName, artifactType);
+            }
+            return new ModuleDataEvent(moduleName, artifactType, artifacts);
+        }
+    }
+}
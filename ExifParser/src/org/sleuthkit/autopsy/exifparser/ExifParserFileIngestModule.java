@@ -30,21 +30,25 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.ingest.FileTypeDetector.FileType;
 import org.sleuthkit.autopsy.ingest.IngestServices;
 import org.sleuthkit.autopsy.ingest.IngestMessage;
 import org.sleuthkit.autopsy.ingest.IngestMessage.MessageType;
 import org.sleuthkit.autopsy.ingest.IngestModuleAbstract;
 import org.sleuthkit.autopsy.ingest.IngestModuleAbstractFile;
 import org.sleuthkit.autopsy.ingest.IngestModuleInit;
+import org.sleuthkit.autopsy.ingest.ModuleDataEvent;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardAttribute;
 import org.sleuthkit.datamodel.BlackboardAttribute.ATTRIBUTE_TYPE;
 import org.sleuthkit.datamodel.FsContent;
 import org.sleuthkit.datamodel.ReadContentInputStream;
+import org.sleuthkit.datamodel.SleuthkitCase;
 import org.sleuthkit.datamodel.TskCoreException;
 import org.sleuthkit.datamodel.TskData.TSK_DB_FILES_TYPE_ENUM;
 
@@ -153,8 +157,17 @@ public final class ExifParserFileIngestModule implements IngestModuleAbstractFil
             
             // Add the attributes, if there are any, to a new artifact
             if(!attributes.isEmpty()) {
-                BlackboardArtifact bba = f.newArtifact(BlackboardArtifact.ARTIFACT_TYPE.TSK_METADATA_EXIF);
-                bba.addAttributes(attributes);
+                //the artifact and all of its attributes written together
+                final BlackboardArtifact bba;
+                SleuthkitCase.dbWriteLock();
+                try {
+                    bba = f.newArtifact(BlackboardArtifact.ARTIFACT_TYPE.TSK_METADATA_EXIF);
+                    bba.addAttributes(attributes);
+                } finally {
+                    SleuthkitCase.dbWriteUnlock();
+                }
+                //merged with the other exif events by the ingest manager
+                services.fireModuleDataEvent(new ModuleDataEvent(MODULE_NAME, BlackboardArtifact.ARTIFACT_TYPE.TSK_METADATA_EXIF, Collections.singletonList(bba)));
             }
             
             return IngestModuleAbstractFile.ProcessResult.OK;
@@ -179,18 +192,8 @@ public final class ExifParserFileIngestModule implements IngestModuleAbstractFil
     }
     
     private boolean parsableFormat(FsContent f) {
-        // Get the name, extension
-        String name = f.getName();
-        int dotIndex = name.lastIndexOf(".");
-        if (dotIndex == -1) {
-            return false;
-        }
-        String ext = name.substring(dotIndex).toLowerCase();
-        if(ext.equals(".jpeg") || ext.equals(".jpg")) {
-            return true;
-        }
-        
-        return false;
+        // Check the content signature, detected once for all modules, not the extension
+        return services.getFileType(f) == FileType.JPEG;
     }
 
     @Override
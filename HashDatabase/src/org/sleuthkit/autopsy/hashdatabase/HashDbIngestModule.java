@@ -19,8 +19,9 @@
 package org.sleuthkit.autopsy.hashdatabase;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
@@ -263,48 +264,72 @@ public class HashDbIngestModule implements IngestModuleAbstractFile {
         HashDbXML.getCurrent().save();
     }
 
-    private void processBadFile(AbstractFile abstractFile, String md5Hash, String hashSetName, boolean showInboxMessage) {
+    /**
+     * Marks the file as known bad and writes a hash set hit artifact for each
+     * of the known bad hash sets it is in. The artifacts are created together
+     * under the case database write lock, and each gets its attributes with a
+     * single insert.
+     *
+     * @param abstractFile file found in the known bad hash sets
+     * @param md5Hash hash of the file
+     * @param badSets known bad hash sets the file is in
+     * @throws TskException if the file or its artifacts could not be written
+     */
+    private void processBadFile(AbstractFile abstractFile, String md5Hash, List<HashDb> badSets) throws TskException {
+        final List<BlackboardArtifact> badFiles = new ArrayList<BlackboardArtifact>();
+        SleuthkitCase.dbWriteLock();
         try {
-            BlackboardArtifact badFile = abstractFile.newArtifact(ARTIFACT_TYPE.TSK_HASHSET_HIT);
+            skCase.setKnown(abstractFile, TskData.FileKnown.BAD);
+            for (HashDb badSet : badSets) {
+                BlackboardArtifact badFile = abstractFile.newArtifact(ARTIFACT_TYPE.TSK_HASHSET_HIT);
+                final List<BlackboardAttribute> attributes = new ArrayList<BlackboardAttribute>();
                 //TODO Revisit usage of deprecated constructor as per TSK-583
                 //BlackboardAttribute att2 = new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID(), MODULE_NAME, "Known Bad", hashSetName);
-                BlackboardAttribute att2 = new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID(), MODULE_NAME, hashSetName);
-            badFile.addAttribute(att2);
-            BlackboardAttribute att3 = new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_HASH_MD5.getTypeID(), MODULE_NAME, md5Hash);
-            badFile.addAttribute(att3);
-            if (showInboxMessage) {
-                StringBuilder detailsSb = new StringBuilder();
-                //details
-                detailsSb.append("<table border='0' cellpadding='4' width='280'>");
-                //hit
-                detailsSb.append("<tr>");
-                detailsSb.append("<th>File Name</th>");
-                detailsSb.append("<td>").append(abstractFile.getName()).append("</td>");
-                detailsSb.append("</tr>");
-
-                detailsSb.append("<tr>");
-                detailsSb.append("<th>MD5 Hash</th>");
-                detailsSb.append("<td>").append(md5Hash).append("</td>");
-                detailsSb.append("</tr>");
-
-                detailsSb.append("<tr>");
-                detailsSb.append("<th>Hashset Name</th>");
-                detailsSb.append("<td>").append(hashSetName).append("</td>");
-                detailsSb.append("</tr>");
-
-                detailsSb.append("</table>");
-
-                services.postMessage(IngestMessage.createDataMessage(++messageId, this,
-                        "Notable: " + abstractFile.getName(),
-                        detailsSb.toString(),
-                        abstractFile.getName() + md5Hash,
-                        badFile));
+                attributes.add(new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID(), MODULE_NAME, badSet.getName()));
+                attributes.add(new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_HASH_MD5.getTypeID(), MODULE_NAME, md5Hash));
+                badFile.addAttributes(attributes);
+                badFiles.add(badFile);
+            }
+        } finally {
+            SleuthkitCase.dbWriteUnlock();
+        }
+
+        for (int i = 0; i < badSets.size(); ++i) {
+            if (badSets.get(i).getShowInboxMessages()) {
+                postBadFileMessage(abstractFile, md5Hash, badSets.get(i).getName(), badFiles.get(i));
             }
-            services.fireModuleDataEvent(new ModuleDataEvent(MODULE_NAME, ARTIFACT_TYPE.TSK_HASHSET_HIT, Collections.singletonList(badFile)));
-        } catch (TskException ex) {
-            logger.log(Level.WARNING, "Error creating blackboard artifact", ex);
         }
+        //merged with the other hits by the ingest manager
+        services.fireModuleDataEvent(new ModuleDataEvent(MODULE_NAME, ARTIFACT_TYPE.TSK_HASHSET_HIT, badFiles));
+    }
+
+    private void postBadFileMessage(AbstractFile abstractFile, String md5Hash, String hashSetName, BlackboardArtifact badFile) {
+        StringBuilder detailsSb = new StringBuilder();
+        //details
+        detailsSb.append("<table border='0' cellpadding='4' width='280'>");
+        //hit
+        detailsSb.append("<tr>");
+        detailsSb.append("<th>File Name</th>");
+        detailsSb.append("<td>").append(abstractFile.getName()).append("</td>");
+        detailsSb.append("</tr>");
+
+        detailsSb.append("<tr>");
+        detailsSb.append("<th>MD5 Hash</th>");
+        detailsSb.append("<td>").append(md5Hash).append("</td>");
+        detailsSb.append("</tr>");
+
+        detailsSb.append("<tr>");
+        detailsSb.append("<th>Hashset Name</th>");
+        detailsSb.append("<td>").append(hashSetName).append("</td>");
+        detailsSb.append("</tr>");
+
+        detailsSb.append("</table>");
 
+        services.postMessage(IngestMessage.createDataMessage(++messageId, this,
+                "Notable: " + abstractFile.getName(),
+                detailsSb.toString(),
+                abstractFile.getName() + md5Hash,
+                badFile));
     }
 
     private class Processor extends ContentVisitor.Default<ProcessResult> {
@@ -337,19 +362,21 @@ public class HashDbIngestModule implements IngestModuleAbstractFile {
                         calctime += (System.currentTimeMillis() - calcstart);
                     }
                     TskData.FileKnown status = TskData.FileKnown.UKNOWN;
-                    boolean foundBad = false;
+                    //look up all the sets first, to write the hits of the file together
+                    final List<HashDb> badSets = new ArrayList<HashDb>();
                     for (Map.Entry<Integer, HashDb> entry : knownBadSets.entrySet()) {
                         long lookupstart = System.currentTimeMillis();
                         status = skCase.knownBadLookupMd5(md5Hash, entry.getKey());
                         lookuptime += (System.currentTimeMillis() - lookupstart);
                         if (status.equals(TskData.FileKnown.BAD)) {
-                            foundBad = true;
                             count += 1;
-                            skCase.setKnown(fsContent, status);
-                            String hashSetName = entry.getValue().getName();
-                            processBadFile(fsContent, md5Hash, hashSetName, entry.getValue().getShowInboxMessages());
+                            badSets.add(entry.getValue());
                         }
                     }
+                    final boolean foundBad = !badSets.isEmpty();
+                    if (foundBad) {
+                        processBadFile(fsContent, md5Hash, badSets);
+                    }
                     if (!foundBad && nsrlIsSet) {
                         long lookupstart = System.currentTimeMillis();
                         status = skCase.nsrlLookupMd5(md5Hash);
@@ -27,6 +27,9 @@ import org.sleuthkit.datamodel.AbstractFile;
 /**
  * Common methods for utilities that extract text and content and divide into
  * chunks
+ *
+ * An extractor is not thread-safe, it reuses its buffers for all the files it
+ * extracts. Every extraction worker thread has its own extractors.
  */
 interface AbstractFileExtract {
     
@@ -27,6 +27,8 @@ import java.util.Map;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
+import org.sleuthkit.autopsy.ingest.FileTypeDetector.FileType;
+import org.sleuthkit.autopsy.ingest.IngestServices;
 import org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.ReadContentInputStream;
@@ -43,7 +45,7 @@ public class AbstractFileHtmlExtract implements AbstractFileExtract {
     static final int MAX_EXTR_TEXT_CHARS = 512 * 1024;
     private static final int SINGLE_READ_CHARS = 1024;
     private static final int EXTRA_CHARS = 128; //for whitespace
-    private static final char[] TEXT_CHUNK_BUF = new char[MAX_EXTR_TEXT_CHARS];
+    private final char[] textChunkBuf = new char[MAX_EXTR_TEXT_CHARS];
     private KeywordSearchIngestModule module;
     private Ingester ingester;
     private AbstractFile sourceFile;
@@ -115,12 +117,12 @@ public class AbstractFileHtmlExtract implements AbstractFileExtract {
             long totalRead = 0;
             boolean eof = false;
             //we read max 1024 chars at time, this seems to max what this Reader would return
-            while (!eof && (readSize = reader.read(TEXT_CHUNK_BUF, 0, SINGLE_READ_CHARS)) != -1) {
+            while (!eof && (readSize = reader.read(textChunkBuf, 0, SINGLE_READ_CHARS)) != -1) {
                 totalRead += readSize;
 
                 //consume more bytes to fill entire chunk (leave EXTRA_CHARS to end the word)
                 while ((totalRead < MAX_EXTR_TEXT_CHARS - SINGLE_READ_CHARS - EXTRA_CHARS)
-                        && (readSize = reader.read(TEXT_CHUNK_BUF, (int) totalRead, SINGLE_READ_CHARS)) != -1) {
+                        && (readSize = reader.read(textChunkBuf, (int) totalRead, SINGLE_READ_CHARS)) != -1) {
                     totalRead += readSize;
                 }
                 if (readSize == -1) {
@@ -129,8 +131,8 @@ public class AbstractFileHtmlExtract implements AbstractFileExtract {
                 } else {
                     //try to read until whitespace to not break words
                     while ((totalRead < MAX_EXTR_TEXT_CHARS - 1)
-                            && !Character.isWhitespace(TEXT_CHUNK_BUF[(int) totalRead - 1])
-                            && (readSize = reader.read(TEXT_CHUNK_BUF, (int) totalRead, 1)) != -1) {
+                            && !Character.isWhitespace(textChunkBuf[(int) totalRead - 1])
+                            && (readSize = reader.read(textChunkBuf, (int) totalRead, 1)) != -1) {
                         totalRead += readSize;
                     }
                     if (readSize == -1) {
@@ -148,9 +150,9 @@ public class AbstractFileHtmlExtract implements AbstractFileExtract {
                 //inject BOM here (saves byte buffer realloc later), will be converted to specific encoding BOM
                 sb.append(UTF16BOM);
                 if (totalRead < MAX_EXTR_TEXT_CHARS) {
-                    sb.append(TEXT_CHUNK_BUF, 0, (int) totalRead);
+                    sb.append(textChunkBuf, 0, (int) totalRead);
                 } else {
-                    sb.append(TEXT_CHUNK_BUF);
+                    sb.append(textChunkBuf);
                 }
 
                 //reset for next chunk
@@ -208,6 +210,14 @@ public class AbstractFileHtmlExtract implements AbstractFileExtract {
 
     @Override
     public boolean isSupported(AbstractFile file) {
+        final FileType type = IngestServices.getDefault().getFileType(file);
+        if (type == FileType.HTML) {
+            return true;
+        } else if (type != FileType.TEXT) {
+            //binary content named like a web file
+            return false;
+        }
+        //text of web files without html markup, such as scripts and style sheets
         String fileNameLower = file.getName().toLowerCase();
         for (int i = 0; i < SUPPORTED_EXTENSIONS.length; ++i) {
             if (fileNameLower.endsWith(SUPPORTED_EXTENSIONS[i])) {
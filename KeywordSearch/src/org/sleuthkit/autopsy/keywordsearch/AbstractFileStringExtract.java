@@ -47,8 +47,8 @@ class AbstractFileStringExtract implements AbstractFileExtract {
     private static final Logger logger = Logger.getLogger(AbstractFileStringExtract.class.getName());
     static final long MAX_STRING_CHUNK_SIZE = 1 * 1024 * 1024L;
     private AbstractFile sourceFile;
-    //single static buffer for all extractions.  Safe, indexing can only happen in one thread
-    private static final byte[] STRING_CHUNK_BUF = new byte[(int) MAX_STRING_CHUNK_SIZE];
+    private final byte[] stringChunkBuf = new byte[(int) MAX_STRING_CHUNK_SIZE];
+    private final byte[] fileReadBuf = new byte[AbstractFileStringIntStream.FILE_BUF_SIZE];
     private static final int BOM_LEN = 3;
     private static final Charset INDEX_CHARSET = Server.DEFAULT_INDEXED_TEXT_CHARSET;
     
@@ -56,17 +56,14 @@ class AbstractFileStringExtract implements AbstractFileExtract {
     private final List<SCRIPT> extractScripts = new ArrayList<SCRIPT>();
     private Map<String,String> extractOptions = new HashMap<String,String>();
 
-    static {
-        //prepend UTF-8 BOM to start of the buffer
-        STRING_CHUNK_BUF[0] = (byte) 0xEF;
-        STRING_CHUNK_BUF[1] = (byte) 0xBB;
-        STRING_CHUNK_BUF[2] = (byte) 0xBF;
-    }
-
     public AbstractFileStringExtract() {
         this.module = KeywordSearchIngestModule.getDefault();
         this.ingester = Server.getIngester();
         this.extractScripts.add(DEFAULT_SCRIPT);
+        //prepend UTF-8 BOM to start of the buffer
+        stringChunkBuf[0] = (byte) 0xEF;
+        stringChunkBuf[1] = (byte) 0xBB;
+        stringChunkBuf[2] = (byte) 0xBF;
     }
 
     @Override
@@ -129,7 +126,7 @@ class AbstractFileStringExtract implements AbstractFileExtract {
         }
         else {
             stringStream = new AbstractFileStringIntStream(
-                sourceFile, extractScripts, extractUTF8, extractUTF16, INDEX_CHARSET);
+                sourceFile, extractScripts, extractUTF8, extractUTF16, INDEX_CHARSET, fileReadBuf);
         }
         
 
@@ -138,14 +135,14 @@ class AbstractFileStringExtract implements AbstractFileExtract {
             //break input stream into chunks 
             
             long readSize = 0;
-            while ((readSize = stringStream.read(STRING_CHUNK_BUF, BOM_LEN, (int) MAX_STRING_CHUNK_SIZE - BOM_LEN)) != -1) {
+            while ((readSize = stringStream.read(stringChunkBuf, BOM_LEN, (int) MAX_STRING_CHUNK_SIZE - BOM_LEN)) != -1) {
                 //FileOutputStream debug = new FileOutputStream("c:\\temp\\" + sourceFile.getName() + Integer.toString(this.numChunks+1));
-                //debug.write(STRING_CHUNK_BUF, 0, (int)readSize);
+                //debug.write(stringChunkBuf, 0, (int)readSize);
 
                 AbstractFileChunk chunk = new AbstractFileChunk(this, this.numChunks + 1);
 
                 try {
-                    chunk.index(ingester, STRING_CHUNK_BUF, readSize + BOM_LEN, INDEX_CHARSET);
+                    chunk.index(ingester, stringChunkBuf, readSize + BOM_LEN, INDEX_CHARSET);
                     ++this.numChunks;
                 } catch (IngesterException ingEx) {
                     success = false;
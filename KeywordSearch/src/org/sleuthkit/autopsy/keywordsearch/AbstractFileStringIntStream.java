@@ -34,16 +34,24 @@ import org.sleuthkit.datamodel.TskCoreException;
  * object, extract international strings from the file and read output as a
  * stream of UTF-8 strings as encoded bytes.
  *
- * Currently not-thread safe (reusing static buffers for efficiency)
+ * Not thread-safe. The file read buffer can be passed in, to reuse it for
+ * every file extracted by a thread.
  */
 public class AbstractFileStringIntStream extends InputStream {
 
     private AbstractFile content;
     private final byte[] oneCharBuf = new byte[1];
     private final StringExtract stringExtractor;
-    private static final int FILE_BUF_SIZE = 1024 * 1024;
-    private static final byte[] fileReadBuff = new byte[FILE_BUF_SIZE]; //NOTE: need to run all stream extraction in same thread
-    private long fileReadOffset = 0L;
+    static final int FILE_BUF_SIZE = 1024 * 1024;
+    private final byte[] fileReadBuff;
+    private long fileReadOffset = 0L; //file offset the next bytes are read from
+    private byte[] carryBuff = new byte[MAX_PARTIAL_STRING_BYTES]; //unprocessed tail of the last window
+    private int carryLen = 0; //num bytes in carryBuff
+    private int windowStart = 0; //offset in the next window to start extraction at
+    //max. bytes of a char, a string ending this close to the end of a window may continue in the next one
+    private static final int MAX_CHAR_BYTES = 4;
+    //chars at the end of a window too few to make a string may start one continuing in the next window
+    private static final int MAX_PARTIAL_STRING_BYTES = StringExtract.MIN_CHARS_STRING * MAX_CHAR_BYTES;
     private byte[] convertBuff; //stores extracted string encoded as bytes, before returned to user
     private int convertBuffOffset = 0; //offset to start returning data to user on next read()
     private int bytesInConvertBuff = 0; //amount of data currently in the buffer
@@ -67,7 +75,24 @@ public class AbstractFileStringIntStream extends InputStream {
      */
     public AbstractFileStringIntStream(AbstractFile content, List<SCRIPT> scripts, boolean extractUTF8, 
            boolean extractUTF16, Charset outCharset) {
+        this(content, scripts, extractUTF8, extractUTF16, outCharset, new byte[FILE_BUF_SIZE]);
+    }
+
+    /**
+     * Constructs new stream object reading the file into the given buffer
+     *
+     * @param content input content to process and turn into a stream to convert into strings
+     * @param scripts a list of scripts to consider
+     * @param extractUTF8 whether to extract utf8 encoding
+     * @param extractUTF16 whether to extract utf16 encoding
+     * @param outCharset encoding to use in the output byte stream
+     * @param fileReadBuff buffer of FILE_BUF_SIZE bytes to read the file into,
+     * not to be used by anything else until the stream is closed
+     */
+    AbstractFileStringIntStream(AbstractFile content, List<SCRIPT> scripts, boolean extractUTF8, 
+           boolean extractUTF16, Charset outCharset, byte[] fileReadBuff) {
         this.content = content;
+        this.fileReadBuff = fileReadBuff;
         this.stringExtractor = new StringExtract();
         this.stringExtractor.setEnabledScripts(scripts);
         this.extractUTF8 = extractUTF8;
@@ -122,36 +147,28 @@ public class AbstractFileStringIntStream extends InputStream {
             if ((convertBuff == null || convertBuffRemain == 0) && !fileEOF && fileReadOffset < fileSize) {
                 try {
                     //convert more strings, store in buffer
-                    long toRead = 0;
-                    //int shiftSize = 0;
-                    
-                    //if (lastExtractResult != null && lastExtractResult.getTextLength() != 0
-                      //      && (shiftSize = FILE_BUF_SIZE - lastExtractResult.getFirstUnprocessedOff()) > 0) {
-                        ////a string previously extracted
-                        ////shift the fileReadBuff past last bytes extracted
-                        ////read only what's needed to fill the buffer
-                        ////to avoid loosing chars and breaking or corrupting potential strings - preserve byte stream continuity
-                        //byte[] temp = new byte[shiftSize];
-                        //System.arraycopy(fileReadBuff, lastExtractResult.getFirstUnprocessedOff(),
-                        //        temp, 0, shiftSize);
-                        //System.arraycopy(temp, 0, fileReadBuff, 0, shiftSize);
-                        //toRead = Math.min(lastExtractResult.getFirstUnprocessedOff(), fileSize - fileReadOffset);
-                        //lastExtractResult = null;
-                    //} else { 
-                        //fill up entire fileReadBuff fresh
-                        toRead = Math.min(FILE_BUF_SIZE, fileSize - fileReadOffset);
-                    //}
-                    int read = content.read(fileReadBuff, fileReadOffset, toRead);
-                    if (read == -1 || read == 0) {
+                    //the unprocessed tail of the previous window stays at the start of the buffer,
+                    //only the rest of the window is read from the file
+                    final long toRead = Math.min(fileReadBuff.length - carryLen, fileSize - fileReadOffset);
+                    final int read = Math.max(content.read(fileReadBuff, fileReadOffset, toRead), 0);
+                    if (carryLen > 0) {
+                        //content reads to the start of the buffer, put the tail in front of the new bytes
+                        System.arraycopy(fileReadBuff, 0, fileReadBuff, carryLen, read);
+                        System.arraycopy(carryBuff, 0, fileReadBuff, 0, carryLen);
+                    }
+                    final int windowLen = carryLen + read;
+                    if (windowLen <= windowStart) {
                         fileEOF = true;
                     } else {
                         fileReadOffset += read;
-                        if (fileReadOffset >= fileSize) {
+                        final boolean lastWindow = read == 0 || fileReadOffset >= fileSize;
+                        if (lastWindow) {
                             fileEOF = true;
                         }
 
                         //put converted string in convertBuff
-                        convert(read);
+                        final int windowEnd = convert(windowStart, windowLen, lastWindow);
+                        carry(windowEnd, windowLen);
                         convertBuffRemain = bytesInConvertBuff - convertBuffOffset;
                     }
                 } catch (TskCoreException ex) {
@@ -198,20 +215,69 @@ public class AbstractFileStringIntStream extends InputStream {
 
     /**
      * convert bytes in file buffer to string, and encode string in
-     * convertBuffer
+     * convertBuffer.
      *
-     * @param numBytes num bytes in the fileReadBuff
+     * Unless it is the last window of the file, a string that may continue
+     * past the end of the window is left out, and the offset it starts at is
+     * returned, so that the next window starts there and the string is
+     * extracted whole, as it would be from the entire file.
+     *
+     * @param windowStart offset in the fileReadBuff to start extraction at
+     * @param windowLen num bytes in the fileReadBuff
+     * @param lastWindow true if the window ends at the end of the file
+     * @return offset in the fileReadBuff the next window should start at
      */
-    private void convert(int numBytes) {
-        lastExtractResult = stringExtractor.extract(fileReadBuff, numBytes, 0);
-        convertBuff = lastExtractResult.getText().getBytes(outCharset);
+    private int convert(int windowStart, int windowLen, boolean lastWindow) {
+        lastExtractResult = stringExtractor.extract(fileReadBuff, windowLen, windowStart);
+        String text = lastExtractResult.getText();
+        int windowEnd = windowLen;
+        if (!lastWindow) {
+            final boolean hasStrings = lastExtractResult.getNumBytes() > 0;
+            final int lastStringStart = lastExtractResult.getLastStringOffset();
+            if (hasStrings && lastExtractResult.getFirstUnprocessedOff() > windowLen - MAX_CHAR_BYTES
+                    && lastStringStart > windowStart) {
+                //last string may be cut off by the end of window, extract it in the next window
+                windowEnd = lastStringStart;
+                text = text.substring(0, lastExtractResult.getLastStringTextOffset());
+            } else {
+                //carry the tail that could start a string
+                final int processedEnd = hasStrings ? lastExtractResult.getFirstUnprocessedOff() : windowStart;
+                windowEnd = Math.max(processedEnd, (windowLen - MAX_PARTIAL_STRING_BYTES) & ~1);
+            }
+            if ((windowEnd & ~1) == 0) {
+                //window too small to carry anything, move on
+                windowEnd = windowLen;
+            }
+        }
+
+        convertBuff = text.getBytes(outCharset);
 
         //reset tracking vars
-        if (lastExtractResult.getNumBytes() == 0) {
+        if (text.length() == 0) {
             bytesInConvertBuff = 0;
         } else {
             bytesInConvertBuff = convertBuff.length;
         }
         convertBuffOffset = 0;
+        return windowEnd;
+    }
+
+    /**
+     * Saves the bytes of the window from windowEnd on, to be put at the start
+     * of the next window. The tail is kept from an even offset, so that buffer
+     * offsets keep the parity of file offsets and UTF16 is extracted at the
+     * same alignment as from the whole file.
+     *
+     * @param windowEnd offset in the fileReadBuff the next window starts at
+     * @param windowLen num bytes in the fileReadBuff
+     */
+    private void carry(int windowEnd, int windowLen) {
+        final int carryStart = windowEnd & ~1;
+        carryLen = windowLen - carryStart;
+        windowStart = windowEnd - carryStart;
+        if (carryLen > carryBuff.length) {
+            carryBuff = new byte[carryLen];
+        }
+        System.arraycopy(fileReadBuff, carryStart, carryBuff, 0, carryLen);
     }
 }
@@ -0,0 +1,269 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
+import org.sleuthkit.autopsy.ingest.FileTypeDetector.FileType;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+import org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.ReadContentInputStream;
+
+/**
+ * Extractor of plain text AbstractFile content. The content is decoded
+ * directly, without a Tika parse, divided into chunks and indexed with Solr.
+ *
+ * The charset is taken from the BOM, else UTF-8 if the start of the content is
+ * valid UTF-8, else windows-1252. The file type and the charset are only
+ * detected from the start of the content, if a later chunk does not decode to
+ * text (e.g. a log with embedded binary data), the extraction is given up and
+ * the file is left to string extraction.
+ */
+public class AbstractFileTextExtract implements AbstractFileExtract {
+
+    private static final Logger logger = Logger.getLogger(AbstractFileTextExtract.class.getName());
+    private static final Charset OUTPUT_CHARSET = Server.DEFAULT_INDEXED_TEXT_CHARSET;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset UTF16LE = Charset.forName("UTF-16LE");
+    private static final Charset UTF16BE = Charset.forName("UTF-16BE");
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+    //bytes checked to pick the charset, as many as the file type is detected from
+    private static final int CHARSET_DETECT_BYTES = 4 * 1024;
+    //max. ratio of replacement and control chars in a chunk of text, more and the chunk is binary data
+    private static final double MAX_NON_TEXT_RATIO = 0.1;
+    private final char[] textChunkBuf = new char[AbstractFileTikaTextExtract.MAX_EXTR_TEXT_CHARS];
+    private KeywordSearchIngestModule module;
+    private Ingester ingester;
+    private AbstractFile sourceFile;
+    private int numChunks = 0;
+
+    AbstractFileTextExtract() {
+        this.module = KeywordSearchIngestModule.getDefault();
+        ingester = Server.getIngester();
+    }
+
+    @Override
+    public boolean setScripts(List<SCRIPT> extractScripts) {
+        return false;
+    }
+
+    @Override
+    public List<SCRIPT> getScripts() {
+        return null;
+    }
+
+    @Override
+    public Map<String, String> getOptions() {
+        return null;
+    }
+
+    @Override
+    public void setOptions(Map<String, String> options) {
+
+    }
+
+    @Override
+    public int getNumChunks() {
+        return numChunks;
+    }
+
+    @Override
+    public AbstractFile getSourceFile() {
+        return sourceFile;
+    }
+
+    @Override
+    public boolean index(AbstractFile sourceFile) throws IngesterException {
+        this.sourceFile = sourceFile;
+        this.numChunks = 0; //unknown until indexing is done
+
+        boolean success = false;
+        Reader reader = null;
+
+        final InputStream stream = new ReadContentInputStream(sourceFile);
+
+        try {
+            reader = openReader(stream);
+
+            success = true;
+            AbstractFileTikaTextExtract.TextChunker chunker = new AbstractFileTikaTextExtract.TextChunker(reader, textChunkBuf);
+            while (chunker.next()) {
+                if (!isText(textChunkBuf, chunker.getLength())) {
+                    logger.log(Level.INFO, "Chunk " + (this.numChunks + 1) + " of file '" + sourceFile.getName()
+                            + "' (id: " + sourceFile.getId() + ") is not text, leaving the file to string extraction");
+                    //the string extractor indexes the file and its chunks again
+                    return false;
+                }
+                byte[] encodedBytes = AbstractFileTikaTextExtract.encodeChunk(textChunkBuf, chunker.getLength(), null);
+                AbstractFileChunk chunk = new AbstractFileChunk(this, this.numChunks + 1);
+                try {
+                    chunk.index(ingester, encodedBytes, encodedBytes.length, OUTPUT_CHARSET);
+                    ++this.numChunks;
+                } catch (Ingester.IngesterException ingEx) {
+                    success = false;
+                    logger.log(Level.WARNING, "Ingester had a problem with text from file '"
+                            + sourceFile.getName() + "' (id: " + sourceFile.getId() + ").", ingEx);
+                    throw ingEx; //need to rethrow/return to signal error and move on
+                }
+
+                //check if need invoke commit/search between chunks
+                //not to delay commit if timer has gone off
+                module.checkRunCommitSearch();
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Unable to read content stream from " + sourceFile.getId() + ": " + sourceFile.getName(), ex);
+            success = false;
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Unexpected error, can't read content stream from " + sourceFile.getId() + ": " + sourceFile.getName(), ex);
+            success = false;
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Unable to close content stream from " + sourceFile.getId(), ex);
+            }
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Unable to close content reader from " + sourceFile.getId(), ex);
+            }
+        }
+
+        //after all chunks, ingest the parent file without content itself, and store numChunks
+        ingester.ingest(this);
+
+        return success;
+    }
+
+    /**
+     * Opens a reader of the text, in the charset of its BOM or detected from
+     * the start of the text. The BOM is skipped.
+     *
+     * @param stream stream of the text
+     * @return reader decoding the stream, malformed input is replaced
+     * @throws IOException if the start of the text could not be read
+     */
+    static Reader openReader(InputStream stream) throws IOException {
+        final BufferedInputStream in = new BufferedInputStream(stream, CHARSET_DETECT_BYTES);
+        in.mark(CHARSET_DETECT_BYTES);
+        final byte[] start = new byte[CHARSET_DETECT_BYTES];
+        int len = 0;
+        int read;
+        while (len < start.length && (read = in.read(start, len, start.length - len)) != -1) {
+            len += read;
+        }
+        in.reset();
+
+        final Charset charset;
+        int bomLength = 0;
+        if (len >= 2 && (start[0] & 0xFF) == 0xFF && (start[1] & 0xFF) == 0xFE) {
+            charset = UTF16LE;
+            bomLength = 2;
+        } else if (len >= 2 && (start[0] & 0xFF) == 0xFE && (start[1] & 0xFF) == 0xFF) {
+            charset = UTF16BE;
+            bomLength = 2;
+        } else if (len >= 3 && (start[0] & 0xFF) == 0xEF && (start[1] & 0xFF) == 0xBB && (start[2] & 0xFF) == 0xBF) {
+            charset = UTF8;
+            bomLength = 3;
+        } else {
+            charset = isUtf8(start, len) ? UTF8 : WINDOWS_1252;
+        }
+        if (in.skip(bomLength) != bomLength) {
+            throw new IOException("Unable to skip the BOM");
+        }
+        //the reader replaces malformed input by default
+        return new InputStreamReader(in, charset);
+    }
+
+    /**
+     * Checks if the decoded chars are text rather than binary data, which
+     * decodes to many replacement and control chars
+     *
+     * @param buf decoded chars
+     * @param len number of chars in buf
+     * @return true if at most MAX_NON_TEXT_RATIO of the chars are replacement
+     * or control chars other than white space
+     */
+    static boolean isText(char[] buf, int len) {
+        int nonText = 0;
+        for (int i = 0; i < len; ++i) {
+            final char c = buf[i];
+            if (c == '\uFFFD' || (Character.isISOControl(c) && c != '\n' && c != '\r' && c != '\t' && c != '\f')) {
+                ++nonText;
+            }
+        }
+        return nonText <= len * MAX_NON_TEXT_RATIO;
+    }
+
+    /**
+     * Checks if the bytes are valid UTF-8, but for a char cut at the end
+     */
+    private static boolean isUtf8(byte[] buf, int len) {
+        final CharsetDecoder decoder = UTF8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        //ignore a multi-byte char cut at the end of the bytes
+        int end = len;
+        for (int i = len - 1; i >= 0 && i >= len - 3; --i) {
+            final int b = buf[i] & 0xFF;
+            if (b >= 0xC0) {
+                //lead byte, cut if its sequence does not fit
+                final int seqLen = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+                if (i + seqLen > len) {
+                    end = i;
+                }
+                break;
+            } else if (b < 0x80) {
+                break;
+            }
+        }
+        try {
+            decoder.decode(ByteBuffer.wrap(buf, 0, end));
+            return true;
+        } catch (CharacterCodingException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isContentTypeSpecific() {
+        return true;
+    }
+
+    @Override
+    public boolean isSupported(AbstractFile file) {
+        return IngestServices.getDefault().getFileType(file) == FileType.TEXT;
+    }
+}
@@ -26,14 +26,18 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.ingest.IngestModuleAbstractFile;
+import org.sleuthkit.autopsy.ingest.IngestServices;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.ReadContentInputStream;
 import org.apache.tika.Tika;
@@ -58,20 +62,37 @@ public class AbstractFileTikaTextExtract implements AbstractFileExtract {
     static final int MAX_EXTR_TEXT_CHARS = 512 * 1024;
     private static final int SINGLE_READ_CHARS = 1024;
     private static final int EXTRA_CHARS = 128; //for whitespace
-    private static final char[] TEXT_CHUNK_BUF = new char[MAX_EXTR_TEXT_CHARS];
+    private final char[] textChunkBuf = new char[MAX_EXTR_TEXT_CHARS];
     //private Tika tika;
     private KeywordSearchIngestModule module;
-    private static Ingester ingester;
+    private Ingester ingester;
     private AbstractFile sourceFile; //currently processed file
     private int numChunks = 0;
     private static final String UTF16BOM = "\uFEFF";
-    private final ExecutorService tikaParseExecutor = Executors.newSingleThreadExecutor();
-    // TODO: use a more robust method than checking file extension
+    //shared by the extractors of all extraction threads, a thread per parse in progress.
+    //Bounded, a parse that times out cannot be stopped and keeps its thread,
+    //the margin leaves room for a few of those before parses get rejected
+    private static final int MAX_PARSE_THREADS = KeywordSearchSettings.getExtractionThreads() + 2;
+    private static final ThreadPoolExecutor tikaParseExecutor = new ThreadPoolExecutor(0, MAX_PARSE_THREADS,
+            60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger threadNum = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "TikaParse-" + threadNum.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    //parses that timed out and were abandoned, since start
+    private static final AtomicInteger numAbandonedParses = new AtomicInteger();
     // supported extensions list from http://www.lucidimagination.com/devzone/technical-articles/content-extraction-tika
     static final String[] SUPPORTED_EXTENSIONS = {"tar", "jar", "zip", "gzip", "bzip2",
         "gz", "tgz", "odf", "doc", "xls", "ppt", "rtf", "pdf", "html", "htm", "xhtml", "txt", "log", "manifest",
         "bmp", "gif", "png", "jpeg", "jpg", "tiff", "mp3", "aiff", "au", "midi", "wav",
         "pst", "xml", "class", "dwg", "eml", "emlx", "mbox", "mht"};
+    //supported formats the file type detector has no signature for, matched by extension
+    private static final String[] UNDETECTED_EXTENSIONS = {"tar", "class", "dwg", "aiff", "au", "midi"};
 
     AbstractFileTikaTextExtract() {
         this.module = KeywordSearchIngestModule.getDefault();
@@ -124,12 +145,23 @@ public class AbstractFileTikaTextExtract implements AbstractFileExtract {
             //Tika parse request with timeout
             Tika tika = new Tika(); //new tika instance for every file, to workaround tika memory issues
             ParseRequestTask parseTask = new ParseRequestTask(tika, stream, meta, sourceFile);
-            final Future<?> future = tikaParseExecutor.submit(parseTask);
+            final Future<?> future;
+            try {
+                future = tikaParseExecutor.submit(parseTask);
+            } catch (RejectedExecutionException ree) {
+                final String msg = "No Tika parse thread available for content: " + sourceFile.getId() + ", " + sourceFile.getName()
+                        + ", all " + MAX_PARSE_THREADS + " threads busy (" + numAbandonedParses.get() + " parses abandoned since start)";
+                logger.log(Level.WARNING, msg);
+                throw new IngesterException(msg);
+            }
             try {
                 future.get(Ingester.getTimeout(sourceFile.getSize()), TimeUnit.SECONDS);
             } catch (TimeoutException te) {
                 tika = null;
-                final String msg = "Tika parse timeout for content: " + sourceFile.getId() + ", " + sourceFile.getName();
+                //try to interrupt, a parser stuck in a loop may still keep the thread
+                future.cancel(true);
+                final String msg = "Tika parse timeout for content: " + sourceFile.getId() + ", " + sourceFile.getName()
+                        + ", parses abandoned since start: " + numAbandonedParses.incrementAndGet();
                 KeywordSearch.getTikaLogger().log(Level.WARNING, msg, te);
                 logger.log(Level.WARNING, msg);
                 throw new IngesterException(msg);
@@ -150,69 +182,10 @@ public class AbstractFileTikaTextExtract implements AbstractFileExtract {
             }
 
             success = true;
-            long readSize;
-            long totalRead = 0;
-            boolean eof = false;
-            //we read max 1024 chars at time, this seems to max what this Reader would return
-            while (!eof && (readSize = reader.read(TEXT_CHUNK_BUF, 0, SINGLE_READ_CHARS)) != -1) {
-                totalRead += readSize;
-
-                //consume more bytes to fill entire chunk (leave EXTRA_CHARS to end the word)
-                while ((totalRead < MAX_EXTR_TEXT_CHARS - SINGLE_READ_CHARS - EXTRA_CHARS)
-                        && (readSize = reader.read(TEXT_CHUNK_BUF, (int) totalRead, SINGLE_READ_CHARS)) != -1) {
-                    totalRead += readSize;
-                }
-                if (readSize == -1) {
-                    //this is the last chunk
-                    eof = true;
-                } else {
-                    //try to read until whitespace to not break words
-                    while ((totalRead < MAX_EXTR_TEXT_CHARS - 1)
-                            && !Character.isWhitespace(TEXT_CHUNK_BUF[(int) totalRead - 1])
-                            && (readSize = reader.read(TEXT_CHUNK_BUF, (int) totalRead, 1)) != -1) {
-                        totalRead += readSize;
-                    }
-                    if (readSize == -1) {
-                        //this is the last chunk
-                        eof = true;
-                    }
-
-
-                }
-
-                //logger.log(Level.INFO, "TOTAL READ SIZE: " + totalRead + " file: " + sourceFile.getName());
-                //encode to bytes to index as byte stream
-                String extracted;
-                //add BOM and trim the 0 bytes
-                //set initial size to chars read + bom + metadata (roughly) - try to prevent from resizing
-                StringBuilder sb = new StringBuilder((int) totalRead + 1000);
-                //inject BOM here (saves byte buffer realloc later), will be converted to specific encoding BOM
-                sb.append(UTF16BOM);
-                if (totalRead < MAX_EXTR_TEXT_CHARS) {
-                    sb.append(TEXT_CHUNK_BUF, 0, (int) totalRead);
-                } else {
-                    sb.append(TEXT_CHUNK_BUF);
-                }
-
-                //reset for next chunk
-                totalRead = 0;
-
+            TextChunker chunker = new TextChunker(reader, textChunkBuf);
+            while (chunker.next()) {
                 //append meta data if last chunk
-                if (eof) {
-                    //sort meta data keys
-                    List<String> sortedKeyList = Arrays.asList(meta.names());
-                    Collections.sort(sortedKeyList);
-                    sb.append("\n\n------------------------------METADATA------------------------------\n\n");
-                    for (String key : sortedKeyList) {
-                        String value = meta.get(key);
-                        sb.append(key).append(": ").append(value).append("\n");
-                    }
-                }
-
-                extracted = sb.toString();
-
-                //converts BOM automatically to charSet encoding
-                byte[] encodedBytes = extracted.getBytes(OUTPUT_CHARSET);
+                byte[] encodedBytes = encodeChunk(textChunkBuf, chunker.getLength(), chunker.isLast() ? meta : null);
                 AbstractFileChunk chunk = new AbstractFileChunk(this, this.numChunks + 1);
                 try {
                     chunk.index(ingester, encodedBytes, encodedBytes.length, OUTPUT_CHARSET);
@@ -266,15 +239,151 @@ public class AbstractFileTikaTextExtract implements AbstractFileExtract {
 
     @Override
     public boolean isSupported(AbstractFile file) {
+        //route by content signature, so that renamed files are still parsed,
+        //plain text is decoded directly by AbstractFileTextExtract
+        switch (IngestServices.getDefault().getFileType(file)) {
+            case HTML:
+            case XML:
+            case RTF:
+            case PDF:
+            case OLE2:
+            case ZIP:
+            case GZIP:
+            case BZIP2:
+            case PST:
+            case MBOX:
+            case JPEG:
+            case PNG:
+            case GIF:
+            case BMP:
+            case TIFF:
+            case MP3:
+            case WAV:
+                return true;
+            case UNKNOWN:
+                break;
+            default:
+                //recognized type Tika does not extract text from
+                return false;
+        }
         String fileNameLower = file.getName().toLowerCase();
-        for (int i = 0; i < SUPPORTED_EXTENSIONS.length; ++i) {
-            if (fileNameLower.endsWith(SUPPORTED_EXTENSIONS[i])) {
+        for (int i = 0; i < UNDETECTED_EXTENSIONS.length; ++i) {
+            if (fileNameLower.endsWith(UNDETECTED_EXTENSIONS[i])) {
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Encodes a chunk of extracted text to index as byte stream
+     *
+     * @param buf buffer with the chunk text
+     * @param length number of chars of the chunk in the buffer
+     * @param meta meta data to append to the text if last chunk, or null
+     * @return the text with BOM and meta data, in OUTPUT_CHARSET encoding
+     */
+    static byte[] encodeChunk(char[] buf, int length, Metadata meta) {
+        //add BOM and trim the 0 bytes
+        //set initial size to chars read + bom + metadata (roughly) - try to prevent from resizing
+        StringBuilder sb = new StringBuilder(length + 1000);
+        //inject BOM here (saves byte buffer realloc later), will be converted to specific encoding BOM
+        sb.append(UTF16BOM);
+        sb.append(buf, 0, length);
+
+        if (meta != null) {
+            //sort meta data keys
+            List<String> sortedKeyList = Arrays.asList(meta.names());
+            Collections.sort(sortedKeyList);
+            sb.append("\n\n------------------------------METADATA------------------------------\n\n");
+            for (String key : sortedKeyList) {
+                String value = meta.get(key);
+                sb.append(key).append(": ").append(value).append("\n");
+            }
+        }
+
+        //converts BOM automatically to charSet encoding
+        return sb.toString().getBytes(OUTPUT_CHARSET);
+    }
+
+    /**
+     * Splits text read from the Tika reader into chunks of up to
+     * MAX_EXTR_TEXT_CHARS chars, ending the chunks at whitespace if possible
+     * to not break words
+     */
+    static class TextChunker {
+
+        private final Reader reader;
+        private final char[] buf;
+        private int length = 0;
+        private boolean eof = false;
+
+        /**
+         * @param reader reader of the extracted text
+         * @param buf buffer to read chunks into, of MAX_EXTR_TEXT_CHARS chars
+         */
+        TextChunker(Reader reader, char[] buf) {
+            this.reader = reader;
+            this.buf = buf;
+        }
+
+        /**
+         * Reads the next chunk into the buffer
+         *
+         * @return true if a chunk was read, false if no more text
+         * @throws IOException if the text could not be read
+         */
+        boolean next() throws IOException {
+            if (eof) {
+                return false;
+            }
+            //we read max 1024 chars at time, this seems to max what this Reader would return
+            int readSize = reader.read(buf, 0, SINGLE_READ_CHARS);
+            if (readSize == -1) {
+                eof = true;
+                return false;
+            }
+            int totalRead = readSize;
+
+            //consume more bytes to fill entire chunk (leave EXTRA_CHARS to end the word)
+            while ((totalRead < MAX_EXTR_TEXT_CHARS - SINGLE_READ_CHARS - EXTRA_CHARS)
+                    && (readSize = reader.read(buf, totalRead, SINGLE_READ_CHARS)) != -1) {
+                totalRead += readSize;
+            }
+            if (readSize == -1) {
+                //this is the last chunk
+                eof = true;
+            } else {
+                //try to read until whitespace to not break words
+                while ((totalRead < MAX_EXTR_TEXT_CHARS - 1)
+                        && !Character.isWhitespace(buf[totalRead - 1])
+                        && (readSize = reader.read(buf, totalRead, 1)) != -1) {
+                    totalRead += readSize;
+                }
+                if (readSize == -1) {
+                    //this is the last chunk
+                    eof = true;
+                }
+            }
+            length = totalRead;
+            return true;
+        }
+
+        /**
+         * @return number of chars of the current chunk in the buffer
+         */
+        int getLength() {
+            return length;
+        }
+
+        /**
+         * @return true if the current chunk is the last one
+         */
+        boolean isLast() {
+            return eof;
+        }
+    }
+
     /**
      * Runnable and timeable task that calls tika to parse the content using
      * streaming
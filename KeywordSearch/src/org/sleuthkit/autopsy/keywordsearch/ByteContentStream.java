@@ -40,16 +40,14 @@ public class ByteContentStream implements ContentStream {
     private long contentSize;
     private AbstractContent aContent; //origin
     private Charset charset; //output byte stream charset of encoded strings
-    
-    private InputStream stream;
 
     private static Logger logger = Logger.getLogger(ByteContentStream.class.getName());
 
     public ByteContentStream(byte [] content, long contentSize, AbstractContent aContent, Charset charset) {
         this.content = content;
+        this.contentSize = contentSize;
         this.aContent = aContent;
         this.charset = charset;
-        stream = new ByteArrayInputStream(content, 0, (int)contentSize);
     }
 
     public byte[] getByteContent() {
@@ -60,6 +58,10 @@ public class ByteContentStream implements ContentStream {
         return aContent;
     }
 
+    public Charset getCharset() {
+        return charset;
+    }
+
 
     @Override
     public String getContentType() {
@@ -73,7 +75,7 @@ public class ByteContentStream implements ContentStream {
 
     @Override
     public Reader getReader() throws IOException {
-        return new InputStreamReader(stream);
+        return new InputStreamReader(getStream(), charset);
 
     }
 
@@ -89,14 +91,8 @@ public class ByteContentStream implements ContentStream {
 
     @Override
     public InputStream getStream() throws IOException {
-        return stream;
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        
-        stream.close();
+        //new stream every time, so that the content can be posted again
+        return new ByteArrayInputStream(content, 0, (int) contentSize);
     }
     
     
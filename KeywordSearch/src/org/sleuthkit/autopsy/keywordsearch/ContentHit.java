@@ -18,9 +18,6 @@
  */
 package org.sleuthkit.autopsy.keywordsearch;
 
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
 import org.sleuthkit.datamodel.AbstractFile;
 
 /**
@@ -31,6 +28,7 @@ public class ContentHit {
 
     private AbstractFile content;
     private int chunkID = 0;
+    private String snippet = null;
 
     ContentHit(AbstractFile content) {
         this.content = content;
@@ -41,6 +39,11 @@ public class ContentHit {
         this.chunkID = chunkID;
     }
 
+    ContentHit(AbstractFile content, int chunkID, String snippet) {
+        this(content, chunkID);
+        this.snippet = snippet;
+    }
+
     AbstractFile getContent() {
         return content;
     }
@@ -57,6 +60,14 @@ public class ContentHit {
         return chunkID != 0;
     }
 
+    /**
+     * @return snippet preview of the hit, if highlighted with the query that
+     * found the hit, or null
+     */
+    String getSnippet() {
+        return snippet;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
@@ -82,32 +93,4 @@ public class ContentHit {
         hash = 41 * hash + this.chunkID;
         return hash;
     }
-
-    static Map<AbstractFile, Integer> flattenResults(List<ContentHit> hits) {
-        Map<AbstractFile, Integer> ret = new LinkedHashMap<AbstractFile, Integer>();
-        for (ContentHit h : hits) {
-            AbstractFile f = h.getContent();
-            if (!ret.containsKey(f)) {
-                ret.put(f, h.getChunkId());
-            }
-        }
-
-        return ret;
-    }
-    
-    //flatten results to get unique AbstractFile per hit, with first chunk id encountered
-    static LinkedHashMap<AbstractFile, Integer> flattenResults(Map<String, List<ContentHit>> results) {
-        LinkedHashMap<AbstractFile, Integer> flattened = new LinkedHashMap<AbstractFile, Integer>();
-
-        for (String key : results.keySet()) {
-            for (ContentHit hit : results.get(key)) {
-                AbstractFile abstractFile = hit.getContent();
-                //flatten, record first chunk encountered
-                if (!flattened.containsKey(abstractFile)) {
-                    flattened.put(abstractFile, hit.getChunkId());
-                }
-            }
-        }
-        return flattened;
-    }
 }
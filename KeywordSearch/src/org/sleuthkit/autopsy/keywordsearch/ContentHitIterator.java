@@ -0,0 +1,54 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+/**
+ * Streams the hits of a keyword search query, fetching a page of hits at a
+ * time, so that the hits of large result sets do not need to be held in memory
+ * at once.
+ *
+ * The hits of a term are returned together, the term of the hit last returned
+ * is available with getTerm()
+ */
+public interface ContentHitIterator {
+
+    /**
+     * Checks if there are more hits, fetching the next page of hits if needed
+     *
+     * @return true if there are more hits
+     * @throws NoOpenCoreException if the next page could not be fetched due to
+     * server error, this could be a notification to stop processing
+     */
+    public boolean hasNext() throws NoOpenCoreException;
+
+    /**
+     * Gets the next hit
+     *
+     * @return the next hit
+     * @throws NoOpenCoreException if the next page could not be fetched due to
+     * server error, this could be a notification to stop processing
+     * @throws java.util.NoSuchElementException if there are no more hits
+     */
+    public ContentHit next() throws NoOpenCoreException;
+
+    /**
+     * @return the term of the hit last returned by next()
+     */
+    public String getTerm();
+}
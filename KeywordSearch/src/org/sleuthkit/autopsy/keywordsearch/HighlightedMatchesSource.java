@@ -19,7 +19,7 @@
 package org.sleuthkit.autopsy.keywordsearch;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -59,7 +59,7 @@ class HighlightedMatchesSource implements MarkupSource, HighlightLookup {
     //stored page num -> current hit number mapping
     private HashMap<Integer, Integer> pagesToHits;
     private List<Integer> pages;
-    private Map<String, List<ContentHit>> hits = null; //original hits that may get passed in
+    private List<String> hitTerms = null; //terms that hit the content, to query the chunks with hits of each
     private String originalQuery = null; //or original query if hits are not available
     private boolean inited = false;
 
@@ -85,13 +85,13 @@ class HighlightedMatchesSource implements MarkupSource, HighlightLookup {
         this.originalQuery = originalQuery;
     }
 
-    HighlightedMatchesSource(Content content, String solrQuery, boolean isRegex, Map<String, List<ContentHit>> hits) {
+    HighlightedMatchesSource(Content content, String solrQuery, boolean isRegex, List<String> hitTerms) {
         this(content, solrQuery, isRegex);
-        this.hits = hits;
+        this.hitTerms = hitTerms;
     }
 
-    HighlightedMatchesSource(Content content, String solrQuery, boolean isRegex, boolean group, Map<String, List<ContentHit>> hits) {
-        this(content, solrQuery, isRegex, hits);
+    HighlightedMatchesSource(Content content, String solrQuery, boolean isRegex, boolean group, List<String> hitTerms) {
+        this(content, solrQuery, isRegex, hitTerms);
         this.group = group;
     }
 
@@ -119,50 +119,33 @@ class HighlightedMatchesSource implements MarkupSource, HighlightLookup {
         if (hasChunks) {
             //extract pages of interest, sorted
             final long contentId = content.getId();
+            TreeSet<Integer> pagesSorted = new TreeSet<Integer>();
             
-            if (hits == null) {
-                //special case, aka in case of dir tree, we don't know which chunks
-                //reperform search query for the content to get matching chunks info
-                KeywordSearchQuery chunksQuery = null;
-                
-                /**
-                Keyword keywordQuery = new Keyword(this.originalQuery, !isRegex);
-                if (this.isRegex)
-                {
-                    chunksQuery = new TermComponentQuery(keywordQuery);
-                } else {
-                    chunksQuery = new LuceneQuery(keywordQuery);
-                    chunksQuery.escape();
-                }
-                 */
-                String queryStr = KeywordSearchUtil.escapeLuceneQuery(this.keywordHitQuery);
+            //the hits are not kept with the results, we don't know which chunks
+            //reperform search query for the content to get matching chunks info, for each term that hit it
+            final List<String> chunkTerms = hitTerms != null ? hitTerms : Collections.singletonList(this.keywordHitQuery);
+            for (String term : chunkTerms) {
+                String queryStr = KeywordSearchUtil.escapeLuceneQuery(term);
                 if (isRegex) {
                     //use white-space sep. field to get exact matches only of regex query result
                     queryStr = Server.Schema.CONTENT_WS + ":" + "\"" + queryStr + "\"";
                 }
                 Keyword keywordQuery = new Keyword(queryStr, false);
-                chunksQuery = new LuceneQuery(keywordQuery);
+                KeywordSearchQuery chunksQuery = new LuceneQuery(keywordQuery);
                 KeywordQueryFilter contentIdFilter = new KeywordQueryFilter(FilterType.CHUNK, contentId);
                 chunksQuery.setFilter(contentIdFilter);
                 try {
-                    hits = chunksQuery.performQuery();
+                    //stream the hits, only the pages are kept
+                    final ContentHitIterator chunkHits = chunksQuery.performQueryIterator();
+                    while (chunkHits.hasNext()) {
+                        addPage(pagesSorted, chunkHits.next(), contentId);
+                    }
                 } catch (NoOpenCoreException ex) {
                     logger.log(Level.INFO, "Could not get chunk info and get highlights", ex);
                     return;
                 }
             }
 
-            //organize the hits by page, filter as needed
-            TreeSet<Integer> pagesSorted = new TreeSet<Integer>();
-            for (Collection<ContentHit> hitCol : hits.values()) {
-                for (ContentHit hit : hitCol) {
-                    int chunkID = hit.getChunkId();
-                    if (chunkID != 0 && contentId == hit.getId()) {
-                        pagesSorted.add(chunkID);
-                    }
-                }
-            }
-
             //set page to first page having highlights
             if (pagesSorted.isEmpty())
                 this.currentPage = 0;
@@ -187,6 +170,14 @@ class HighlightedMatchesSource implements MarkupSource, HighlightLookup {
         inited = true;
     }
 
+    //adds the page of the hit, if a chunk of the content
+    private static void addPage(TreeSet<Integer> pagesSorted, ContentHit hit, long contentId) {
+        int chunkID = hit.getChunkId();
+        if (chunkID != 0 && contentId == hit.getId()) {
+            pagesSorted.add(chunkID);
+        }
+    }
+
     //constructor for dummy singleton factory instance for Lookup
     private HighlightedMatchesSource() {
     }
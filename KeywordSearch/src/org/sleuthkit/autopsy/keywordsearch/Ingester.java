@@ -22,24 +22,42 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
 import org.apache.solr.client.solrj.request.ContentStreamUpdateRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.util.ContentStream;
 import org.sleuthkit.autopsy.datamodel.ContentUtils;
+import org.sleuthkit.autopsy.ingest.IngestServices;
 import org.sleuthkit.datamodel.AbstractContent;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.Content;
@@ -52,15 +70,88 @@ import org.sleuthkit.datamodel.ReadContentInputStream;
 
 /**
  * Handles indexing files on a Solr core.
+ *
+ * Documents are posted to Solr asynchronously, with up to
+ * MAX_IN_FLIGHT_REQUESTS update requests in flight at once, so that text
+ * extraction and indexing overlap. ingest() blocks only while the limit is
+ * reached. Requests that time out or fail due to a Solr problem are queued
+ * and retried. A timed out request keeps its slot until its HTTP request
+ * really ends, so abandoned requests cannot pile up. After repeated timeouts or connection errors, the server
+ * supervisor is asked to check and restart Solr in the background. Requests
+ * failing while Solr recovers, and new ones, are kept in a replay buffer and
+ * posted again once it is back, without counting as failed attempts.
+ * commit() waits for all the requests in flight, the replays and the retries
+ * to finish. The files of the requests given up on are kept for
+ * takeFailedFiles().
+ *
+ * In batching mode (default), text already extracted by the ingest module
+ * (file chunks) and documents without content are not sent through the Solr
+ * extract handler one at a time. They are accumulated as SolrInputDocuments
+ * and posted to /update in batches of up to MAX_BATCH_DOCS documents or
+ * MAX_BATCH_BYTES of text. The extract handler is only used for content that
+ * needs to be parsed by Solr.
+ *
+ * With batching off, extracted text is still written straight into the
+ * content field of a document posted to /update on its own (direct text
+ * mode, default), unless direct text mode is off too and every document goes
+ * through the extract handler.
  */
 public class Ingester {
 
     private static final Logger logger = Logger.getLogger(Ingester.class.getName());
-    private boolean uncommitedIngests = false;
-    private final ExecutorService upRequestExecutor = Executors.newSingleThreadExecutor();
+    //max. number of update requests posted to Solr and not finished yet
+    static final int MAX_IN_FLIGHT_REQUESTS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    //max. number of times a failed request is retried
+    private static final int MAX_RETRIES = 2;
+    //number of timeouts in a row after which Solr is restarted
+    private static final int MAX_CONSECUTIVE_TIMEOUTS = 3;
+    //max. number of times a request is replayed after Solr recovered, before it counts as a failed attempt
+    private static final int MAX_REPLAYS = 3;
+    //max. bytes of content in the replay buffer, ingest waits for Solr to recover beyond
+    private static final long MAX_REPLAY_BYTES = 64 * 1024 * 1024L;
+    //max. time to wait for Solr to recover before giving up the pending requests
+    private static final long RECOVERY_TIMEOUT_MS = 5 * 60 * 1000L;
+    private volatile boolean uncommitedIngests = false;
+    //a thread per request in flight, requests are only submitted holding a slot
+    private final ExecutorService upRequestExecutor = Executors.newFixedThreadPool(MAX_IN_FLIGHT_REQUESTS, new IngesterThreadFactory("SolrUpRequest"));
+    private final ScheduledExecutorService timeoutExecutor = Executors.newSingleThreadScheduledExecutor(new IngesterThreadFactory("SolrUpRequestTimeout"));
+    private final Semaphore inFlightRequests = new Semaphore(MAX_IN_FLIGHT_REQUESTS, true);
+    //requests to post again
+    private final Queue<UpRequest> retryQueue = new ConcurrentLinkedQueue<UpRequest>();
+    //requests to post again once Solr has recovered
+    private final Queue<UpRequest> replayQueue = new ConcurrentLinkedQueue<UpRequest>();
+    private final AtomicLong replayBytes = new AtomicLong();
+    private final AtomicInteger consecutiveTimeouts = new AtomicInteger();
+    private final AtomicInteger numFailedRequests = new AtomicInteger();
+    //ids of the files with documents that could not be indexed, not taken yet
+    private final Queue<Long> failedFiles = new ConcurrentLinkedQueue<Long>();
+    //max. number of documents and bytes of text posted in a batch
+    static final int MAX_BATCH_DOCS = 100;
+    static final long MAX_BATCH_BYTES = 4 * 1024 * 1024L;
+    private final boolean batchIndexing = KeywordSearchSettings.getBatchIndexing();
+    private final boolean directTextIndexing = KeywordSearchSettings.getDirectTextIndexing();
+    //number of text chunks and their bytes indexed, for throughput stats
+    private final AtomicInteger numChunks = new AtomicInteger();
+    private final AtomicLong numChunkBytes = new AtomicLong();
+    //documents waiting to be posted in the next batch
+    private List<SolrInputDocument> batchDocs = new ArrayList<SolrInputDocument>();
+    private long batchBytes = 0;
+    private final Object batchLock = new Object();
+    //format of times of the content fields, parsed as UTC like the extract handler does
+    private static final SimpleDateFormat fieldDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private static final List<String> DATE_FIELDS = Arrays.asList(Server.Schema.CTIME.toString(), Server.Schema.ATIME.toString(),
+            Server.Schema.MTIME.toString(), Server.Schema.CRTIME.toString());
+
+    static {
+        fieldDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+    }
     private final Server solrServer = KeywordSearch.getServer();
     private final GetContentFieldsV getContentFieldsV = new GetContentFieldsV();
     private static Ingester instance;
+    //commit generation stamped on the documents indexed since the last commit
+    private volatile long commitGeneration = System.currentTimeMillis();
+    //generation of the documents made searchable by the last commit
+    private volatile long committedGeneration = 0;
 
     private Ingester() {
     }
@@ -112,7 +203,11 @@ public class Ingester {
 
         params.put(Server.Schema.NUM_CHUNKS.toString(), Integer.toString(fe.getNumChunks()));
 
-        ingest(new NullContentStream(fe.getSourceFile()), params, 0);
+        if (batchIndexing) {
+            addToBatch(params, null, 0);
+        } else {
+            ingest(new NullContentStream(fe.getSourceFile()), params, 0);
+        }
     }
 
     /**
@@ -134,7 +229,32 @@ public class Ingester {
         params.put(Server.Schema.ID.toString(),
                 Server.getChunkIdString(sourceContent.getId(), fec.getChunkId()));
 
-        ingest(bcs, params, size);
+        final int contentSize = (int) bcs.getSize().longValue();
+        numChunks.incrementAndGet();
+        numChunkBytes.addAndGet(contentSize);
+        if (batchIndexing || directTextIndexing) {
+            //already plain text, no need for Solr to parse it
+            String text = new String(bcs.getByteContent(), 0, contentSize, bcs.getCharset());
+            if (text.length() > 0 && text.charAt(0) == '\uFEFF') {
+                //drop the BOM, the extract handler would not index it either
+                text = text.substring(1);
+            }
+            if (batchIndexing) {
+                addToBatch(params, text, contentSize);
+            } else {
+                final List<SolrInputDocument> doc = new ArrayList<SolrInputDocument>();
+                doc.add(toSolrDocument(params, text));
+                postBatch(doc, contentSize);
+                uncommitedIngests = true;
+            }
+            return;
+        }
+
+        //the request is posted asynchronously and the extractor reuses its buffer, post a copy
+        final ByteContentStream ownStream = new ByteContentStream(Arrays.copyOf(bcs.getByteContent(), contentSize),
+                contentSize, sourceContent, bcs.getCharset());
+
+        ingest(ownStream, params, size);
     }
 
     /**
@@ -151,7 +271,11 @@ public class Ingester {
      */
     void ingest(FsContent fsContent, boolean ingestContent) throws IngesterException {
         if (fsContent.isDir() || ingestContent == false) {
-            ingest(new NullContentStream(fsContent), getContentFields(fsContent), 0);
+            if (batchIndexing) {
+                addToBatch(getContentFields(fsContent), null, 0);
+            } else {
+                ingest(new NullContentStream(fsContent), getContentFields(fsContent), 0);
+            }
         } else {
             ingest(new FscContentStream(fsContent), getContentFields(fsContent), fsContent.getSize());
         }
@@ -211,15 +335,16 @@ public class Ingester {
 
     /**
      * Delegate method actually performing the indexing work for objects
-     * implementing ContentStream
+     * implementing ContentStream. The content is posted asynchronously, the
+     * method blocks only while the max. number of requests are in flight.
      *
-     * @param cs ContentStream to ingest
+     * @param cs ContentStream to ingest, its getStream() must return a new
+     * stream on every call for the request to be retried
      * @param fields content specific fields
      * @param size size of the content - used to determine the Solr timeout, not
      * used to populate meta-data
      *
-     * @throws IngesterException if there was an error processing a specific
-     * content, but the Solr server is probably fine.
+     * @throws IngesterException if the content could not be posted
      */
     private void ingest(ContentStream cs, Map<String, String> fields, final long size) throws IngesterException {
         final ContentStreamUpdateRequest up = new ContentStreamUpdateRequest("/update/extract");
@@ -234,31 +359,295 @@ public class Ingester {
 
         //logger.log(Level.INFO, "Ingesting " + fields.get("file_name"));
         up.setParam("commit", "false");
+        //stamp with the generation, to search only documents added since a given commit
+        up.setParam("literal." + Server.Schema.COMMIT_GEN.toString(), Long.toString(commitGeneration));
+        up.setMethod(METHOD.POST);
+
+        final String docId = fields.get(Server.Schema.ID.toString());
+        post(up, "id: " + docId + ", name: " + fields.get("file_name"), size, getFileIds(Arrays.asList(docId)));
+    }
+
+    /**
+     * Adds a document to the batch to post through /update, posts the batch
+     * if full
+     *
+     * @param fields content specific fields
+     * @param content text content of the document, or null if none
+     * @param size size of the content in bytes
+     * @throws IngesterException if the batch could not be posted
+     */
+    private void addToBatch(Map<String, String> fields, String content, long size) throws IngesterException {
+        final SolrInputDocument doc = toSolrDocument(fields, content);
+
+        List<SolrInputDocument> toPost = null;
+        long bytesToPost = 0;
+        synchronized (batchLock) {
+            batchDocs.add(doc);
+            batchBytes += size;
+            if (batchDocs.size() >= MAX_BATCH_DOCS || batchBytes >= MAX_BATCH_BYTES) {
+                toPost = batchDocs;
+                bytesToPost = batchBytes;
+                batchDocs = new ArrayList<SolrInputDocument>();
+                batchBytes = 0;
+            }
+        }
+        if (toPost != null) {
+            postBatch(toPost, bytesToPost);
+        }
+        uncommitedIngests = true;
+    }
 
-        final Future<?> f = upRequestExecutor.submit(new UpRequestTask(up));
+    /**
+     * Creates Solr document with the fields and text content
+     *
+     * @param fields content specific fields
+     * @param content text content of the document, or null if none
+     * @return the document
+     */
+    private SolrInputDocument toSolrDocument(Map<String, String> fields, String content) {
+        final SolrInputDocument doc = new SolrInputDocument();
+        for (Entry<String, String> field : fields.entrySet()) {
+            if (!DATE_FIELDS.contains(field.getKey())) {
+                doc.addField(field.getKey(), field.getValue());
+            } else {
+                //unlike the extract handler, /update does not parse these times
+                final java.util.Date date = parseFieldTime(field.getValue());
+                if (date != null) {
+                    doc.addField(field.getKey(), date);
+                }
+            }
+        }
+        //stamp with the generation, to search only documents added since a given commit
+        doc.addField(Server.Schema.COMMIT_GEN.toString(), commitGeneration);
+        if (content != null) {
+            doc.addField(Server.Schema.CONTENT.toString(), content);
+        }
 
+        return doc;
+    }
+
+    /**
+     * Posts the documents in the batch so far, if any
+     *
+     * @throws IngesterException if the batch could not be posted
+     */
+    private void flushBatch() throws IngesterException {
+        final List<SolrInputDocument> toPost;
+        final long bytesToPost;
+        synchronized (batchLock) {
+            if (batchDocs.isEmpty()) {
+                return;
+            }
+            toPost = batchDocs;
+            bytesToPost = batchBytes;
+            batchDocs = new ArrayList<SolrInputDocument>();
+            batchBytes = 0;
+        }
+        postBatch(toPost, bytesToPost);
+    }
+
+    private void postBatch(List<SolrInputDocument> docs, long size) throws IngesterException {
+        final UpdateRequest up = new UpdateRequest("/update");
+        up.add(docs);
+        up.setMethod(METHOD.POST);
+        final List<String> docIds = new ArrayList<String>(docs.size());
+        for (SolrInputDocument doc : docs) {
+            docIds.add((String) doc.getFieldValue(Server.Schema.ID.toString()));
+        }
+        post(up, "batch of " + docs.size() + " documents, first id: " + docIds.get(0), size, getFileIds(docIds));
+    }
+
+    /**
+     * Gets the ids of the files of documents, file or chunk documents
+     *
+     * @param docIds ids of the documents
+     * @return ids of the files, without duplicates
+     */
+    private static long[] getFileIds(List<String> docIds) {
+        final Set<Long> fileIds = new LinkedHashSet<Long>();
+        for (String docId : docIds) {
+            if (docId == null) {
+                continue;
+            }
+            final int sepIndex = docId.indexOf(Server.ID_CHUNK_SEP);
+            try {
+                fileIds.add(Long.parseLong(sepIndex == -1 ? docId : docId.substring(0, sepIndex)));
+            } catch (NumberFormatException e) {
+                logger.log(Level.WARNING, "Unexpected document id: " + docId);
+            }
+        }
+        final long[] ret = new long[fileIds.size()];
+        int i = 0;
+        for (Long fileId : fileIds) {
+            ret[i++] = fileId;
+        }
+        return ret;
+    }
+
+    /**
+     * Parses a time of the content fields
+     *
+     * @return the time, or null if not set (no time or not parsable)
+     */
+    private static java.util.Date parseFieldTime(String time) {
+        if (time.startsWith("0000")) {
+            return null;
+        }
+        synchronized (fieldDateFormat) {
+            try {
+                return fieldDateFormat.parse(time);
+            } catch (ParseException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Posts the update request asynchronously, blocks only while the max.
+     * number of requests are in flight
+     *
+     * @param up request to post
+     * @param docInfo description of the documents posted, for logging
+     * @param size size of the content, used for the timeout
+     * @param fileIds ids of the files of the documents posted
+     * @throws IngesterException if interrupted while waiting to post
+     */
+    private void post(AbstractUpdateRequest up, String docInfo, long size, long[] fileIds) throws IngesterException {
         try {
-            f.get(getTimeout(size), TimeUnit.SECONDS);
-        } catch (TimeoutException te) {
-            logger.log(Level.WARNING, "Solr timeout encountered, trying to restart Solr");
-            //restart may be needed to recover from some error conditions
-            hardSolrRestart();
-            throw new IngesterException("Solr index request time out for id: " + fields.get("id") + ", name: " + fields.get("file_name"));
-        } catch (Exception e) {
-            throw new IngesterException("Problem posting content to Solr, id: " + fields.get("id") + ", name: " + fields.get("file_name"), e);
+            //back off while ingest is paused due to low resources
+            IngestServices.getDefault().waitForResources();
+
+            //back off while too much is waiting for Solr to recover
+            if (replayBytes.get() >= MAX_REPLAY_BYTES && !solrServer.waitForRecovery(RECOVERY_TIMEOUT_MS)) {
+                giveUpPending();
+            }
+
+            //post again what failed earlier first
+            submitRetries();
+
+            final UpRequest request = new UpRequest(up, docInfo, size, fileIds);
+            if (solrServer.isRecovering()) {
+                //would fail or hang, post once Solr is back
+                replayLater(request);
+            } else {
+                submit(request);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IngesterException("Interrupted while waiting to index " + docInfo);
         }
         uncommitedIngests = true;
     }
 
     /**
-     * attempt to restart Solr and recover from its internal error
+     * Posts the request asynchronously, blocks while the max. number of
+     * requests are in flight. The slot of the request is freed when its task
+     * ends, also if it timed out before: cancelling does not abort a blocked
+     * HTTP read, and the thread stays busy until it ends.
      */
-    private void hardSolrRestart() {
-        solrServer.closeCore();
-        solrServer.stop();
+    private void submit(final UpRequest request) throws InterruptedException {
+        inFlightRequests.acquire();
+        final Future<?> f = upRequestExecutor.submit(new UpRequestTask(request));
+        timeoutExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (request.finish()) {
+                    //abandon the request, Solr may be stuck, its slot is freed once the read ends
+                    f.cancel(true);
+                    logger.log(Level.WARNING, "Solr index request time out for " + request.docInfo);
+                    if (consecutiveTimeouts.incrementAndGet() >= MAX_CONSECUTIVE_TIMEOUTS && solrServer.requestRestart()) {
+                        //restart may be needed to recover from some error conditions
+                        logger.log(Level.WARNING, "Repeated Solr timeouts encountered, restarting Solr");
+                        consecutiveTimeouts.set(0);
+                    }
+                    if (solrServer.isRecovering()) {
+                        replayLater(request);
+                    } else {
+                        retryLater(request);
+                    }
+                }
+            }
+        }, getTimeout(request.size), TimeUnit.SECONDS);
+    }
 
-        solrServer.start();
-        solrServer.openCore();
+    /**
+     * Posts the requests queued for replay and retry, unless Solr is still
+     * recovering
+     */
+    private void submitRetries() throws InterruptedException {
+        if (solrServer.isRecovering()) {
+            //post again once Solr is back
+            return;
+        }
+        UpRequest request;
+        int numReplayed = 0;
+        while ((request = replayQueue.poll()) != null) {
+            replayBytes.addAndGet(-request.size);
+            submit(request.nextReplay());
+            ++numReplayed;
+        }
+        if (numReplayed > 0) {
+            logger.log(Level.INFO, "Replayed Solr index requests after Solr recovered: " + numReplayed);
+        }
+        while ((request = retryQueue.poll()) != null) {
+            logger.log(Level.INFO, "Retrying Solr index request for " + request.docInfo);
+            submit(request.nextAttempt());
+        }
+    }
+
+    private void retryLater(UpRequest request) {
+        if (request.attempt < MAX_RETRIES) {
+            retryQueue.add(request);
+        } else {
+            logger.log(Level.WARNING, "Giving up indexing " + request.docInfo + " after " + (request.attempt + 1) + " attempts");
+            giveUp(request);
+        }
+    }
+
+    /**
+     * Counts the request as failed and keeps its files for takeFailedFiles()
+     */
+    private void giveUp(UpRequest request) {
+        numFailedRequests.incrementAndGet();
+        for (long fileId : request.fileIds) {
+            failedFiles.add(fileId);
+        }
+    }
+
+    private void replayLater(UpRequest request) {
+        if (request.replays < MAX_REPLAYS) {
+            replayBytes.addAndGet(request.size);
+            replayQueue.add(request);
+        } else {
+            retryLater(request);
+        }
+    }
+
+    /**
+     * Gives up the requests waiting for replay or retry, when Solr does not
+     * recover
+     */
+    private void giveUpPending() {
+        int numGivenUp = 0;
+        UpRequest request;
+        while ((request = replayQueue.poll()) != null) {
+            replayBytes.addAndGet(-request.size);
+            giveUp(request);
+            ++numGivenUp;
+        }
+        while ((request = retryQueue.poll()) != null) {
+            giveUp(request);
+            ++numGivenUp;
+        }
+        logger.log(Level.WARNING, "Solr not recovered in " + RECOVERY_TIMEOUT_MS + " ms, giving up indexing pending requests: " + numGivenUp);
+    }
+
+    /**
+     * Blocks until the tasks of all the requests in flight have ended
+     */
+    private void waitForInFlightRequests() throws InterruptedException {
+        inFlightRequests.acquire(MAX_IN_FLIGHT_REQUESTS);
+        inFlightRequests.release(MAX_IN_FLIGHT_REQUESTS);
     }
 
     /**
@@ -283,28 +672,81 @@ public class Ingester {
 
     }
 
-    private class UpRequestTask implements Runnable {
+    /**
+     * Update request of a document, with the attempt and replay numbers
+     */
+    private static class UpRequest {
 
-        ContentStreamUpdateRequest up;
+        private final AbstractUpdateRequest up;
+        private final String docInfo;
+        private final long size;
+        private final int attempt;
+        private final int replays;
+        //files of the documents of the request
+        private final long[] fileIds;
+        //set once the request has succeeded, failed or timed out
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+
+        UpRequest(AbstractUpdateRequest up, String docInfo, long size, long[] fileIds) {
+            this(up, docInfo, size, fileIds, 0, 0);
+        }
 
-        UpRequestTask(ContentStreamUpdateRequest up) {
+        private UpRequest(AbstractUpdateRequest up, String docInfo, long size, long[] fileIds, int attempt, int replays) {
             this.up = up;
+            this.docInfo = docInfo;
+            this.size = size;
+            this.fileIds = fileIds;
+            this.attempt = attempt;
+            this.replays = replays;
+        }
+
+        UpRequest nextAttempt() {
+            return new UpRequest(up, docInfo, size, fileIds, attempt + 1, replays);
+        }
+
+        /**
+         * @return the request to post again after Solr recovered, the failure
+         * does not count as an attempt
+         */
+        UpRequest nextReplay() {
+            return new UpRequest(up, docInfo, size, fileIds, attempt, replays + 1);
+        }
+
+        /**
+         * Marks the request finished
+         *
+         * @return true if not finished before, i.e. the caller handles the
+         * outcome of the request
+         */
+        boolean finish() {
+            return finished.compareAndSet(false, true);
+        }
+    }
+
+    private class UpRequestTask implements Runnable {
+
+        private final UpRequest request;
+
+        UpRequestTask(UpRequest request) {
+            this.request = request;
         }
 
         @Override
         public void run() {
             try {
-                up.setMethod(METHOD.POST);
-                solrServer.request(up);
+                solrServer.request(request.up);
+                if (request.finish()) {
+                    consecutiveTimeouts.set(0);
+                }
             } catch (NoOpenCoreException ex) {
-                throw new RuntimeException("No Solr core available, cannot index the content", ex);
+                failed("No Solr core available, cannot index the content", ex, true);
             } catch (IllegalStateException ex) {
                 // problems with content
-                throw new RuntimeException("Problem reading file.", ex);
+                failed("Problem reading file.", ex, false);
             } catch (SolrServerException ex) {
                 // If there's a problem talking to Solr, something is fundamentally
-                // wrong with ingest
-                throw new RuntimeException("Problem with Solr", ex);
+                // wrong with ingest, try again later
+                failed("Problem with Solr", ex, true);
             } catch (SolrException ex) {
                 // Tika problems result in an unchecked SolrException
                 ErrorCode ec = ErrorCode.getErrorCode(ex.code());
@@ -312,29 +754,139 @@ public class Ingester {
                 // When Tika has problems with a document, it throws a server error
                 // but it's okay to continue with other documents
                 if (ec.equals(ErrorCode.SERVER_ERROR)) {
-                    throw new RuntimeException("Problem posting file contents to Solr. SolrException error code: " + ec, ex);
+                    failed("Problem posting file contents to Solr. SolrException error code: " + ec, ex, false);
                 } else {
                     // shouldn't get any other error codes
-                    throw ex;
+                    failed("Unexpected Solr error. SolrException error code: " + ec, ex, false);
                 }
+            } catch (RuntimeException ex) {
+                failed("Problem posting content to Solr", ex, false);
+            } finally {
+                //frees the slot only now, also if timed out before
+                inFlightRequests.release();
             }
+        }
 
+        private void failed(String message, Exception ex, boolean retry) {
+            if (request.finish() == false) {
+                //timed out already and handled
+                return;
+            }
+            logger.log(Level.WARNING, message + ", " + request.docInfo, ex);
+            if (retry && (solrServer.isRecovering()
+                    || (ex instanceof SolrServerException && Server.isConnectionError((SolrServerException) ex)))) {
+                //Solr down or restarting, post again once it is back
+                solrServer.checkHealth();
+                replayLater(request);
+            } else if (retry) {
+                retryLater(request);
+            } else {
+                giveUp(request);
+            }
         }
     }
 
     /**
      * Tells Solr to commit (necessary before ingested files will appear in
-     * searches)
+     * searches). Waits for the requests in flight, replays and retries to
+     * finish first.
+     *
+     * @return true if committed after all the documents posted before were
+     * indexed or given up, false if the commit failed or the wait was
+     * interrupted
      */
-    void commit() {
+    boolean commit() {
+        try {
+            flushBatch();
+        } catch (IngesterException e) {
+            logger.log(Level.WARNING, "Error posting the last batch of documents", e);
+        }
+        boolean finished = true;
+        try {
+            do {
+                if (!solrServer.waitForRecovery(RECOVERY_TIMEOUT_MS)) {
+                    giveUpPending();
+                }
+                submitRetries();
+                waitForInFlightRequests();
+            } while (!retryQueue.isEmpty() || !replayQueue.isEmpty());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.WARNING, "Interrupted while waiting for Solr index requests, committing the finished ones");
+            finished = false;
+        }
+
+        //documents indexed from now on belong to the next generation
+        final long committing = commitGeneration;
+        commitGeneration = Math.max(System.currentTimeMillis(), committing + 1);
         try {
             solrServer.commit();
             uncommitedIngests = false;
+            committedGeneration = committing;
+            return finished;
         } catch (NoOpenCoreException ex) {
             logger.log(Level.WARNING, "Error commiting index", ex);
         } catch (SolrServerException ex) {
             logger.log(Level.WARNING, "Error commiting index", ex);
         }
+        return false;
+    }
+
+    /**
+     * @return number of documents that could not be indexed since the
+     * ingester was created
+     */
+    int getNumFailedRequests() {
+        return numFailedRequests.get();
+    }
+
+    /**
+     * Takes the ids of the files with documents given up on since the last
+     * call, their index is incomplete. All the files of the requests posted
+     * before the last commit() are included.
+     *
+     * @return the ids, a file may be listed more than once
+     */
+    List<Long> takeFailedFiles() {
+        final List<Long> ret = new ArrayList<Long>();
+        Long fileId;
+        while ((fileId = failedFiles.poll()) != null) {
+            ret.add(fileId);
+        }
+        return ret;
+    }
+
+    /**
+     * @return number of text chunks indexed since the ingester was created
+     */
+    int getNumChunks() {
+        return numChunks.get();
+    }
+
+    /**
+     * @return bytes of text chunks indexed since the ingester was created
+     */
+    long getNumChunkBytes() {
+        return numChunkBytes.get();
+    }
+
+    /**
+     * Gets the commit generation of the documents made searchable by the last
+     * commit. Generations increase with every commit, also across sessions.
+     * Documents of this generation still being indexed while the commit ran
+     * are only searchable after the next commit.
+     *
+     * @return generation of the last commit, 0 if not committed yet
+     */
+    long getCommittedGeneration() {
+        return committedGeneration;
+    }
+
+    /**
+     * @return commit generation stamped on the documents indexed now
+     */
+    long getCurrentGeneration() {
+        return commitGeneration;
     }
 
     /**
@@ -433,6 +985,23 @@ public class Ingester {
         }
     }
 
+    private static class IngesterThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger threadNum = new AtomicInteger();
+
+        IngesterThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + "-" + threadNum.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
     /**
      * Indicates that there was an error with the specific ingest operation, but
      * it's still okay to continue ingesting files.
@@ -61,15 +61,8 @@ public class Installer extends ModuleInstall {
             }
         }
 
+        //returns once the server answers
         server.start();
-        try {
-            Thread.sleep(1000); // give it a sec
-            //TODO: idle loop while waiting for it to start
-        } catch (InterruptedException ex) {
-            throw new RuntimeException(ex);
-        }
-        
-        
     }
 
     @Override
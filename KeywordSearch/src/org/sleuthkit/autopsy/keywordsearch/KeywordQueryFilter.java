@@ -21,10 +21,11 @@ package org.sleuthkit.autopsy.keywordsearch;
 
 /**
  *
- * Filter to select only specific id or chunks for that id
+ * Filter to select only specific id or chunks for that id,
+ * or documents indexed in the given commit generation or later
  */
 public class KeywordQueryFilter {
-    public static enum FilterType {FILE, CHUNK};
+    public static enum FilterType {FILE, CHUNK, COMMIT_GEN};
     private long idFilter;
     private FilterType filterType;
     
@@ -43,6 +44,13 @@ public class KeywordQueryFilter {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
+        if (filterType == FilterType.COMMIT_GEN) {
+            sb.append(Server.Schema.COMMIT_GEN.toString());
+            sb.append(":[");
+            sb.append(Long.toString(idFilter));
+            sb.append(" TO *]");
+            return sb.toString();
+        }
         sb.append(Server.Schema.ID.toString());
         sb.append(":");
         sb.append(Long.toString(idFilter));
@@ -23,9 +23,20 @@ import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -35,6 +46,7 @@ import javax.swing.SwingWorker;
 import javax.swing.Timer;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.TermsResponse.Term;
 import org.netbeans.api.progress.ProgressHandle;
 import org.netbeans.api.progress.ProgressHandleFactory;
 import org.openide.util.Cancellable;
@@ -42,12 +54,14 @@ import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.coreutils.ModuleSettings;
 import org.sleuthkit.autopsy.coreutils.StopWatch;
 import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
+import org.sleuthkit.autopsy.ingest.DeferredCompletionIngestModule;
 import org.sleuthkit.autopsy.ingest.IngestServices;
 import org.sleuthkit.autopsy.ingest.IngestMessage;
 import org.sleuthkit.autopsy.ingest.IngestMessage.MessageType;
 import org.sleuthkit.autopsy.ingest.IngestModuleAbstractFile;
 import org.sleuthkit.autopsy.ingest.IngestModuleInit;
 import org.sleuthkit.autopsy.ingest.ModuleDataEvent;
+import org.sleuthkit.autopsy.ingest.ThreadSafeIngestModule;
 import org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardArtifact.ARTIFACT_TYPE;
@@ -69,9 +83,13 @@ import org.sleuthkit.datamodel.TskData.FileKnown;
  * on currently configured lists for ingest and writes results to blackboard
  * Reports interesting events to Inbox and to viewers
  *
+ * process() is called concurrently by the file ingest workers, it only hands
+ * the file over to the extraction workers and synchronizes the commit/search
+ * check.
+ *
  * Registered as a module in layer.xml
  */
-public final class KeywordSearchIngestModule implements IngestModuleAbstractFile {
+public final class KeywordSearchIngestModule implements DeferredCompletionIngestModule, ThreadSafeIngestModule {
 
     enum UpdateFrequency {
 
@@ -104,20 +122,30 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
     private Map<String, KeywordSearchList> keywordToList; //keyword to list name mapping
     private Timer commitTimer;
     private Timer searchTimer;
-    private Indexer indexer;
+    //extraction workers, each with own indexer (extractors and their buffers)
+    private ExecutorService extractionWorkers;
+    private ThreadLocal<Indexer> indexers;
+    //bounds files queued for extraction, process() blocks when all are taken
+    private Semaphore extractionSlots;
+    //max. time to wait for queued files to finish extraction when ingest completes
+    private static final int EXTRACTION_TIMEOUT_HOURS = 24;
     private Searcher currentSearcher;
     private Searcher finalSearcher;
+    private Finisher finisher;
     private volatile boolean searcherDone = true; //mark as done, until it's inited
-    private Map<Keyword, List<Long>> currentResults;
+    private Map<Keyword, Set<Long>> currentResults;
+    //commit generation of index documents the next periodic search starts from
+    private volatile long searchFromGeneration;
+    //chunks indexed before and start time of this ingest, for throughput stats
+    private int startNumChunks;
+    private long startTime;
     private static final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock(true); //use fairness policy
     private static final Lock searcherLock = rwLock.writeLock();
     private volatile int messageID = 0;
-    private boolean processedFiles;
+    private volatile boolean processedFiles;
     private volatile boolean finalSearcherDone = true;  //mark as done, until it's inited
     private final String hashDBModuleName = "Hash Lookup"; //NOTE this needs to match the HashDB module getName()
     private SleuthkitCase caseHandle = null;
-    private static List<AbstractFileExtract> textExtractors;
-    private static AbstractFileStringExtract stringExtractor;
     
     private boolean initialized = false;
     
@@ -130,6 +158,8 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         INGESTED, EXTRACTED_INGESTED, SKIPPED, INGESTED_META
     };
     private Map<Long, IngestStatus> ingestStatus;
+    //files indexed since the last commit, recorded as completed in the ingest journal once committed
+    private final Queue<Long> uncommittedFiles = new ConcurrentLinkedQueue<Long>();
 
     //private constructor to ensure singleton instance 
     private KeywordSearchIngestModule() {
@@ -169,13 +199,13 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         //logger.log(Level.INFO, "hashdb result: " + hashDBResult + "file: " + AbstractFile.getName());
         if (hashDBResult == IngestModuleAbstractFile.ProcessResult.ERROR) {
             //index meta-data only
-            indexer.indexFile(abstractFile, false);
+            queueIndexFile(abstractFile, false);
             //notify depending module that keyword search (would) encountered error for this file
             return ProcessResult.ERROR;
         }
         else if (KeywordSearchSettings.getSkipKnown() && abstractFile.accept(getIsFileKnown) == true) {
             //index meta-data only
-            indexer.indexFile(abstractFile, false);
+            queueIndexFile(abstractFile, false);
             return ProcessResult.OK;
         } 
 
@@ -187,11 +217,66 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         checkRunCommitSearch();
 
         //index the file and content (if the content is supported)
-        indexer.indexFile(abstractFile, true);
+        queueIndexFile(abstractFile, true);
         
         
         return ProcessResult.OK;
     }
+
+    /**
+     * Queues the file to be indexed by the next free extraction worker. Blocks
+     * if the extraction queue is full, until a worker is done with a file.
+     *
+     * @param abstractFile file to index
+     * @param indexContent false if to index meta-data only
+     */
+    private void queueIndexFile(final AbstractFile abstractFile, final boolean indexContent) {
+        try {
+            extractionSlots.acquire();
+        } catch (InterruptedException ex) {
+            //ingest is being stopped
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            extractionWorkers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        indexers.get().indexFile(abstractFile, indexContent);
+                        if (ingestStatus.get(abstractFile.getId()) != IngestStatus.SKIPPED) {
+                            uncommittedFiles.add(abstractFile.getId());
+                        }
+                    } catch (Exception e) {
+                        ingestStatus.put(abstractFile.getId(), IngestStatus.SKIPPED);
+                        logger.log(Level.WARNING, "Unexpected error indexing file: " + abstractFile.getId(), e);
+                    } finally {
+                        extractionSlots.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            //rejected, workers already shut down
+            extractionSlots.release();
+            logger.log(Level.WARNING, "Could not queue file for indexing: " + abstractFile.getId(), e);
+        }
+    }
+
+    /**
+     * Waits for the extraction workers to finish the queued files and shuts
+     * them down
+     */
+    private void finishExtraction() {
+        extractionWorkers.shutdown();
+        try {
+            if (!extractionWorkers.awaitTermination(EXTRACTION_TIMEOUT_HOURS, TimeUnit.HOURS)) {
+                logger.log(Level.WARNING, "Timed out waiting for text extraction to finish");
+            }
+        } catch (InterruptedException ex) {
+            logger.log(Level.WARNING, "Interrupted waiting for text extraction to finish");
+            Thread.currentThread().interrupt();
+        }
+    }
     
     /**
      * Process content hierarchy and return true if content is a file and is set as known
@@ -217,6 +302,8 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
     @Override
     public void complete() {
         if (initialized == false) {
+            //nothing indexed, nothing to record in the journal
+            services.fileModuleDeferredWorkDone(this);
             return;
         }
 
@@ -237,38 +324,26 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         }
         runSearcher = false;
 
-        logger.log(Level.INFO, "Running final index commit and search");
-        //final commit
-        commit();
-
-        postIndexSummary();
+        //drain the extraction workers, commit and search off the EDT
+        finisher = new Finisher();
+        finisher.execute();
 
-        //run one last search as there are probably some new files committed
-        if (keywords != null && !keywords.isEmpty() && processedFiles == true) {
-            finalSearcher = new Searcher(keywords, true); //final searcher run
-            finalSearcher.execute();
-        } else {
-            finalSearcherDone = true;
-            services.postMessage(IngestMessage.createMessage(++messageID, MessageType.INFO, this, "Completed"));
-        }
-
-        //log number of files / chunks in index
-         //signal a potential change in number of indexed files
-        try {
-            final int numIndexedFiles = KeywordSearch.getServer().queryNumIndexedFiles();
-            final int numIndexedChunks = KeywordSearch.getServer().queryNumIndexedChunks();
-            logger.log(Level.INFO, "Indexed files count: " + numIndexedFiles);
-            logger.log(Level.INFO, "Indexed file chunks count: " + numIndexedChunks);
-        } catch (NoOpenCoreException ex) {
-            logger.log(Level.WARNING, "Error executing Solr query to check number of indexed files/chunks: ", ex);
-        } catch (SolrServerException se) {
-            logger.log(Level.WARNING, "Error executing Solr query to check number of indexed files/chunks: ", se);
-        }
-        
-        
         //postSummary();
     }
 
+    /**
+     * Logs the rate text chunks were indexed at during this ingest, including
+     * the final commit
+     */
+    private void logIndexThroughput() {
+        final int numChunks = ingester.getNumChunks() - startNumChunks;
+        final long elapsedMs = Math.max(1, System.currentTimeMillis() - startTime);
+        final String mode = KeywordSearchSettings.getBatchIndexing() ? "batch"
+                : KeywordSearchSettings.getDirectTextIndexing() ? "direct text" : "extract handler";
+        logger.log(Level.INFO, "Indexed " + numChunks + " chunks in " + elapsedMs + " ms ("
+                + String.format("%.1f", numChunks * 1000.0 / elapsedMs) + " chunks/sec), mode: " + mode);
+    }
+
     /**
      * Handle stop event (ingest interrupted) Cleanup resources, threads, timers
      */
@@ -290,9 +365,18 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         runSearcher = false;
         finalSearcherDone = true;
 
+        //a pending final commit and search is no longer wanted
+        if (finisher != null) {
+            finisher.cancel(true);
+        }
+
+        //drop files still queued, interrupt the ones being extracted
+        extractionWorkers.shutdownNow();
+
 
         //commit uncommited files, don't search again
         commit();
+        services.fileModuleDeferredWorkDone(this);
 
         //postSummary();
     }
@@ -338,6 +422,8 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         caseHandle = Case.getCurrentCase().getSleuthkitCase();
 
         ingester = Server.getIngester();
+        //let ingest back off when the index drive is running out of space
+        services.setMonitoredDirectory(MODULE_NAME, Server.getCoreDataDir(Case.getCurrentCase()));
 
         //use the settings files to set values
         
@@ -345,12 +431,6 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
 
 
 
-        //initialize extractors
-        stringExtractor = new AbstractFileStringExtract();
-        stringExtractor.setScripts(KeywordSearchSettings.getStringExtractScripts());
-        stringExtractor.setOptions(KeywordSearchSettings.getStringExtractOptions());
-        
-        
         //log the scripts used for debugging
         final StringBuilder sbScripts = new StringBuilder();
         for (SCRIPT s : KeywordSearchSettings.getStringExtractScripts()) {
@@ -358,13 +438,8 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         }
         logger.log(Level.INFO, "Using string extract scripts: " + sbScripts.toString());
 
-        textExtractors = new ArrayList<AbstractFileExtract>();
-        //order matters, more specific extractors first
-        textExtractors.add(new AbstractFileHtmlExtract());
-        textExtractors.add(new AbstractFileTikaTextExtract());
-
-
-        ingestStatus = new HashMap<Long, IngestStatus>();
+        ingestStatus = new ConcurrentHashMap<Long, IngestStatus>();
+        uncommittedFiles.clear();
 
         keywords = new ArrayList<Keyword>();
         keywordLists = new ArrayList<String>();
@@ -380,9 +455,23 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         finalSearcherDone = false;
         searcherDone = true; //make sure to start the initial currentSearcher
         //keeps track of all results per run not to repeat reporting the same hits
-        currentResults = new HashMap<Keyword, List<Long>>();
-
-        indexer = new Indexer();
+        currentResults = new HashMap<Keyword, Set<Long>>();
+        //periodic searches only search documents indexed during this ingest
+        searchFromGeneration = ingester.getCurrentGeneration();
+        startNumChunks = ingester.getNumChunks();
+        startTime = System.currentTimeMillis();
+
+        //extractors are not thread-safe, every worker gets its own indexer
+        final int numWorkers = KeywordSearchSettings.getExtractionThreads();
+        logger.log(Level.INFO, "Using text extraction threads: " + numWorkers);
+        extractionWorkers = Executors.newFixedThreadPool(numWorkers, new ExtractionThreadFactory());
+        indexers = new ThreadLocal<Indexer>() {
+            @Override
+            protected Indexer initialValue() {
+                return new Indexer();
+            }
+        };
+        extractionSlots = new Semaphore(numWorkers * 2);
 
         final int updateIntervalMs = KeywordSearchSettings.getUpdateFrequency().getTime() * 60 * 1000;
         logger.log(Level.INFO, "Using commit interval (ms): " + updateIntervalMs);
@@ -463,13 +552,34 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
     }
 
     /**
-     * Commits index and notifies listeners of index update
+     * Commits index and notifies listeners of index update. Records the files
+     * indexed before in the ingest journal once they are committed, and marks
+     * the files Solr failed to index as skipped.
      */
     private void commit() {
         if (initialized) {
+            final List<Long> committing = new ArrayList<Long>();
+            Long fileId;
+            while ((fileId = uncommittedFiles.poll()) != null) {
+                committing.add(fileId);
+            }
             logger.log(Level.INFO, "Commiting index");
-            ingester.commit();
-            logger.log(Level.INFO, "Index comitted");
+            final boolean committed = ingester.commit();
+            //files Solr did not take are skipped, not completed
+            final List<Long> failed = ingester.takeFailedFiles();
+            for (Long failedId : failed) {
+                if (ingestStatus.containsKey(failedId)) {
+                    ingestStatus.put(failedId, IngestStatus.SKIPPED);
+                }
+            }
+            committing.removeAll(failed);
+            if (committed) {
+                services.fileModuleCompleted(this, committing);
+                logger.log(Level.INFO, "Index comitted");
+            } else {
+                //recorded after the next commit, if any
+                uncommittedFiles.addAll(committing);
+            }
             //signal a potential change in number of indexed files
             indexChangeNotify();
         }
@@ -558,7 +668,7 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
      * Check if time to commit, if so, run commit. Then run search if search
      * timer is also set.
      */
-    void checkRunCommitSearch() {
+    synchronized void checkRunCommitSearch() {
         if (commitIndex) {
             logger.log(Level.INFO, "Commiting index");
             commit();
@@ -607,13 +717,43 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         }
     }
 
+    /**
+     * Names and marks as daemon the extraction worker threads
+     */
+    private static class ExtractionThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNum = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "KeywordSearchExtraction-" + threadNum.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
     /**
      * File indexer, processes and indexes known/allocated files,
-     * unknown/unallocated files and directories accordingly
+     * unknown/unallocated files and directories accordingly. Has its own
+     * extractors, an indexer is used by a single extraction worker thread.
      */
     private class Indexer {
 
         private final Logger logger = Logger.getLogger(Indexer.class.getName());
+        private final AbstractFileStringExtract stringExtractor;
+        private final List<AbstractFileExtract> textExtractors;
+
+        Indexer() {
+            stringExtractor = new AbstractFileStringExtract();
+            stringExtractor.setScripts(KeywordSearchSettings.getStringExtractScripts());
+            stringExtractor.setOptions(KeywordSearchSettings.getStringExtractOptions());
+
+            textExtractors = new ArrayList<AbstractFileExtract>();
+            //order matters, more specific extractors first
+            textExtractors.add(new AbstractFileHtmlExtract());
+            textExtractors.add(new AbstractFileTextExtract());
+            textExtractors.add(new AbstractFileTikaTextExtract());
+        }
 
         /**
          * Extract strings or text with Tika (by streaming) from the file Divide
@@ -751,11 +891,69 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
         }
     }
 
+    /**
+     * Waits for the files still queued to be extracted, then does the final
+     * commit and starts the final search. Extraction can take hours after the
+     * last file is queued, so it is waited for in the background, not in
+     * complete() on the EDT.
+     */
+    private class Finisher extends SwingWorker<Object, Void> {
+
+        @Override
+        protected Object doInBackground() throws Exception {
+            //files still queued need to be indexed before the final commit
+            finishExtraction();
+            if (isCancelled()) {
+                return null;
+            }
+
+            logger.log(Level.INFO, "Running final index commit and search");
+            //final commit
+            commit();
+            logIndexThroughput();
+
+            //log number of files / chunks in index
+            try {
+                final int numIndexedFiles = KeywordSearch.getServer().queryNumIndexedFiles();
+                final int numIndexedChunks = KeywordSearch.getServer().queryNumIndexedChunks();
+                logger.log(Level.INFO, "Indexed files count: " + numIndexedFiles);
+                logger.log(Level.INFO, "Indexed file chunks count: " + numIndexedChunks);
+                logger.log(Level.INFO, "Index requests failed since start: " + ingester.getNumFailedRequests());
+            } catch (NoOpenCoreException ex) {
+                logger.log(Level.WARNING, "Error executing Solr query to check number of indexed files/chunks: ", ex);
+            } catch (SolrServerException se) {
+                logger.log(Level.WARNING, "Error executing Solr query to check number of indexed files/chunks: ", se);
+            }
+            return null;
+        }
+
+        @Override
+        protected void done() {
+            //stop() took over, it commits and records completion itself
+            if (isCancelled() || finalSearcherDone) {
+                return;
+            }
+
+            postIndexSummary();
+
+            //run one last search as there are probably some new files committed
+            if (keywords != null && !keywords.isEmpty() && processedFiles == true) {
+                finalSearcher = new Searcher(keywords, true); //final searcher run
+                finalSearcher.execute();
+            } else {
+                finalSearcherDone = true;
+                services.postMessage(IngestMessage.createMessage(++messageID, MessageType.INFO, KeywordSearchIngestModule.this, "Completed"));
+                services.fileModuleDeferredWorkDone(KeywordSearchIngestModule.this);
+            }
+        }
+    }
+
     /**
      * Searcher responsible for searching the current index and writing results
      * to blackboard and the inbox. Also, posts results to listeners as Ingest
-     * data events. Searches entire index, and keeps track of only new results
-     * to report and save. Runs as a background thread.
+     * data events. Searches only the documents committed since the previous
+     * search (the final search can search the entire index), and keeps track
+     * of only new results to report and save. Runs as a background thread.
      */
     private class Searcher extends SwingWorker<Object, Void> {
 
@@ -812,6 +1010,24 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
                 updateKeywords();
                 progress.switchToDeterminate(keywords.size());
 
+                //search only the documents committed since the previous search,
+                //the generation searched before is included again for documents committed late
+                final long searchedGeneration = ingester.getCommittedGeneration();
+                KeywordQueryFilter generationFilter = null;
+                if (finalRun == false || KeywordSearchSettings.getFullFinalSearch() == false) {
+                    generationFilter = new KeywordQueryFilter(KeywordQueryFilter.FilterType.COMMIT_GEN, searchFromGeneration);
+                    logger.log(Level.INFO, "Searching documents of commit generation " + searchFromGeneration + " and later");
+                }
+
+                //match the terms of all regex keywords with a single walk of the terms dictionary
+                final Map<Keyword, List<Term>> regexTerms;
+                try {
+                    regexTerms = queryRegexTerms();
+                } catch (NoOpenCoreException ex) {
+                    logger.log(Level.WARNING, "Error querying the terms of the regex keywords", ex);
+                    return null;
+                }
+
                 for (Keyword keywordQuery : keywords) {
                     if (this.isCancelled()) {
                         logger.log(Level.INFO, "Cancel detected, bailing before new keyword processed: " + keywordQuery.getQuery());
@@ -830,47 +1046,43 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
 
                     boolean isRegex = !keywordQuery.isLiteral();
                     if (!isRegex) {
-                        del = new LuceneQuery(keywordQuery);
+                        LuceneQuery luceneQuery = new LuceneQuery(keywordQuery);
+                        //get the snippets with the hits
+                        luceneQuery.setSnippets(true);
+                        del = luceneQuery;
                         del.escape();
                     } else {
-                        del = new TermComponentQuery(keywordQuery);
+                        TermComponentQuery termsQuery = new TermComponentQuery(keywordQuery);
+                        //null if the terms were not matched with the other keywords
+                        termsQuery.setMatchedTerms(regexTerms.get(keywordQuery));
+                        del = termsQuery;
                     }
-
-                    Map<String, List<ContentHit>> queryResult = null;
-
-                    try {
-                        queryResult = del.performQuery();
-                    } catch (NoOpenCoreException ex) {
-                        logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), ex);
-                        //no reason to continue with next query if recovery failed
-                        //or wait for recovery to kick in and run again later
-                        //likely case has closed and threads are being interrupted
-                        return null;
-                    } catch (CancellationException e) {
-                        logger.log(Level.INFO, "Cancel detected, bailing during keyword query: " + keywordQuery.getQuery());
-                        return null;
-                    } catch (Exception e) {
-                        logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), e);
-                        continue;
+                    if (generationFilter != null) {
+                        del.setFilter(generationFilter);
                     }
 
-                    //calculate new results but substracting results already obtained in this ingest
-                    Map<Keyword, List<ContentHit>> newResults = filterResults(queryResult, isRegex);
-
-                    if (!newResults.isEmpty()) {
-
-                        //write results to BB
-
-                        //new artifacts created, to report to listeners
-                        Collection<BlackboardArtifact> newArtifacts = new ArrayList<BlackboardArtifact>();
-
-                        for (final Keyword hitTerm : newResults.keySet()) {
-                            List<ContentHit> contentHitsAll = newResults.get(hitTerm);
-                            Map<AbstractFile, Integer> contentHitsFlattened = ContentHit.flattenResults(contentHitsAll);
-                            for (final AbstractFile hitFile : contentHitsFlattened.keySet()) {
-                                String snippet = null;
+                    //new artifacts created, to report to listeners
+                    Collection<BlackboardArtifact> newArtifacts = new ArrayList<BlackboardArtifact>();
+                    try {
+                        //stream the hits, a page at a time, instead of holding all of them in memory
+                        final ContentHitIterator hits = del.performQueryIterator();
+                        while (hits.hasNext()) {
+                            if (this.isCancelled()) {
+                                logger.log(Level.INFO, "Cancel detected, bailing during keyword hits: " + keywordQuery.getQuery());
+                                return null;
+                            }
+                            final ContentHit hit = hits.next();
+                            //only the first hit of a file per term in this ingest is a new result
+                            final Keyword hitTerm = new Keyword(hits.getTerm(), !isRegex);
+                            if (!addResult(hitTerm, hit.getId())) {
+                                continue;
+                            }
+                            final AbstractFile hitFile = hit.getContent();
+                            //snippet highlighted with the query, if any
+                            String snippet = hit.getSnippet();
+                            if (snippet == null) {
                                 final String snippetQuery = KeywordSearchUtil.escapeLuceneQuery(hitTerm.getQuery());
-                                int chunkId = contentHitsFlattened.get(hitFile);
+                                int chunkId = hit.getChunkId();
                                 try {
                                     snippet = LuceneQuery.querySnippet(snippetQuery, hitFile.getId(), chunkId, isRegex, true);
                                 } catch (NoOpenCoreException e) {
@@ -881,105 +1093,119 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
                                     logger.log(Level.WARNING, "Error querying snippet: " + snippetQuery, e);
                                     continue;
                                 }
+                            }
 
-                                KeywordWriteResult written = del.writeToBlackBoard(hitTerm.getQuery(), hitFile, snippet, listName);
+                            KeywordWriteResult written = del.writeToBlackBoard(hitTerm.getQuery(), hitFile, snippet, listName);
 
-                                if (written == null) {
-                                    logger.log(Level.WARNING, "BB artifact for keyword hit not written, file: " + hitFile + ", hit: " + hitTerm.toString());
-                                    continue;
-                                }
+                            if (written == null) {
+                                logger.log(Level.WARNING, "BB artifact for keyword hit not written, file: " + hitFile + ", hit: " + hitTerm.toString());
+                                continue;
+                            }
 
-                                newArtifacts.add(written.getArtifact());
+                            newArtifacts.add(written.getArtifact());
 
-                                //generate a data message for each artifact
-                                StringBuilder subjectSb = new StringBuilder();
-                                StringBuilder detailsSb = new StringBuilder();
-                                //final int hitFiles = newResults.size();
+                            //generate a data message for each artifact
+                            StringBuilder subjectSb = new StringBuilder();
+                            StringBuilder detailsSb = new StringBuilder();
 
-                                if (!keywordQuery.isLiteral()) {
-                                    subjectSb.append("RegExp hit: ");
-                                } else {
-                                    subjectSb.append("Keyword hit: ");
-                                }
-                                //subjectSb.append("<");
-                                String uniqueKey = null;
-                                BlackboardAttribute attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD.getTypeID());
-                                if (attr != null) {
-                                    final String keyword = attr.getValueString();
-                                    subjectSb.append(keyword);
-                                    uniqueKey = keyword.toLowerCase();
-                                }
+                            if (!keywordQuery.isLiteral()) {
+                                subjectSb.append("RegExp hit: ");
+                            } else {
+                                subjectSb.append("Keyword hit: ");
+                            }
+                            //subjectSb.append("<");
+                            String uniqueKey = null;
+                            BlackboardAttribute attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD.getTypeID());
+                            if (attr != null) {
+                                final String keyword = attr.getValueString();
+                                subjectSb.append(keyword);
+                                uniqueKey = keyword.toLowerCase();
+                            }
+
+                            //subjectSb.append(">");
+                            //String uniqueKey = queryStr;
 
-                                //subjectSb.append(">");
-                                //String uniqueKey = queryStr;
+                            //details
+                            detailsSb.append("<table border='0' cellpadding='4' width='280'>");
+                            //hit
+                            detailsSb.append("<tr>");
+                            detailsSb.append("<th>Keyword hit</th>");
+                            detailsSb.append("<td>").append(StringEscapeUtils.escapeHtml(attr.getValueString())).append("</td>");
+                            detailsSb.append("</tr>");
 
-                                //details
-                                detailsSb.append("<table border='0' cellpadding='4' width='280'>");
-                                //hit
+                            //preview
+                            attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_PREVIEW.getTypeID());
+                            if (attr != null) {
                                 detailsSb.append("<tr>");
-                                detailsSb.append("<th>Keyword hit</th>");
+                                detailsSb.append("<th>Preview</th>");
                                 detailsSb.append("<td>").append(StringEscapeUtils.escapeHtml(attr.getValueString())).append("</td>");
                                 detailsSb.append("</tr>");
 
-                                //preview
-                                attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_PREVIEW.getTypeID());
-                                if (attr != null) {
-                                    detailsSb.append("<tr>");
-                                    detailsSb.append("<th>Preview</th>");
-                                    detailsSb.append("<td>").append(StringEscapeUtils.escapeHtml(attr.getValueString())).append("</td>");
-                                    detailsSb.append("</tr>");
-
-                                }
+                            }
 
-                                //file
-                                detailsSb.append("<tr>");
-                                detailsSb.append("<th>File</th>");
-                                if (hitFile.getType().equals(TskData.TSK_DB_FILES_TYPE_ENUM.FS)) {
-                                    detailsSb.append("<td>").append(((FsContent) hitFile).getParentPath()).append(hitFile.getName()).append("</td>");
-                                } else {
-                                    detailsSb.append("<td>").append(hitFile.getName()).append("</td>");
-                                }
-                                detailsSb.append("</tr>");
+                            //file
+                            detailsSb.append("<tr>");
+                            detailsSb.append("<th>File</th>");
+                            if (hitFile.getType().equals(TskData.TSK_DB_FILES_TYPE_ENUM.FS)) {
+                                detailsSb.append("<td>").append(((FsContent) hitFile).getParentPath()).append(hitFile.getName()).append("</td>");
+                            } else {
+                                detailsSb.append("<td>").append(hitFile.getName()).append("</td>");
+                            }
+                            detailsSb.append("</tr>");
 
 
-                                //list
-                                attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID());
-                                detailsSb.append("<tr>");
-                                detailsSb.append("<th>List</th>");
-                                detailsSb.append("<td>").append(attr.getValueString()).append("</td>");
-                                detailsSb.append("</tr>");
+                            //list
+                            attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID());
+                            detailsSb.append("<tr>");
+                            detailsSb.append("<th>List</th>");
+                            detailsSb.append("<td>").append(attr.getValueString()).append("</td>");
+                            detailsSb.append("</tr>");
 
-                                //regex
-                                if (!keywordQuery.isLiteral()) {
-                                    attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_REGEXP.getTypeID());
-                                    if (attr != null) {
-                                        detailsSb.append("<tr>");
-                                        detailsSb.append("<th>RegEx</th>");
-                                        detailsSb.append("<td>").append(attr.getValueString()).append("</td>");
-                                        detailsSb.append("</tr>");
+                            //regex
+                            if (!keywordQuery.isLiteral()) {
+                                attr = written.getAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_REGEXP.getTypeID());
+                                if (attr != null) {
+                                    detailsSb.append("<tr>");
+                                    detailsSb.append("<th>RegEx</th>");
+                                    detailsSb.append("<td>").append(attr.getValueString()).append("</td>");
+                                    detailsSb.append("</tr>");
 
-                                    }
                                 }
-                                detailsSb.append("</table>");
+                            }
+                            detailsSb.append("</table>");
 
-                                //check if should send messages on hits on this list
-                                if (list.getIngestMessages()) //post ingest inbox msg
-                                {
-                                    services.postMessage(IngestMessage.createDataMessage(++messageID, instance, subjectSb.toString(), detailsSb.toString(), uniqueKey, written.getArtifact()));
-                                }
+                            //check if should send messages on hits on this list
+                            if (list.getIngestMessages()) //post ingest inbox msg
+                            {
+                                services.postMessage(IngestMessage.createDataMessage(++messageID, instance, subjectSb.toString(), detailsSb.toString(), uniqueKey, written.getArtifact()));
+                            }
 
 
-                            } //for each term hit
-                        }//for each file hit
+                        } //for each hit
 
                         //update artifact browser
                         if (!newArtifacts.isEmpty()) {
                             services.fireModuleDataEvent(new ModuleDataEvent(MODULE_NAME, ARTIFACT_TYPE.TSK_KEYWORD_HIT, newArtifacts));
                         }
+                    } catch (NoOpenCoreException ex) {
+                        logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), ex);
+                        //no reason to continue with next query if recovery failed
+                        //or wait for recovery to kick in and run again later
+                        //likely case has closed and threads are being interrupted
+                        return null;
+                    } catch (CancellationException e) {
+                        logger.log(Level.INFO, "Cancel detected, bailing during keyword query: " + keywordQuery.getQuery());
+                        return null;
+                    } catch (Exception e) {
+                        logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), e);
+                        continue;
                     }
                     progress.progress(queryStr, ++numSearched);
                 }
 
+                //all keywords searched, next search continues from here
+                searchFromGeneration = Math.max(searchFromGeneration, searchedGeneration);
+
             } //end try block
             catch (Exception ex) {
                 logger.log(Level.WARNING, "searcher exception occurred", ex);
@@ -993,6 +1219,24 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
             return null;
         }
 
+        /**
+         * Queries the terms of all regex keywords at once
+         *
+         * @return terms matching each of the regex keywords queried at once,
+         * the terms of the other keywords need to be queried separately
+         * @throws NoOpenCoreException if there is no open core to query
+         */
+        private Map<Keyword, List<Term>> queryRegexTerms() throws NoOpenCoreException {
+            final TermComponentMultiQuery multiQuery = new TermComponentMultiQuery(keywords);
+            try {
+                return multiQuery.performQuery();
+            } catch (SolrServerException ex) {
+                //e.g. combined regex too large, fall back to a terms query per keyword
+                logger.log(Level.WARNING, "Error querying the terms of the regex keywords at once, querying them separately", ex);
+                return new HashMap<Keyword, List<Term>>();
+            }
+        }
+
         /**
          * Retrieve the updated keyword search lists from the XML loader
          */
@@ -1040,9 +1284,10 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
                 keywordLists.clear();
                 keywordToList.clear();
                 //reset current resuls earlier to potentially garbage collect sooner
-                currentResults = new HashMap<Keyword, List<Long>>();
+                currentResults = new HashMap<Keyword, Set<Long>>();
 
                 services.postMessage(IngestMessage.createMessage(++messageID, MessageType.INFO, KeywordSearchIngestModule.instance, "Completed"));
+                services.fileModuleDeferredWorkDone(KeywordSearchIngestModule.instance);
             } else {
                 //start counting time for a new searcher to start
                 //unless final searcher is pending
@@ -1052,44 +1297,15 @@ public final class KeywordSearchIngestModule implements IngestModuleAbstractFile
             }
         }
 
-        //calculate new results but substracting results already obtained in this ingest
-        //update currentResults map with the new results
-        private Map<Keyword, List<ContentHit>> filterResults(Map<String, List<ContentHit>> queryResult, boolean isRegex) {
-            Map<Keyword, List<ContentHit>> newResults = new HashMap<Keyword, List<ContentHit>>();
-
-            for (String termResult : queryResult.keySet()) {
-                List<ContentHit> queryTermResults = queryResult.get(termResult);
-
-                //translate to list of IDs that we keep track of
-                List<Long> queryTermResultsIDs = new ArrayList<Long>();
-                for (ContentHit ch : queryTermResults) {
-                    queryTermResultsIDs.add(ch.getId());
-                }
-
-                Keyword termResultK = new Keyword(termResult, !isRegex);
-                List<Long> curTermResults = currentResults.get(termResultK);
-                if (curTermResults == null) {
-                    currentResults.put(termResultK, queryTermResultsIDs);
-                    newResults.put(termResultK, queryTermResults);
-                } else {
-                    //some AbstractFile hits already exist for this keyword
-                    for (ContentHit res : queryTermResults) {
-                        if (!curTermResults.contains(res.getId())) {
-                            //add to new results
-                            List<ContentHit> newResultsFs = newResults.get(termResultK);
-                            if (newResultsFs == null) {
-                                newResultsFs = new ArrayList<ContentHit>();
-                                newResults.put(termResultK, newResultsFs);
-                            }
-                            newResultsFs.add(res);
-                            curTermResults.add(res.getId());
-                        }
-                    }
-                }
+        //check if the hit is a new result, not already obtained in this ingest
+        //update currentResults map with the new result
+        private boolean addResult(Keyword term, long fileId) {
+            Set<Long> curTermResults = currentResults.get(term);
+            if (curTermResults == null) {
+                curTermResults = new HashSet<Long>();
+                currentResults.put(term, curTermResults);
             }
-
-            return newResults;
-
+            return curTermResults.add(fileId);
         }
     }
 }
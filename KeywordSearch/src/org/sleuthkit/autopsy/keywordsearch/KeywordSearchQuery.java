@@ -40,7 +40,15 @@ public interface KeywordSearchQuery {
      * @return 
      */
     public Map<String,List<ContentHit>> performQuery() throws NoOpenCoreException;
-    
+
+    /**
+     * execute query and stream the results, a page of hits at a time
+     * use instead of performQuery() to process large results with constant memory
+     * @throws NoOpenCoreException if query failed due to server error, this could be a notification to stop processing
+     * @return iterator over the hits of all matching terms
+     */
+    public ContentHitIterator performQueryIterator() throws NoOpenCoreException;
+
     
     /**
      * Set an optional filter to narrow down the search
@@ -225,14 +225,37 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
             }
 
             //execute the query and get fscontents matching
-            Map<String, List<ContentHit>> tcqRes;
+            //stream the hits once, keeping only the first hit of each term per file
+            //for the preview and the blackboard, the chunks with hits are queried again for the file when viewed
+            final Map<AbstractFile, Map<String, ContentHit>> hitContents = new LinkedHashMap<AbstractFile, Map<String, ContentHit>>();
+            final Map<String, List<ContentHit>> termHits = new LinkedHashMap<String, List<ContentHit>>();
             try {
-                tcqRes = tcq.performQuery();
+                final ContentHitIterator hits = tcq.performQueryIterator();
+                while (hits.hasNext()) {
+                    final ContentHit hit = hits.next();
+                    final String term = hits.getTerm();
+                    Map<String, ContentHit> fileHits = hitContents.get(hit.getContent());
+                    if (fileHits == null) {
+                        fileHits = new LinkedHashMap<String, ContentHit>();
+                        hitContents.put(hit.getContent(), fileHits);
+                    }
+                    if (fileHits.containsKey(term)) {
+                        continue;
+                    }
+                    fileHits.put(term, hit);
+                    List<ContentHit> termFiles = termHits.get(term);
+                    if (termFiles == null) {
+                        termFiles = new ArrayList<ContentHit>();
+                        termHits.put(term, termFiles);
+                    }
+                    termFiles.add(hit);
+                }
             } catch (NoOpenCoreException ex) {
                 logger.log(Level.WARNING, "Could not perform the query. ", ex);
                 return false;
             }
-            final Map<AbstractFile, Integer> hitContents = ContentHit.flattenResults(tcqRes);
+            //in regex, all of the files hit by the same term
+            final boolean singleTerm = tcq.getTerms() != null && tcq.getTerms().size() == 1;
 
             //get listname
             String listName = "";
@@ -245,7 +268,9 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
 
             int resID = 0;
             for (final AbstractFile f : hitContents.keySet()) {
-                final int previewChunk = hitContents.get(f);
+                final Map<String, ContentHit> fileHits = hitContents.get(f);
+                //flatten, record first chunk encountered
+                final int previewChunk = fileHits.values().iterator().next().getChunkId();
                 //get unique match result files
                 Map<String, Object> resMap = new LinkedHashMap<String, Object>();
                 setCommonProperty(resMap, CommonPropertyTypes.MATCH, f.getName());
@@ -260,23 +285,9 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
                     } else {
                         //in regex, to generate the preview snippet
                         //just pick any term that hit that file (since we are compressing result view)
-                        String hit = null;
-                        //find the first hit for this file 
-                        for (String hitKey : tcqRes.keySet()) {
-                            List<ContentHit> chits = tcqRes.get(hitKey);
-                            for (ContentHit chit : chits) {
-                                if (chit.getContent().equals(f)) {
-                                    hit = hitKey;
-                                    break;
-                                }
-                            }
-                            if (hit != null) {
-                                break;
-                            }
-                        }
-                        if (hit != null) {
-                            snippetQuery = KeywordSearchUtil.escapeLuceneQuery(hit);
-                        }
+                        //the first hit for this file
+                        final String hit = fileHits.keySet().iterator().next();
+                        snippetQuery = KeywordSearchUtil.escapeLuceneQuery(hit);
                     }
 
                     if (snippetQuery != null) {
@@ -292,20 +303,21 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
                     AbstractFsContentNode.fillPropertyMap(resMap, (FsContent) f);
                 }
 
-                final String highlightQueryEscaped = getHighlightQuery(tcq, literal_query, tcqRes, f);
-                toPopulate.add(new KeyValueQueryContent(f.getName(), resMap, ++resID, f, highlightQueryEscaped, tcq, previewChunk, tcqRes));
+                final List<String> hitTerms = new ArrayList<String>(fileHits.keySet());
+                final String highlightQueryEscaped = getHighlightQuery(tcq, literal_query, singleTerm, hitTerms);
+                toPopulate.add(new KeyValueQueryContent(f.getName(), resMap, ++resID, f, highlightQueryEscaped, tcq, previewChunk, hitTerms));
             }
-            //write to bb
+            //write to bb the hits of the same pass, the query is not performed again
             //cannot reuse snippet in ResultWriter
             //because for regex searches in UI we compress results by showing a file per regex once (even if multiple term hits)
             //whereas in bb we write every hit per file separately
-            new ResultWriter(tcqRes, tcq, listName).execute();
+            new ResultWriter(termHits, tcq, listName).execute();
 
 
             return true;
         }
 
-        private String getHighlightQuery(KeywordSearchQuery tcq, boolean literal_query, Map<String, List<ContentHit>> tcqRes, AbstractFile f) {
+        private String getHighlightQuery(KeywordSearchQuery tcq, boolean literal_query, boolean singleTerm, List<String> hitTerms) {
             String highlightQueryEscaped = null;
             if (literal_query) {
                 //literal, treat as non-regex, non-term component query
@@ -315,24 +327,12 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
                 //the query is executed later on demand
                 StringBuilder highlightQuery = new StringBuilder();
 
-                if (tcqRes.keySet().size() == 1) {
+                if (singleTerm) {
                     //simple case, no need to process subqueries and do special escaping
-                    String term = tcqRes.keySet().iterator().next();
+                    String term = hitTerms.get(0);
                     highlightQuery.append(term);
                 } else {
-                    //find terms for this file hit
-                    List<String> hitTerms = new ArrayList<String>();
-                    for (String term : tcqRes.keySet()) {
-                        List<ContentHit> hitList = tcqRes.get(term);
-
-                        for (ContentHit h : hitList) {
-                            if (h.getContent().equals(f)) {
-                                hitTerms.add(term);
-                                break; //go to next term
-                            }
-                        }
-                    }
-
+                    //terms for this file hit
                     final int lastTerm = hitTerms.size() - 1;
                     int curTerm = 0;
                     for (String term : hitTerms) {
@@ -366,11 +366,11 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
             final Content content = thingContent.getContent();
             final String queryStr = thingContent.getQueryStr();
             final int previewChunk = thingContent.getPreviewChunk();
-            Map<String, List<ContentHit>> hits = thingContent.getHits();
+            final List<String> hitTerms = thingContent.getHitTerms();
 
             Node kvNode = new KeyValueNode(thingContent, Children.LEAF, Lookups.singleton(content));
             //wrap in KeywordSearchFilterNode for the markup content, might need to override FilterNode for more customization
-            HighlightedMatchesSource highlights = new HighlightedMatchesSource(content, queryStr, !thingContent.getQuery().isEscaped(), false, hits);
+            HighlightedMatchesSource highlights = new HighlightedMatchesSource(content, queryStr, !thingContent.getQuery().isEscaped(), false, hitTerms);
             return new KeywordSearchFilterNode(highlights, kvNode, queryStr, previewChunk);
 
         }
@@ -416,32 +416,40 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
                 LuceneQuery filesQuery = new LuceneQuery(keywordQuery);
                 filesQuery.escape();
 
-                Map<String, List<ContentHit>> matchesRes;
+                //get unique match result files, streaming the hits once
+                final Map<AbstractFile, ContentHit> uniqueMatches = new LinkedHashMap<AbstractFile, ContentHit>();
                 try {
-                    matchesRes = filesQuery.performQuery();
+                    final ContentHitIterator hits = filesQuery.performQueryIterator();
+                    while (hits.hasNext()) {
+                        final ContentHit hit = hits.next();
+                        //flatten, record first chunk encountered
+                        if (!uniqueMatches.containsKey(hit.getContent())) {
+                            uniqueMatches.put(hit.getContent(), hit);
+                        }
+                    }
                 } catch (NoOpenCoreException ex) {
                     logger.log(Level.WARNING, "Could not perform the query. ", ex);
                     return false;
                 }
 
-                //get unique match result files
-                final Map<AbstractFile, Integer> uniqueMatches = ContentHit.flattenResults(matchesRes);
-
                 int resID = 0;
 
                 final KeywordSearchQuery origQuery = thing.getQuery();
 
                 for (final AbstractFile f : uniqueMatches.keySet()) {
-                    final int previewChunkId = uniqueMatches.get(f);
+                    final int previewChunkId = uniqueMatches.get(f).getChunkId();
                     Map<String, Object> resMap = new LinkedHashMap<String, Object>();
                     if (f.getType() == TSK_DB_FILES_TYPE_ENUM.FS) {
                         AbstractFsContentNode.fillPropertyMap(resMap, (FsContent) f);
                     }
-                    toPopulate.add(new KeyValueQueryContent(f.getName(), resMap, ++resID, f, keywordQuery, thing.getQuery(), previewChunkId, matchesRes));
+                    //the hits are not kept, the chunks with hits are queried again for the file when viewed
+                    toPopulate.add(new KeyValueQueryContent(f.getName(), resMap, ++resID, f, keywordQuery, thing.getQuery(), previewChunkId, null));
 
                 }
-                //write to bb
-                new ResultWriter(matchesRes, origQuery, "").execute();
+                //write to bb the first hit of each file, the query is not performed again
+                final Map<String, List<ContentHit>> termHits = new LinkedHashMap<String, List<ContentHit>>();
+                termHits.put(keywordQuery, new ArrayList<ContentHit>(uniqueMatches.values()));
+                new ResultWriter(termHits, origQuery, "").execute();
 
                 return true;
             }
@@ -452,12 +460,12 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
                 final Content content = thingContent.getContent();
                 final String query = thingContent.getQueryStr();
                 final int previewChunk = thingContent.getPreviewChunk();
-                final Map<String, List<ContentHit>> hits = thingContent.getHits();
+                final List<String> hitTerms = thingContent.getHitTerms();
 
 
                 Node kvNode = new KeyValueNode(thingContent, Children.LEAF, Lookups.singleton(content));
                 //wrap in KeywordSearchFilterNode for the markup content
-                HighlightedMatchesSource highlights = new HighlightedMatchesSource(content, query, !thingContent.getQuery().isEscaped(), hits);
+                HighlightedMatchesSource highlights = new HighlightedMatchesSource(content, query, !thingContent.getQuery().isEscaped(), hitTerms);
                 return new KeywordSearchFilterNode(highlights, kvNode, query, previewChunk);
             }
         }
@@ -472,7 +480,7 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
         private String queryStr;
         private KeywordSearchQuery query;
         private int previewChunk;
-        private Map<String, List<ContentHit>> hits;
+        private List<String> hitTerms;
 
         Content getContent() {
             return content;
@@ -486,16 +494,16 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
             return previewChunk;
         }
 
-        Map<String, List<ContentHit>> getHits() {
-            return hits;
+        List<String> getHitTerms() {
+            return hitTerms;
         }
 
-        public KeyValueQueryContent(String name, Map<String, Object> map, int id, Content content, String queryStr, KeywordSearchQuery query, int previewChunk, Map<String, List<ContentHit>> hits) {
+        public KeyValueQueryContent(String name, Map<String, Object> map, int id, Content content, String queryStr, KeywordSearchQuery query, int previewChunk, List<String> hitTerms) {
             super(name, map, id, query);
             this.content = content;
             this.queryStr = queryStr;
             this.previewChunk = previewChunk;
-            this.hits = hits;
+            this.hitTerms = hitTerms;
         }
     }
 
@@ -516,6 +524,12 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
         final Collection<BlackboardArtifact> na = new ArrayList<BlackboardArtifact>();
         private static final int QUERY_DISPLAY_LEN = 40;
 
+        /**
+         * @param hits first hit of each file hit by a term, by term, collected
+         * by the query pass that produced the results shown
+         * @param query query to write the hits with
+         * @param listName list name of the hits
+         */
         ResultWriter(Map<String, List<ContentHit>> hits, KeywordSearchQuery query, String listName) {
             this.hits = hits;
             this.query = query;
@@ -557,17 +571,17 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
                     }
                 });
 
-                progress.start(hits.keySet().size());
-                int processedFiles = 0;
-                for (final String hit : hits.keySet()) {
-                    progress.progress(hit, ++processedFiles);
-                    if (this.isCancelled()) {
-                        break;
-                    }
-                    Map<AbstractFile, Integer> flattened = ContentHit.flattenResults(hits.get(hit));
-                    for (AbstractFile f : flattened.keySet()) {
-                        int chunkId = flattened.get(f);
-                        final String snippetQuery = KeywordSearchUtil.escapeLuceneQuery(hit);
+                progress.start();
+                for (Map.Entry<String, List<ContentHit>> termHits : hits.entrySet()) {
+                    final String hit = termHits.getKey();
+                    final String snippetQuery = KeywordSearchUtil.escapeLuceneQuery(hit);
+                    progress.progress(hit);
+                    for (ContentHit contentHit : termHits.getValue()) {
+                        if (this.isCancelled()) {
+                            return null;
+                        }
+                        final AbstractFile f = contentHit.getContent();
+                        int chunkId = contentHit.getChunkId();
                         String snippet = null;
                         try {
                             snippet = LuceneQuery.querySnippet(snippetQuery, f.getId(), chunkId, !query.isLiteral(), true);
@@ -586,7 +600,6 @@ public class KeywordSearchResultFactory extends ChildFactory<KeyValueQuery> {
                             }
                         }
                     }
-
                 }
             } finally {
                 //writerLock.unlock();
@@ -78,6 +78,91 @@ public class KeywordSearchSettings {
         skipKnown = skip;
     }
     
+   /**
+     * Gets the setting for whether the final search of an ingest searches the entire index,
+     * or only the documents indexed since the previous search like the periodic searches.
+     * @return true if the final search is a full pass (default)
+     */
+    static boolean getFullFinalSearch() {
+        final String fullFinalSearch = ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, "FullFinalSearch");
+        if (fullFinalSearch != null) {
+            return Boolean.parseBoolean(fullFinalSearch);
+        }
+        return true;
+    }
+
+   /**
+     * Gets the setting for whether extracted text is indexed in batches of documents,
+     * rather than a Solr extract request per chunk.
+     * @return true if batch indexing is enabled (default)
+     */
+    static boolean getBatchIndexing() {
+        final String batchIndexing = ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, "BatchIndexing");
+        if (batchIndexing != null) {
+            return Boolean.parseBoolean(batchIndexing);
+        }
+        return true;
+    }
+
+   /**
+     * Gets the number of threads extracting text from files in parallel, each with its own extractors.
+     * @return number of extraction threads, by default one less than the number of processors (at least 1)
+     */
+    static int getExtractionThreads() {
+        final String extractionThreads = ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, "ExtractionThreads");
+        if (extractionThreads != null) {
+            try {
+                return Math.max(1, Integer.parseInt(extractionThreads));
+            } catch (NumberFormatException e) {
+                logger.log(Level.WARNING, "Invalid ExtractionThreads setting: " + extractionThreads);
+            }
+        }
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+   /**
+     * Gets the setting for whether extracted text is written directly to the index document,
+     * rather than parsed again by the Solr extract handler. Only used if batch indexing is off.
+     * @return true if direct text indexing is enabled (default)
+     */
+    static boolean getDirectTextIndexing() {
+        final String directTextIndexing = ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, "DirectTextIndexing");
+        if (directTextIndexing != null) {
+            return Boolean.parseBoolean(directTextIndexing);
+        }
+        return true;
+    }
+
+   /**
+     * Gets the number of chars of a hit document analyzed to highlight the snippets of the hits
+     * found by a keyword query, in bulk with the hits. Snippets of hits past these chars are queried separately.
+     * @return number of chars analyzed for the snippets, 65536 by default
+     */
+    static int getSnippetAnalyzedChars() {
+        final String snippetAnalyzedChars = ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, "SnippetAnalyzedChars");
+        if (snippetAnalyzedChars != null) {
+            try {
+                return Math.max(1, Integer.parseInt(snippetAnalyzedChars));
+            } catch (NumberFormatException e) {
+                logger.log(Level.WARNING, "Invalid SnippetAnalyzedChars setting: " + snippetAnalyzedChars);
+            }
+        }
+        return 64 * 1024;
+    }
+
+   /**
+     * Gets the setting for whether the Solr cores are hosted in the Autopsy JVM,
+     * rather than in a separate Solr process reached over HTTP. Read when the module starts.
+     * @return true if Solr is embedded, false by default
+     */
+    static boolean getEmbeddedSolr() {
+        final String embeddedSolr = ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, "EmbeddedSolr");
+        if (embeddedSolr != null) {
+            return Boolean.parseBoolean(embeddedSolr);
+        }
+        return false;
+    }
+
    /**
      * Gets the setting for whether or not this ingest is skipping adding known good files to the index.
      * @return skip setting
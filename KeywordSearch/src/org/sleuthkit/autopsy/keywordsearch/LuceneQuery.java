@@ -18,11 +18,15 @@
  */
 package org.sleuthkit.autopsy.keywordsearch;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.apache.commons.lang.StringEscapeUtils;
@@ -51,6 +55,10 @@ public class LuceneQuery implements KeywordSearchQuery {
     private Keyword keywordQuery = null;
     private KeywordQueryFilter filter = null;
     private String field = null;
+    private boolean snippets = false;
+    private static final int SNIPPET_LENGTH = 45;
+    //max. number of files looked up with one query, keeps the SQL statement small
+    private static final int LOOKUP_BATCH_SIZE = 500;
     //use different highlight Solr fields for regex and literal search
     static final String HIGHLIGHT_FIELD_LITERAL = Server.Schema.CONTENT.toString();
     static final String HIGHLIGHT_FIELD_REGEX = Server.Schema.CONTENT.toString();
@@ -78,6 +86,17 @@ public class LuceneQuery implements KeywordSearchQuery {
         this.field = field;
     }
 
+    /**
+     * Sets whether to get the snippet previews of the hits with the same query
+     * that finds the hits. Snippets past the analyzed chars window are left
+     * out, to query separately with querySnippet() if needed.
+     *
+     * @param snippets true to highlight the hits
+     */
+    void setSnippets(boolean snippets) {
+        this.snippets = snippets;
+    }
+
     @Override
     public void escape() {
         queryEscaped = KeywordSearchUtil.escapeLuceneQuery(query);
@@ -170,92 +189,154 @@ public class LuceneQuery implements KeywordSearchQuery {
         return null;
     }
 
-    
+
+    @Override
+    public ContentHitIterator performQueryIterator() throws NoOpenCoreException {
+        return new LuceneHitIterator();
+    }
+
     /**
      * Perform the query and return result
      * @return list of ContentHit objects
      * @throws NoOpenCoreException
      */
     private List<ContentHit> performLuceneQuery() throws NoOpenCoreException {
-
         List<ContentHit> matches = new ArrayList<ContentHit>();
+        final ContentHitIterator hits = performQueryIterator();
+        while (hits.hasNext()) {
+            matches.add(hits.next());
+        }
+        return matches;
+    }
 
-        boolean allMatchesFetched = false;
-        final int ROWS_PER_FETCH = 10000;
+    /**
+     * Streams the hits a page at a time, sorted by the document id.
+     *
+     * Solr 3 has no cursors and paging with start/rows gets slower the deeper
+     * the page, as all hits before the page are collected again. Instead, each
+     * page is queried from the start, filtered to the ids after the last id of
+     * the previous page, so all pages cost the same and only the current page
+     * is held in memory.
+     */
+    private class LuceneHitIterator implements ContentHitIterator {
+
+        private static final int ROWS_PER_FETCH = 10000;
+        private final SolrQuery q;
+        private List<ContentHit> page = new ArrayList<ContentHit>();
+        private int pageIndex = 0;
+        private String cursorFilter = null;
+        private boolean allMatchesFetched = false;
+
+        LuceneHitIterator() {
+            q = new SolrQuery();
+
+            //set query, force quotes/grouping around all literal queries
+            final String groupedQuery = KeywordSearchUtil.quoteQuery(queryEscaped);
+            String theQueryStr = groupedQuery;
+            if (field != null) {
+                //use the optional field
+                StringBuilder sb = new StringBuilder();
+                sb.append(field).append(":").append(groupedQuery);
+                theQueryStr = sb.toString();
+            }
 
-        final Server solrServer = KeywordSearch.getServer();
+            q.setQuery(theQueryStr);
+            q.setRows(ROWS_PER_FETCH);
+            q.setFields(Server.Schema.ID.toString());
+            q.setSortField(Server.Schema.ID.toString(), SolrQuery.ORDER.asc);
+            if (filter != null) {
+                q.addFilterQuery(filter.toString());
+            }
 
-        SolrQuery q = new SolrQuery();
+            if (snippets) {
+                //highlight the hits with the same query, instead of a snippet query per hit
+                q.setHighlight(true);
+                q.addHighlightField(HIGHLIGHT_FIELD_LITERAL);
+                q.setHighlightSimplePre("&laquo;");
+                q.setHighlightSimplePost("&raquo;");
+                q.setHighlightSnippets(1);
+                q.setHighlightFragsize(SNIPPET_LENGTH);
+                q.setParam("hl.maxAnalyzedChars", Integer.toString(KeywordSearchSettings.getSnippetAnalyzedChars()));
+            }
+        }
 
-        //set query, force quotes/grouping around all literal queries
-        final String groupedQuery = KeywordSearchUtil.quoteQuery(queryEscaped);
-        String theQueryStr = groupedQuery;
-        if (field != null) {
-            //use the optional field
-            StringBuilder sb = new StringBuilder();
-            sb.append(field).append(":").append(groupedQuery);
-            theQueryStr = sb.toString();
+        @Override
+        public boolean hasNext() throws NoOpenCoreException {
+            while (pageIndex >= page.size()) {
+                if (allMatchesFetched) {
+                    return false;
+                }
+                fetchPage();
+            }
+            return true;
         }
-        
-        q.setQuery(theQueryStr);
-        q.setRows(ROWS_PER_FETCH);
-        q.setFields(Server.Schema.ID.toString());
-        if (filter != null) {
-            q.addFilterQuery(filter.toString());
+
+        @Override
+        public ContentHit next() throws NoOpenCoreException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.get(pageIndex++);
+        }
+
+        @Override
+        public String getTerm() {
+            //in case of single term literal query there is only 1 term
+            return query;
         }
 
-        for (int start = 0; !allMatchesFetched; start = start + ROWS_PER_FETCH) {
-            q.setStart(start);
+        private void fetchPage() throws NoOpenCoreException {
+            page = new ArrayList<ContentHit>();
+            pageIndex = 0;
+            //give up on the rest of the hits on errors, the next page cannot be found without this one
+            allMatchesFetched = true;
 
+            final Server solrServer = KeywordSearch.getServer();
             try {
                 QueryResponse response = solrServer.query(q, METHOD.POST);
                 SolrDocumentList resultList = response.getResults();
-                long results = resultList.getNumFound();
-                allMatchesFetched = start + ROWS_PER_FETCH >= results;
                 SleuthkitCase sc = null;
                 try {
                     sc = Case.getCurrentCase().getSleuthkitCase();
                 } catch (IllegalStateException ex) {
                     //no case open, must be just closed
-                    return matches;
+                    return;
                 }
 
-                for (SolrDocument resultDoc : resultList) {
-                    final String resultID = (String) resultDoc.getFieldValue(Server.Schema.ID.toString());
-
-                    final int sepIndex = resultID.indexOf(Server.ID_CHUNK_SEP);
-
-                    if (sepIndex != -1) {
-                        //file chunk result
-                        final long fileID = Long.parseLong(resultID.substring(0, sepIndex));
-                        final int chunkId = Integer.parseInt(resultID.substring(sepIndex + 1));
-                        //logger.log(Level.INFO, "file id: " + fileID + ", chunkID: " + chunkId);
-
-                        try {
-                            AbstractFile resultAbstractFile = sc.getAbstractFileById(fileID);
-                            matches.add(new ContentHit(resultAbstractFile, chunkId));
-
-                        } catch (TskException ex) {
-                            logger.log(Level.WARNING, "Could not get the AbstractFile for keyword hit, ", ex);
-                            //something wrong with case/db
-                            return matches;
-                        }
-
-                    } else {
-                        final long fileID = Long.parseLong(resultID);
-
-                        try {
-                            AbstractFile resultAbstractFile = sc.getAbstractFileById(fileID);
-                            matches.add(new ContentHit(resultAbstractFile));
-                        } catch (TskException ex) {
-                            logger.log(Level.WARNING, "Could not get the AbstractFile for keyword hit, ", ex);
-                            //something wrong with case/db
-                            return matches;
-                        }
+                final Map<String, Map<String, List<String>>> highlights = snippets ? response.getHighlighting() : null;
+                //chunks of a file are hits of the same file, look the file up once
+                final Map<Long, AbstractFile> files = new HashMap<Long, AbstractFile>();
+                try {
+                    //look up the files of the page at once
+                    final List<String> resultIDs = new ArrayList<String>();
+                    final List<Long> fileIDs = new ArrayList<Long>();
+                    for (SolrDocument resultDoc : resultList) {
+                        final String resultID = (String) resultDoc.getFieldValue(Server.Schema.ID.toString());
+                        resultIDs.add(resultID);
+                        fileIDs.add(getFileId(resultID));
                     }
+                    lookupFiles(sc, fileIDs, files);
 
+                    for (String resultID : resultIDs) {
+                        page.add(createContentHit(sc, resultID, getSnippet(highlights, resultID), files));
+                    }
+                } catch (TskException ex) {
+                    logger.log(Level.WARNING, "Could not get the AbstractFile for keyword hit, ", ex);
+                    //something wrong with case/db
+                    page.clear();
+                    return;
                 }
 
+                if (resultList.size() == ROWS_PER_FETCH) {
+                    //next page starts after the last id of this one
+                    if (cursorFilter != null) {
+                        q.removeFilterQuery(cursorFilter);
+                    }
+                    final String lastID = (String) resultList.get(resultList.size() - 1).getFieldValue(Server.Schema.ID.toString());
+                    cursorFilter = Server.Schema.ID.toString() + ":{\"" + lastID + "\" TO *}";
+                    q.addFilterQuery(cursorFilter);
+                    allMatchesFetched = false;
+                }
 
             } catch (NoOpenCoreException ex) {
                 logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex);
@@ -263,9 +344,129 @@ public class LuceneQuery implements KeywordSearchQuery {
             } catch (SolrServerException ex) {
                 logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex);
             }
+        }
+    }
 
+    /**
+     * Gets the id of the file of a Solr result document
+     *
+     * @param resultID id of the result document, of a file or a file chunk
+     * @return the file id
+     */
+    static long getFileId(String resultID) {
+        final int sepIndex = resultID.indexOf(Server.ID_CHUNK_SEP);
+        if (sepIndex != -1) {
+            return Long.parseLong(resultID.substring(0, sepIndex));
         }
-        return matches;
+        return Long.parseLong(resultID);
+    }
+
+    /**
+     * Looks up the files not looked up yet with a query per batch of up to
+     * LOOKUP_BATCH_SIZE files, instead of a query per file
+     *
+     * @param sc case database to get the files from
+     * @param fileIDs ids of the files to look up
+     * @param files files already looked up, by id, the files found are added
+     */
+    static void lookupFiles(SleuthkitCase sc, Collection<Long> fileIDs, Map<Long, AbstractFile> files) {
+        final List<Long> toLookUp = new ArrayList<Long>(new LinkedHashSet<Long>(fileIDs));
+        toLookUp.removeAll(files.keySet());
+        for (int start = 0; start < toLookUp.size(); start += LOOKUP_BATCH_SIZE) {
+            lookupFileBatch(sc, toLookUp.subList(start, Math.min(start + LOOKUP_BATCH_SIZE, toLookUp.size())), files);
+        }
+    }
+
+    /**
+     * Looks up a batch of files with a single query
+     *
+     * @param sc case database to get the files from
+     * @param fileIDs ids of the files to look up, not empty
+     * @param files files already looked up, by id, the files found are added
+     */
+    private static void lookupFileBatch(SleuthkitCase sc, List<Long> fileIDs, Map<Long, AbstractFile> files) {
+        final StringBuilder query = new StringBuilder("SELECT * FROM tsk_files WHERE obj_id IN (");
+        boolean first = true;
+        for (Long fileID : fileIDs) {
+            if (!first) {
+                query.append(',');
+            }
+            query.append(fileID);
+            first = false;
+        }
+        query.append(')');
+
+        ResultSet rs = null;
+        try {
+            rs = sc.runQuery(query.toString());
+            for (AbstractFile file : sc.resultSetToAbstractFiles(rs)) {
+                files.put(file.getId(), file);
+            }
+        } catch (SQLException ex) {
+            //files not found are looked up one by one when the hits are created
+            logger.log(Level.WARNING, "Error looking up the files of keyword hits", ex);
+        } finally {
+            if (rs != null) {
+                try {
+                    sc.closeRunQuery(rs);
+                } catch (SQLException ex) {
+                    logger.log(Level.WARNING, "Error closing the files query", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the hit of a Solr result document
+     *
+     * @param sc case database to get the file of the hit from, if not looked
+     * up yet
+     * @param resultID id of the result document, of a file or a file chunk
+     * @param snippet snippet preview of the hit, or null
+     * @param files files already looked up, by id, the file of the hit is
+     * added if not there yet
+     * @return the hit
+     * @throws TskException if the file could not be looked up
+     */
+    static ContentHit createContentHit(SleuthkitCase sc, String resultID, String snippet, Map<Long, AbstractFile> files) throws TskException {
+        final long fileID = getFileId(resultID);
+        final int sepIndex = resultID.indexOf(Server.ID_CHUNK_SEP);
+        int chunkId = 0;
+        if (sepIndex != -1) {
+            //file chunk result
+            chunkId = Integer.parseInt(resultID.substring(sepIndex + 1));
+        }
+
+        AbstractFile resultAbstractFile = files.get(fileID);
+        if (resultAbstractFile == null) {
+            resultAbstractFile = sc.getAbstractFileById(fileID);
+            files.put(fileID, resultAbstractFile);
+        }
+        return new ContentHit(resultAbstractFile, chunkId, snippet);
+    }
+
+    /**
+     * Gets the snippet preview of a hit from the highlighting of the query
+     * response
+     *
+     * @param highlights highlighting of the response, or null
+     * @param resultID id of the hit document
+     * @return the snippet, or null if the hit was not highlighted
+     */
+    private static String getSnippet(Map<String, Map<String, List<String>>> highlights, String resultID) {
+        if (highlights == null) {
+            return null;
+        }
+        final Map<String, List<String>> docHighlights = highlights.get(resultID);
+        if (docHighlights == null) {
+            return null;
+        }
+        final List<String> contentHighlights = docHighlights.get(HIGHLIGHT_FIELD_LITERAL);
+        if (contentHighlights == null || contentHighlights.isEmpty()) {
+            return null;
+        }
+        // extracted content is HTML-escaped, but snippet goes in a plain text field
+        return StringEscapeUtils.unescapeHtml(contentHighlights.get(0)).trim();
     }
 
     /**
@@ -290,8 +491,6 @@ public class LuceneQuery implements KeywordSearchQuery {
      * @return 
      */
     public static String querySnippet(String query, long contentID, int chunkID, boolean isRegex, boolean group) throws NoOpenCoreException {
-        final int SNIPPET_LENGTH = 45;
-
         Server solrServer = KeywordSearch.getServer();
 
         String highlightField = null;
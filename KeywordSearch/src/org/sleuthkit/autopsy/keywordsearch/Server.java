@@ -29,16 +29,33 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
 import java.net.ConnectException;
 import java.net.MalformedURLException;
 import java.net.SocketException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import javax.swing.AbstractAction;
+import javax.xml.parsers.ParserConfigurationException;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
 import org.apache.solr.client.solrj.impl.CommonsHttpSolrServer;
 import org.apache.solr.client.solrj.request.CoreAdminRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -46,6 +63,9 @@ import org.apache.solr.client.solrj.response.TermsResponse;
 import org.apache.commons.httpclient.NoHttpResponseException;
 import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.CoreDescriptor;
+import org.apache.solr.core.SolrCore;
 import org.openide.modules.InstalledFileLocator;
 import org.openide.modules.Places;
 import org.openide.util.Exceptions;
@@ -53,9 +73,15 @@ import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.coreutils.PlatformUtil;
 import org.sleuthkit.autopsy.coreutils.Version;
 import org.sleuthkit.datamodel.Content;
+import org.xml.sax.SAXException;
 
 /**
  * Handles for keeping track of a Solr server and its cores
+ *
+ * By default Solr runs in a separate Jetty process, reached over HTTP. In
+ * embedded mode (EmbeddedSolr setting) the cores are hosted in this JVM
+ * instead, and requests are handled in-process without serializing them over
+ * HTTP. The rest of the module uses the same API in both modes.
  */
 class Server {
 
@@ -114,19 +140,54 @@ class Server {
             public String toString() {
                 return "num_chunks";
             }
+        },
+        COMMIT_GEN {
+            @Override
+            public String toString() {
+                return "commit_gen";
+            }
         },};
     public static final String HL_ANALYZE_CHARS_UNLIMITED = "-1";
     //max content size we can send to Solr
     public static final long MAX_CONTENT_SIZE = 1L * 1024 * 1024 * 1024;
     private static final Logger logger = Logger.getLogger(Server.class.getName());
-    private static final String DEFAULT_CORE_NAME = "coreCase";
-    // TODO: DEFAULT_CORE_NAME needs to be replaced with unique names to support multiple open cases
     public static final String CORE_EVT = "CORE_EVT";
     public static final char ID_CHUNK_SEP = '_';
     private String javaPath = "java";
     public static final Charset DEFAULT_INDEXED_TEXT_CHARSET = Charset.forName("UTF-8"); ///< default Charset to index text as
-    private static final int MAX_SOLR_MEM_MB = 512; //TODO set dynamically based on avail. system resources
-    private Process curSolrProcess = null;
+    //bounds of the heap of the Solr process, sized from the physical memory
+    private static final int MIN_SOLR_MEM_MB = 512;
+    private static final int MAX_SOLR_MEM_MB_32BIT = 1024;
+    private static final int MAX_SOLR_MEM_MB_64BIT = 4096;
+    //bounds of the RAM Lucene buffers indexed documents in, sized from the Solr heap
+    private static final int MIN_RAM_BUFFER_MB = 32;
+    private static final int MAX_RAM_BUFFER_MB = 256;
+    //property substituted in solrconfig.xml
+    private static final String RAM_BUFFER_PROPERTY = "solr.ramBufferSizeMB";
+    //max. number of connections to a core, index requests in flight and a few concurrent queries
+    private static final int MAX_CORE_CONNECTIONS = Ingester.MAX_IN_FLIGHT_REQUESTS + 8;
+    //max. time a core request waits for data, longer than any index request timeout,
+    //so that the read of an index request that timed out ends eventually and frees its slot
+    private static final int CORE_SO_TIMEOUT_MS = (Ingester.getTimeout(Long.MAX_VALUE) + 60) * 1000;
+    //delays between readiness probes, doubled after each probe up to the max.
+    private static final long PROBE_INITIAL_DELAY_MS = 50;
+    private static final long PROBE_MAX_DELAY_MS = 2000;
+    //max. time to wait for a started Solr process to answer
+    private static final long START_TIMEOUT_MS = 60 * 1000;
+    //time a probe may take before Solr is considered hung
+    private static final int PROBE_TIMEOUT_MS = 10 * 1000;
+    //timeout of the core admin requests, so a hung Solr does not block the callers for ever
+    private static final int ADMIN_TIMEOUT_MS = 2 * 60 * 1000;
+    //interval of the supervisor health checks
+    private static final long SUPERVISOR_INTERVAL_SECS = 10;
+    //number of failed health checks in a row after which Solr is restarted
+    private static final int MAX_FAILED_PROBES = 3;
+    //max. number of open cores, the least recently used ones other than the core of the current case are closed beyond
+    private static final int MAX_OPEN_CORES = 4;
+    //time after which a core not used, other than the core of the current case, is closed
+    private static final long CORE_IDLE_TIMEOUT_MS = 10 * 60 * 1000L;
+    private static final long CORE_EVICTION_INTERVAL_SECS = 60;
+    private volatile Process curSolrProcess = null;
     private static Ingester ingester = null;
 
     public enum CORE_EVT_STATES {
@@ -134,11 +195,40 @@ class Server {
         STOPPED, STARTED
     };
     private CommonsHttpSolrServer solrServer;
+    //server for the health checks, with a short timeout
+    private CommonsHttpSolrServer probeServer;
     private String instanceDir;
     private File solrFolder;
+    //host the cores in this JVM instead of a separate Solr process
+    private final boolean embedded;
+    //cores hosted in this JVM, if embedded and started
+    private CoreContainer coreContainer = null;
     private ServerAction serverAction;
     private InputStreamPrinterThread inputRedirectThread;
     private InputStreamPrinterThread errorRedirectThread;
+    //checks the health of the Solr process and restarts it, while started
+    private volatile ScheduledExecutorService supervisor = null;
+    private final AtomicBoolean restartRequested = new AtomicBoolean(false);
+    private final AtomicBoolean checkRequested = new AtomicBoolean(false);
+    //used by the supervisor thread only
+    private int failedProbes = 0;
+    //set while Solr is checked after errors or restarted, guarded by recoveryLock
+    private volatile boolean recovering = false;
+    private final Object recoveryLock = new Object();
+    //serializes starting and stopping the Solr process, never held while waiting for this
+    private final Object processLock = new Object();
+    //open cores of cases by core name, least recently used first, guarded by this
+    private final LinkedHashMap<String, Core> openCores = new LinkedHashMap<String, Core>(16, 0.75f, true);
+    //serializes the core create and unload requests, never taken while holding this
+    private final Object coreAdminLock = new Object();
+    //closes the idle cores, while cores are open
+    private ScheduledExecutorService coreEvictor = null;
+    private final Runnable superviseTask = new Runnable() {
+        @Override
+        public void run() {
+            supervise();
+        }
+    };
 
     /**
      * New instance for the server at the given URL
@@ -146,14 +236,33 @@ class Server {
      * @param url should be something like "http://localhost:8983/solr/"
      */
     Server(String url) {
+        this(url, InstalledFileLocator.getDefault().locate("solr", Server.class.getPackage().getName(), false),
+                KeywordSearchSettings.getEmbeddedSolr());
+    }
+
+    /**
+     * New instance for the server at the given URL, or embedded
+     *
+     * @param url should be something like "http://localhost:8983/solr/", not
+     * used if embedded
+     * @param solrFolder folder of the Solr installation
+     * @param embedded true to host the cores in this JVM, false to run Solr
+     * in a separate process
+     */
+    Server(String url, File solrFolder, boolean embedded) {
         try {
             this.solrServer = new CommonsHttpSolrServer(url);
+            solrServer.setSoTimeout(ADMIN_TIMEOUT_MS);
+            this.probeServer = new CommonsHttpSolrServer(url);
+            probeServer.setConnectionTimeout(PROBE_TIMEOUT_MS);
+            probeServer.setSoTimeout(PROBE_TIMEOUT_MS);
         } catch (MalformedURLException ex) {
             throw new RuntimeException(ex);
         }
 
         serverAction = new ServerAction();
-        solrFolder = InstalledFileLocator.getDefault().locate("solr", Server.class.getPackage().getName(), false);
+        this.solrFolder = solrFolder;
+        this.embedded = embedded;
         instanceDir = solrFolder.getAbsolutePath() + File.separator + "solr";
 
         javaPath = PlatformUtil.getJavaPath();
@@ -232,24 +341,36 @@ class Server {
     }
 
     /**
-     * Tries to start a Solr instance in a separate process. Returns immediately
-     * (probably before the server is ready) and doesn't check whether it was
-     * successful.
+     * Tries to start a Solr instance in a separate process. Returns when the
+     * server answers, or after START_TIMEOUT_MS if it does not. Starts the
+     * supervisor that restarts Solr if it dies or hangs.
      */
     void start() {
+        if (embedded) {
+            startEmbedded();
+            return;
+        }
+        synchronized (processLock) {
+            startProcess();
+        }
+        if (!waitUntilReady(START_TIMEOUT_MS)) {
+            logger.log(Level.WARNING, "Solr server not answering " + START_TIMEOUT_MS + " ms after starting it");
+        }
+        startSupervisor();
+    }
+
+    /**
+     * Starts the Solr process, returns without waiting for it to be ready
+     */
+    private void startProcess() {
         logger.log(Level.INFO, "Starting Solr server from: " + solrFolder.getAbsolutePath());
         try {
-            final String MAX_SOLR_MEM_MB_PAR = " -Xmx" + Integer.toString(MAX_SOLR_MEM_MB) + "m";
-            final String SOLR_START_CMD = javaPath + MAX_SOLR_MEM_MB_PAR + " -DSTOP.PORT=8079 -DSTOP.KEY=mysecret -jar start.jar";
+            final int solrMemMB = getSolrMemMB();
+            final String MAX_SOLR_MEM_MB_PAR = " -Xmx" + Integer.toString(solrMemMB) + "m";
+            final String RAM_BUFFER_PAR = " -D" + RAM_BUFFER_PROPERTY + "=" + Integer.toString(getRamBufferSizeMB(solrMemMB));
+            final String SOLR_START_CMD = javaPath + MAX_SOLR_MEM_MB_PAR + RAM_BUFFER_PAR + " -DSTOP.PORT=8079 -DSTOP.KEY=mysecret -jar start.jar";
             logger.log(Level.INFO, "Starting Solr using: " + SOLR_START_CMD);
             curSolrProcess = Runtime.getRuntime().exec(SOLR_START_CMD, null, solrFolder);
-            try {
-                //block, give time to fully stary the process
-                //so if it's restarted solr operations can be resumed seamlessly
-                Thread.sleep(3000);
-            } catch (InterruptedException ex) {
-                Exceptions.printStackTrace(ex);
-            }
             // Handle output to prevent process from blocking
             inputRedirectThread = new InputStreamPrinterThread(curSolrProcess.getInputStream(), "input");
             inputRedirectThread.start();
@@ -262,12 +383,375 @@ class Server {
         }
     }
 
+    /**
+     * Probes Solr until it answers, backing off exponentially between the
+     * probes
+     *
+     * @param timeoutMs max. time to wait
+     * @return true if Solr answered, false if it did not within the timeout,
+     * its process exited, or the thread was interrupted
+     */
+    boolean waitUntilReady(long timeoutMs) {
+        if (embedded) {
+            return coreContainer != null;
+        }
+        final long deadline = System.currentTimeMillis() + timeoutMs;
+        long delay = PROBE_INITIAL_DELAY_MS;
+        while (!probe()) {
+            if (!isProcessAlive()) {
+                logger.log(Level.WARNING, "Solr process exited while waiting for it to answer");
+                return false;
+            }
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(Math.min(delay, remaining));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            delay = Math.min(delay * 2, PROBE_MAX_DELAY_MS);
+        }
+        return true;
+    }
+
+    /**
+     * Sends a core-status request with a short timeout
+     *
+     * @return true if Solr answered
+     */
+    private boolean probe() {
+        try {
+            CoreAdminRequest.getStatus(null, probeServer);
+            return true;
+        } catch (SolrServerException ex) {
+            return false;
+        } catch (IOException ex) {
+            return false;
+        } catch (RuntimeException ex) {
+            //e.g. an error page while Jetty is still deploying Solr
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the Solr process started by this instance is running
+     */
+    private boolean isProcessAlive() {
+        final Process process = curSolrProcess;
+        if (process == null) {
+            return false;
+        }
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * Starts the thread checking the health of Solr periodically
+     */
+    private synchronized void startSupervisor() {
+        if (supervisor != null) {
+            return;
+        }
+        failedProbes = 0;
+        supervisor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("SolrSupervisor"));
+        supervisor.scheduleWithFixedDelay(superviseTask, SUPERVISOR_INTERVAL_SECS, SUPERVISOR_INTERVAL_SECS, TimeUnit.SECONDS);
+    }
+
+    private synchronized void stopSupervisor() {
+        if (supervisor == null) {
+            return;
+        }
+        supervisor.shutdownNow();
+        supervisor = null;
+        restartRequested.set(false);
+        checkRequested.set(false);
+        setRecovering(false);
+    }
+
+    /**
+     * Asks the supervisor to restart Solr, e.g. if it stopped answering
+     * requests. Returns immediately, Solr is restarted in the background.
+     *
+     * @return false if there is no supervisor to restart Solr (not started,
+     * or embedded)
+     */
+    boolean requestRestart() {
+        restartRequested.set(true);
+        return runSupervisor();
+    }
+
+    /**
+     * Asks the supervisor to check the health of Solr now, e.g. after a
+     * connection error, and to restart it if it does not answer. Returns
+     * immediately.
+     */
+    void checkHealth() {
+        if (checkRequested.compareAndSet(false, true)) {
+            runSupervisor();
+        }
+    }
+
+    private boolean runSupervisor() {
+        final ScheduledExecutorService s = supervisor;
+        if (s == null) {
+            return false;
+        }
+        setRecovering(true);
+        try {
+            s.execute(superviseTask);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            //stopped meanwhile
+            setRecovering(false);
+            return false;
+        }
+    }
+
+    /**
+     * Checks the health of Solr, restarts it if its process exited, it failed
+     * MAX_FAILED_PROBES health checks in a row, or a restart was requested.
+     * Runs on the supervisor thread.
+     */
+    private void supervise() {
+        final boolean restart = restartRequested.getAndSet(false);
+        final boolean check = checkRequested.getAndSet(false);
+        try {
+            if (restart) {
+                restart("restart requested");
+            } else if (!isProcessAlive()) {
+                restart("Solr process exited");
+            } else if (probe()) {
+                failedProbes = 0;
+            } else {
+                ++failedProbes;
+                logger.log(Level.WARNING, "Solr server not answering, failed health checks in a row: " + failedProbes);
+                if (check || failedProbes >= MAX_FAILED_PROBES) {
+                    restart("Solr server not answering");
+                }
+            }
+        } catch (RuntimeException ex) {
+            logger.log(Level.SEVERE, "Error restarting Solr server", ex);
+        } finally {
+            if (!restartRequested.get() && !checkRequested.get()) {
+                setRecovering(false);
+            }
+        }
+    }
+
+    /**
+     * Restarts the Solr process, and reopens the current core if one was
+     * open. Other requests to the core fail with NoOpenCoreException
+     * meanwhile. The cores of other cases are reopened when used next. The
+     * server is only locked to take out and put back the cores, not while
+     * waiting for Solr.
+     *
+     * @param reason why Solr is restarted, for logging
+     */
+    private void restart(String reason) {
+        logger.log(Level.WARNING, "Restarting Solr server: " + reason);
+        //only take the cores out under the lock, requests to them fail with NoOpenCoreException meanwhile
+        final List<Core> oldCores;
+        File currentCaseDir = null;
+        synchronized (coreAdminLock) {
+            synchronized (this) {
+                if (supervisor == null) {
+                    //stopped meanwhile
+                    return;
+                }
+                oldCores = new ArrayList<Core>(openCores.values());
+                openCores.clear();
+                if (currentCore != null) {
+                    currentCaseDir = new File(Case.getCurrentCase().getCaseDirectory());
+                    currentCore = null;
+                    serverAction.putValue(CORE_EVT, CORE_EVT_STATES.STOPPED);
+                }
+            }
+            for (Core core : oldCores) {
+                try {
+                    core.close();
+                } catch (RuntimeException ex) {
+                    logger.log(Level.WARNING, "Could not close core " + core.name + " of the Solr server being restarted", ex);
+                }
+            }
+        }
+        synchronized (processLock) {
+            if (supervisor == null) {
+                return;
+            }
+            stopProcess();
+            startProcess();
+        }
+        if (!waitUntilReady(START_TIMEOUT_MS)) {
+            if (supervisor == null) {
+                //stopped meanwhile, which interrupted the wait
+                return;
+            }
+            throw new RuntimeException("Solr server not answering " + START_TIMEOUT_MS + " ms after restarting it");
+        }
+        failedProbes = 0;
+        if (currentCaseDir != null) {
+            reopenCurrentCore(currentCaseDir);
+        }
+        logger.log(Level.INFO, "Solr server restarted");
+    }
+
+    /**
+     * Reopens the core of the current case after a restart, unless the server
+     * was stopped or the current core was opened again meanwhile
+     *
+     * @param caseDir directory of the case whose core was open
+     */
+    private void reopenCurrentCore(File caseDir) {
+        final String coreName = getCoreName(caseDir);
+        synchronized (coreAdminLock) {
+            //the create request is sent outside the lock, only the references are swapped under it
+            final Core core = openCore(coreName, getCoreDataDir(caseDir));
+            synchronized (this) {
+                if (supervisor != null && currentCore == null) {
+                    openCores.put(coreName, core);
+                    currentCore = core;
+                    core.touch();
+                    serverAction.putValue(CORE_EVT, CORE_EVT_STATES.STARTED);
+                    return;
+                }
+                if (openCores.containsKey(coreName)) {
+                    //opened again meanwhile, the same core on the server
+                    return;
+                }
+            }
+            core.close();
+        }
+    }
+
+    private void setRecovering(boolean recovering) {
+        synchronized (recoveryLock) {
+            this.recovering = recovering;
+            if (!recovering) {
+                recoveryLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return true while Solr is checked after errors or restarted, requests
+     * are likely to fail meanwhile
+     */
+    boolean isRecovering() {
+        return recovering;
+    }
+
+    /**
+     * Blocks while Solr is checked after errors or restarted
+     *
+     * @param timeoutMs max. time to wait
+     * @return true if Solr is not recovering (anymore), false if the timeout
+     * elapsed first
+     * @throws InterruptedException
+     */
+    boolean waitForRecovery(long timeoutMs) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (recoveryLock) {
+            while (recovering) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                recoveryLock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts the container of the cores hosted in this JVM. Returns when the
+     * container is ready to open cores.
+     */
+    private synchronized void startEmbedded() {
+        if (coreContainer != null) {
+            return;
+        }
+        logger.log(Level.INFO, "Starting embedded Solr from: " + instanceDir);
+        try {
+            coreContainer = new CoreContainer(instanceDir, new File(instanceDir, "solr.xml"));
+        } catch (ParserConfigurationException ex) {
+            throw new RuntimeException(ex);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } catch (SAXException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Gets the max. heap of the Solr process, a quarter of the physical
+     * memory, within bounds that work for the platform
+     *
+     * @return max. heap size in MB
+     */
+    private static int getSolrMemMB() {
+        final boolean is64Bit = "64".equals(System.getProperty("sun.arch.data.model"));
+        final int maxMemMB = is64Bit ? MAX_SOLR_MEM_MB_64BIT : MAX_SOLR_MEM_MB_32BIT;
+        long physicalMemMB = 0;
+        try {
+            final Object totalPhysicalMemory = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                    new ObjectName(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME), "TotalPhysicalMemorySize");
+            physicalMemMB = ((Number) totalPhysicalMemory).longValue() / (1024 * 1024);
+        } catch (JMException ex) {
+            logger.log(Level.WARNING, "Could not get the physical memory size, using the min. Solr heap size", ex);
+        } catch (ClassCastException ex) {
+            logger.log(Level.WARNING, "Could not get the physical memory size, using the min. Solr heap size", ex);
+        }
+        return (int) Math.max(MIN_SOLR_MEM_MB, Math.min(maxMemMB, physicalMemMB / 4));
+    }
+
+    /**
+     * Gets the RAM Lucene buffers indexed documents in before flushing them,
+     * an eighth of the Solr heap, within bounds
+     *
+     * @param solrMemMB max. heap of Solr, in MB
+     * @return RAM buffer size in MB
+     */
+    private static int getRamBufferSizeMB(long solrMemMB) {
+        return (int) Math.max(MIN_RAM_BUFFER_MB, Math.min(MAX_RAM_BUFFER_MB, solrMemMB / 8));
+    }
+
     /**
      * Tries to stop a Solr instance.
      *
      * Waits for the stop command to finish before returning.
      */
-    synchronized void stop() {
+    void stop() {
+        synchronized (this) {
+            stopCoreEvictor();
+            openCores.clear();
+            if (embedded) {
+                if (coreContainer != null) {
+                    logger.log(Level.INFO, "Stopping embedded Solr from: " + instanceDir);
+                    //closes the open cores
+                    coreContainer.shutdown();
+                    coreContainer = null;
+                }
+                return;
+            }
+            stopSupervisor();
+        }
+        //a restart in progress sees the supervisor stopped and does not start the process again
+        synchronized (processLock) {
+            stopProcess();
+        }
+    }
+
+    /**
+     * Stops the Solr process, waits for the stop command to finish
+     */
+    private void stopProcess() {
         try {
             logger.log(Level.INFO, "Stopping Solr server from: " + solrFolder.getAbsolutePath());
             //try graceful shutdown
@@ -276,6 +760,8 @@ class Server {
             //if still running, forcefully stop it
             if (curSolrProcess != null) {
                 curSolrProcess.destroy();
+                //release the port before Solr may be started again
+                curSolrProcess.waitFor();
                 curSolrProcess = null;
             }
 
@@ -304,6 +790,9 @@ class Server {
      * true
      */
     synchronized boolean isRunning() {
+        if (embedded) {
+            return coreContainer != null;
+        }
 
         try {
             // making a status request here instead of just doing solrServer.ping(), because
@@ -311,13 +800,7 @@ class Server {
 
             CoreAdminRequest.getStatus(null, solrServer);
         } catch (SolrServerException ex) {
-
-            Throwable cause = ex.getRootCause();
-
-            // TODO: check if SocketExceptions should actually happen (is
-            // probably caused by starting a connection as the server finishes
-            // shutting down)
-            if (cause instanceof ConnectException || cause instanceof SocketException || cause instanceof NoHttpResponseException) {
+            if (isConnectionError(ex)) {
                 return false;
             } else {
                 throw new RuntimeException("Error checking if server is running", ex);
@@ -328,41 +811,250 @@ class Server {
 
         return true;
     }
+
+    /**
+     * Checks if a request failed because Solr could not be reached
+     *
+     * @param ex exception the request failed with
+     * @return true if due to a connection error
+     */
+    static boolean isConnectionError(SolrServerException ex) {
+        Throwable cause = ex.getRootCause();
+
+        // TODO: check if SocketExceptions should actually happen (is
+        // probably caused by starting a connection as the server finishes
+        // shutting down)
+        return cause instanceof ConnectException || cause instanceof SocketException || cause instanceof NoHttpResponseException;
+    }
+
     /**
-     * ** Convenience methods for use while we only open one case at a time ***
+     * ** Convenience methods for the core of the current case ***
      */
     private volatile Core currentCore = null;
 
-    synchronized void openCore() {
-        if (currentCore != null) {
-            throw new RuntimeException("Already an open Core!");
+    void openCore() {
+        synchronized (this) {
+            if (currentCore != null) {
+                throw new RuntimeException("Already an open Core!");
+            }
+        }
+        //the create request is sent outside the lock, only the current core is set under it
+        final Core core = openCore(Case.getCurrentCase());
+        synchronized (this) {
+            currentCore = core;
+            serverAction.putValue(CORE_EVT, CORE_EVT_STATES.STARTED);
         }
-        currentCore = openCore(Case.getCurrentCase());
-        serverAction.putValue(CORE_EVT, CORE_EVT_STATES.STARTED);
     }
 
-    synchronized void closeCore() {
-        if (currentCore == null) {
+    void closeCore() {
+        synchronized (coreAdminLock) {
+            final Core core;
+            synchronized (this) {
+                if (currentCore == null) {
+                    return;
+                }
+                core = currentCore;
+                openCores.remove(core.name);
+                currentCore = null;
+                serverAction.putValue(CORE_EVT, CORE_EVT_STATES.STOPPED);
+            }
+            //the unload request is sent outside the lock
+            core.close();
+        }
+    }
+
+    /**
+     * ** end current case specific methods ***
+     */
+    /**
+     * Open a core for the given case, or get it if already open
+     *
+     * @param c case
+     * @return core of the case
+     */
+    Core openCore(Case c) {
+        return getCore(new File(c.getCaseDirectory()));
+    }
+
+    /**
+     * Get the core of a case, opening it if not open yet. Several cores can be
+     * open at once, the least recently used ones beyond MAX_OPEN_CORES and the
+     * ones idle for CORE_IDLE_TIMEOUT_MS are closed, except the core of the
+     * current case. The create request of a core not open yet is sent
+     * without holding the server lock, so that it does not block the requests
+     * to the open cores.
+     *
+     * @param caseDir directory of the case
+     * @return core of the case
+     */
+    Core getCore(File caseDir) {
+        final String coreName = getCoreName(caseDir);
+        synchronized (this) {
+            final Core core = openCores.get(coreName);
+            if (core != null) {
+                core.touch();
+                return core;
+            }
+        }
+        final Core core;
+        synchronized (coreAdminLock) {
+            synchronized (this) {
+                //opened meanwhile
+                final Core openedCore = openCores.get(coreName);
+                if (openedCore != null) {
+                    openedCore.touch();
+                    return openedCore;
+                }
+            }
+            core = openCore(coreName, getCoreDataDir(caseDir));
+            synchronized (this) {
+                openCores.put(coreName, core);
+                core.touch();
+                startCoreEvictor();
+            }
+        }
+        evictCores();
+        return core;
+    }
+
+    /**
+     * Close the core of a case, if open
+     *
+     * @param caseDir directory of the case
+     */
+    void closeCore(File caseDir) {
+        final String coreName = getCoreName(caseDir);
+        synchronized (coreAdminLock) {
+            final Core core;
+            synchronized (this) {
+                if (currentCore != null && currentCore.name.equals(coreName)) {
+                    core = null;
+                } else {
+                    core = openCores.remove(coreName);
+                    if (core == null) {
+                        return;
+                    }
+                }
+            }
+            if (core != null) {
+                //the unload request is sent outside the lock
+                core.close();
+                return;
+            }
+        }
+        closeCore();
+    }
+
+    /**
+     * Closes the least recently used cores beyond MAX_OPEN_CORES, and the
+     * cores idle for longer than CORE_IDLE_TIMEOUT_MS, except the core of the
+     * current case
+     */
+    private void evictCores() {
+        synchronized (coreAdminLock) {
+            //only take the cores out under the lock, the unload requests are sent outside it
+            final List<Core> evicted = new ArrayList<Core>();
+            synchronized (this) {
+                final long now = System.currentTimeMillis();
+                int numOpen = openCores.size();
+                final Iterator<Core> it = openCores.values().iterator();
+                while (it.hasNext()) {
+                    final Core core = it.next();
+                    if (core == currentCore) {
+                        continue;
+                    }
+                    if (numOpen > MAX_OPEN_CORES || now - core.lastUsed > CORE_IDLE_TIMEOUT_MS) {
+                        it.remove();
+                        --numOpen;
+                        evicted.add(core);
+                    }
+                }
+            }
+            for (Core core : evicted) {
+                logger.log(Level.INFO, "Closing Solr core not used recently: " + core.name);
+                try {
+                    core.close();
+                } catch (RuntimeException ex) {
+                    logger.log(Level.WARNING, "Could not close Solr core " + core.name, ex);
+                }
+            }
+        }
+    }
+
+    private synchronized void startCoreEvictor() {
+        if (coreEvictor != null) {
+            return;
+        }
+        coreEvictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("SolrCoreEvictor"));
+        coreEvictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictCores();
+            }
+        }, CORE_EVICTION_INTERVAL_SECS, CORE_EVICTION_INTERVAL_SECS, TimeUnit.SECONDS);
+    }
+
+    private synchronized void stopCoreEvictor() {
+        if (coreEvictor == null) {
             return;
         }
-        currentCore.close();
-        currentCore = null;
-        serverAction.putValue(CORE_EVT, CORE_EVT_STATES.STOPPED);
+        coreEvictor.shutdownNow();
+        coreEvictor = null;
     }
 
     /**
-     * ** end single-case specific methods ***
+     * Execute the query on the cores of several cases, opening the cores not
+     * open yet. The query is executed on each core rather than as a Solr
+     * distributed search, since document ids are only unique within a case.
+     *
+     * @param sq query
+     * @param caseDirs directories of the cases to query, cases without an
+     * index are skipped
+     * @return responses by case directory, in the order of the cases given
+     * @throws SolrServerException
      */
+    public Map<File, QueryResponse> queryCases(SolrQuery sq, List<File> caseDirs) throws SolrServerException {
+        final Map<File, QueryResponse> responses = new LinkedHashMap<File, QueryResponse>();
+        for (File caseDir : caseDirs) {
+            if (!getCoreDataDir(caseDir).exists()) {
+                logger.log(Level.WARNING, "No keyword search index in case " + caseDir + ", skipping it");
+                continue;
+            }
+            responses.put(caseDir, getCore(caseDir).query(sq));
+        }
+        return responses;
+    }
+
     /**
-     * Open a core for the given case
+     * Get the name of the core of a case, unique to the case directory
      *
-     * @param c
-     * @return
+     * @param caseDir directory of the case
+     * @return core name, safe to use in Solr URLs
      */
-    synchronized Core openCore(Case c) {
+    static String getCoreName(File caseDir) {
+        final String name = caseDir.getName().replaceAll("[^A-Za-z0-9_]", "_");
+        return "case_" + name + "_" + Integer.toHexString(caseDir.getAbsolutePath().hashCode());
+    }
+
+    /**
+     * Get directory the core data (index) of the case is stored in
+     *
+     * @param c case
+     * @return core data directory of the case
+     */
+    static File getCoreDataDir(Case c) {
+        return getCoreDataDir(new File(c.getCaseDirectory()));
+    }
+
+    /**
+     * Get directory the core data (index) of the case is stored in
+     *
+     * @param caseDir directory of the case
+     * @return core data directory of the case
+     */
+    static File getCoreDataDir(File caseDir) {
         String sep = File.separator;
-        String dataDir = c.getCaseDirectory() + sep + "keywordsearch" + sep + "data";
-        return this.openCore(DEFAULT_CORE_NAME, new File(dataDir));
+        return new File(caseDir, "keywordsearch" + sep + "data");
     }
 
     /**
@@ -567,12 +1259,14 @@ class Server {
      * @param dataDir directory to load/store the core data from/to
      * @return new core
      */
-    private Core openCore(String coreName, File dataDir) {
+    Core openCore(String coreName, File dataDir) {
+        if (!dataDir.exists()) {
+            dataDir.mkdirs();
+        }
+        if (embedded) {
+            return openEmbeddedCore(coreName, dataDir);
+        }
         try {
-            if (!dataDir.exists()) {
-                dataDir.mkdirs();
-            }
-
             CoreAdminRequest.Create createCore = new CoreAdminRequest.Create();
             createCore.setDataDir(dataDir.getAbsolutePath());
             createCore.setInstanceDir(instanceDir);
@@ -580,7 +1274,14 @@ class Server {
 
             this.solrServer.request(createCore);
 
-            return new Core(coreName);
+            //the server to access a core needs to be built from a URL with the core in it
+            final CommonsHttpSolrServer coreServer = new CommonsHttpSolrServer(solrServer.getBaseURL() + "/" + coreName);
+            //pool of keep-alive connections for the concurrent index requests of the ingester, and for queries
+            coreServer.setDefaultMaxConnectionsPerHost(MAX_CORE_CONNECTIONS);
+            coreServer.setMaxTotalConnections(MAX_CORE_CONNECTIONS);
+            coreServer.setSoTimeout(CORE_SO_TIMEOUT_MS);
+
+            return new Core(coreName, coreServer);
 
         } catch (SolrServerException ex) {
             throw new RuntimeException(ex);
@@ -589,28 +1290,96 @@ class Server {
         }
     }
 
+    /**
+     * Open a new core hosted in this JVM
+     *
+     * @param coreName name to refer to the core by
+     * @param dataDir directory to load/store the core data from/to
+     * @return new core
+     */
+    private synchronized Core openEmbeddedCore(String coreName, File dataDir) {
+        if (coreContainer == null) {
+            throw new RuntimeException("Embedded Solr not started");
+        }
+        try {
+            final CoreDescriptor descriptor = new CoreDescriptor(coreContainer, coreName, instanceDir);
+            descriptor.setDataDir(dataDir.getAbsolutePath());
+            //Lucene buffers share the heap of this JVM
+            final long maxMemMB = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+            final Properties coreProperties = new Properties();
+            coreProperties.setProperty(RAM_BUFFER_PROPERTY, Integer.toString(getRamBufferSizeMB(maxMemMB)));
+            descriptor.setCoreProperties(coreProperties);
+
+            final SolrCore solrCore = coreContainer.create(descriptor);
+            coreContainer.register(coreName, solrCore, false);
+
+            return new Core(coreName, new EmbeddedSolrServer(coreContainer, coreName));
+
+        } catch (ParserConfigurationException ex) {
+            throw new RuntimeException(ex);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } catch (SAXException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Close a core hosted in this JVM
+     *
+     * @param coreName name of the core
+     */
+    private synchronized void closeEmbeddedCore(String coreName) {
+        if (coreContainer == null) {
+            return;
+        }
+        final SolrCore solrCore = coreContainer.remove(coreName);
+        if (solrCore != null) {
+            solrCore.close();
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
     class Core {
 
         // handle to the core in Solr
         private String name;
-        // the server to access a core needs to be built from a URL with the
-        // core in it, and is only good for core-specific operations
+        // the server to access the core with, over HTTP or in-process,
+        // only good for core-specific operations
         private SolrServer solrCore;
 
-        private Core(String name) {
+        // time the core was last got from the server, for idle eviction
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private Core(String name, SolrServer solrCore) {
             this.name = name;
-            try {
-                this.solrCore = new CommonsHttpSolrServer(solrServer.getBaseURL() + "/" + name);
-            } catch (MalformedURLException ex) {
-                throw new RuntimeException(ex);
-            }
+            this.solrCore = solrCore;
+        }
+
+        private void touch() {
+            lastUsed = System.currentTimeMillis();
         }
 
         private QueryResponse query(SolrQuery sq) throws SolrServerException {
             return solrCore.query(sq);
         }
 
-        private NamedList<Object> request(SolrRequest request) throws SolrServerException {
+        NamedList<Object> request(SolrRequest request) throws SolrServerException {
             try {
                 return solrCore.request(request);
             } catch (IOException e) {
@@ -629,7 +1398,7 @@ class Server {
             return qres.getTermsResponse();
         }
 
-        private void commit() throws SolrServerException {
+        void commit() throws SolrServerException {
             try {
                 //commit and block
                 solrCore.commit(true, true);
@@ -657,6 +1426,10 @@ class Server {
         }
 
         synchronized void close() {
+            if (embedded) {
+                closeEmbeddedCore(name);
+                return;
+            }
             try {
                 CoreAdminRequest.unloadCore(this.name, solrServer);
             } catch (SolrServerException ex) {
@@ -0,0 +1,170 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.TermsResponse;
+import org.apache.solr.client.solrj.response.TermsResponse.Term;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Terms component query of multiple regex keywords at once.
+ *
+ * The regular expressions of the keywords are combined into a single
+ * alternation, so that the terms dictionary is walked once for all of the
+ * keywords instead of once per keyword. The terms matching the combined
+ * expression are then matched locally to the keywords they belong to, in the
+ * same way Solr matches them (whole term, case insensitive).
+ *
+ * Keywords that cannot be combined (invalid expressions, back references,
+ * expressions that do not work as a group) are left out, and should be queried
+ * separately with TermComponentQuery.
+ */
+class TermComponentMultiQuery {
+
+    private static final Logger logger = Logger.getLogger(TermComponentMultiQuery.class.getName());
+    //back references would refer to groups of the other keywords once combined
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]");
+    private final List<Keyword> keywords = new ArrayList<Keyword>();
+    private final List<Pattern> patterns = new ArrayList<Pattern>();
+    private String combinedRegex = null;
+
+    /**
+     * @param regexKeywords keywords to query, literal keywords are ignored
+     */
+    TermComponentMultiQuery(Collection<Keyword> regexKeywords) {
+        for (Keyword keyword : regexKeywords) {
+            if (keyword.isLiteral() || keywords.contains(keyword)) {
+                continue;
+            }
+            final String regex = keyword.getQuery();
+            if (regex == null || regex.equals("") || BACK_REFERENCE.matcher(regex).find()) {
+                continue;
+            }
+            try {
+                //the same flags the terms component uses
+                final Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+                //make sure the expression does not leak out of its group once combined, e.g. \Q without \E
+                Pattern.compile("(?:" + regex + ")");
+                patterns.add(pattern);
+                keywords.add(keyword);
+            } catch (PatternSyntaxException ex) {
+                //not valid, left to the single keyword query to report
+            } catch (IllegalArgumentException ex) {
+                //not valid, left to the single keyword query to report
+            }
+        }
+
+        if (!keywords.isEmpty()) {
+            final StringBuilder sb = new StringBuilder();
+            for (Keyword keyword : keywords) {
+                if (sb.length() > 0) {
+                    sb.append('|');
+                }
+                sb.append("(?:").append(keyword.getQuery()).append(')');
+            }
+            combinedRegex = sb.toString();
+            try {
+                Pattern.compile(combinedRegex, Pattern.CASE_INSENSITIVE);
+            } catch (PatternSyntaxException ex) {
+                logger.log(Level.WARNING, "Could not combine the regex keywords, they will be queried separately", ex);
+                keywords.clear();
+                patterns.clear();
+                combinedRegex = null;
+            }
+        }
+    }
+
+    /**
+     * @return the keywords queried at once, the others need to be queried
+     * separately
+     */
+    List<Keyword> getKeywords() {
+        return keywords;
+    }
+
+    /**
+     * @return the combined regular expression of the keywords, or null if
+     * there are no keywords to query at once
+     */
+    String getCombinedRegex() {
+        return combinedRegex;
+    }
+
+    /**
+     * Walks the terms dictionary once for all of the keywords
+     *
+     * @return terms matching each of the keywords, for all keywords queried at
+     * once (the list is empty if the keyword has no matches)
+     * @throws NoOpenCoreException if there is no open core to query
+     * @throws SolrServerException if the terms could not be queried, e.g. if
+     * the combined regex is too large for the server
+     */
+    Map<Keyword, List<Term>> performQuery() throws NoOpenCoreException, SolrServerException {
+        if (combinedRegex == null) {
+            return new LinkedHashMap<Keyword, List<Term>>();
+        }
+        final SolrQuery q = TermComponentQuery.createTermsQuery(combinedRegex);
+        final TermsResponse tr = KeywordSearch.getServer().queryTerms(q);
+        List<Term> terms = tr.getTerms(TermComponentQuery.TERMS_SEARCH_FIELD);
+        if (terms == null) {
+            terms = new ArrayList<Term>();
+        }
+        logger.log(Level.INFO, "Terms of " + keywords.size() + " regex keywords queried at once, terms matched: " + terms.size());
+        return matchTerms(terms);
+    }
+
+    /**
+     * Matches the terms found by the combined regex to the keywords
+     *
+     * @param terms terms matching the combined regex
+     * @return terms matching each of the keywords, for all keywords queried at
+     * once
+     */
+    Map<Keyword, List<Term>> matchTerms(Collection<Term> terms) {
+        final Map<Keyword, List<Term>> matches = new LinkedHashMap<Keyword, List<Term>>();
+        final List<List<Term>> keywordTerms = new ArrayList<List<Term>>(keywords.size());
+        for (Keyword keyword : keywords) {
+            final List<Term> termList = new ArrayList<Term>();
+            keywordTerms.add(termList);
+            matches.put(keyword, termList);
+        }
+
+        final int numPatterns = patterns.size();
+        for (Term term : terms) {
+            final String termStr = term.getTerm();
+            for (int i = 0; i < numPatterns; ++i) {
+                //a term can match multiple keywords
+                if (patterns.get(i).matcher(termStr).matches()) {
+                    keywordTerms.get(i).add(term);
+                }
+            }
+        }
+        return matches;
+    }
+}
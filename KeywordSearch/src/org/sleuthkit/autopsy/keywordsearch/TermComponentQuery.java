@@ -21,37 +21,53 @@ package org.sleuthkit.autopsy.keywordsearch;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.Group;
+import org.apache.solr.client.solrj.response.GroupCommand;
+import org.apache.solr.client.solrj.response.GroupResponse;
+import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.TermsResponse;
 import org.apache.solr.client.solrj.response.TermsResponse.Term;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.GroupParams;
+import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardArtifact.ARTIFACT_TYPE;
 import org.sleuthkit.datamodel.BlackboardAttribute;
 import org.sleuthkit.datamodel.BlackboardAttribute.ATTRIBUTE_TYPE;
+import org.sleuthkit.datamodel.SleuthkitCase;
 import org.sleuthkit.datamodel.TskException;
 
 public class TermComponentQuery implements KeywordSearchQuery {
 
     private static final int TERMS_UNLIMITED = -1;
     //corresponds to field in Solr schema, analyzed with white-space tokenizer only
-    private static final String TERMS_SEARCH_FIELD = Server.Schema.CONTENT_WS.toString();
+    static final String TERMS_SEARCH_FIELD = Server.Schema.CONTENT_WS.toString();
     private static final String TERMS_HANDLER = "/terms";
     private static final int TERMS_TIMEOUT = 90 * 1000; //in ms
+    //terms resolved to files with a single request, a group query per term
+    private static final int TERMS_PER_FETCH = 64;
+    //max. number of rows of all the term groups of a request, split evenly between the terms
+    private static final int ROWS_PER_FETCH = 10000;
     private static Logger logger = Logger.getLogger(TermComponentQuery.class.getName());
     private String termsQuery;
     private String queryEscaped;
     private boolean isEscaped;
     private List<Term> terms;
+    //terms already matched by TermComponentMultiQuery, or null to query them
+    private List<Term> matchedTerms = null;
     private Keyword keywordQuery = null;
     private KeywordQueryFilter filter = null;
     private String field = null;
@@ -74,6 +90,17 @@ public class TermComponentQuery implements KeywordSearchQuery {
         this.field = field;
     }
 
+    /**
+     * Sets the terms matching the regex, if already queried with the terms of
+     * other keywords by TermComponentMultiQuery, so that the terms are not
+     * queried again
+     *
+     * @param matchedTerms terms matching the regex
+     */
+    void setMatchedTerms(List<Term> matchedTerms) {
+        this.matchedTerms = matchedTerms;
+    }
+
     @Override
     public void escape() {
         queryEscaped = Pattern.quote(termsQuery);
@@ -111,6 +138,13 @@ public class TermComponentQuery implements KeywordSearchQuery {
      * helper method to create a Solr terms component query
      */
     protected SolrQuery createQuery() {
+        return createTermsQuery(queryEscaped);
+    }
+
+    /*
+     * helper method to create a Solr terms component query for the regex
+     */
+    static SolrQuery createTermsQuery(String regex) {
         final SolrQuery q = new SolrQuery();
         q.setQueryType(TERMS_HANDLER);
         q.setTerms(true);
@@ -119,7 +153,7 @@ public class TermComponentQuery implements KeywordSearchQuery {
         //q.setTermsLimit(200);
         //q.setTermsRegexFlag(regexFlag);
         //q.setTermsRaw(true);
-        q.setTermsRegex(queryEscaped);
+        q.setTermsRegex(regex);
         q.addTermsField(TERMS_SEARCH_FIELD);
         q.setTimeAllowed(TERMS_TIMEOUT);
 
@@ -216,35 +250,184 @@ public class TermComponentQuery implements KeywordSearchQuery {
     public Map<String, List<ContentHit>> performQuery() throws NoOpenCoreException {
         Map<String, List<ContentHit>> results = new HashMap<String, List<ContentHit>>();
 
-        final SolrQuery q = createQuery();
-        terms = executeQuery(q);
+        final ContentHitIterator hits = performQueryIterator();
+        if (terms == null) {
+            return results;
+        }
+        for (Term term : terms) {
+            results.put(term.getTerm(), new ArrayList<ContentHit>());
+        }
+        while (hits.hasNext()) {
+            final ContentHit hit = hits.next();
+            results.get(hits.getTerm()).add(hit);
+        }
+
+        return results;
+    }
 
+    @Override
+    public ContentHitIterator performQueryIterator() throws NoOpenCoreException {
+        if (matchedTerms != null) {
+            terms = matchedTerms;
+        } else {
+            final SolrQuery q = createQuery();
+            terms = executeQuery(q);
+        }
+        return new TermsHitIterator();
+    }
 
-        for (Term term : terms) {
-            final String termStr = KeywordSearchUtil.escapeLuceneQuery(term.getTerm());
+    /**
+     * Streams the hits of the terms, resolving a batch of terms to files at a
+     * time, so only the hits of the current batch are held in memory
+     */
+    private class TermsHitIterator implements ContentHitIterator {
+
+        private int nextBatchStart = 0;
+        private Iterator<Map.Entry<String, List<ContentHit>>> batchTerms = null;
+        private Iterator<ContentHit> termHits = null;
+        private String batchTerm = null;
+        private String term = null;
+
+        @Override
+        public boolean hasNext() throws NoOpenCoreException {
+            while (termHits == null || !termHits.hasNext()) {
+                if (batchTerms != null && batchTerms.hasNext()) {
+                    final Map.Entry<String, List<ContentHit>> entry = batchTerms.next();
+                    batchTerm = entry.getKey();
+                    termHits = entry.getValue().iterator();
+                } else if (terms != null && nextBatchStart < terms.size()) {
+                    fetchBatch();
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
 
-            LuceneQuery filesQuery = new LuceneQuery(termStr);
-            //filesQuery.setField(TERMS_SEARCH_FIELD);
-            if (filter != null) {
-                filesQuery.setFilter(filter);
+        @Override
+        public ContentHit next() throws NoOpenCoreException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
+            term = batchTerm;
+            return termHits.next();
+        }
+
+        @Override
+        public String getTerm() {
+            return term;
+        }
+
+        //resolve the next batch of terms to files, instead of a query per term
+        private void fetchBatch() throws NoOpenCoreException {
+            final List<Term> batch = terms.subList(nextBatchStart, Math.min(terms.size(), nextBatchStart + TERMS_PER_FETCH));
+            nextBatchStart += TERMS_PER_FETCH;
+
+            final Map<String, List<ContentHit>> results = new LinkedHashMap<String, List<ContentHit>>();
             try {
-                Map<String, List<ContentHit>> subResults = filesQuery.performQuery();
-                Set<ContentHit> filesResults = new HashSet<ContentHit>();
-                for (String key : subResults.keySet()) {
-                    filesResults.addAll(subResults.get(key));
-                }
-                results.put(term.getTerm(), new ArrayList<ContentHit>(filesResults));
+                resolveTerms(batch, results, new HashMap<Long, AbstractFile>());
             } catch (NoOpenCoreException e) {
                 logger.log(Level.WARNING, "Error executing Solr query,", e);
                 throw e;
             } catch (RuntimeException e) {
                 logger.log(Level.WARNING, "Error executing Solr query,", e);
             }
+            batchTerms = results.entrySet().iterator();
+        }
+    }
+
+    /**
+     * Finds the files and chunks containing the terms, with a single request
+     * with a group query per term (and more requests only for the terms with
+     * more hits than their share of ROWS_PER_FETCH, with fewer terms and a
+     * bigger share per request)
+     *
+     * @param batch terms to find
+     * @param results results to add the hits of each term to
+     * @param files files already looked up, by id
+     * @throws NoOpenCoreException
+     */
+    private void resolveTerms(List<Term> batch, Map<String, List<ContentHit>> results, Map<Long, AbstractFile> files) throws NoOpenCoreException {
+        final Server solrServer = KeywordSearch.getServer();
 
+        //same query as a LuceneQuery per term, the group is named by its query
+        Map<String, String> termsToFetch = new LinkedHashMap<String, String>();
+        for (Term term : batch) {
+            final String termStr = KeywordSearchUtil.escapeLuceneQuery(term.getTerm());
+            termsToFetch.put(KeywordSearchUtil.quoteQuery(termStr), term.getTerm());
+            if (!results.containsKey(term.getTerm())) {
+                results.put(term.getTerm(), new ArrayList<ContentHit>());
+            }
         }
 
+        int groupLimit;
+        for (int start = 0; !termsToFetch.isEmpty(); start = start + groupLimit) {
+            groupLimit = Math.max(1, ROWS_PER_FETCH / termsToFetch.size());
+            SolrQuery q = new SolrQuery("*:*");
+            q.setFields(Server.Schema.ID.toString());
+            q.set(GroupParams.GROUP, true);
+            for (String groupQuery : termsToFetch.keySet()) {
+                q.add(GroupParams.GROUP_QUERY, groupQuery);
+            }
+            q.set(GroupParams.GROUP_LIMIT, groupLimit);
+            q.set(GroupParams.GROUP_OFFSET, start);
+            if (filter != null) {
+                q.addFilterQuery(filter.toString());
+            }
 
-        return results;
+            final Map<String, String> termsLeft = new LinkedHashMap<String, String>();
+            try {
+                QueryResponse response = solrServer.query(q, METHOD.POST);
+                GroupResponse groups = response.getGroupResponse();
+                if (groups == null) {
+                    return;
+                }
+                SleuthkitCase sc = null;
+                try {
+                    sc = Case.getCurrentCase().getSleuthkitCase();
+                } catch (IllegalStateException ex) {
+                    //no case open, must be just closed
+                    return;
+                }
+
+                //look up the files of all the groups at once
+                final List<Long> fileIDs = new ArrayList<Long>();
+                for (GroupCommand command : groups.getValues()) {
+                    for (Group group : command.getValues()) {
+                        for (SolrDocument resultDoc : group.getResult()) {
+                            fileIDs.add(LuceneQuery.getFileId((String) resultDoc.getFieldValue(Server.Schema.ID.toString())));
+                        }
+                    }
+                }
+                LuceneQuery.lookupFiles(sc, fileIDs, files);
+
+                for (GroupCommand command : groups.getValues()) {
+                    final String term = termsToFetch.get(command.getName());
+                    if (term == null) {
+                        continue;
+                    }
+                    final List<ContentHit> termHits = results.get(term);
+                    for (Group group : command.getValues()) {
+                        for (SolrDocument resultDoc : group.getResult()) {
+                            final String resultID = (String) resultDoc.getFieldValue(Server.Schema.ID.toString());
+                            try {
+                                termHits.add(LuceneQuery.createContentHit(sc, resultID, null, files));
+                            } catch (TskException ex) {
+                                logger.log(Level.WARNING, "Could not get the AbstractFile for keyword hit, ", ex);
+                                //something wrong with case/db
+                                return;
+                            }
+                        }
+                        if (start + groupLimit < group.getResult().getNumFound()) {
+                            termsLeft.put(command.getName(), term);
+                        }
+                    }
+                }
+            } catch (SolrServerException ex) {
+                logger.log(Level.WARNING, "Error executing Solr query for the terms of regex: " + termsQuery, ex);
+                return;
+            }
+            termsToFetch = termsLeft;
+        }
     }
 }
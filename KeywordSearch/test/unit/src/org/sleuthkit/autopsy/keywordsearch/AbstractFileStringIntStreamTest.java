@@ -0,0 +1,153 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import org.junit.Test;
+import org.sleuthkit.autopsy.coreutils.StringExtract;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
+
+/**
+ * Checks that the strings AbstractFileStringIntStream extracts window by
+ * window are the same as the strings extracted from the whole file at once,
+ * for inputs with strings straddling the window boundaries.
+ *
+ * Uses windows smaller than FILE_BUF_SIZE, so that the inputs have many
+ * strings across window boundaries.
+ */
+public class AbstractFileStringIntStreamTest {
+
+    private static final Charset OUTPUT_CHARSET = Charset.forName("UTF-8");
+    //keyword search default
+    private static final List<SCRIPT> SCRIPTS = Arrays.asList(SCRIPT.LATIN_2);
+    //windows larger than the longest string of the inputs, a string longer than a window is still cut
+    private static final int[] WINDOW_SIZES = {4096, 65536, AbstractFileStringIntStream.FILE_BUF_SIZE};
+    private static final String[] WORDS = {
+        "keyword", "search", "evidence", "image", "Praha", "Kraków", "Győr", "Łódź", "Москва", "данные"
+    };
+    private static final String[] STRADDLING = {"keyword search", "Kraków Łódź Győr", "данные Москва"};
+    private static final long SEED = 0x5eed;
+
+    @Test
+    public void testRandomBytes() throws IOException {
+        for (int windowSize : WINDOW_SIZES) {
+            final byte[] data = new byte[3 * windowSize + 777];
+            new Random(SEED).nextBytes(data);
+            checkWindows("random", data, windowSize);
+        }
+    }
+
+    @Test
+    public void testStringsInRandomBytes() throws IOException {
+        for (int windowSize : WINDOW_SIZES) {
+            checkWindows("mixed", mixed(3 * windowSize + 777), windowSize);
+        }
+    }
+
+    @Test
+    public void testStringAcrossWindowBoundary() throws IOException {
+        for (int windowSize : WINDOW_SIZES) {
+            final int size = 3 * windowSize + 777;
+            for (String s : STRADDLING) {
+                for (boolean utf16 : new boolean[]{false, true}) {
+                    //string ending just before, across and starting just after the first boundary
+                    final byte[] encoded = encode(s, utf16);
+                    for (int shift = -encoded.length - 2; shift <= 2; ++shift) {
+                        final byte[] data = straddling(size, windowSize + shift, encoded);
+                        checkWindows("'" + s + "' at " + shift + (utf16 ? " UTF-16" : " UTF-8"), data, windowSize);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the output of the stream to the whole file extraction
+     *
+     * @param name input name, for the failure message
+     * @param data file content
+     * @param windowSize size of the file read windows of the stream
+     */
+    private static void checkWindows(String name, byte[] data, int windowSize) throws IOException {
+        final StringExtract extract = new StringExtract();
+        extract.setEnabledScripts(SCRIPTS);
+        extract.setEnableUTF8(true);
+        extract.setEnableUTF16(true);
+        final byte[] expected = extract.extract(data, data.length, 0).getText().getBytes(OUTPUT_CHARSET);
+
+        final AbstractFileStringIntStream stream = new AbstractFileStringIntStream(new MemoryFile(1, name, data),
+                SCRIPTS, true, true, OUTPUT_CHARSET, new byte[windowSize]);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(expected.length);
+        final byte[] readBuf = new byte[8192];
+        int read;
+        try {
+            while ((read = stream.read(readBuf, 0, readBuf.length)) != -1) {
+                out.write(readBuf, 0, read);
+            }
+        } finally {
+            stream.close();
+        }
+        assertArrayEquals("Strings of " + name + ", window " + windowSize, expected, out.toByteArray());
+    }
+
+    //random bytes with words in UTF-8 and UTF-16LE at random offsets, like executables and documents
+    private static byte[] mixed(int size) {
+        final Random random = new Random(SEED);
+        final byte[] data = new byte[size];
+        random.nextBytes(data);
+        int off = random.nextInt(512);
+        while (off < size) {
+            final StringBuilder words = new StringBuilder();
+            for (int i = 1 + random.nextInt(8); i > 0; --i) {
+                words.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            final byte[] encoded = encode(words.toString(), random.nextBoolean());
+            final int len = Math.min(encoded.length, size - off);
+            System.arraycopy(encoded, 0, data, off, len);
+            off += len + random.nextInt(512);
+        }
+        return data;
+    }
+
+    //random bytes with the string at off
+    private static byte[] straddling(int size, int off, byte[] s) {
+        final byte[] data = new byte[size];
+        new Random(SEED).nextBytes(data);
+        //no string is joined with random chars around it
+        data[off - 1] = 0;
+        data[off + s.length] = 0;
+        System.arraycopy(s, 0, data, off, s.length);
+        return data;
+    }
+
+    private static byte[] encode(String s, boolean utf16) {
+        try {
+            return s.getBytes(utf16 ? "UTF-16LE" : "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
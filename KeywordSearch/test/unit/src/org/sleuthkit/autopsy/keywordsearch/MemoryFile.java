@@ -0,0 +1,123 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2012 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.Collections;
+import java.util.List;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.ContentVisitor;
+import org.sleuthkit.datamodel.Image;
+import org.sleuthkit.datamodel.SleuthkitItemVisitor;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * File with the content in memory, not backed by a case database, to feed
+ * fixture data to code that reads AbstractFile content.
+ *
+ * Shared by the unit tests and the benchmarks, which compile it into the
+ * Benchmarks module.
+ */
+public class MemoryFile extends AbstractFile {
+
+    private final long id;
+    private final byte[] data;
+
+    /**
+     * @param id object id of the file
+     * @param name name of the file
+     * @param data content of the file
+     */
+    public MemoryFile(long id, String name, byte[] data) {
+        super(null, id, name, TskData.TSK_DB_FILES_TYPE_ENUM.UNALLOC_BLOCKS);
+        this.id = id;
+        this.data = data;
+    }
+
+    @Override
+    public int read(byte[] buf, long offset, long len) throws TskCoreException {
+        if (offset >= data.length) {
+            return 0;
+        }
+        final int toRead = (int) Math.min(len, data.length - offset);
+        System.arraycopy(data, (int) offset, buf, 0, toRead);
+        return toRead;
+    }
+
+    @Override
+    public long getSize() {
+        return data.length;
+    }
+
+    @Override
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean isFile() {
+        return true;
+    }
+
+    @Override
+    public boolean isDir() {
+        return false;
+    }
+
+    @Override
+    public boolean isRoot() {
+        return false;
+    }
+
+    @Override
+    public Image getImage() throws TskCoreException {
+        return null;
+    }
+
+    @Override
+    public List<Content> getChildren() throws TskCoreException {
+        return Collections.<Content>emptyList();
+    }
+
+    @Override
+    public boolean hasChildren() throws TskCoreException {
+        return false;
+    }
+
+    @Override
+    public <T> T accept(ContentVisitor<T> v) {
+        return null;
+    }
+
+    @Override
+    public <T> T accept(SleuthkitItemVisitor<T> v) {
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof MemoryFile && ((MemoryFile) obj).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (id ^ (id >>> 32));
+    }
+}
@@ -32,6 +32,7 @@ import java.util.Map.Entry;
 import java.util.logging.Level;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.metadata.Metadata;
+import org.sleuthkit.autopsy.ingest.FileTypeDetector.FileType;
 import org.sleuthkit.autopsy.ingest.IngestServices;
 import org.sleuthkit.autopsy.ingest.IngestMessage;
 import org.sleuthkit.autopsy.ingest.IngestMessage.MessageType;
@@ -44,7 +45,6 @@ import org.sleuthkit.datamodel.BlackboardAttribute;
 import org.sleuthkit.datamodel.BlackboardAttribute.ATTRIBUTE_TYPE;
 import org.sleuthkit.datamodel.ReadContentInputStream;
 import org.sleuthkit.datamodel.TskCoreException;
-import org.sleuthkit.datamodel.TskException;
 import org.xml.sax.SAXException;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.sleuthkit.autopsy.casemodule.Case;
@@ -82,7 +82,6 @@ public class ThunderbirdMboxFileIngestModule implements IngestModuleAbstractFile
     @Override
     public ProcessResult process(AbstractFile abstractFile) {
         ThunderbirdEmailParser mbox = new ThunderbirdEmailParser();
-        boolean isMbox = false;
 
         IngestModuleAbstractFile.ProcessResult hashDBResult = 
                 services.getAbstractFileModuleResult(hashDBModuleName);
@@ -93,16 +92,8 @@ public class ThunderbirdMboxFileIngestModule implements IngestModuleAbstractFile
             return ProcessResult.ERROR;  //file has read error, stop processing it
         }
 
-        try {
-            byte[] t = new byte[64];
-            if(abstractFile.getSize() > 64) {
-                int byteRead = abstractFile.read(t, 0, 64);
-                isMbox = mbox.isValidMimeTypeMbox(t);
-            }
-        } catch (TskException ex) {
-            Logger.getLogger(ThunderbirdMboxFileIngestModule.class.getName()).log(Level.WARNING, null, ex);
-        }
-
+        //header signature shared with other modules, detected once per file
+        final boolean isMbox = services.getFileType(abstractFile) == FileType.MBOX;
 
         if (isMbox) {
             services.postMessage(IngestMessage.createMessage(++messageId, MessageType.INFO, this, "Processing " + abstractFile.getName()));